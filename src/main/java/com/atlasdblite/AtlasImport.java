@@ -0,0 +1,95 @@
+package com.atlasdblite;
+
+import com.atlasdblite.io.BulkLoader;
+import com.atlasdblite.io.GraphDump;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code atlas-import}: offline initial load of a new database from node and link CSV files, or
+ * from a binary dump ({@code --dump}). Run it while no shell or server has the database open.
+ */
+public class AtlasImport {
+    private static final String USAGE = "atlas-import <db-dir> --nodes=a.csv[,b.csv...] [--links=x.csv[,y.csv...]]"
+            + " [--memory=512m] [--threads=N] [--tmp=dir] [--index] [--errors=file] [--max-errors=N]"
+            + " | atlas-import <db-dir> --dump=file [--threads=N]";
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println(" Usage: " + USAGE);
+            System.exit(2);
+        }
+        String dbDirectory = args[0];
+        List<File> nodes = new ArrayList<>();
+        List<File> links = new ArrayList<>();
+        File dump = null;
+        int threads = 0;
+        boolean index = false;
+        BulkLoader loader = new BulkLoader().onProgress(msg -> System.out.println(" ... " + msg), 5000);
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String a = args[i];
+                if (a.startsWith("--nodes=")) addFiles(nodes, a.substring(8));
+                else if (a.startsWith("--links=")) addFiles(links, a.substring(8));
+                else if (a.startsWith("--memory=")) loader.memory(parseSize(a.substring(9)));
+                else if (a.startsWith("--dump=")) dump = new File(a.substring(7));
+                else if (a.startsWith("--threads=")) threads = Integer.parseInt(a.substring(10));
+                else if (a.startsWith("--tmp=")) loader.tempDir(new File(a.substring(6)));
+                else if (a.equals("--index")) index = true;
+                else if (a.startsWith("--errors=")) loader.errorFile(new File(a.substring(9)));
+                else if (a.startsWith("--max-errors=")) loader.maxErrors(Integer.parseInt(a.substring(13)));
+                else throw new IllegalArgumentException("Unknown option: " + a);
+            }
+
+            if (dump != null) {
+                if (!nodes.isEmpty() || !links.isEmpty() || index)
+                    throw new IllegalArgumentException("--dump cannot be combined with CSV files or --index");
+                if (!dump.isFile()) throw new IllegalArgumentException("File not found: " + dump.getPath());
+                GraphDump restore = new GraphDump();
+                if (threads > 0) restore.threads(threads);
+                GraphDump.Result result = restore.restore(dump, dbDirectory);
+                System.out.printf(" [OK] Restored %,d nodes and %,d relations in %,dms.%n", result.nodes, result.relations,
+                        result.millis);
+                return;
+            }
+            if (threads > 0) loader.threads(threads);
+            loader.buildIndex(index);
+            BulkLoader.Result result = loader.load(dbDirectory, nodes, links);
+            System.out.printf(" [OK] Loaded %,d nodes and %,d relations from %,d rows in %,dms (%,.0f rows/s).%n",
+                    result.nodes, result.relations, result.rows, result.millis, result.rowsPerSecond());
+            if (result.duplicates > 0)
+                System.out.printf(" [WARN] %,d node rows repeated an earlier ID; the last row was kept.%n", result.duplicates);
+            if (result.errorFile != null)
+                System.out.printf(" [ERR] %,d rows skipped; see %s%n", result.errors, result.errorFile.getPath());
+        } catch (IllegalArgumentException e) {
+            System.out.println(" [ERR] " + e.getMessage());
+            System.out.println(" Usage: " + USAGE);
+            System.exit(2);
+        } catch (Exception e) {
+            System.out.println(" [CRASH] Import failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void addFiles(List<File> files, String list) {
+        for (String path : list.split(","))
+            if (!path.trim().isEmpty()) files.add(new File(path.trim()));
+    }
+
+    /** Bytes from a size such as {@code 1048576}, {@code 512m} or {@code 2g}. */
+    static long parseSize(String size) {
+        String s = size.trim().toLowerCase();
+        long unit = 1;
+        if (s.endsWith("k")) unit = 1L << 10;
+        else if (s.endsWith("m")) unit = 1L << 20;
+        else if (s.endsWith("g")) unit = 1L << 30;
+        if (unit > 1) s = s.substring(0, s.length() - 1);
+        try {
+            return Long.parseLong(s) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+    }
+}
@@ -21,20 +21,26 @@ public class AtlasShell {
         registry.register(new ShowCommand());
         registry.register(new SelectCommand());
         registry.register(new QueryCommand());
+        registry.register(new MatchCommand());
+        registry.register(new ExpandCommand());
         registry.register(new SearchCommand());
+        registry.register(new SimilarCommand());
         registry.register(new PathCommand()); 
         
         registry.register(new StatsCommand());
         registry.register(new BackupCommand());
+        registry.register(new RestoreCommand());
         registry.register(new CheckpointCommand());
         registry.register(new ImportCommand());
         registry.register(new ExportCommand());
+        registry.register(new DumpCommand());
         registry.register(new NukeCommand());
         registry.register(new ServerCommand());
         registry.register(new IndexCommand());
         registry.register(new ExitCommand());
         registry.register(new ClearCommand());
         registry.register(new AnalyzeCommand());
+        registry.register(new JobsCommand());
 
         Scanner scanner = new Scanner(System.in);
         
@@ -0,0 +1,212 @@
+package com.atlasdblite.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Brandes betweenness centrality over the directed, unweighted {@link GraphProjection}.
+ * <p>
+ * Each source costs one BFS plus a reverse sweep that accumulates dependencies; predecessors are
+ * found on the fly from the in-edge CSR instead of being stored. Sources are handed out to
+ * workers from a shared counter, and each worker sums into its own primitive accumulator, merged
+ * once at the end.
+ * <p>
+ * Exact mode uses every vertex as a source. Sampled mode uses {@code k} sources chosen uniformly
+ * at random and scales by {@code n / k}. By Hoeffding's inequality and a union bound over all
+ * vertices, every normalized score is then within {@link Result#errorBound} of its exact value
+ * with probability {@code 1 - delta}.
+ */
+public class Betweenness {
+    /** Graphs up to this size are computed exactly unless a sample size is given. */
+    public static final int EXACT_LIMIT = 5000;
+    public static final double DEFAULT_DELTA = 0.1;
+
+    public static class Result {
+        /** Raw scores: the number of shortest paths through each vertex (estimated when sampled). */
+        public final double[] scores;
+        /** Scores divided by (n-1)(n-2), the number of ordered pairs a vertex can sit between. */
+        public final double[] normalized;
+        public final int sources;
+        public final boolean exact;
+        /** Additive bound on every normalized score (0 when exact), holding with probability 1 - delta. */
+        public final double errorBound;
+        public final long millis;
+        private final GraphProjection graph;
+
+        Result(GraphProjection graph, double[] scores, double[] normalized, int sources, boolean exact, double errorBound, long millis) {
+            this.graph = graph;
+            this.scores = scores;
+            this.normalized = normalized;
+            this.sources = sources;
+            this.exact = exact;
+            this.errorBound = errorBound;
+            this.millis = millis;
+        }
+
+        /** Vertex indexes of the {@code k} highest scores, best first. */
+        public int[] top(int k) {
+            Integer[] order = new Integer[scores.length];
+            for (int v = 0; v < order.length; v++) order[v] = v;
+            Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+            int[] top = new int[Math.min(k, order.length)];
+            for (int i = 0; i < top.length; i++) top[i] = order[i];
+            return top;
+        }
+
+        public GraphProjection getGraph() { return graph; }
+    }
+
+    private int samples = -1; // -1 = exact up to EXACT_LIMIT, sampled beyond
+    private double epsilon = 0.05;
+    private double delta = DEFAULT_DELTA;
+    private long seed = 42;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Uses exactly {@code k} sampled sources (or every vertex if {@code k >= n}). */
+    public Betweenness samples(int k) {
+        if (k < 1) throw new IllegalArgumentException("Samples must be at least 1");
+        this.samples = k;
+        return this;
+    }
+
+    /** Picks the sample size so every normalized score is within {@code e} (with probability 1 - delta). */
+    public Betweenness epsilon(double e) {
+        if (e <= 0 || e >= 1) throw new IllegalArgumentException("Epsilon must be in (0, 1)");
+        this.epsilon = e;
+        this.samples = -2;
+        return this;
+    }
+
+    /** Forces every vertex to be a source. */
+    public Betweenness exact() { this.samples = Integer.MAX_VALUE; return this; }
+
+    public Betweenness delta(double d) { this.delta = d; return this; }
+    public Betweenness seed(long s) { this.seed = s; return this; }
+    public Betweenness threads(int n) { this.threads = Math.max(1, n); return this; }
+
+    /** Sample size giving additive error {@code epsilon} for all {@code n} vertices at confidence 1 - delta. */
+    public static int samplesFor(int n, double epsilon, double delta) {
+        return (int) Math.ceil(Math.log(2.0 * Math.max(1, n) / delta) / (2 * epsilon * epsilon));
+    }
+
+    /**
+     * @throws CancellationException If the control is cancelled (or the thread interrupted).
+     */
+    public Result run(GraphProjection g, JobControl control) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        int n = g.size();
+        int k;
+        if (samples == -1) k = n <= EXACT_LIMIT ? n : samplesFor(n, epsilon, delta);
+        else if (samples == -2) k = samplesFor(n, epsilon, delta);
+        else k = samples;
+        k = Math.min(k, n);
+        boolean exact = k == n;
+
+        int[] sources = new int[n];
+        for (int v = 0; v < n; v++) sources[v] = v;
+        if (!exact) {
+            Random rnd = new Random(seed);
+            for (int i = 0; i < k; i++) {
+                int j = i + rnd.nextInt(n - i);
+                int t = sources[i]; sources[i] = sources[j]; sources[j] = t;
+            }
+        }
+        control.setTotal(k);
+
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.max(1, Math.min(threads, k));
+        final int total = k;
+        List<double[]> partials = new ArrayList<>();
+        if (workers == 1) {
+            partials.add(accumulate(g, sources, total, next, control));
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(workers, PageRank.daemonThreads());
+            try {
+                List<Future<double[]>> futures = new ArrayList<>();
+                for (int w = 0; w < workers; w++)
+                    futures.add(pool.submit(() -> accumulate(g, sources, total, next, control)));
+                for (Future<double[]> f : futures) partials.add(f.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof CancellationException) throw (CancellationException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        double[] scores = new double[n];
+        for (double[] part : partials)
+            for (int v = 0; v < n; v++) scores[v] += part[v];
+        double scale = k == 0 ? 0 : (double) n / k;
+        double pairs = n > 2 ? (double) (n - 1) * (n - 2) : 1.0;
+        double[] normalized = new double[n];
+        for (int v = 0; v < n; v++) {
+            scores[v] *= scale;
+            normalized[v] = scores[v] / pairs;
+        }
+        // Hoeffding on delta_s(v) / (n-2) in [0, 1]; the normalized score is n / (n-1) times its mean
+        double bound = exact ? 0.0 : n / (n - 1.0) * Math.sqrt(Math.log(2.0 * n / delta) / (2.0 * k));
+        return new Result(g, scores, normalized, k, exact, bound, System.currentTimeMillis() - start);
+    }
+
+    /** One worker: claims sources until none are left, summing dependencies into its own array. */
+    private static double[] accumulate(GraphProjection g, int[] sources, int total, AtomicInteger next, JobControl control) {
+        int n = g.size();
+        int[] outOffsets = g.outOffsets(), outTargets = g.outTargets();
+        int[] inOffsets = g.inOffsets(), inSources = g.inSources();
+        double[] bc = new double[n];
+        double[] sigma = new double[n];
+        double[] delta = new double[n];
+        int[] dist = new int[n];
+        int[] order = new int[n];
+        Arrays.fill(dist, -1);
+
+        int i;
+        while ((i = next.getAndIncrement()) < total) {
+            control.checkpoint();
+            int s = sources[i];
+            // BFS, recording vertices in visiting order
+            int head = 0, tail = 0;
+            order[tail++] = s;
+            dist[s] = 0;
+            sigma[s] = 1;
+            while (head < tail) {
+                int v = order[head++];
+                for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+                    int w = outTargets[e];
+                    if (dist[w] < 0) {
+                        dist[w] = dist[v] + 1;
+                        order[tail++] = w;
+                    }
+                    if (dist[w] == dist[v] + 1) sigma[w] += sigma[v];
+                }
+            }
+            // Dependencies in reverse BFS order; predecessors are in-neighbours one level up
+            for (int j = tail - 1; j > 0; j--) {
+                int w = order[j];
+                double coefficient = (1 + delta[w]) / sigma[w];
+                for (int e = inOffsets[w]; e < inOffsets[w + 1]; e++) {
+                    int v = inSources[e];
+                    if (dist[v] == dist[w] - 1) delta[v] += sigma[v] * coefficient;
+                }
+                bc[w] += delta[w];
+            }
+            for (int j = 0; j < tail; j++) {
+                int v = order[j];
+                dist[v] = -1;
+                sigma[v] = 0;
+                delta[v] = 0;
+            }
+            control.advance(1);
+        }
+        return bc;
+    }
+}
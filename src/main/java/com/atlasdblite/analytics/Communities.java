@@ -0,0 +1,433 @@
+package com.atlasdblite.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Community detection on the undirected view of a {@link GraphProjection}: every relation
+ * {@code u -> v} becomes an undirected edge with the projection's weight (1.0 when unweighted).
+ * <p>
+ * {@link #labelPropagation} is the fast option: vertex ranges are relabelled in parallel, each
+ * vertex taking the label with the most neighbour weight (keeping its own label on ties, which
+ * stops oscillation). {@link #louvain} is the quality option: greedy modularity moves, then the
+ * communities are collapsed into super-vertices and the process repeats until nothing merges.
+ * Both report the modularity of what they found.
+ */
+public class Communities {
+    public static final int DEFAULT_LPA_ITERATIONS = 20;
+    private static final double MIN_GAIN = 1e-9;
+    private static final int LPA_RANGES_PER_WORKER = 4;
+
+    /** Community per vertex (0 = largest), indexed like the projection. */
+    public static class Result {
+        public final String method;
+        public final int[] labels;
+        public final int count;
+        public final int[] sizes;
+        public final double modularity;
+        /** LPA iterations, or Louvain levels. */
+        public final int rounds;
+        public final long millis;
+        private final GraphProjection graph;
+
+        Result(String method, GraphProjection graph, int[] labels, int count, int[] sizes, double modularity, int rounds, long millis) {
+            this.method = method;
+            this.graph = graph;
+            this.labels = labels;
+            this.count = count;
+            this.sizes = sizes;
+            this.modularity = modularity;
+            this.rounds = rounds;
+            this.millis = millis;
+        }
+
+        /** Community of a node ID, or -1 if it is not in the projection. */
+        public int communityOf(String id) {
+            int v = graph.indexOf(id);
+            return v < 0 ? -1 : labels[v];
+        }
+
+        public GraphProjection getGraph() { return graph; }
+        public long getVersion() { return graph.getVersion(); }
+    }
+
+    /** Symmetric weighted adjacency; a self-loop of weight w is stored once with weight 2w. */
+    static final class Undirected {
+        final int n;
+        final int[] offsets;
+        final int[] neighbours;
+        final double[] weights;
+        final double[] strength; // weighted degree, self-loops included
+        final double total;      // sum of strength = 2m
+
+        Undirected(int n, int[] offsets, int[] neighbours, double[] weights) {
+            this.n = n;
+            this.offsets = offsets;
+            this.neighbours = neighbours;
+            this.weights = weights;
+            this.strength = new double[n];
+            double sum = 0;
+            for (int v = 0; v < n; v++) {
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) strength[v] += weights[e];
+                sum += strength[v];
+            }
+            this.total = sum;
+        }
+
+        static Undirected of(GraphProjection g) {
+            int n = g.size();
+            int[] outOffsets = g.outOffsets(), outTargets = g.outTargets();
+            double[] outWeights = g.outWeights();
+            int[] offsets = new int[n + 1];
+            for (int u = 0; u < n; u++) {
+                for (int e = outOffsets[u]; e < outOffsets[u + 1]; e++) {
+                    int v = outTargets[e];
+                    offsets[u + 1]++;
+                    if (v != u) offsets[v + 1]++;
+                }
+            }
+            for (int v = 0; v < n; v++) offsets[v + 1] += offsets[v];
+            int[] pos = Arrays.copyOf(offsets, n);
+            int[] neighbours = new int[offsets[n]];
+            double[] weights = new double[offsets[n]];
+            for (int u = 0; u < n; u++) {
+                for (int e = outOffsets[u]; e < outOffsets[u + 1]; e++) {
+                    int v = outTargets[e];
+                    double w = outWeights == null ? 1.0 : outWeights[e];
+                    if (v == u) {
+                        neighbours[pos[u]] = u;
+                        weights[pos[u]++] = 2 * w;
+                    } else {
+                        neighbours[pos[u]] = v;
+                        weights[pos[u]++] = w;
+                        neighbours[pos[v]] = u;
+                        weights[pos[v]++] = w;
+                    }
+                }
+            }
+            return new Undirected(n, offsets, neighbours, weights);
+        }
+    }
+
+    // --- Label propagation ---
+
+    public static Result labelPropagation(GraphProjection g, int threads, int maxIterations) throws InterruptedException {
+        return labelPropagation(g, threads, maxIterations, new JobControl());
+    }
+
+    /**
+     * Label propagation reporting one unit of progress per round against the round budget.
+     * @throws CancellationException If the control is cancelled.
+     */
+    public static Result labelPropagation(GraphProjection g, int threads, int maxIterations, JobControl control)
+            throws InterruptedException {
+        long start = System.currentTimeMillis();
+        Undirected u = Undirected.of(g);
+        int n = u.n;
+        int[] labels = new int[n];
+        for (int v = 0; v < n; v++) labels[v] = v;
+
+        int workers = Math.max(1, Math.min(threads, n / 1024 + 1));
+        ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers, PageRank.daemonThreads()) : null;
+        int iterations = 0;
+        control.setTotal(maxIterations);
+        try {
+            // Several ranges per worker even out skewed degrees. The n-sized score arrays belong
+            // to the workers, not the ranges: a task borrows one and hands it back zeroed, and no
+            // more tasks than workers run at once
+            BlockingQueue<double[]> scratch = new ArrayBlockingQueue<>(workers);
+            for (int w = 0; w < workers; w++) scratch.add(new double[n]);
+            int ranges = workers == 1 ? 1 : workers * LPA_RANGES_PER_WORKER;
+            int chunk = Math.max(1, (n + ranges - 1) / ranges);
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            int[] round = new int[1];
+            for (int from = 0; from < n; from += chunk) {
+                int lo = from, hi = Math.min(n, from + chunk);
+                tasks.add(() -> {
+                    double[] score = scratch.poll();
+                    try {
+                        return relabel(u, labels, lo, hi, score, round[0]);
+                    } finally {
+                        scratch.add(score);
+                    }
+                });
+            }
+            while (iterations < maxIterations) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                control.checkpoint();
+                round[0] = iterations;
+                int changed = 0;
+                if (pool == null) {
+                    for (Callable<Integer> t : tasks) changed += callQuietly(t);
+                } else {
+                    for (Future<Integer> f : pool.invokeAll(tasks)) changed += get(f);
+                }
+                iterations++;
+                control.advance(1);
+                if (changed == 0) break;
+            }
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+        return finish("lpa", g, u, labels, iterations, start);
+    }
+
+    /**
+     * Relabels vertices in [lo, hi) in place; returns how many changed. Other ranges may race.
+     * Ties between new labels are broken by a per-round hash rather than by label order, which
+     * would let the smallest label flood across weak bridges.
+     */
+    private static int relabel(Undirected u, int[] labels, int lo, int hi, double[] score, int round) {
+        int[] touched = new int[16];
+        int changed = 0;
+        for (int v = lo; v < hi; v++) {
+            int count = 0;
+            for (int e = u.offsets[v]; e < u.offsets[v + 1]; e++) {
+                int w = u.neighbours[e];
+                if (w == v) continue;
+                int l = labels[w];
+                if (score[l] == 0) {
+                    if (count == touched.length) touched = Arrays.copyOf(touched, count * 2);
+                    touched[count++] = l;
+                }
+                score[l] += u.weights[e];
+            }
+            if (count == 0) continue;
+            int current = labels[v];
+            int best = current;
+            double bestScore = score[current];
+            for (int i = 0; i < count; i++) {
+                int l = touched[i];
+                if (score[l] > bestScore
+                        || (score[l] == bestScore && best != current && mix(l, v, round) < mix(best, v, round))) {
+                    best = l;
+                    bestScore = score[l];
+                }
+            }
+            for (int i = 0; i < count; i++) score[touched[i]] = 0;
+            if (best != current) {
+                labels[v] = best;
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    // --- Louvain ---
+
+    public static Result louvain(GraphProjection g) throws InterruptedException {
+        return louvain(g, new JobControl());
+    }
+
+    /**
+     * Louvain reporting progress as the number of vertices merged away, out of all of them; the
+     * level where nothing merges ends the run short of the total.
+     * @throws CancellationException If the control is cancelled.
+     */
+    public static Result louvain(GraphProjection g, JobControl control) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        Undirected level = Undirected.of(g);
+        int n = level.n;
+        control.setTotal(n);
+        int[] membership = new int[n]; // original vertex -> vertex of the current level
+        for (int v = 0; v < n; v++) membership[v] = v;
+
+        int levels = 0;
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+            int[] community = localMoves(level, control);
+            int[] dense = new int[level.n];
+            Arrays.fill(dense, -1);
+            int communities = 0;
+            for (int v = 0; v < level.n; v++)
+                if (dense[community[v]] < 0) dense[community[v]] = communities++;
+            for (int v = 0; v < level.n; v++) community[v] = dense[community[v]];
+            levels++;
+            for (int v = 0; v < n; v++) membership[v] = community[membership[v]];
+            control.advance(level.n - communities);
+            if (communities == level.n) break; // nothing merged
+            level = aggregate(level, community, communities);
+        }
+        return finish("louvain", g, Undirected.of(g), membership, levels, start);
+    }
+
+    /** Greedy modularity moves until a full pass moves nothing; returns a community per vertex. */
+    private static int[] localMoves(Undirected u, JobControl control) {
+        int n = u.n;
+        int[] community = new int[n];
+        double[] totals = new double[n];
+        for (int v = 0; v < n; v++) {
+            community[v] = v;
+            totals[v] = u.strength[v];
+        }
+        if (u.total == 0) return community;
+
+        double[] linkTo = new double[n];
+        int[] touched = new int[16];
+        boolean moved = true;
+        while (moved) {
+            control.checkpoint();
+            moved = false;
+            for (int v = 0; v < n; v++) {
+                int own = community[v];
+                double k = u.strength[v];
+                int count = 0;
+                for (int e = u.offsets[v]; e < u.offsets[v + 1]; e++) {
+                    int w = u.neighbours[e];
+                    if (w == v) continue;
+                    int c = community[w];
+                    if (linkTo[c] == 0) {
+                        if (count == touched.length) touched = Arrays.copyOf(touched, count * 2);
+                        touched[count++] = c;
+                    }
+                    linkTo[c] += u.weights[e];
+                }
+
+                totals[own] -= k;
+                // Gain of joining c (up to a constant): k_i,c - tot_c * k_i / 2m
+                int best = own;
+                double bestGain = linkTo[own] - totals[own] * k / u.total;
+                for (int i = 0; i < count; i++) {
+                    int c = touched[i];
+                    double gain = linkTo[c] - totals[c] * k / u.total;
+                    if (gain > bestGain + MIN_GAIN) {
+                        best = c;
+                        bestGain = gain;
+                    }
+                }
+                totals[best] += k;
+                linkTo[own] = 0;
+                for (int i = 0; i < count; i++) linkTo[touched[i]] = 0;
+                if (best != own) {
+                    community[v] = best;
+                    moved = true;
+                }
+            }
+        }
+        return community;
+    }
+
+    /** Collapses each community into one vertex; internal weight becomes a self-loop. */
+    private static Undirected aggregate(Undirected u, int[] community, int communities) {
+        int[] memberOffsets = new int[communities + 1];
+        for (int v = 0; v < u.n; v++) memberOffsets[community[v] + 1]++;
+        for (int c = 0; c < communities; c++) memberOffsets[c + 1] += memberOffsets[c];
+        int[] members = new int[u.n];
+        int[] pos = Arrays.copyOf(memberOffsets, communities);
+        for (int v = 0; v < u.n; v++) members[pos[community[v]]++] = v;
+
+        int[] offsets = new int[communities + 1];
+        int[] neighbours = new int[16];
+        double[] weights = new double[16];
+        double[] sum = new double[communities];
+        int[] touched = new int[16];
+        int size = 0;
+        for (int c = 0; c < communities; c++) {
+            int count = 0;
+            for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+                int v = members[m];
+                for (int e = u.offsets[v]; e < u.offsets[v + 1]; e++) {
+                    int d = community[u.neighbours[e]];
+                    if (sum[d] == 0) {
+                        if (count == touched.length) touched = Arrays.copyOf(touched, count * 2);
+                        touched[count++] = d;
+                    }
+                    sum[d] += u.weights[e];
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                int d = touched[i];
+                if (size == neighbours.length) {
+                    neighbours = Arrays.copyOf(neighbours, size * 2);
+                    weights = Arrays.copyOf(weights, size * 2);
+                }
+                // Every internal edge was seen from both ends, which is exactly the 2w self-loop form
+                neighbours[size] = d;
+                weights[size++] = sum[d];
+                sum[d] = 0;
+            }
+            offsets[c + 1] = size;
+        }
+        return new Undirected(communities, offsets, Arrays.copyOf(neighbours, size), Arrays.copyOf(weights, size));
+    }
+
+    // --- Quality ---
+
+    /** Newman modularity of a partition of the undirected view. */
+    public static double modularity(GraphProjection g, int[] labels) {
+        return modularity(Undirected.of(g), labels);
+    }
+
+    static double modularity(Undirected u, int[] labels) {
+        if (u.total == 0) return 0.0;
+        int max = 0;
+        for (int l : labels) max = Math.max(max, l);
+        double[] internal = new double[max + 1];
+        double[] totals = new double[max + 1];
+        for (int v = 0; v < u.n; v++) {
+            totals[labels[v]] += u.strength[v];
+            for (int e = u.offsets[v]; e < u.offsets[v + 1]; e++)
+                if (labels[u.neighbours[e]] == labels[v]) internal[labels[v]] += u.weights[e];
+        }
+        double q = 0;
+        for (int c = 0; c <= max; c++) {
+            double share = totals[c] / u.total;
+            q += internal[c] / u.total - share * share;
+        }
+        return q;
+    }
+
+    // --- Helpers ---
+
+    /** Numbers communities by size (0 = largest) and scores the partition. */
+    private static Result finish(String method, GraphProjection g, Undirected u, int[] raw, int rounds, long start) {
+        int n = raw.length;
+        int[] rawSize = new int[n];
+        for (int l : raw) rawSize[l]++;
+        List<Integer> distinct = new ArrayList<>();
+        for (int l = 0; l < n; l++) if (rawSize[l] > 0) distinct.add(l);
+        distinct.sort((a, b) -> rawSize[b] != rawSize[a] ? Integer.compare(rawSize[b], rawSize[a]) : Integer.compare(a, b));
+        int[] number = new int[n];
+        int[] sizes = new int[distinct.size()];
+        for (int i = 0; i < distinct.size(); i++) {
+            number[distinct.get(i)] = i;
+            sizes[i] = rawSize[distinct.get(i)];
+        }
+        int[] labels = new int[n];
+        for (int v = 0; v < n; v++) labels[v] = number[raw[v]];
+        return new Result(method, g, labels, sizes.length, sizes, modularity(u, labels),
+                rounds, System.currentTimeMillis() - start);
+    }
+
+    private static int mix(int label, int vertex, int round) {
+        long h = label * 0x9E3779B97F4A7C15L + vertex * 0xC2B2AE3D27D4EB4FL + round;
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        return (int) (h ^ (h >>> 29));
+    }
+
+    private static int callQuietly(Callable<Integer> task) {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int get(Future<Integer> f) throws InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,624 @@
+package com.atlasdblite.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Structural decompositions of a {@link GraphProjection}: weakly and strongly connected
+ * components, and k-core numbers.
+ * <p>
+ * Weak components use a lock-free union-find: edge ranges are processed by parallel workers that
+ * link roots by compare-and-set, always pointing the larger index at the smaller, so the result
+ * does not depend on scheduling.
+ * <p>
+ * On one thread, strong components use an iterative Tarjan pass and core numbers the
+ * Batagelj-Zaversnik bucket algorithm, both single linear passes over the CSR arrays. With more
+ * threads, strong components use trimming plus colouring: vertices without live in- or out-edges
+ * are peeled off as singletons, every vertex takes the largest index that reaches it (pulled along
+ * in-edges by parallel rounds), and a backward search from each vertex that kept its own colour,
+ * restricted to that colour, is its component; the searches run in parallel and the rest repeats.
+ * Core numbers are peeled level by level: each level's vertices are removed in parallel rounds
+ * that lower their neighbours' degrees by compare-and-set, never below the level. Both give the
+ * same result as the sequential passes. Cores treat the graph as undirected, count parallel edges
+ * and ignore self-loops.
+ */
+public class Components {
+    private static final int PARALLEL_MIN = 1024;     // vertices per worker worth a thread
+    private static final int RANGES_PER_WORKER = 4;
+
+    public enum Kind { WCC, SCC, KCORE }
+
+    /**
+     * A per-vertex assignment, indexed like the projection it was computed on. For components the
+     * value is a component number ({@code 0} = the largest); for cores it is the core number.
+     */
+    public static class Result {
+        public final Kind kind;
+        public final int[] values;
+        /** Number of distinct components, or the maximum core number for {@link Kind#KCORE}. */
+        public final int count;
+        /** Vertices per value: component sizes (largest first), or vertices per core number. */
+        public final int[] sizes;
+        private final GraphProjection graph;
+
+        Result(Kind kind, GraphProjection graph, int[] values, int count, int[] sizes) {
+            this.kind = kind;
+            this.graph = graph;
+            this.values = values;
+            this.count = count;
+            this.sizes = sizes;
+        }
+
+        /** The value for a node ID, or -1 if it is not in the projection. */
+        public int valueOf(String id) {
+            int v = graph.indexOf(id);
+            return v < 0 ? -1 : values[v];
+        }
+
+        public GraphProjection getGraph() { return graph; }
+        public long getVersion() { return graph.getVersion(); }
+    }
+
+    // --- Weakly connected components ---
+
+    public static Result weak(GraphProjection g, int threads) throws InterruptedException {
+        return weak(g, threads, new JobControl());
+    }
+
+    /**
+     * Weak components reporting progress in vertices whose out-edges have been merged.
+     * @throws CancellationException If the control is cancelled.
+     */
+    public static Result weak(GraphProjection g, int threads, JobControl control) throws InterruptedException {
+        int n = g.size();
+        control.setTotal(n);
+        AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        for (int v = 0; v < n; v++) parent.set(v, v);
+
+        int[] offsets = g.outOffsets(), targets = g.outTargets();
+        int workers = workers(threads, n);
+        if (workers == 1) {
+            unionRange(parent, offsets, targets, 0, n, control);
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(workers, PageRank.daemonThreads());
+            try {
+                List<Future<?>> jobs = new ArrayList<>();
+                int chunk = (n + workers - 1) / workers;
+                for (int from = 0; from < n; from += chunk) {
+                    int start = from, end = Math.min(n, from + chunk);
+                    jobs.add(pool.submit(() -> {
+                        unionRange(parent, offsets, targets, start, end, control);
+                        return null;
+                    }));
+                }
+                for (Future<?> job : jobs) job.get();
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        int[] roots = new int[n];
+        for (int v = 0; v < n; v++) roots[v] = find(parent, v);
+        return relabel(Kind.WCC, g, roots);
+    }
+
+    private static void unionRange(AtomicIntegerArray parent, int[] offsets, int[] targets, int from, int to,
+                                   JobControl control) throws InterruptedException {
+        for (int u = from; u < to; u++) {
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+            if (((u - from) & 0xFFF) == 0xFFF) {
+                control.checkpoint();
+                control.advance(0x1000);
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) union(parent, u, targets[e]);
+        }
+        control.advance((to - from) & 0xFFF);
+    }
+
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a == b) return;
+            // Hook the larger root under the smaller; retry if another thread moved it first
+            if (a < b) { int t = a; a = b; b = t; }
+            if (parent.compareAndSet(a, a, b)) return;
+        }
+    }
+
+    private static int find(AtomicIntegerArray parent, int v) {
+        while (true) {
+            int p = parent.get(v);
+            if (p == v) return v;
+            int gp = parent.get(p);
+            if (gp != p) parent.compareAndSet(v, p, gp); // path halving
+            v = p;
+        }
+    }
+
+    // --- Strongly connected components ---
+
+    public static Result strong(GraphProjection g, int threads) throws InterruptedException {
+        return strong(g, threads, new JobControl());
+    }
+
+    /**
+     * Strong components reporting progress in vertices visited (one worker) or assigned.
+     * @throws CancellationException If the control is cancelled.
+     */
+    public static Result strong(GraphProjection g, int threads, JobControl control) throws InterruptedException {
+        int workers = workers(threads, g.size());
+        control.setTotal(g.size());
+        if (workers == 1) return relabel(Kind.SCC, g, byLowestVertex(tarjan(g, control)));
+        ExecutorService pool = Executors.newFixedThreadPool(workers, PageRank.daemonThreads());
+        try {
+            return relabel(Kind.SCC, g, byLowestVertex(colour(g, pool, workers, control)));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static int[] tarjan(GraphProjection g, JobControl control) throws InterruptedException {
+        int n = g.size();
+        int[] offsets = g.outOffsets(), targets = g.outTargets();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] comp = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+        int[] stack = new int[n];
+        int sp = 0;
+        // Explicit DFS call stack: vertex and the next edge to look at
+        int[] callVertex = new int[n];
+        int[] callEdge = new int[n];
+        int counter = 0, components = 0, reported = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) continue;
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+            control.checkpoint();
+            control.advance(counter - reported);
+            reported = counter;
+            int depth = 0;
+            callVertex[0] = root;
+            callEdge[0] = offsets[root];
+            index[root] = low[root] = counter++;
+            stack[sp++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int u = callVertex[depth];
+                if (callEdge[depth] < offsets[u + 1]) {
+                    int w = targets[callEdge[depth]++];
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        depth++;
+                        callVertex[depth] = w;
+                        callEdge[depth] = offsets[w];
+                    } else if (onStack[w]) {
+                        low[u] = Math.min(low[u], index[w]);
+                    }
+                } else {
+                    if (low[u] == index[u]) {
+                        int w;
+                        do {
+                            w = stack[--sp];
+                            onStack[w] = false;
+                            comp[w] = components;
+                        } while (w != u);
+                        components++;
+                    }
+                    depth--;
+                    if (depth >= 0) {
+                        int parent = callVertex[depth];
+                        low[parent] = Math.min(low[parent], low[u]);
+                    }
+                }
+            }
+        }
+        control.advance(counter - reported);
+        return comp;
+    }
+
+    /** Trimming plus colouring; returns, per vertex, a key shared by exactly its component. */
+    private static int[] colour(GraphProjection g, ExecutorService pool, int workers, JobControl control)
+            throws InterruptedException {
+        int n = g.size();
+        int[] inOffsets = g.inOffsets(), inSources = g.inSources();
+        int[] comp = new int[n];
+        Arrays.fill(comp, -1);
+        int[] colour = new int[n];
+        int[] live = new int[n];
+        for (int v = 0; v < n; v++) live[v] = v;
+        int count = n;
+        while (true) {
+            control.checkpoint();
+            int before = count;
+            count = trim(g, pool, workers, live, count, comp);
+            control.advance(before - count);
+            if (count == 0) return comp;
+            int[] alive = live;
+            ranges(pool, workers, count, (from, to) -> {
+                for (int i = from; i < to; i++) colour[alive[i]] = alive[i];
+                return 0;
+            });
+            // Each vertex ends with the largest index that reaches it through live vertices
+            while (ranges(pool, workers, count, (from, to) -> {
+                int changed = 0;
+                for (int i = from; i < to; i++) {
+                    int v = alive[i];
+                    int c = colour[v];
+                    for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) {
+                        int u = inSources[e];
+                        if (comp[u] < 0 && colour[u] > c) c = colour[u];
+                    }
+                    if (c != colour[v]) {
+                        colour[v] = c;
+                        changed++;
+                    }
+                }
+                return changed;
+            }) > 0) {
+                control.checkpoint();
+            }
+
+            // A vertex that kept its own colour is the top of a component: the vertices of that
+            // colour which reach it. Colours are disjoint, so the searches cannot collide.
+            int[] roots = gather(pool, workers, count, (from, to, out) -> {
+                for (int i = from; i < to; i++) if (colour[alive[i]] == alive[i]) out.add(alive[i]);
+            });
+            ranges(pool, workers, roots.length, (from, to) -> {
+                IntList queue = new IntList();
+                for (int i = from; i < to; i++) {
+                    int root = roots[i];
+                    comp[root] = root;
+                    queue.size = 0;
+                    queue.add(root);
+                    for (int head = 0; head < queue.size; head++) {
+                        int x = queue.items[head];
+                        for (int e = inOffsets[x]; e < inOffsets[x + 1]; e++) {
+                            int u = inSources[e];
+                            if (comp[u] < 0 && colour[u] == root) {
+                                comp[u] = root;
+                                queue.add(u);
+                            }
+                        }
+                    }
+                }
+                return 0;
+            });
+
+            int kept = 0;
+            for (int i = 0; i < count; i++) if (comp[live[i]] < 0) live[kept++] = live[i];
+            control.advance(count - kept);
+            count = kept;
+        }
+    }
+
+    /**
+     * Peels live vertices without a live in- or out-edge (other than a self-loop) into singleton
+     * components, repeatedly, and compacts the live list.
+     * @return The number of vertices still live.
+     */
+    private static int trim(GraphProjection g, ExecutorService pool, int workers, int[] live, int count, int[] comp)
+            throws InterruptedException {
+        int n = g.size();
+        int[] outOffsets = g.outOffsets(), outTargets = g.outTargets();
+        int[] inOffsets = g.inOffsets(), inSources = g.inSources();
+        int[] inDegree = new int[n], outDegree = new int[n];
+        ranges(pool, workers, count, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int v = live[i];
+                for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++)
+                    if (outTargets[e] != v && comp[outTargets[e]] < 0) outDegree[v]++;
+                for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++)
+                    if (inSources[e] != v && comp[inSources[e]] < 0) inDegree[v]++;
+            }
+            return 0;
+        });
+        IntList work = new IntList();
+        for (int i = 0; i < count; i++) {
+            int v = live[i];
+            if (inDegree[v] == 0 || outDegree[v] == 0) {
+                comp[v] = v;
+                work.add(v);
+            }
+        }
+        for (int head = 0; head < work.size; head++) {
+            if ((head & 0xFFFF) == 0 && Thread.currentThread().isInterrupted()) throw new InterruptedException();
+            int v = work.items[head];
+            for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+                int w = outTargets[e];
+                if (w != v && comp[w] < 0 && --inDegree[w] == 0) {
+                    comp[w] = w;
+                    work.add(w);
+                }
+            }
+            for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) {
+                int u = inSources[e];
+                if (u != v && comp[u] < 0 && --outDegree[u] == 0) {
+                    comp[u] = u;
+                    work.add(u);
+                }
+            }
+        }
+        int kept = 0;
+        for (int i = 0; i < count; i++) if (comp[live[i]] < 0) live[kept++] = live[i];
+        return kept;
+    }
+
+    // --- k-core ---
+
+    public static Result cores(GraphProjection g, int threads) throws InterruptedException {
+        return cores(g, threads, new JobControl());
+    }
+
+    /**
+     * Core numbers reporting progress in vertices peeled.
+     * @throws CancellationException If the control is cancelled.
+     */
+    public static Result cores(GraphProjection g, int threads, JobControl control) throws InterruptedException {
+        int workers = workers(threads, g.size());
+        control.setTotal(g.size());
+        int[] core;
+        if (workers == 1) {
+            core = bucketCores(g, control);
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(workers, PageRank.daemonThreads());
+            try {
+                core = peel(g, pool, workers, control);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        int maxCore = 0;
+        for (int c : core) maxCore = Math.max(maxCore, c);
+        int[] perCore = new int[maxCore + 1];
+        for (int c : core) perCore[c]++;
+        return new Result(Kind.KCORE, g, core, maxCore, perCore);
+    }
+
+    private static int[] bucketCores(GraphProjection g, JobControl control) throws InterruptedException {
+        int n = g.size();
+        int[] outOffsets = g.outOffsets(), outTargets = g.outTargets();
+        int[] inOffsets = g.inOffsets(), inSources = g.inSources();
+        int[] degree = new int[n];
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) if (outTargets[e] != v) degree[v]++;
+            for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) if (inSources[e] != v) degree[v]++;
+            maxDegree = Math.max(maxDegree, degree[v]);
+        }
+
+        // Bucket sort vertices by degree; pos/vert let a vertex move down one bucket in O(1)
+        int[] bin = new int[maxDegree + 1];
+        for (int v = 0; v < n; v++) bin[degree[v]]++;
+        int start = 0;
+        for (int d = 0; d <= maxDegree; d++) {
+            int count = bin[d];
+            bin[d] = start;
+            start += count;
+        }
+        int[] pos = new int[n];
+        int[] vert = new int[n];
+        for (int v = 0; v < n; v++) {
+            pos[v] = bin[degree[v]]++;
+            vert[pos[v]] = v;
+        }
+        for (int d = maxDegree; d > 0; d--) bin[d] = bin[d - 1];
+        bin[0] = 0;
+
+        for (int i = 0; i < n; i++) {
+            if ((i & 0xFFFF) == 0) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                control.checkpoint();
+                if (i > 0) control.advance(0x10000);
+            }
+            int v = vert[i];
+            for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) decrement(outTargets[e], v, degree, bin, pos, vert);
+            for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) decrement(inSources[e], v, degree, bin, pos, vert);
+        }
+        control.advance(n == 0 ? 0 : ((n - 1) & 0xFFFF) + 1);
+        return degree;
+    }
+
+    /** Level-synchronous peeling: level k removes, in rounds, every vertex whose degree falls to k. */
+    private static int[] peel(GraphProjection g, ExecutorService pool, int workers, JobControl control)
+            throws InterruptedException {
+        int n = g.size();
+        int[] outOffsets = g.outOffsets(), outTargets = g.outTargets();
+        int[] inOffsets = g.inOffsets(), inSources = g.inSources();
+        AtomicIntegerArray degree = new AtomicIntegerArray(n);
+        ranges(pool, workers, n, (from, to) -> {
+            for (int v = from; v < to; v++) {
+                int d = 0;
+                for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) if (outTargets[e] != v) d++;
+                for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) if (inSources[e] != v) d++;
+                degree.set(v, d);
+            }
+            return 0;
+        });
+        int[] core = new int[n];
+        Arrays.fill(core, -1);
+        int[] remaining = new int[n];
+        for (int v = 0; v < n; v++) remaining[v] = v;
+        int count = n;
+        for (int k = 0; count > 0; k++) {
+            int level = k;
+            int[] frontier = gather(pool, workers, count, (from, to, out) -> {
+                for (int i = from; i < to; i++) if (degree.get(remaining[i]) <= level) out.add(remaining[i]);
+            });
+            while (frontier.length > 0) {
+                control.checkpoint();
+                control.advance(frontier.length);
+                // Mark the whole round first, so its vertices do not lower each other's degrees
+                int[] round = frontier;
+                ranges(pool, workers, round.length, (from, to) -> {
+                    for (int i = from; i < to; i++) core[round[i]] = level;
+                    return 0;
+                });
+                frontier = gather(pool, workers, round.length, (from, to, out) -> {
+                    for (int i = from; i < to; i++) {
+                        int v = round[i];
+                        for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) lower(outTargets[e], v, level, core, degree, out);
+                        for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) lower(inSources[e], v, level, core, degree, out);
+                    }
+                });
+            }
+            int kept = 0;
+            for (int i = 0; i < count; i++) if (core[remaining[i]] < 0) remaining[kept++] = remaining[i];
+            count = kept;
+        }
+        return core;
+    }
+
+    /** Lowers a live neighbour's degree, not below the level; it joins the next round on reaching it. */
+    private static void lower(int u, int v, int level, int[] core, AtomicIntegerArray degree, IntList next) {
+        if (u == v || core[u] >= 0) return;
+        while (true) {
+            int d = degree.get(u);
+            if (d <= level) return;
+            if (degree.compareAndSet(u, d, d - 1)) {
+                if (d - 1 == level) next.add(u);
+                return;
+            }
+        }
+    }
+
+    private static void decrement(int u, int v, int[] degree, int[] bin, int[] pos, int[] vert) {
+        if (u == v || degree[u] <= degree[v]) return;
+        int du = degree[u];
+        int pu = pos[u];
+        int pw = bin[du];
+        int w = vert[pw];
+        if (u != w) {
+            pos[u] = pw; vert[pu] = w;
+            pos[w] = pu; vert[pw] = u;
+        }
+        bin[du]++;
+        degree[u]--;
+    }
+
+    // --- Helpers ---
+
+    private static int workers(int threads, int n) {
+        return Math.max(1, Math.min(threads, n / PARALLEL_MIN + 1));
+    }
+
+    /** Work on a range of positions [from, to) returning a count. */
+    private interface RangeTask {
+        int run(int from, int to) throws InterruptedException;
+    }
+
+    /** Work on a range of positions [from, to) adding vertices to a list. */
+    private interface GatherTask {
+        void run(int from, int to, IntList out) throws InterruptedException;
+    }
+
+    /** Range length for count positions: one range when small, else a few per worker. */
+    private static int chunk(int workers, int count) {
+        int parts = workers * RANGES_PER_WORKER;
+        return count < parts * 64 ? Math.max(1, count) : (count + parts - 1) / parts;
+    }
+
+    /** Runs the task over [0, count) split into ranges on the pool; returns the summed counts. */
+    private static int ranges(ExecutorService pool, int workers, int count, RangeTask task) throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+        int chunk = chunk(workers, count);
+        if (chunk >= count) return task.run(0, count);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int from = 0; from < count; from += chunk) {
+            int lo = from, hi = Math.min(count, from + chunk);
+            tasks.add(() -> task.run(lo, hi));
+        }
+        int total = 0;
+        for (Future<Integer> f : pool.invokeAll(tasks)) {
+            try {
+                total += f.get();
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            }
+        }
+        return total;
+    }
+
+    /** Runs the task over [0, count) on the pool; returns what the ranges added, in range order. */
+    private static int[] gather(ExecutorService pool, int workers, int count, GatherTask task) throws InterruptedException {
+        int chunk = chunk(workers, count);
+        IntList[] lists = new IntList[(count + chunk - 1) / chunk];
+        ranges(pool, workers, count, (from, to) -> {
+            IntList out = new IntList();
+            task.run(from, to, out);
+            lists[from / chunk] = out;
+            return 0;
+        });
+        int total = 0;
+        for (IntList list : lists) total += list.size;
+        int[] all = new int[total];
+        int at = 0;
+        for (IntList list : lists) {
+            System.arraycopy(list.items, 0, all, at, list.size);
+            at += list.size;
+        }
+        return all;
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) throws InterruptedException {
+        if (e.getCause() instanceof InterruptedException) throw (InterruptedException) e.getCause();
+        if (e.getCause() instanceof RuntimeException) return (RuntimeException) e.getCause();
+        return new IllegalStateException(e.getCause());
+    }
+
+    /** Maps each vertex's component key to the lowest vertex in it, so every path agrees on keys. */
+    private static int[] byLowestVertex(int[] comp) {
+        int[] lowest = new int[comp.length];
+        Arrays.fill(lowest, Integer.MAX_VALUE);
+        for (int v = 0; v < comp.length; v++) lowest[comp[v]] = Math.min(lowest[comp[v]], v);
+        int[] keys = new int[comp.length];
+        for (int v = 0; v < comp.length; v++) keys[v] = lowest[comp[v]];
+        return keys;
+    }
+
+    /** Growable int list, one per range. */
+    private static final class IntList {
+        int[] items = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = value;
+        }
+    }
+
+    /** Renumbers arbitrary component keys to 0..count-1, largest component first. */
+    private static Result relabel(Kind kind, GraphProjection g, int[] keys) {
+        int n = keys.length;
+        int[] keySize = new int[n];
+        for (int v = 0; v < n; v++) keySize[keys[v]]++;
+        List<Integer> distinct = new ArrayList<>();
+        for (int k = 0; k < n; k++) if (keySize[k] > 0) distinct.add(k);
+        distinct.sort((a, b) -> keySize[b] != keySize[a] ? Integer.compare(keySize[b], keySize[a]) : Integer.compare(a, b));
+
+        int[] number = new int[n];
+        int[] sizes = new int[distinct.size()];
+        for (int i = 0; i < distinct.size(); i++) {
+            number[distinct.get(i)] = i;
+            sizes[i] = keySize[distinct.get(i)];
+        }
+        int[] values = new int[n];
+        for (int v = 0; v < n; v++) values[v] = number[keys[v]];
+        return new Result(kind, g, values, sizes.length, sizes);
+    }
+}
@@ -0,0 +1,189 @@
+package com.atlasdblite.analytics;
+
+import com.atlasdblite.models.PropertyCodec;
+import com.atlasdblite.models.Relation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable, primitive-array snapshot of the graph topology for analytics.
+ * <p>
+ * Node IDs are mapped to dense ints {@code 0..size()-1}. Out- and in-edges are stored in
+ * compressed sparse row form: the out-neighbours of {@code v} are
+ * {@code outTargets[outOffsets[v] .. outOffsets[v+1])}, and likewise for in-edges.
+ * Edges whose target does not exist are dropped; parallel edges are kept.
+ * When a weight property is given, each edge carries its numeric value (missing or non-numeric
+ * values count as 1.0, negative values as 0.0).
+ * <p>
+ * A projection records the engine's topology version it was built from, so callers can tell
+ * whether it is still current.
+ */
+public class GraphProjection {
+    private final String[] ids;
+    private final Map<String, Integer> index;
+    private final int[] outOffsets;
+    private final int[] outTargets;
+    private final double[] outWeights; // null when unweighted
+    private final int[] inOffsets;
+    private final int[] inSources;
+    private final double[] inWeights;  // null when unweighted
+    private final String weightProperty;
+    private final long version;
+
+    private GraphProjection(String[] ids, Map<String, Integer> index, int[] outOffsets, int[] outTargets, double[] outWeights,
+                            int[] inOffsets, int[] inSources, double[] inWeights, String weightProperty, long version) {
+        this.ids = ids;
+        this.index = index;
+        this.outOffsets = outOffsets;
+        this.outTargets = outTargets;
+        this.outWeights = outWeights;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+        this.inWeights = inWeights;
+        this.weightProperty = weightProperty;
+        this.version = version;
+    }
+
+    // --- Accessors ---
+
+    public int size() { return ids.length; }
+    public int edgeCount() { return outTargets.length; }
+    public String idOf(int v) { return ids[v]; }
+
+    /** Dense index of a node ID, or -1 if it is not in the projection. */
+    public int indexOf(String id) {
+        Integer v = index.get(id);
+        return v == null ? -1 : v;
+    }
+
+    public int outDegree(int v) { return outOffsets[v + 1] - outOffsets[v]; }
+    public int inDegree(int v) { return inOffsets[v + 1] - inOffsets[v]; }
+
+    /** CSR arrays; callers must not modify them. */
+    public int[] outOffsets() { return outOffsets; }
+    public int[] outTargets() { return outTargets; }
+    public double[] outWeights() { return outWeights; }
+    public int[] inOffsets() { return inOffsets; }
+    public int[] inSources() { return inSources; }
+    public double[] inWeights() { return inWeights; }
+
+    public boolean isWeighted() { return outWeights != null; }
+    /** The relation property used for weights, or null. */
+    public String getWeightProperty() { return weightProperty; }
+    /** The engine topology version this projection was built from. */
+    public long getVersion() { return version; }
+
+    /** Edge weight as stored in a projection: missing or non-numeric is 1.0, negative is 0.0. */
+    public static double weightOf(Relation r, String property) {
+        double w = PropertyCodec.asDouble(r.getProperties().get(property));
+        if (Double.isNaN(w)) return 1.0;
+        return Math.max(0.0, w);
+    }
+
+    // --- Construction ---
+
+    /**
+     * Accumulates nodes and relations in any order (relations may arrive before their endpoints),
+     * then compacts them into CSR arrays. Feed it one shard at a time and call {@link #build}.
+     */
+    public static class Builder {
+        private final String weightProperty;
+        private final long version;
+        private final Map<String, Integer> provisional = new HashMap<>();
+        private String[] names = new String[1024];
+        private boolean[] exists = new boolean[1024];
+        private int[] sources = new int[4096];
+        private int[] targets = new int[4096];
+        private double[] weights;
+        private int edges = 0;
+
+        public Builder(String weightProperty, long version) {
+            this.weightProperty = weightProperty;
+            this.version = version;
+            this.weights = weightProperty == null ? null : new double[4096];
+        }
+
+        private int slot(String id) {
+            Integer v = provisional.get(id);
+            if (v != null) return v;
+            int next = provisional.size();
+            if (next == names.length) {
+                names = Arrays.copyOf(names, next * 2);
+                exists = Arrays.copyOf(exists, next * 2);
+            }
+            names[next] = id;
+            provisional.put(id, next);
+            return next;
+        }
+
+        public void addNode(String id) {
+            int v = slot(id); // may grow 'exists', so resolve the slot first
+            exists[v] = true;
+        }
+
+        public void addRelation(Relation r) {
+            if (edges == sources.length) {
+                sources = Arrays.copyOf(sources, edges * 2);
+                targets = Arrays.copyOf(targets, edges * 2);
+                if (weights != null) weights = Arrays.copyOf(weights, edges * 2);
+            }
+            sources[edges] = slot(r.getSourceId());
+            targets[edges] = slot(r.getTargetId());
+            if (weights != null) weights[edges] = weightOf(r, weightProperty);
+            edges++;
+        }
+
+        /** Drops references to missing nodes, renumbers densely and builds both CSR directions. */
+        public GraphProjection build() {
+            int slots = provisional.size();
+            int[] dense = new int[slots];
+            int n = 0;
+            for (int i = 0; i < slots; i++) dense[i] = exists[i] ? n++ : -1;
+
+            String[] ids = new String[n];
+            Map<String, Integer> index = new HashMap<>(n * 2);
+            for (int i = 0; i < slots; i++) {
+                if (dense[i] < 0) continue;
+                ids[dense[i]] = names[i];
+                index.put(names[i], dense[i]);
+            }
+
+            int[] outOffsets = new int[n + 1];
+            int[] inOffsets = new int[n + 1];
+            int kept = 0;
+            for (int e = 0; e < edges; e++) {
+                int s = dense[sources[e]], t = dense[targets[e]];
+                if (s < 0 || t < 0) continue;
+                outOffsets[s + 1]++;
+                inOffsets[t + 1]++;
+                kept++;
+            }
+            for (int v = 0; v < n; v++) {
+                outOffsets[v + 1] += outOffsets[v];
+                inOffsets[v + 1] += inOffsets[v];
+            }
+
+            int[] outTargets = new int[kept];
+            int[] inSources = new int[kept];
+            double[] outWeights = weights == null ? null : new double[kept];
+            double[] inWeights = weights == null ? null : new double[kept];
+            int[] outPos = Arrays.copyOf(outOffsets, n);
+            int[] inPos = Arrays.copyOf(inOffsets, n);
+            for (int e = 0; e < edges; e++) {
+                int s = dense[sources[e]], t = dense[targets[e]];
+                if (s < 0 || t < 0) continue;
+                int o = outPos[s]++, i = inPos[t]++;
+                outTargets[o] = t;
+                inSources[i] = s;
+                if (weights != null) {
+                    outWeights[o] = weights[e];
+                    inWeights[i] = weights[e];
+                }
+            }
+            return new GraphProjection(ids, index, outOffsets, outTargets, outWeights,
+                    inOffsets, inSources, inWeights, weightProperty, version);
+        }
+    }
+}
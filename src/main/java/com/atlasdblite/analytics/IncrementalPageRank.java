@@ -0,0 +1,310 @@
+package com.atlasdblite.analytics;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unweighted PageRank kept current under edge and node changes by residual push.
+ * <p>
+ * It maintains an estimate {@code p} and a residual {@code r} for the un-normalized system
+ * {@code z = 1 + d * P^T z} (rank leaving dangling vertices is dropped). Normalizing {@code z} to
+ * sum 1 gives exactly the PageRank that {@link PageRank} computes with dangling rank spread
+ * uniformly, so published scores match a full run. The invariant {@code r = 1 - p + d * P^T p}
+ * makes every change local: adding or removing an edge {@code u -> w} rescales {@code p[u]} so
+ * the other out-neighbours of {@code u} are unaffected, and only {@code r[u]} and {@code r[w]}
+ * move. Pushing then spreads any residual above {@code epsilon} to out-neighbours.
+ * <p>
+ * Each update may push at most {@code pushBudget} edges; anything left over stays queued for the
+ * next update and is reported by {@link #hasBacklog()}, so a change next to a large hub cannot
+ * stall a write. Not thread-safe: callers serialize access.
+ */
+public class IncrementalPageRank {
+    public static final double DEFAULT_EPSILON = 1e-4;
+    public static final int DEFAULT_PUSH_BUDGET = 200_000;
+
+    private final double damping;
+    private final double epsilon;
+    private final int pushBudget;
+
+    private final Map<String, Integer> index = new HashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private final ArrayDeque<Integer> queue = new ArrayDeque<>();
+    private String[] ids;
+    private double[] p;
+    private double[] r;
+    private boolean[] queued;
+    private int[][] out;
+    private int[] outDeg;
+    private int[][] in;
+    private int[] inDeg;
+    private int slots = 0;
+
+    private int updates = 0;
+    private boolean dirty = true;
+    private long version;
+
+    /**
+     * Seeds from a full PageRank run. {@code ranks} are indexed like {@code g}; any positive
+     * scale works. Residuals are recomputed exactly against {@code g}, so seeding from ranks of a
+     * slightly older topology is still correct, just more work for the first push.
+     */
+    public IncrementalPageRank(GraphProjection g, double[] ranks, double damping, double epsilon, int pushBudget) {
+        this.damping = damping;
+        this.epsilon = epsilon;
+        this.pushBudget = pushBudget;
+        this.version = g.getVersion();
+
+        int n = g.size();
+        int capacity = Math.max(16, n + n / 4);
+        ids = new String[capacity];
+        p = new double[capacity];
+        r = new double[capacity];
+        queued = new boolean[capacity];
+        out = new int[capacity][];
+        outDeg = new int[capacity];
+        in = new int[capacity][];
+        inDeg = new int[capacity];
+
+        int[] outOffsets = g.outOffsets(), outTargets = g.outTargets();
+        int[] inOffsets = g.inOffsets(), inSources = g.inSources();
+        for (int v = 0; v < n; v++) {
+            ids[v] = g.idOf(v);
+            index.put(ids[v], v);
+            out[v] = Arrays.copyOfRange(outTargets, outOffsets[v], outOffsets[v + 1]);
+            outDeg[v] = out[v].length;
+            in[v] = Arrays.copyOfRange(inSources, inOffsets[v], inOffsets[v + 1]);
+            inDeg[v] = in[v].length;
+        }
+        slots = n;
+
+        // Map normalized ranks x to the un-normalized solution z = x / s, where s is the uniform
+        // per-vertex term (teleport plus redistributed dangling rank) of the normalized system.
+        double total = 0, dangling = 0;
+        for (int v = 0; v < n; v++) {
+            total += ranks[v];
+            if (outDeg[v] == 0) dangling += ranks[v];
+        }
+        if (total > 0) {
+            double s = ((1 - damping) + damping * dangling / total) / n;
+            for (int v = 0; v < n; v++) p[v] = ranks[v] / total / s;
+        }
+
+        // r = 1 - p + d * P^T p
+        for (int v = 0; v < n; v++) r[v] = 1.0 - p[v];
+        for (int u = 0; u < n; u++) {
+            if (outDeg[u] == 0) continue;
+            double share = damping * p[u] / outDeg[u];
+            for (int i = 0; i < outDeg[u]; i++) r[out[u][i]] += share;
+        }
+        for (int v = 0; v < n; v++) enqueue(v);
+        push();
+    }
+
+    public IncrementalPageRank(GraphProjection g, double[] ranks, double damping) {
+        this(g, ranks, damping, DEFAULT_EPSILON, DEFAULT_PUSH_BUDGET);
+    }
+
+    // --- Updates ---
+
+    public void addNode(String id) {
+        if (index.containsKey(id)) return;
+        int v = allocate(id);
+        r[v] = 1.0;
+        enqueue(v);
+        changed();
+    }
+
+    /** Removes a node together with every edge into or out of it. */
+    public void removeNode(String id) {
+        Integer v = index.get(id);
+        if (v == null) return;
+        while (outDeg[v] > 0) unlink(v, out[v][outDeg[v] - 1]);
+        while (inDeg[v] > 0) unlink(in[v][inDeg[v] - 1], v);
+        index.remove(id);
+        ids[v] = null;
+        p[v] = 0;
+        r[v] = 0;
+        freeSlots.push(v);
+        changed();
+    }
+
+    /** Adds one edge; unknown endpoints are ignored (the graph rejects such links too). */
+    public void addEdge(String from, String to) {
+        Integer u = index.get(from), w = index.get(to);
+        if (u == null || w == null) return;
+        int k = outDeg[u];
+        if (k > 0) {
+            // Keep p[u] / outDeg[u] unchanged for the existing neighbours
+            double old = p[u];
+            p[u] = old * (k + 1) / k;
+            r[u] -= p[u] - old;
+            enqueue(u);
+        }
+        r[w] += damping * p[u] / (k + 1);
+        enqueue(w);
+        out[u] = append(out[u], outDeg[u]++, w);
+        in[w] = append(in[w], inDeg[w]++, u);
+        changed();
+    }
+
+    /** Removes one copy of the edge, if present. */
+    public void removeEdge(String from, String to) {
+        removeEdge(from, to, 1);
+    }
+
+    /** Removes up to {@code copies} copies of the edge, e.g. every duplicate a deletion dropped. */
+    public void removeEdge(String from, String to, int copies) {
+        Integer u = index.get(from), w = index.get(to);
+        if (u == null || w == null) return;
+        int removed = 0;
+        while (removed < copies && unlink(u, w)) removed++;
+        if (removed > 0) changed();
+    }
+
+    private boolean unlink(int u, int w) {
+        if (!removeOne(out, outDeg, u, w)) return false;
+        removeOne(in, inDeg, w, u);
+        int k = outDeg[u] + 1; // degree before removal
+        r[w] -= damping * p[u] / k;
+        enqueue(w);
+        if (k > 1) {
+            double old = p[u];
+            p[u] = old * (k - 1) / k;
+            r[u] += old - p[u];
+            enqueue(u);
+        }
+        return true;
+    }
+
+    private void changed() {
+        updates++;
+        dirty = true;
+        push();
+    }
+
+    // --- Push ---
+
+    private void enqueue(int v) {
+        if (!queued[v] && Math.abs(r[v]) > epsilon) {
+            queued[v] = true;
+            queue.add(v);
+        }
+    }
+
+    private void push() {
+        int work = 0;
+        while (!queue.isEmpty() && work < pushBudget) {
+            int u = queue.poll();
+            queued[u] = false;
+            double residual = r[u];
+            if (ids[u] == null || Math.abs(residual) <= epsilon) continue;
+            p[u] += residual;
+            r[u] = 0;
+            int k = outDeg[u];
+            if (k == 0) continue;
+            double share = damping * residual / k;
+            int[] targets = out[u];
+            for (int i = 0; i < k; i++) {
+                r[targets[i]] += share;
+                enqueue(targets[i]);
+            }
+            work += k;
+        }
+    }
+
+    // --- Results ---
+
+    /** Number of live nodes. */
+    public int size() { return index.size(); }
+
+    /** Number of updates applied since seeding. */
+    public int updatesSinceSeed() { return updates; }
+
+    /** True if the last update ran out of push budget and residuals above epsilon remain. */
+    public boolean hasBacklog() { return !queue.isEmpty(); }
+
+    /** True if scores changed since the last {@link #snapshot}. */
+    public boolean isDirty() { return dirty; }
+
+    /** Topology version of the projection this was seeded from. */
+    public long getVersion() { return version; }
+    public double getDamping() { return damping; }
+
+    /**
+     * Upper bound on the relative L1 error of the current scores against an exact run:
+     * {@code ||r||_1 / (1 - d)} over {@code ||p||_1}. O(n).
+     */
+    public double errorBound() {
+        double residual = 0, mass = 0;
+        for (int v = 0; v < slots; v++) {
+            if (ids[v] == null) continue;
+            residual += Math.abs(r[v]);
+            mass += p[v];
+        }
+        return mass > 0 ? residual / (1 - damping) / mass : 0.0;
+    }
+
+    /** Current scores scaled so the top node has {@code max}. O(n). */
+    public Map<String, Double> snapshot(double max) {
+        double top = 0;
+        for (int v = 0; v < slots; v++) if (ids[v] != null) top = Math.max(top, p[v]);
+        Map<String, Double> scores = new HashMap<>(index.size() * 2);
+        for (int v = 0; v < slots; v++)
+            if (ids[v] != null) scores.put(ids[v], top > 0 ? Math.max(0.0, p[v]) / top * max : 0.0);
+        dirty = false;
+        return Collections.unmodifiableMap(scores);
+    }
+
+    // --- Storage ---
+
+    private int allocate(String id) {
+        int v;
+        if (!freeSlots.isEmpty()) {
+            v = freeSlots.pop();
+        } else {
+            if (slots == ids.length) grow(slots * 2);
+            v = slots++;
+        }
+        ids[v] = id;
+        index.put(id, v);
+        p[v] = 0;
+        r[v] = 0;
+        out[v] = null;
+        outDeg[v] = 0;
+        in[v] = null;
+        inDeg[v] = 0;
+        return v;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        p = Arrays.copyOf(p, capacity);
+        r = Arrays.copyOf(r, capacity);
+        queued = Arrays.copyOf(queued, capacity);
+        out = Arrays.copyOf(out, capacity);
+        outDeg = Arrays.copyOf(outDeg, capacity);
+        in = Arrays.copyOf(in, capacity);
+        inDeg = Arrays.copyOf(inDeg, capacity);
+    }
+
+    private static int[] append(int[] list, int size, int value) {
+        if (list == null) list = new int[4];
+        else if (size == list.length) list = Arrays.copyOf(list, size * 2);
+        list[size] = value;
+        return list;
+    }
+
+    private static boolean removeOne(int[][] lists, int[] sizes, int v, int value) {
+        int[] list = lists[v];
+        for (int i = 0; i < sizes[v]; i++) {
+            if (list[i] == value) {
+                list[i] = list[--sizes[v]];
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,36 @@
+package com.atlasdblite.analytics;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and cancellation shared between a long-running analytics job and whoever started it.
+ * The job reports units of work done; anyone may cancel, and the job stops at its next
+ * {@link #checkpoint()}.
+ */
+public class JobControl {
+    private final AtomicLong done = new AtomicLong();
+    private volatile long total;
+    private volatile boolean cancelled;
+
+    public void setTotal(long total) { this.total = total; }
+    public void advance(long units) { done.addAndGet(units); }
+
+    public void cancel() { cancelled = true; }
+    public boolean isCancelled() { return cancelled; }
+
+    /** @throws CancellationException If the job was cancelled or its thread interrupted. */
+    public void checkpoint() {
+        if (cancelled || Thread.currentThread().isInterrupted())
+            throw new CancellationException("Cancelled");
+    }
+
+    public long getDone() { return done.get(); }
+    public long getTotal() { return total; }
+
+    /** Fraction of work done, 0..1 (0 until the total is known). */
+    public double progress() {
+        long t = total;
+        return t <= 0 ? 0.0 : Math.min(1.0, (double) done.get() / t);
+    }
+}
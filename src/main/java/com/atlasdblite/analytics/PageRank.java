@@ -0,0 +1,203 @@
+package com.atlasdblite.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Power-iteration PageRank over a {@link GraphProjection}.
+ * <p>
+ * Each iteration pulls rank along in-edges, so every vertex is written by exactly one thread and
+ * no synchronization is needed inside an iteration. Vertices are split into contiguous ranges
+ * holding roughly equal numbers of in-edges, one range per worker. Rank held by dangling vertices
+ * (no out-edges, or zero total out-weight) is spread uniformly, so ranks always sum to 1.
+ * Iteration stops when the L1 change between iterations drops below the tolerance.
+ */
+public class PageRank {
+    public static final double DEFAULT_DAMPING = 0.85;
+    public static final double DEFAULT_TOLERANCE = 1e-6;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    /** Ranks (summing to 1, indexed like the projection) and convergence details. */
+    public static class Result {
+        public final double[] ranks;
+        public final int iterations;
+        public final double residual;
+        public final boolean converged;
+        private final GraphProjection graph;
+
+        Result(GraphProjection graph, double[] ranks, int iterations, double residual, boolean converged) {
+            this.graph = graph;
+            this.ranks = ranks;
+            this.iterations = iterations;
+            this.residual = residual;
+            this.converged = converged;
+        }
+
+        public GraphProjection getGraph() { return graph; }
+    }
+
+    private double damping = DEFAULT_DAMPING;
+    private double tolerance = DEFAULT_TOLERANCE;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public PageRank damping(double d) {
+        if (d <= 0 || d >= 1) throw new IllegalArgumentException("Damping must be in (0, 1)");
+        this.damping = d;
+        return this;
+    }
+
+    public PageRank tolerance(double t) { this.tolerance = t; return this; }
+
+    public PageRank maxIterations(int n) {
+        if (n < 1) throw new IllegalArgumentException("Iterations must be at least 1");
+        this.maxIterations = n;
+        return this;
+    }
+
+    public PageRank threads(int n) { this.threads = Math.max(1, n); return this; }
+
+    public double getDamping() { return damping; }
+
+    /**
+     * Runs PageRank; edge weights are used when the projection carries them.
+     * @throws InterruptedException If the calling thread is interrupted (e.g. a cancelled job).
+     */
+    public Result run(GraphProjection g) throws InterruptedException {
+        return run(g, new JobControl());
+    }
+
+    /**
+     * Runs PageRank, reporting one unit of progress per iteration against the iteration budget.
+     * @throws CancellationException If the control is cancelled.
+     */
+    public Result run(GraphProjection g, JobControl control) throws InterruptedException {
+        int n = g.size();
+        if (n == 0) return new Result(g, new double[0], 0, 0.0, true);
+
+        int[] inOffsets = g.inOffsets();
+        int[] inSources = g.inSources();
+        double[] inWeights = g.inWeights();
+
+        // Per-source scaling: 1 / out-degree (or 1 / total out-weight), 0 for dangling vertices
+        double[] outScale = new double[n];
+        int[] outOffsets = g.outOffsets();
+        double[] outWeights = g.outWeights();
+        for (int u = 0; u < n; u++) {
+            double total;
+            if (outWeights == null) {
+                total = outOffsets[u + 1] - outOffsets[u];
+            } else {
+                total = 0;
+                for (int e = outOffsets[u]; e < outOffsets[u + 1]; e++) total += outWeights[e];
+            }
+            outScale[u] = total > 0 ? 1.0 / total : 0.0;
+        }
+
+        int[] bounds = partition(inOffsets, n, Math.min(threads, n));
+        int workers = bounds.length - 1;
+        double[] ranks = new double[n];
+        double[] next = new double[n];
+        Arrays.fill(ranks, 1.0 / n);
+        control.setTotal(maxIterations);
+
+        ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers, daemonThreads()) : null;
+        try {
+            double residual = Double.MAX_VALUE;
+            int iteration = 0;
+            while (iteration < maxIterations && residual >= tolerance) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                control.checkpoint();
+                double dangling = 0;
+                for (int u = 0; u < n; u++) if (outScale[u] == 0.0) dangling += ranks[u];
+                double base = (1 - damping) / n + damping * dangling / n;
+
+                final double[] cur = ranks, out = next;
+                List<Callable<Double>> tasks = new ArrayList<>(workers);
+                for (int w = 0; w < workers; w++) {
+                    final int from = bounds[w], to = bounds[w + 1];
+                    tasks.add(() -> {
+                        double delta = 0;
+                        for (int v = from; v < to; v++) {
+                            double sum = 0;
+                            for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) {
+                                int u = inSources[e];
+                                sum += cur[u] * outScale[u] * (inWeights == null ? 1.0 : inWeights[e]);
+                            }
+                            out[v] = base + damping * sum;
+                            delta += Math.abs(out[v] - cur[v]);
+                        }
+                        return delta;
+                    });
+                }
+                residual = 0;
+                if (pool == null) {
+                    residual = call(tasks.get(0));
+                } else {
+                    for (Future<Double> f : pool.invokeAll(tasks)) residual += get(f);
+                }
+                double[] tmp = ranks; ranks = next; next = tmp;
+                iteration++;
+                control.advance(1);
+            }
+            return new Result(g, ranks, iteration, residual, residual < tolerance);
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+    }
+
+    /** Splits {@code 0..n} into at most {@code parts} contiguous ranges of similar in-edge work. */
+    static int[] partition(int[] inOffsets, int n, int parts) {
+        long work = inOffsets[n] + (long) n; // every vertex costs at least one unit
+        List<Integer> cuts = new ArrayList<>();
+        cuts.add(0);
+        long target = work / parts + 1, acc = 0;
+        for (int v = 0; v < n; v++) {
+            acc += inOffsets[v + 1] - inOffsets[v] + 1;
+            if (acc >= target * cuts.size() && cuts.size() < parts) cuts.add(v + 1);
+        }
+        if (cuts.get(cuts.size() - 1) != n) cuts.add(n);
+        return cuts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Scales ranks so the largest is {@code max}; the form shown on the dashboard. */
+    public static double[] normalizeToMax(double[] ranks, double max) {
+        double top = 0;
+        for (double r : ranks) top = Math.max(top, r);
+        double[] out = new double[ranks.length];
+        if (top > 0) for (int i = 0; i < ranks.length; i++) out[i] = ranks[i] / top * max;
+        return out;
+    }
+
+    private static double call(Callable<Double> task) {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double get(Future<Double> f) throws InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    static ThreadFactory daemonThreads() {
+        return r -> {
+            Thread t = new Thread(r, "atlas-analytics");
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
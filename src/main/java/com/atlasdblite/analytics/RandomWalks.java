@@ -0,0 +1,284 @@
+package com.atlasdblite.analytics;
+
+import com.atlasdblite.engine.GlobalIndex;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Random-walk corpus over the undirected view of a {@link GraphProjection}, uniform or biased the
+ * node2vec way by a return parameter {@code p} and an in-out parameter {@code q}.
+ * <p>
+ * A biased step draws a neighbour uniformly and accepts it with probability proportional to its
+ * node2vec weight ({@code 1/p} to go back, 1 to stay next to the previous vertex, {@code 1/q} to
+ * move away), so no per-edge transition tables are built. The "next to the previous vertex" test
+ * is a binary search in sorted neighbour lists.
+ * <p>
+ * Walks are generated by parallel workers that claim blocks of start vertices. Each walk has its
+ * own seeded generator, so a walk's content does not depend on the thread count. Workers encode
+ * walks into private buffers that are appended to the output in blocks. The corpus format is:
+ * the header {@code WALKS_V1}, the vertex count and IDs (so indexes can be resolved), then one
+ * record per walk (varint length, varint vertex indexes), ending with a zero length.
+ */
+public class RandomWalks {
+    public static final int DEFAULT_LENGTH = 80;
+    public static final int DEFAULT_WALKS = 10;
+    static final String HEADER = "WALKS_V1";
+    private static final int BLOCK = 64;
+    private static final int FLUSH_BYTES = 1 << 16;
+
+    /** What a run produced. */
+    public static class Stats {
+        public final long walks;
+        public final long steps;
+        public final long millis;
+
+        Stats(long walks, long steps, long millis) {
+            this.walks = walks;
+            this.steps = steps;
+            this.millis = millis;
+        }
+    }
+
+    private int length = DEFAULT_LENGTH;
+    private int walksPerNode = DEFAULT_WALKS;
+    private double p = 1.0;
+    private double q = 1.0;
+    private long seed = 42;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Vertices per walk, including the start. */
+    public RandomWalks length(int n) {
+        if (n < 2) throw new IllegalArgumentException("Walk length must be at least 2");
+        this.length = n;
+        return this;
+    }
+
+    public RandomWalks walksPerNode(int n) {
+        if (n < 1) throw new IllegalArgumentException("Walks per node must be at least 1");
+        this.walksPerNode = n;
+        return this;
+    }
+
+    /** Return parameter: high values make walks less likely to step straight back. */
+    public RandomWalks p(double p) {
+        if (p <= 0) throw new IllegalArgumentException("p must be positive");
+        this.p = p;
+        return this;
+    }
+
+    /** In-out parameter: low values push walks outward (DFS-like), high values keep them local (BFS-like). */
+    public RandomWalks q(double q) {
+        if (q <= 0) throw new IllegalArgumentException("q must be positive");
+        this.q = q;
+        return this;
+    }
+
+    public RandomWalks seed(long s) { this.seed = s; return this; }
+    public RandomWalks threads(int n) { this.threads = Math.max(1, n); return this; }
+
+    public int getLength() { return length; }
+    public int getWalksPerNode() { return walksPerNode; }
+
+    /**
+     * Generates {@code walksPerNode} walks from every vertex and streams them to {@code out}.
+     * Isolated vertices give walks of length 1.
+     * @throws CancellationException If the control is cancelled.
+     */
+    public Stats write(GraphProjection g, OutputStream out, JobControl control) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        int n = g.size();
+        int[][] adj = Triangles.simpleAdjacency(g);
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeUTF(HEADER);
+        data.writeInt(n);
+        for (int v = 0; v < n; v++) data.writeUTF(g.idOf(v));
+
+        long total = (long) n * walksPerNode;
+        control.setTotal(total);
+        AtomicLong next = new AtomicLong();
+        AtomicLong steps = new AtomicLong();
+        int workers = (int) Math.max(1, Math.min(threads, total / BLOCK + 1));
+        if (workers == 1) {
+            generate(adj, total, next, steps, data, control);
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(workers, PageRank.daemonThreads());
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int w = 0; w < workers; w++)
+                    futures.add(pool.submit(() -> {
+                        generate(adj, total, next, steps, data, control);
+                        return null;
+                    }));
+                for (Future<?> f : futures) f.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof CancellationException) throw (CancellationException) e.getCause();
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        GlobalIndex.writeVarInt(data, 0);
+        data.flush();
+        return new Stats(total, steps.get(), System.currentTimeMillis() - start);
+    }
+
+    /** One worker: claims blocks of walk numbers; walk {@code i} starts at vertex {@code i % n}. */
+    private void generate(int[][] adj, long total, AtomicLong next, AtomicLong steps, DataOutputStream out,
+                          JobControl control) throws IOException {
+        int n = adj.length;
+        double maxWeight = Math.max(1.0, Math.max(1 / p, 1 / q));
+        boolean biased = p != 1.0 || q != 1.0;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(FLUSH_BYTES + 1024);
+        DataOutputStream encoded = new DataOutputStream(buffer);
+        int[] walk = new int[length];
+        long local = 0;
+        long from;
+        while ((from = next.getAndAdd(BLOCK)) < total) {
+            control.checkpoint();
+            long to = Math.min(total, from + BLOCK);
+            for (long i = from; i < to; i++) {
+                SplittableRandom rnd = new SplittableRandom(seed ^ (i * 0x9E3779B97F4A7C15L));
+                walk[0] = (int) (i % n);
+                int len = 1;
+                while (len < length) {
+                    int[] nb = adj[walk[len - 1]];
+                    if (nb.length == 0) break;
+                    int x;
+                    if (!biased || len == 1) {
+                        x = nb[rnd.nextInt(nb.length)];
+                    } else {
+                        int t = walk[len - 2];
+                        while (true) {
+                            x = nb[rnd.nextInt(nb.length)];
+                            double w = x == t ? 1 / p : Arrays.binarySearch(adj[t], x) >= 0 ? 1.0 : 1 / q;
+                            if (rnd.nextDouble() * maxWeight < w) break;
+                        }
+                    }
+                    walk[len++] = x;
+                }
+                GlobalIndex.writeVarInt(encoded, len);
+                for (int s = 0; s < len; s++) GlobalIndex.writeVarInt(encoded, walk[s]);
+                local += len - 1;
+            }
+            control.advance(to - from);
+            if (buffer.size() >= FLUSH_BYTES) flush(buffer, out);
+        }
+        flush(buffer, out);
+        steps.addAndGet(local);
+    }
+
+    private static void flush(ByteArrayOutputStream buffer, DataOutputStream out) throws IOException {
+        if (buffer.size() == 0) return;
+        synchronized (out) {
+            buffer.writeTo(out);
+        }
+        buffer.reset();
+    }
+
+    // --- Reading ---
+
+    /** Sequential reader of a walk corpus. */
+    public static class Reader implements Closeable {
+        private final CountingInputStream counter;
+        private final DataInputStream in;
+        private final String[] ids;
+        private int[] walk = new int[DEFAULT_LENGTH];
+        private int length;
+
+        public Reader(InputStream in) throws IOException {
+            this.counter = new CountingInputStream(in, 0);
+            this.in = new DataInputStream(counter);
+            if (!HEADER.equals(this.in.readUTF())) throw new IOException("Not a walk corpus");
+            this.ids = new String[this.in.readInt()];
+            for (int v = 0; v < ids.length; v++) ids[v] = this.in.readUTF();
+        }
+
+        private Reader(InputStream in, long position) {
+            this.counter = new CountingInputStream(in, position);
+            this.in = new DataInputStream(counter);
+            this.ids = null;
+        }
+
+        /**
+         * Opens a corpus file at a walk boundary taken from {@link #position()}, past the header,
+         * so {@link #getIds()} is null on such a reader.
+         */
+        public static Reader at(File corpus, long position) throws IOException {
+            FileInputStream file = new FileInputStream(corpus);
+            try {
+                file.getChannel().position(position);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+            return new Reader(file, position);
+        }
+
+        /** Vertex IDs, indexed as in the walks. */
+        public String[] getIds() { return ids; }
+
+        /** Byte offset in the corpus of the walk the next call to {@link #next()} reads. */
+        public long position() { return counter.count; }
+
+        /**
+         * Reads the next walk into an internal buffer.
+         * @return False at the end of the corpus.
+         */
+        public boolean next() throws IOException {
+            length = GlobalIndex.readVarInt(in);
+            if (length == 0) return false;
+            if (walk.length < length) walk = new int[length];
+            for (int s = 0; s < length; s++) walk[s] = GlobalIndex.readVarInt(in);
+            return true;
+        }
+
+        /** The current walk; only its first {@link #length()} entries are valid until the next call. */
+        public int[] walk() { return walk; }
+        public int length() { return length; }
+
+        @Override
+        public void close() throws IOException { in.close(); }
+    }
+
+    /** Buffers the corpus and counts the bytes handed out, so readers know their offset. */
+    private static class CountingInputStream extends BufferedInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in, long start) {
+            super(in, 1 << 16);
+            this.count = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.atlasdblite.analytics;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Skip-gram with negative sampling (word2vec) over a {@link RandomWalks} corpus: vertices are
+ * words and walks are sentences, so vertices that co-occur on walks get similar vectors.
+ * <p>
+ * Training follows the reference word2vec recipe: a randomly shrunk context window, negatives drawn
+ * from the unigram distribution raised to 3/4, a precomputed sigmoid table, and a learning rate
+ * decaying linearly to almost zero. Threads share the weight matrices without locking
+ * ("Hogwild"); the counting pass records the file offset of every {@value #SLICE_WALKS}-th walk,
+ * and each thread streams only its own contiguous run of those blocks, so memory stays at the
+ * two matrices whatever the corpus size. With more than one thread the result is not
+ * bit-for-bit reproducible.
+ */
+public class SkipGram {
+    public static final int DEFAULT_DIMENSIONS = 128;
+    private static final int SIGMOID_SIZE = 1000;
+    private static final float MAX_EXP = 6f;
+    private static final int TABLE_SIZE = 1 << 20;
+    private static final int PROGRESS_WORDS = 10_000;
+    private static final int SLICE_WALKS = 1024;
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+    private static final float[] SIGMOID = new float[SIGMOID_SIZE];
+
+    static {
+        for (int i = 0; i < SIGMOID_SIZE; i++) {
+            double e = Math.exp((2.0 * i / SIGMOID_SIZE - 1) * MAX_EXP);
+            SIGMOID[i] = (float) (e / (e + 1));
+        }
+    }
+
+    /** Trained vectors, one row of {@code dimensions} floats per corpus vertex. */
+    public static class Result {
+        private final String[] ids;
+        private final float[] vectors;
+        private final int dimensions;
+        private final long trainedWords;
+        private final long millis;
+
+        Result(String[] ids, float[] vectors, int dimensions, long trainedWords, long millis) {
+            this.ids = ids;
+            this.vectors = vectors;
+            this.dimensions = dimensions;
+            this.trainedWords = trainedWords;
+            this.millis = millis;
+        }
+
+        public int size() { return ids.length; }
+        public String idAt(int i) { return ids[i]; }
+        public int getDimensions() { return dimensions; }
+        public long getTrainedWords() { return trainedWords; }
+        public long getMillis() { return millis; }
+
+        /** Copy of row {@code i}. */
+        public float[] vector(int i) {
+            float[] v = new float[dimensions];
+            System.arraycopy(vectors, i * dimensions, v, 0, dimensions);
+            return v;
+        }
+
+        /** Cosine similarity of rows {@code a} and {@code b}. */
+        public double cosine(int a, int b) {
+            double dot = 0, na = 0, nb = 0;
+            for (int d = 0, ia = a * dimensions, ib = b * dimensions; d < dimensions; d++, ia++, ib++) {
+                dot += vectors[ia] * vectors[ib];
+                na += vectors[ia] * vectors[ia];
+                nb += vectors[ib] * vectors[ib];
+            }
+            return na == 0 || nb == 0 ? 0.0 : dot / Math.sqrt(na * nb);
+        }
+    }
+
+    private int dimensions = DEFAULT_DIMENSIONS;
+    private int window = 5;
+    private int negatives = 5;
+    private int epochs = 1;
+    private float learningRate = 0.025f;
+    private long seed = 42;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public SkipGram dimensions(int d) {
+        if (d < 1) throw new IllegalArgumentException("Dimensions must be at least 1");
+        this.dimensions = d;
+        return this;
+    }
+
+    /** Largest distance between a vertex and its context on a walk. */
+    public SkipGram window(int w) {
+        if (w < 1) throw new IllegalArgumentException("Window must be at least 1");
+        this.window = w;
+        return this;
+    }
+
+    public SkipGram negatives(int k) {
+        if (k < 1) throw new IllegalArgumentException("Negatives must be at least 1");
+        this.negatives = k;
+        return this;
+    }
+
+    public SkipGram epochs(int e) {
+        if (e < 1) throw new IllegalArgumentException("Epochs must be at least 1");
+        this.epochs = e;
+        return this;
+    }
+
+    public SkipGram learningRate(double rate) {
+        if (rate <= 0) throw new IllegalArgumentException("Learning rate must be positive");
+        this.learningRate = (float) rate;
+        return this;
+    }
+
+    public SkipGram seed(long s) { this.seed = s; return this; }
+    public SkipGram threads(int n) { this.threads = Math.max(1, n); return this; }
+
+    /**
+     * Trains on the corpus in {@code corpus}, which is read once for counts and then
+     * {@code epochs} times, each thread reading its own share.
+     * @throws IllegalArgumentException If the vertices times the dimensions do not fit in an array.
+     * @throws CancellationException If the control is cancelled.
+     */
+    public Result train(File corpus, JobControl control) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        String[] ids;
+        long[] counts;
+        long[] offsets = new long[16]; // offsets[b]: byte offset of walk b * SLICE_WALKS
+        long words = 0, walks = 0;
+        try (RandomWalks.Reader reader = new RandomWalks.Reader(new FileInputStream(corpus))) {
+            ids = reader.getIds();
+            long cells = (long) ids.length * dimensions;
+            if (cells > MAX_ARRAY)
+                throw new IllegalArgumentException(ids.length + " vertices of " + dimensions
+                        + " dimensions exceed the largest weight matrix (" + MAX_ARRAY + " floats)");
+            counts = new long[ids.length];
+            while (true) {
+                if (walks % SLICE_WALKS == 0) {
+                    int block = (int) (walks / SLICE_WALKS);
+                    if (block == offsets.length) offsets = Arrays.copyOf(offsets, block * 2);
+                    offsets[block] = reader.position();
+                }
+                if (!reader.next()) break;
+                control.checkpoint();
+                int[] walk = reader.walk();
+                for (int s = 0; s < reader.length(); s++) counts[walk[s]]++;
+                words += reader.length();
+                walks++;
+            }
+        }
+        int n = ids.length;
+        int[] table = unigramTable(counts);
+        float[] syn0 = new float[n * dimensions];
+        float[] syn1 = new float[n * dimensions];
+        SplittableRandom init = new SplittableRandom(seed);
+        for (int i = 0; i < syn0.length; i++) syn0[i] = (float) ((init.nextDouble() - 0.5) / dimensions);
+
+        long total = words * epochs;
+        control.setTotal(total);
+        AtomicLong processed = new AtomicLong();
+        int blocks = (int) ((walks + SLICE_WALKS - 1) / SLICE_WALKS);
+        int workers = Math.max(1, Math.min(threads, blocks));
+        long[] bounds = offsets;
+        if (table.length > 0) {
+            if (workers == 1) {
+                trainSlice(corpus, 0, bounds[0], walks, syn0, syn1, table, total, processed, control);
+            } else {
+                ExecutorService pool = Executors.newFixedThreadPool(workers, PageRank.daemonThreads());
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int t = 0; t < workers; t++) {
+                        int slice = t;
+                        int first = (int) ((long) blocks * t / workers);
+                        int last = (int) ((long) blocks * (t + 1) / workers);
+                        long count = Math.min(walks, (long) last * SLICE_WALKS) - (long) first * SLICE_WALKS;
+                        futures.add(pool.submit(() -> {
+                            trainSlice(corpus, slice, bounds[first], count, syn0, syn1, table, total, processed, control);
+                            return null;
+                        }));
+                    }
+                    for (Future<?> f : futures) f.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof CancellationException) throw (CancellationException) e.getCause();
+                    if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                    throw new IllegalStateException(e.getCause());
+                } finally {
+                    pool.shutdownNow();
+                }
+            }
+        }
+        return new Result(ids, syn0, dimensions, processed.get(), System.currentTimeMillis() - start);
+    }
+
+    /** One thread's share: {@code count} consecutive walks from byte {@code offset}, every epoch. */
+    private void trainSlice(File corpus, int slice, long offset, long count, float[] syn0, float[] syn1,
+                            int[] table, long total, AtomicLong processed, JobControl control) throws IOException {
+        SplittableRandom rnd = new SplittableRandom(seed + 31L * (slice + 1));
+        float[] gradient = new float[dimensions];
+        float minRate = learningRate * 1e-4f;
+        long pending = 0;
+        float rate = learningRate;
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            try (RandomWalks.Reader reader = RandomWalks.Reader.at(corpus, offset)) {
+                for (long w = 0; w < count && reader.next(); w++) {
+                    control.checkpoint();
+                    int[] walk = reader.walk();
+                    int len = reader.length();
+                    for (int i = 0; i < len; i++) {
+                        int reach = window - rnd.nextInt(window);
+                        int from = Math.max(0, i - reach), to = Math.min(len - 1, i + reach);
+                        for (int j = from; j <= to; j++)
+                            if (j != i) update(walk[j], walk[i], syn0, syn1, table, gradient, rate, rnd);
+                    }
+                    pending += len;
+                    if (pending >= PROGRESS_WORDS) {
+                        long done = processed.addAndGet(pending);
+                        control.advance(pending);
+                        pending = 0;
+                        rate = Math.max(minRate, learningRate * (1 - (float) done / (total + 1)));
+                    }
+                }
+            }
+        }
+        processed.addAndGet(pending);
+        control.advance(pending);
+    }
+
+    /** One (context, target) pair: pull the target towards the context, push sampled negatives away. */
+    private void update(int context, int target, float[] syn0, float[] syn1, int[] table, float[] gradient,
+                        float rate, SplittableRandom rnd) {
+        int dim = dimensions;
+        int l1 = context * dim;
+        Arrays.fill(gradient, 0f);
+        for (int k = 0; k <= negatives; k++) {
+            int word;
+            float label;
+            if (k == 0) {
+                word = target;
+                label = 1f;
+            } else {
+                word = table[rnd.nextInt(table.length)];
+                if (word == target) continue;
+                label = 0f;
+            }
+            int l2 = word * dim;
+            float f = 0;
+            for (int d = 0; d < dim; d++) f += syn0[l1 + d] * syn1[l2 + d];
+            float g;
+            if (f > MAX_EXP) g = (label - 1) * rate;
+            else if (f < -MAX_EXP) g = label * rate;
+            else g = (label - SIGMOID[(int) ((f + MAX_EXP) * (SIGMOID_SIZE / MAX_EXP / 2))]) * rate;
+            for (int d = 0; d < dim; d++) {
+                gradient[d] += g * syn1[l2 + d];
+                syn1[l2 + d] += g * syn0[l1 + d];
+            }
+        }
+        for (int d = 0; d < dim; d++) syn0[l1 + d] += gradient[d];
+    }
+
+    /** Table of vertex indexes in which each vertex fills a share proportional to count^0.75. */
+    private static int[] unigramTable(long[] counts) {
+        double sum = 0;
+        for (long c : counts) sum += Math.pow(c, 0.75);
+        if (sum == 0) return new int[0];
+        int size = (int) Math.min(TABLE_SIZE, Math.max(1024, 16L * counts.length));
+        int[] table = new int[size];
+        int v = 0;
+        while (v < counts.length - 1 && counts[v] == 0) v++;
+        double cumulative = Math.pow(counts[v], 0.75) / sum;
+        for (int i = 0; i < size; i++) {
+            table[i] = v;
+            while ((double) (i + 1) / size > cumulative && v < counts.length - 1) {
+                v++;
+                cumulative += Math.pow(counts[v], 0.75) / sum;
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,252 @@
+package com.atlasdblite.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Triangle counts and clustering coefficients on the simple undirected view of a
+ * {@link GraphProjection} (direction, parallel edges and self-loops ignored).
+ * <p>
+ * The exact count orients every edge from the lower to the higher (degree, index) endpoint, so
+ * each triangle is found once, from its lowest vertex, by merging two sorted forward lists; high
+ * degree hubs keep short forward lists. Vertices are claimed in small blocks by parallel workers,
+ * each with its own per-vertex counters.
+ * <p>
+ * The sampled mode estimates transitivity by checking whether uniformly random wedges (paths of
+ * length two) are closed. Each check is a binary search, so cost depends only on the sample count.
+ */
+public class Triangles {
+    public static final int DEFAULT_SAMPLES = 100_000;
+    private static final int BLOCK = 256;
+
+    public static class Result {
+        /** Number of triangles (an estimate in sampled mode). */
+        public final double triangles;
+        /** Number of wedges: pairs of edges sharing an endpoint. */
+        public final long wedges;
+        /** Closed fraction of wedges: 3 * triangles / wedges. */
+        public final double transitivity;
+        /** Mean local clustering over all vertices (0 for degree < 2); NaN in sampled mode. */
+        public final double averageClustering;
+        /** Triangles through each vertex; null in sampled mode. */
+        public final long[] perVertex;
+        /** Local clustering coefficient per vertex; null in sampled mode. */
+        public final double[] clustering;
+        public final boolean exact;
+        /** Additive bound on transitivity at 90% confidence (0 when exact). */
+        public final double errorBound;
+        public final long millis;
+        private final GraphProjection graph;
+
+        Result(GraphProjection graph, double triangles, long wedges, double transitivity, double averageClustering,
+               long[] perVertex, double[] clustering, boolean exact, double errorBound, long millis) {
+            this.graph = graph;
+            this.triangles = triangles;
+            this.wedges = wedges;
+            this.transitivity = transitivity;
+            this.averageClustering = averageClustering;
+            this.perVertex = perVertex;
+            this.clustering = clustering;
+            this.exact = exact;
+            this.errorBound = errorBound;
+            this.millis = millis;
+        }
+
+        public GraphProjection getGraph() { return graph; }
+    }
+
+    // --- Exact ---
+
+    public static Result exact(GraphProjection g, int threads) throws InterruptedException {
+        return exact(g, threads, new JobControl());
+    }
+
+    /**
+     * Exact count reporting progress in vertices whose forward lists have been merged.
+     * @throws CancellationException If the control is cancelled.
+     */
+    public static Result exact(GraphProjection g, int threads, JobControl control) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        int n = g.size();
+        int[][] adj = simpleAdjacency(g);
+
+        // Forward lists: neighbours ranked above v, sorted by index for merging
+        int[][] forward = new int[n][];
+        for (int v = 0; v < n; v++) {
+            int count = 0;
+            for (int w : adj[v]) if (ranksBelow(adj, v, w)) count++;
+            int[] f = new int[count];
+            int i = 0;
+            for (int w : adj[v]) if (ranksBelow(adj, v, w)) f[i++] = w;
+            forward[v] = f; // adj[v] is sorted, so f is too
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.max(1, Math.min(threads, n / BLOCK + 1));
+        control.setTotal(n);
+        List<long[]> partials = new ArrayList<>();
+        if (workers == 1) {
+            partials.add(countBlocks(forward, next, control));
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(workers, PageRank.daemonThreads());
+            try {
+                List<Future<long[]>> futures = new ArrayList<>();
+                for (int w = 0; w < workers; w++) futures.add(pool.submit(() -> countBlocks(forward, next, control)));
+                for (Future<long[]> f : futures) partials.add(f.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        // Workers stop early when cancelled, so their partial counts must not be reported
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+        control.checkpoint();
+
+        long[] perVertex = new long[n];
+        for (long[] part : partials)
+            for (int v = 0; v < n; v++) perVertex[v] += part[v];
+
+        long corners = 0, wedges = 0;
+        double[] clustering = new double[n];
+        double clusteringSum = 0;
+        for (int v = 0; v < n; v++) {
+            corners += perVertex[v];
+            long d = adj[v].length;
+            long pairs = d * (d - 1) / 2;
+            wedges += pairs;
+            if (pairs > 0) clustering[v] = (double) perVertex[v] / pairs;
+            clusteringSum += clustering[v];
+        }
+        long triangles = corners / 3;
+        double transitivity = wedges == 0 ? 0.0 : 3.0 * triangles / wedges;
+        return new Result(g, triangles, wedges, transitivity, n == 0 ? 0.0 : clusteringSum / n,
+                perVertex, clustering, true, 0.0, System.currentTimeMillis() - start);
+    }
+
+    private static long[] countBlocks(int[][] forward, AtomicInteger next, JobControl control) {
+        int n = forward.length;
+        long[] counts = new long[n];
+        int from;
+        while ((from = next.getAndAdd(BLOCK)) < n) {
+            if (Thread.currentThread().isInterrupted() || control.isCancelled()) return counts;
+            int to = Math.min(n, from + BLOCK);
+            for (int u = from; u < to; u++) {
+                int[] fu = forward[u];
+                for (int v : fu) {
+                    int[] fv = forward[v];
+                    int i = 0, j = 0;
+                    while (i < fu.length && j < fv.length) {
+                        if (fu[i] < fv[j]) i++;
+                        else if (fu[i] > fv[j]) j++;
+                        else {
+                            counts[u]++;
+                            counts[v]++;
+                            counts[fu[i]]++;
+                            i++;
+                            j++;
+                        }
+                    }
+                }
+            }
+            control.advance(to - from);
+        }
+        return counts;
+    }
+
+    // --- Sampled ---
+
+    public static Result sampled(GraphProjection g, int samples, long seed) throws InterruptedException {
+        return sampled(g, samples, seed, new JobControl());
+    }
+
+    /**
+     * Wedge-sampling estimate reporting progress in wedges sampled.
+     * @throws CancellationException If the control is cancelled.
+     */
+    public static Result sampled(GraphProjection g, int samples, long seed, JobControl control) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        int n = g.size();
+        int[][] adj = simpleAdjacency(g);
+
+        // Pick wedge centres with probability proportional to their wedge count
+        long[] cumulative = new long[n + 1];
+        for (int v = 0; v < n; v++) {
+            long d = adj[v].length;
+            cumulative[v + 1] = cumulative[v] + d * (d - 1) / 2;
+        }
+        long wedges = cumulative[n];
+        if (wedges == 0 || samples <= 0)
+            return new Result(g, 0, wedges, 0.0, Double.NaN, null, null, false, 0.0, System.currentTimeMillis() - start);
+
+        Random rnd = new Random(seed);
+        long closed = 0;
+        control.setTotal(samples);
+        for (int s = 0; s < samples; s++) {
+            if ((s & 0xFFFF) == 0) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                control.checkpoint();
+                if (s > 0) control.advance(0x10000);
+            }
+            long pick = Math.min(wedges - 1, (long) (rnd.nextDouble() * wedges));
+            int centre = floor(cumulative, pick);
+            int[] nb = adj[centre];
+            int a = rnd.nextInt(nb.length);
+            int b = rnd.nextInt(nb.length - 1);
+            if (b >= a) b++;
+            int[] na = adj[nb[a]];
+            if (Arrays.binarySearch(na, nb[b]) >= 0) closed++;
+        }
+        double transitivity = (double) closed / samples;
+        double bound = Math.sqrt(Math.log(2 / 0.1) / (2.0 * samples));
+        return new Result(g, transitivity * wedges / 3.0, wedges, transitivity, Double.NaN, null, null, false,
+                bound, System.currentTimeMillis() - start);
+    }
+
+    // --- Helpers ---
+
+    /** Sorted, de-duplicated neighbour lists of the undirected view, without self-loops. */
+    static int[][] simpleAdjacency(GraphProjection g) {
+        int n = g.size();
+        int[] outOffsets = g.outOffsets(), outTargets = g.outTargets();
+        int[] inOffsets = g.inOffsets(), inSources = g.inSources();
+        int[][] adj = new int[n][];
+        for (int v = 0; v < n; v++) {
+            int[] all = new int[(outOffsets[v + 1] - outOffsets[v]) + (inOffsets[v + 1] - inOffsets[v])];
+            int size = 0;
+            for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) all[size++] = outTargets[e];
+            for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) all[size++] = inSources[e];
+            Arrays.sort(all);
+            int unique = 0;
+            for (int i = 0; i < size; i++)
+                if (all[i] != v && (unique == 0 || all[unique - 1] != all[i])) all[unique++] = all[i];
+            adj[v] = unique == all.length ? all : Arrays.copyOf(all, unique);
+        }
+        return adj;
+    }
+
+    /** Largest index v with {@code cumulative[v] <= key}. */
+    private static int floor(long[] cumulative, long key) {
+        int lo = 0, hi = cumulative.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (cumulative[mid] <= key) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private static boolean ranksBelow(int[][] adj, int v, int w) {
+        int dv = adj[v].length, dw = adj[w].length;
+        return dv < dw || (dv == dw && v < w);
+    }
+}
@@ -1,8 +1,10 @@
 package com.atlasdblite.commands;
 
 import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.engine.SearchHit;
 import com.atlasdblite.models.Node;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 
@@ -12,6 +14,9 @@ import java.util.Scanner;
  * This class simplifies the implementation of new commands by handling repetitive logic.
  */
 public abstract class AbstractCommand implements Command {
+
+    /** How many ranked candidates {@link #resolveNode} offers when a query is ambiguous. */
+    protected static final int RESOLVE_CANDIDATES = 5;
     
     /** A shared Scanner instance for handling interactive user input. This should not be closed. */
     protected static final Scanner interactiveScanner = new Scanner(System.in);
@@ -56,8 +61,8 @@ public abstract class AbstractCommand implements Command {
      * The method follows a specific resolution strategy:
      * <ol>
      *   <li>Attempts to find a node by exact ID match.</li>
-     *   <li>If no exact match is found, performs a fuzzy search across all node properties.</li>
-     *   <li>If multiple nodes match the fuzzy search, it presents an interactive menu for the user to select the correct one.</li>
+     *   <li>If no exact match is found, runs a ranked full-text search (prefix and typo tolerant).</li>
+     *   <li>If several nodes match, it presents the best few in an interactive menu for the user to select the correct one.</li>
      * </ol>
      *
      * @param query The search query (can be an ID or a search term).
@@ -71,8 +76,10 @@ public abstract class AbstractCommand implements Command {
             return exactMatch;
         }
 
-        // 2. If no exact match, perform a broader, slower search.
-        List<Node> matches = engine.search(query);
+        // 2. If no exact match, take the best few ranked full-text matches.
+        List<Node> matches = new ArrayList<>();
+        for (SearchHit hit : engine.searchTop(query, RESOLVE_CANDIDATES))
+            matches.add(hit.node);
 
         if (matches.isEmpty()) {
             printError("No node found matching: '" + query + "'");
@@ -1,5 +1,6 @@
 package com.atlasdblite.commands;
 
+import com.atlasdblite.engine.Featurizer;
 import com.atlasdblite.engine.GraphEngine;
 import com.atlasdblite.models.Node;
 import java.util.Arrays;
@@ -20,7 +21,7 @@ public class AddNodeCommand extends AbstractCommand {
 
     @Override
     public String getDescription() { 
-        return "Creates a node. Usage: add-node [ID] <LABEL> [key:val]... (Supports lists: tags:[a,b])"; 
+        return "Creates a node. Usage: add-node [ID] <LABEL> [key:val]... [--vectorize] (Supports lists: tags:[a,b])"; 
     }
 
     /**
@@ -51,7 +52,11 @@ public class AddNodeCommand extends AbstractCommand {
             }
         }
 
-        String[] fargs = filtered.toArray(new String[0]);
+        args = filtered.toArray(new String[0]);
+        if (args.length < 2) {
+            printError("Usage: add-node [id] <label> [prop:val]... [--vectorize]");
+            return;
+        }
 
         String id;
         String label;
@@ -98,7 +103,7 @@ public class AddNodeCommand extends AbstractCommand {
         }
 
         if (vectorize) {
-            node.addProperty("__vectorize", "true");
+            node.addProperty(Featurizer.FLAG, "true");
         }
 
         engine.persistNode(node);
@@ -1,9 +1,39 @@
 package com.atlasdblite.commands;
 
+import com.atlasdblite.analytics.Betweenness;
+import com.atlasdblite.analytics.Communities;
+import com.atlasdblite.analytics.Components;
+import com.atlasdblite.analytics.GraphProjection;
+import com.atlasdblite.analytics.JobControl;
+import com.atlasdblite.analytics.PageRank;
+import com.atlasdblite.analytics.PersonalizedPageRank;
+import com.atlasdblite.analytics.RandomWalks;
+import com.atlasdblite.analytics.SkipGram;
+import com.atlasdblite.analytics.Triangles;
+import com.atlasdblite.engine.Featurizer;
 import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.models.Node;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class AnalyzeCommand extends AbstractCommand {
+    private static final int DEFAULT_PPR_RESULTS = 10;
+    private static final String PPR_USAGE = "analyze ppr <seed>[,<seed>...] [k] [--weight=prop]";
+    private static final String STRUCTURE_USAGE = "analyze <wcc|scc|kcore> [--store=prop]";
+    private static final String COMMUNITY_USAGE = "analyze communities [louvain|lpa] [--store=prop]";
+    private static final String BETWEENNESS_USAGE = "analyze betweenness [--exact|--samples=N|--epsilon=E] [--top=K] [--async|--status|--cancel]";
+    private static final String TRIANGLES_USAGE = "analyze triangles [--approx[=samples]] [--top=K] [--store=prop]";
+    private static final String WALKS_USAGE = "analyze walks <file> [--length=80] [--walks=10] [--p=1] [--q=1] [--seed=N]";
+    private static final String NODE2VEC_USAGE = "analyze node2vec [walk options] [--dim=128] [--window=5] [--epochs=1] [--store[=prop]] [--async]";
+    private static final String PAGERANK_USAGE = "analyze pagerank [max_iterations] [--weight=prop] [--tol=1e-6] [--damping=0.85] [--async] [--live=on|off]";
+
     @Override
     public String getName() {
         return "analyze";
@@ -11,48 +41,462 @@ public class AnalyzeCommand extends AbstractCommand {
 
     @Override
     public String getDescription() {
-        return "Runs graph algorithms. Usage: analyze pagerank [iterations]";
+        return "Runs graph algorithms. Usage: " + PAGERANK_USAGE + " | " + PPR_USAGE + " | " + STRUCTURE_USAGE + " | " + COMMUNITY_USAGE + " | " + BETWEENNESS_USAGE + " | " + TRIANGLES_USAGE + " | " + WALKS_USAGE + " | " + NODE2VEC_USAGE;
     }
 
     @Override
     public void execute(String[] args, GraphEngine engine) {
-        if (!validateArgs(args, 1, "analyze pagerank [iterations]"))
+        if (!validateArgs(args, 1, PAGERANK_USAGE + " | " + PPR_USAGE + " | " + STRUCTURE_USAGE + " | " + COMMUNITY_USAGE + " | " + BETWEENNESS_USAGE + " | " + TRIANGLES_USAGE + " | " + WALKS_USAGE + " | " + NODE2VEC_USAGE))
             return;
 
         String algo = args[1].toLowerCase();
 
         if ("pagerank".equals(algo)) {
-            int iterations = 20; // Default
-            if (args.length > 2) {
-                try {
-                    iterations = Integer.parseInt(args[2]);
-                } catch (NumberFormatException e) {
-                    printError("Invalid iterations");
+            runPageRank(args, engine);
+        } else if ("ppr".equals(algo)) {
+            runPersonalizedPageRank(args, engine);
+        } else if ("wcc".equals(algo) || "scc".equals(algo) || "kcore".equals(algo)) {
+            runStructure(Components.Kind.valueOf(algo.toUpperCase()), args, engine);
+        } else if ("communities".equals(algo)) {
+            runCommunities(args, engine);
+        } else if ("betweenness".equals(algo)) {
+            runBetweenness(args, engine);
+        } else if ("triangles".equals(algo)) {
+            runTriangles(args, engine);
+        } else if ("walks".equals(algo)) {
+            runWalks(args, engine);
+        } else if ("node2vec".equals(algo)) {
+            runNode2vec(args, engine);
+        } else {
+            printError("Unknown algorithm. Supported: pagerank, ppr, wcc, scc, kcore, communities, betweenness, triangles, walks, node2vec");
+        }
+    }
+
+    private void runPageRank(String[] args, GraphEngine engine) {
+        PageRank pageRank = new PageRank();
+        String weight = null;
+        boolean async = false;
+        try {
+            for (int i = 2; i < args.length; i++) {
+                String a = args[i];
+                if (a.startsWith("--weight=")) weight = a.substring(9);
+                else if (a.startsWith("--tol=")) pageRank.tolerance(Double.parseDouble(a.substring(6)));
+                else if (a.startsWith("--damping=")) pageRank.damping(Double.parseDouble(a.substring(10)));
+                else if (a.equalsIgnoreCase("--async")) async = true;
+                else if (a.startsWith("--live=")) engine.setIncrementalPageRank(a.substring(7).equalsIgnoreCase("on"));
+                else pageRank.maxIterations(Integer.parseInt(a));
+            }
+        } catch (NumberFormatException e) {
+            printError("Invalid number: " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
+            return;
+        }
+
+        if (async) {
+            engine.computePageRankAsync(pageRank, weight);
+            printSuccess("PageRank started in the background. Scores are published when it finishes; see 'jobs'.");
+            return;
+        }
+
+        System.out.println(" ... Calculating PageRank" + (weight != null ? " (weighted by '" + weight + "')" : "") + "...");
+        long start = System.currentTimeMillis();
+
+        PageRank.Result result;
+        try {
+            result = engine.runPageRank(pageRank, weight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            printError("PageRank interrupted.");
+            return;
+        }
+
+        long end = System.currentTimeMillis();
+        System.out.printf(" [DONE] %d iterations, L1 residual %.2e (%s) in %dms%n",
+                result.iterations, result.residual, result.converged ? "converged" : "not converged", end - start);
+        if (weight == null && engine.isIncrementalPageRank())
+            System.out.println(" ... Scores will follow new links and deletions until the next full run.");
+
+        // Print Top 10
+        Map<String, Double> scores = engine.getPageRankScores();
+        System.out.println("\n === TOP 10 INFLUENTIAL NODES ===");
+        scores.entrySet().stream()
+                .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue())) // Sort Descending
+                .limit(10)
+                .forEach(e -> {
+                    Node n = engine.getNode(e.getKey());
+                    System.out.printf("  #%-4s %-15s (Score: %.2f)%n",
+                            e.getKey(), n != null ? n.getLabel() : "?", e.getValue());
+                });
+        System.out.println(" ================================\n");
+    }
+
+    private void runPersonalizedPageRank(String[] args, GraphEngine engine) {
+        if (!validateArgs(args, 2, PPR_USAGE))
+            return;
+        List<String> seeds = new ArrayList<>();
+        for (String query : args[2].split(",")) {
+            Node seed = resolveNode(query.trim(), engine);
+            if (seed == null) {
+                printError("Seed not found: " + query);
+                return;
+            }
+            seeds.add(seed.getId());
+        }
+        int k = DEFAULT_PPR_RESULTS;
+        String weight = null;
+        try {
+            for (int i = 3; i < args.length; i++) {
+                if (args[i].startsWith("--weight=")) weight = args[i].substring(9);
+                else k = Integer.parseInt(args[i]);
+            }
+        } catch (NumberFormatException e) {
+            printError("Invalid number: " + e.getMessage());
+            return;
+        }
+        if (k < 1) {
+            printError("Result count must be at least 1");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        PersonalizedPageRank.Result result = engine.personalizedPageRank(seeds, k, weight);
+        long end = System.currentTimeMillis();
+
+        System.out.println("\n === RELATED TO " + String.join(", ", seeds) + " ===");
+        int rank = 1;
+        for (PersonalizedPageRank.Hit hit : result.hits) {
+            Node n = engine.getNode(hit.id);
+            System.out.printf("  %2d. %-15s %-15s (Score: %.5f)%n",
+                    rank++, hit.id, n != null ? n.getLabel() : "?", hit.score);
+        }
+        if (result.hits.isEmpty())
+            System.out.println("  (nothing reachable)");
+        System.out.printf(" ================================%n [DONE] %d pushes, residual %.1e%s in %dms%n%n",
+                result.pushes, result.residual, result.certified ? ", top-" + k + " exact" : "", end - start);
+    }
+
+    private void runStructure(Components.Kind kind, String[] args, GraphEngine engine) {
+        String store = null;
+        for (int i = 2; i < args.length; i++)
+            if (args[i].startsWith("--store=")) store = args[i].substring(8);
+
+        long start = System.currentTimeMillis();
+        Components.Result result;
+        try {
+            result = engine.components(kind);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            printError("Interrupted.");
+            return;
+        }
+        long end = System.currentTimeMillis();
+
+        int nodes = result.values.length;
+        if (kind == Components.Kind.KCORE) {
+            System.out.printf("%n === K-CORE (%d nodes, max core %d) ===%n", nodes, result.count);
+            int shown = 0;
+            for (int k = result.count; k >= 0 && shown < 10; k--) {
+                if (result.sizes[k] == 0) continue;
+                System.out.printf("  core %-4d %8d nodes%n", k, result.sizes[k]);
+                shown++;
+            }
+        } else {
+            String title = kind == Components.Kind.WCC ? "WEAKLY" : "STRONGLY";
+            System.out.printf("%n === %s CONNECTED COMPONENTS (%d in %d nodes) ===%n", title, result.count, nodes);
+            for (int c = 0; c < result.count && c < 10; c++)
+                System.out.printf("  #%-4d %8d nodes%n", c, result.sizes[c]);
+            long singletons = 0;
+            for (int size : result.sizes) if (size == 1) singletons++;
+            if (singletons > 0) System.out.println("  (" + singletons + " isolated)");
+        }
+        System.out.println(" ================================");
+        System.out.printf(" [DONE] in %dms%n", end - start);
+
+        if (store != null) {
+            int updated = engine.storeComponents(result, store);
+            printSuccess("Stored '" + store + "' on " + updated + " nodes.");
+        }
+        System.out.println();
+    }
+
+    private void runCommunities(String[] args, GraphEngine engine) {
+        String method = "louvain";
+        String store = null;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("--store=")) store = args[i].substring(8);
+            else if (args[i].equalsIgnoreCase("lpa") || args[i].equalsIgnoreCase("louvain")) method = args[i].toLowerCase();
+            else {
+                printError("Unknown method '" + args[i] + "'. Use louvain or lpa.");
+                return;
+            }
+        }
+
+        System.out.println(" ... Detecting communities (" + method + ")...");
+        Communities.Result result;
+        try {
+            result = engine.detectCommunities(method);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            printError("Interrupted.");
+            return;
+        }
+
+        System.out.printf("%n === %d COMMUNITIES (modularity %.4f) ===%n", result.count, result.modularity);
+        for (int c = 0; c < result.count && c < 10; c++)
+            System.out.printf("  #%-4d %8d nodes%n", c, result.sizes[c]);
+        System.out.println(" ================================");
+        System.out.printf(" [DONE] %d %s in %dms%n", result.rounds,
+                "lpa".equals(result.method) ? "iterations" : "levels", result.millis);
+
+        if (store != null) {
+            int updated = engine.storeValues(result.getGraph(), result.labels, store);
+            printSuccess("Stored '" + store + "' on " + updated + " nodes.");
+        }
+        System.out.println();
+    }
+
+    private void runBetweenness(String[] args, GraphEngine engine) {
+        Betweenness config = new Betweenness();
+        int top = 10;
+        String mode = "run";
+        try {
+            for (int i = 2; i < args.length; i++) {
+                String a = args[i];
+                if (a.equalsIgnoreCase("--exact")) config.exact();
+                else if (a.startsWith("--samples=")) config.samples(Integer.parseInt(a.substring(10)));
+                else if (a.startsWith("--epsilon=")) config.epsilon(Double.parseDouble(a.substring(10)));
+                else if (a.startsWith("--top=")) top = Integer.parseInt(a.substring(6));
+                else if (a.equalsIgnoreCase("--async") || a.equalsIgnoreCase("--status") || a.equalsIgnoreCase("--cancel"))
+                    mode = a.substring(2).toLowerCase();
+                else {
+                    printError("Unknown option: " + a);
                     return;
                 }
             }
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
+            return;
+        }
 
-            System.out.println(" ... Calculating PageRank (" + iterations + " iterations)...");
-            long start = System.currentTimeMillis();
+        JobControl job = engine.getBetweennessJob();
+        switch (mode) {
+            case "async":
+                job = engine.computeBetweennessAsync(config);
+                printSuccess("Betweenness running in the background. Check with 'analyze betweenness --status'.");
+                return;
+            case "cancel":
+                if (job == null || !engine.isBetweennessRunning()) {
+                    printError("No betweenness job is running.");
+                } else {
+                    job.cancel();
+                    printSuccess("Cancellation requested.");
+                }
+                return;
+            case "status":
+                if (engine.isBetweennessRunning()) {
+                    System.out.printf(" ... Running: %d / %d sources (%.0f%%)%n",
+                            job.getDone(), job.getTotal(), job.progress() * 100);
+                } else if (engine.getBetweenness() != null) {
+                    printBetweenness(engine.getBetweenness(), top, engine);
+                } else {
+                    printError(job != null && job.isCancelled() ? "Last job was cancelled." : "No results yet.");
+                }
+                return;
+            default:
+                System.out.println(" ... Calculating betweenness...");
+                try {
+                    printBetweenness(engine.betweenness(config, new JobControl()), top, engine);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    printError("Interrupted.");
+                }
+        }
+    }
 
-            Map<String, Double> scores = engine.calculatePageRank(iterations, 0.85);
+    private void printBetweenness(Betweenness.Result result, int top, GraphEngine engine) {
+        System.out.println("\n === TOP " + top + " BRIDGE NODES (BETWEENNESS) ===");
+        for (int v : result.top(top)) {
+            String id = result.getGraph().idOf(v);
+            Node n = engine.getNode(id);
+            System.out.printf("  %-15s %-15s %12.1f  (%.4f)%n", id, n != null ? n.getLabel() : "?",
+                    result.scores[v], result.normalized[v]);
+        }
+        System.out.println(" ================================");
+        if (result.exact)
+            System.out.printf(" [DONE] exact, %d sources in %dms%n%n", result.sources, result.millis);
+        else
+            System.out.printf(" [DONE] %d sampled sources in %dms, normalized scores within +/-%.4f (%.0f%% confidence)%n%n",
+                    result.sources, result.millis, result.errorBound, (1 - Betweenness.DEFAULT_DELTA) * 100);
+    }
 
-            long end = System.currentTimeMillis();
-            System.out.println(" [DONE] Calculation took " + (end - start) + "ms");
+    private void runTriangles(String[] args, GraphEngine engine) {
+        int samples = 0;
+        int top = 10;
+        String store = null;
+        try {
+            for (int i = 2; i < args.length; i++) {
+                String a = args[i];
+                if (a.equalsIgnoreCase("--approx")) samples = Triangles.DEFAULT_SAMPLES;
+                else if (a.startsWith("--approx=")) samples = Integer.parseInt(a.substring(9));
+                else if (a.startsWith("--top=")) top = Integer.parseInt(a.substring(6));
+                else if (a.startsWith("--store=")) store = a.substring(8);
+                else {
+                    printError("Unknown option: " + a);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            printError("Invalid number: " + e.getMessage());
+            return;
+        }
+
+        Triangles.Result result;
+        try {
+            result = engine.triangles(samples);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            printError("Interrupted.");
+            return;
+        }
 
-            // Print Top 10
-            System.out.println("\n === TOP 10 INFLUENTIAL NODES ===");
-            scores.entrySet().stream()
-                    .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue())) // Sort Descending
-                    .limit(10)
-                    .forEach(e -> {
-                        String label = engine.getNode(e.getKey()).getLabel();
-                        System.out.printf("  #%-4s %-15s (Score: %.2f)%n",
-                                e.getKey(), label, e.getValue());
-                    });
-            System.out.println(" ================================\n");
+        System.out.println("\n === TRIANGLES ===");
+        if (result.exact) {
+            System.out.printf("  Triangles:          %d%n", (long) result.triangles);
+            System.out.printf("  Transitivity:       %.4f%n", result.transitivity);
+            System.out.printf("  Avg. clustering:    %.4f%n", result.averageClustering);
+            GraphProjection g = result.getGraph();
+            Integer[] order = new Integer[g.size()];
+            for (int v = 0; v < order.length; v++) order[v] = v;
+            Arrays.sort(order, (a, b) -> Long.compare(result.perVertex[b], result.perVertex[a]));
+            System.out.println("  --- Densest neighbourhoods ---");
+            for (int i = 0; i < order.length && i < top && result.perVertex[order[i]] > 0; i++) {
+                int v = order[i];
+                System.out.printf("  %-15s %8d triangles  (clustering %.3f)%n", g.idOf(v), result.perVertex[v], result.clustering[v]);
+            }
         } else {
-            printError("Unknown algorithm. Supported: pagerank");
+            System.out.printf("  Triangles (est.):   %.0f%n", result.triangles);
+            System.out.printf("  Transitivity:       %.4f +/- %.4f%n", result.transitivity, result.errorBound);
+        }
+        System.out.println(" ================================");
+        System.out.printf(" [DONE] %s, %d wedges, %dms%n", result.exact ? "exact" : "wedge sampling", result.wedges, result.millis);
+
+        if (store != null) {
+            if (!result.exact) {
+                printError("Per-node clustering is only available from an exact count; nothing stored.");
+            } else {
+                int updated = engine.storeValues(result.getGraph(), result.clustering, store);
+                printSuccess("Stored '" + store + "' on " + updated + " nodes.");
+            }
+        }
+        System.out.println();
+    }
+
+    private void runWalks(String[] args, GraphEngine engine) {
+        if (!validateArgs(args, 2, WALKS_USAGE))
+            return;
+        RandomWalks walks = new RandomWalks();
+        try {
+            for (int i = 3; i < args.length; i++) {
+                if (!walkOption(args[i], walks)) {
+                    printError("Unknown option: " + args[i]);
+                    return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
+            return;
+        }
+
+        System.out.println(" ... Generating walks...");
+        RandomWalks.Stats stats;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(args[2]), 1 << 16)) {
+            stats = engine.writeWalks(walks, out, new JobControl());
+        } catch (IOException e) {
+            printError("Could not write " + args[2] + ": " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            printError("Interrupted.");
+            return;
         }
+        System.out.printf(" [DONE] %d walks, %d steps in %dms (%.0f steps/s)%n", stats.walks, stats.steps, stats.millis,
+                stats.steps * 1000.0 / Math.max(1, stats.millis));
+        printSuccess("Corpus written to " + args[2] + ".");
+    }
+
+    private void runNode2vec(String[] args, GraphEngine engine) {
+        RandomWalks walks = new RandomWalks();
+        SkipGram trainer = new SkipGram();
+        Map<String, String> options = new LinkedHashMap<>();
+        String store = null;
+        boolean async = false;
+        try {
+            for (int i = 2; i < args.length; i++) {
+                String a = args[i];
+                if (a.equalsIgnoreCase("--async")) async = true;
+                else if (a.equalsIgnoreCase("--store")) store = Featurizer.EMBEDDING;
+                else if (a.startsWith("--store=")) store = a.substring(8);
+                else if (a.startsWith("--dim=")) trainer.dimensions(Integer.parseInt(a.substring(6)));
+                else if (a.startsWith("--window=")) trainer.window(Integer.parseInt(a.substring(9)));
+                else if (a.startsWith("--epochs=")) trainer.epochs(Integer.parseInt(a.substring(9)));
+                else if (!walkOption(a, walks)) {
+                    printError("Unknown option: " + a);
+                    return;
+                }
+                if (a.startsWith("--") && !a.equalsIgnoreCase("--async")) {
+                    int eq = a.indexOf('=');
+                    options.put(eq < 0 ? a.substring(2) : a.substring(2, eq), eq < 0 ? "true" : a.substring(eq + 1));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
+            return;
+        }
+
+        if (async) {
+            try {
+                long id = engine.submitJob("node2vec", options).getId();
+                printSuccess("node2vec running in the background as job " + id + "; see 'jobs'.");
+            } catch (IllegalStateException e) {
+                printError(e.getMessage());
+            }
+            return;
+        }
+
+        System.out.println(" ... Generating walks and training embeddings...");
+        SkipGram.Result result;
+        try {
+            result = engine.node2vec(walks, trainer, new JobControl());
+        } catch (IOException e) {
+            printError("Training failed: " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            printError("Interrupted.");
+            return;
+        }
+        System.out.printf(" [DONE] %d nodes, %d dimensions, %d words trained in %dms%n", result.size(),
+                result.getDimensions(), result.getTrainedWords(), result.getMillis());
+
+        if (store != null) {
+            int updated = engine.storeEmbeddings(result, store);
+            printSuccess("Stored '" + store + "' on " + updated + " nodes.");
+            if (Featurizer.EMBEDDING.equals(store) && result.getDimensions() != Featurizer.DIMENSIONS)
+                printError("The vector index only uses " + Featurizer.DIMENSIONS + "-dimensional embeddings.");
+        }
+        System.out.println();
+    }
+
+    /** Applies one of the walk options shared by 'walks' and 'node2vec'; false if it is not one. */
+    private static boolean walkOption(String a, RandomWalks walks) {
+        if (a.startsWith("--length=")) walks.length(Integer.parseInt(a.substring(9)));
+        else if (a.startsWith("--walks=")) walks.walksPerNode(Integer.parseInt(a.substring(8)));
+        else if (a.startsWith("--p=")) walks.p(Double.parseDouble(a.substring(4)));
+        else if (a.startsWith("--q=")) walks.q(Double.parseDouble(a.substring(4)));
+        else if (a.startsWith("--seed=")) walks.seed(Long.parseLong(a.substring(7)));
+        else return false;
+        return true;
     }
-}
\ No newline at end of file
+}
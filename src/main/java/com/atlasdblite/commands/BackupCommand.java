@@ -1,72 +1,69 @@
 package com.atlasdblite.commands;
 
+import com.atlasdblite.engine.BackupManager;
 import com.atlasdblite.engine.GraphEngine;
+
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.*;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.stream.Stream;
+import java.util.List;
 
+/**
+ * Takes an online backup while the database stays writable. Only files changed since the last
+ * backup are stored (hard-linked where possible); the rest are referred to. See {@link BackupManager}.
+ */
 public class BackupCommand extends AbstractCommand {
+    static final String DEFAULT_DIR = "backups";
+    private static final String USAGE = "backup [--full] [--copy] [--dir=backups] | backup list [--dir=backups]";
+
     @Override
     public String getName() { return "backup"; }
 
     @Override
-    public String getDescription() { return "Creates a snapshot of the database directory and key."; }
+    public String getDescription() { return "Takes an incremental online backup. Usage: " + USAGE; }
 
     @Override
     public void execute(String[] args, GraphEngine engine) {
-        // Force save memory state to disk before backing up
-        System.out.println(" ... Flushing memory to disk...");
-        engine.commit();
-
-        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-        String backupDirName = "backup_" + timestamp;
-        File backupRoot = new File(backupDirName);
-        
-        // Paths
-        Path sourceDb = Paths.get("atlas_db");
-        Path sourceKey = Paths.get("atlas.key");
-        Path destDb = Paths.get(backupDirName, "atlas_db");
-        Path destKey = Paths.get(backupDirName, "atlas.key");
-
-        if (!Files.exists(sourceDb)) {
-            printError("No database directory found to backup.");
-            return;
+        boolean list = args.length > 1 && args[1].equals("list");
+        File root = new File(DEFAULT_DIR);
+        boolean full = false, copy = false;
+        for (int i = list ? 2 : 1; i < args.length; i++) {
+            String a = args[i];
+            if (a.startsWith("--dir=")) root = new File(a.substring(6));
+            else if (!list && a.equals("--full")) full = true;
+            else if (!list && a.equals("--copy")) copy = true;
+            else {
+                printError("Unknown option: " + a + ". Usage: " + USAGE);
+                return;
+            }
         }
 
         try {
-            // 1. Create Backup Root
-            if (!backupRoot.exists()) backupRoot.mkdirs();
-
-            // 2. Copy Key
-            if (Files.exists(sourceKey)) {
-                Files.copy(sourceKey, destKey, StandardCopyOption.REPLACE_EXISTING);
-                System.out.println("   + Key backed up.");
-            } else {
-                System.out.println("   ! Warning: No atlas.key found. Data may be unreadable.");
+            if (list) {
+                list(root);
+                return;
             }
-
-            // 3. Copy Shards (Recursive Directory Copy)
-            if (!Files.exists(destDb)) Files.createDirectories(destDb);
-            
-            try (Stream<Path> stream = Files.walk(sourceDb)) {
-                stream.forEach(source -> {
-                    Path destination = destDb.resolve(sourceDb.relativize(source));
-                    try {
-                        Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
-                    } catch (IOException e) {
-                        System.err.println("Failed to copy: " + source);
-                    }
-                });
-            }
-            
-            printSuccess("Backup created successfully in: " + backupDirName);
-
-        } catch (Exception e) {
+            BackupManager.Result result = engine.backup(new BackupManager(root).full(full).copy(copy));
+            String kind = result.isFull() ? "Full backup" : "Incremental backup (after " + result.parent + ")";
+            printSuccess(String.format("%s written to %s in %,dms: %d of %d files stored (%,d bytes), %,d bytes of WAL.",
+                    kind, result.directory.getPath(), result.millis, result.stored, result.files, result.storedBytes,
+                    result.walBytes));
+        } catch (IOException e) {
             printError("Backup failed: " + e.getMessage());
-            e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    private void list(File root) throws IOException {
+        List<BackupManager.Manifest> all = BackupManager.list(root);
+        if (all.isEmpty()) {
+            System.out.println(" No backups in " + root.getPath());
+            return;
+        }
+        SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        for (BackupManager.Manifest m : all) {
+            System.out.printf(" %-26s %s  %-12s %3d of %3d files  %s%n", m.name, time.format(new Date(m.created)),
+                    m.parent == null ? "full" : "incremental", m.stored(), m.files.size(), m.database);
+        }
+    }
+}
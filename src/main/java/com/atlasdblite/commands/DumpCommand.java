@@ -0,0 +1,87 @@
+package com.atlasdblite.commands;
+
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.io.GraphDump;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Command to write the graph to a binary dump, or to replace the database with one. Dumps do not
+ * depend on the database key, so they move data between databases far faster than CSV.
+ */
+public class DumpCommand extends AbstractCommand {
+    private static final String USAGE = "dump <file> [--threads=N] | dump load <file> --confirm [--threads=N]";
+
+    @Override
+    public String getName() { return "dump"; }
+
+    @Override
+    public String getDescription() { return "Writes or loads a binary dump of the graph. Usage: " + USAGE; }
+
+    /**
+     * Executes the dump or, with {@code load}, the restore.
+     *
+     * @param args The command arguments: the dump file, or {@code load}, the file and {@code --confirm}.
+     * @param engine The {@link GraphEngine} to dump from or restore into.
+     */
+    @Override
+    public void execute(String[] args, GraphEngine engine) {
+        if (!validateArgs(args, 1, USAGE)) return;
+
+        boolean load = args[1].equals("load");
+        if (load && !validateArgs(args, 2, USAGE)) return;
+        File file = new File(args[load ? 2 : 1]);
+        GraphDump dump = new GraphDump();
+        boolean confirmed = false;
+        try {
+            for (int i = load ? 3 : 2; i < args.length; i++) {
+                String a = args[i];
+                if (a.startsWith("--threads=")) dump.threads(Integer.parseInt(a.substring(10)));
+                else if (load && a.equals("--confirm")) confirmed = true;
+                else {
+                    printError("Unknown option: " + a);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            printError("Invalid option. Usage: " + USAGE);
+            return;
+        }
+
+        try {
+            if (!load) {
+                GraphDump.Result result = dump.dump(engine, file);
+                printSuccess(String.format("Dumped %,d nodes and %,d relations to %s (%,d bytes) in %,dms", result.nodes,
+                        result.relations, file.getPath(), result.bytes, result.millis));
+                return;
+            }
+            if (!file.isFile()) {
+                printError("File not found: " + file.getPath());
+                return;
+            }
+            // Loading empties the database directory before it reads the dump
+            if (file.getCanonicalFile().toPath().startsWith(new File(engine.getDbDirectory()).getCanonicalFile().toPath())) {
+                printError("The dump is inside the database directory, which loading empties. Move it elsewhere first.");
+                return;
+            }
+            // Safety check: loading replaces everything in the database
+            if (!confirmed) {
+                printError("DANGER: Loading a dump replaces the entire database.");
+                printError("To proceed, type: dump load " + args[2] + " --confirm");
+                return;
+            }
+            // A corrupt dump is rejected while the database is still intact
+            GraphDump.verify(file);
+            GraphDump.Result[] result = new GraphDump.Result[1];
+            engine.replaceDatabase(dir -> result[0] = dump.restore(file, dir));
+            printSuccess(String.format("Loaded %,d nodes and %,d relations from %s in %,dms", result[0].nodes,
+                    result[0].relations, file.getPath(), result[0].millis));
+        } catch (IOException e) {
+            printError((load ? "Load" : "Dump") + " failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            printError((load ? "Load" : "Dump") + " interrupted.");
+        }
+    }
+}
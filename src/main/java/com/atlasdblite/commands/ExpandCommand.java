@@ -0,0 +1,74 @@
+package com.atlasdblite.commands;
+
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.engine.KHopExpansion;
+import com.atlasdblite.models.Node;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Command to list everything reachable within a number of hops from a node.
+ * Supports a minimum depth, relation-type and label filters, and optional node hydration.
+ */
+public class ExpandCommand extends AbstractCommand {
+    private static final String USAGE = "expand <node> <max_depth> [--min=N] [--types=A,B] [--label=L] [--nodes]";
+
+    @Override
+    public String getName() { return "expand"; }
+
+    @Override
+    public String getDescription() { return "K-hop neighbourhood. Usage: " + USAGE; }
+
+    /**
+     * Resolves the start node, then prints the reachable IDs level by level as they are expanded.
+     *
+     * @param args The command arguments: start node, maximum depth and optional flags.
+     * @param engine The {@link GraphEngine} to traverse.
+     */
+    @Override
+    public void execute(String[] args, GraphEngine engine) {
+        if (!validateArgs(args, 2, USAGE)) return;
+
+        int maxDepth;
+        int minDepth = 1;
+        List<String> types = null;
+        String label = null;
+        boolean hydrate = false;
+        try {
+            maxDepth = Integer.parseInt(args[2]);
+            for (int i = 3; i < args.length; i++) {
+                String a = args[i];
+                if (a.startsWith("--min=")) minDepth = Integer.parseInt(a.substring(6));
+                else if (a.startsWith("--types=")) types = Arrays.asList(a.substring(8).split(","));
+                else if (a.startsWith("--label=")) label = a.substring(8);
+                else if (a.equalsIgnoreCase("--nodes")) hydrate = true;
+                else { printError("Unknown option: " + a); return; }
+            }
+        } catch (NumberFormatException e) {
+            printError("Depths must be integers.");
+            return;
+        }
+
+        Node start = resolveNode(args[1], engine);
+        if (start == null) return;
+
+        KHopExpansion expansion;
+        try {
+            expansion = engine.expand(Collections.singletonList(start.getId()), minDepth, maxDepth, types, label);
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
+            return;
+        }
+
+        int count = 0;
+        while (expansion.hasNext()) {
+            String id = expansion.next();
+            String display = hydrate ? String.valueOf(engine.getNode(id)) : id;
+            System.out.println("  [hop " + expansion.getDepth() + "] " + display);
+            count++;
+        }
+        printSuccess(count + " nodes within " + maxDepth + " hops of " + start.getId());
+    }
+}
@@ -1,60 +1,71 @@
 package com.atlasdblite.commands;
 
 import com.atlasdblite.engine.GraphEngine;
-import com.atlasdblite.models.Node;
-import com.atlasdblite.models.Relation;
-import java.io.FileWriter;
+import com.atlasdblite.io.GraphExporter;
+
+import java.io.File;
 import java.io.IOException;
 
 /**
- * Command to export the entire graph to a DOT file.
- * The DOT format is a graph description language that can be used by tools like Graphviz
- * to generate visual representations of the graph.
+ * Command to export the entire graph as DOT (for Graphviz), JSON lines, CSV (loadable again with
+ * {@code import}) or GraphML. Shards are streamed to the output in parallel, so exporting does not
+ * build the graph in memory.
  */
 public class ExportCommand extends AbstractCommand {
+    private static final String USAGE = "export <file> [--format=dot|jsonl|csv|graphml] [--parts] [--gzip] [--threads=N]";
+
     @Override
     public String getName() { return "export"; }
 
     @Override
-    public String getDescription() { return "Exports graph to DOT format. Usage: export <filename.dot>"; }
+    public String getDescription() { return "Exports the graph (format from the extension, default DOT). Usage: " + USAGE; }
 
     /**
      * Executes the export process.
-     * It iterates through all nodes and relations in the graph and writes them
-     * to the specified file in DOT syntax.
      *
-     * @param args The command arguments, where {@code args[1]} is the output filename.
+     * @param args The command arguments, where {@code args[1]} is the output file (or, with
+     *             {@code --parts}, directory).
      * @param engine The {@link GraphEngine} instance containing the graph data to be exported.
      */
     @Override
     public void execute(String[] args, GraphEngine engine) {
-        if (!validateArgs(args, 1, "export <filename.dot>")) return;
-
-        String filename = args[1];
-        // Use a try-with-resources block to ensure the FileWriter is closed automatically.
-        try (FileWriter fw = new FileWriter(filename)) {
-            // Start the DOT graph definition.
-            fw.write("digraph G {\n");
-            
-            // Define all nodes in the graph.
-            for (Node n : engine.getAllNodes()) {
-                // Format: "nodeId" [label="nodeId:NodeLabel"];
-                fw.write(String.format("  \"%s\" [label=\"%s:%s\"];\n", 
-                    n.getId(), n.getId(), n.getLabel()));
-            }
+        if (!validateArgs(args, 1, USAGE)) return;
 
-            // Define all edges (relations) in the graph.
-            for (Relation r : engine.getAllRelations()) {
-                // Format: "sourceId" -> "targetId" [label="RELATION_TYPE"];
-                fw.write(String.format("  \"%s\" -> \"%s\" [label=\"%s\"];\n", 
-                    r.getSourceId(), r.getTargetId(), r.getType()));
+        File target = new File(args[1]);
+        GraphExporter exporter = new GraphExporter(engine);
+        GraphExporter.Format format = GraphExporter.Format.fromFileName(args[1]);
+        boolean gzip = args[1].toLowerCase().endsWith(".gz");
+        try {
+            for (int i = 2; i < args.length; i++) {
+                String a = args[i];
+                if (a.startsWith("--format=")) format = GraphExporter.Format.valueOf(a.substring(9).toUpperCase());
+                else if (a.equals("--parts")) exporter.parts(true);
+                else if (a.equals("--gzip")) gzip = true;
+                else if (a.startsWith("--threads=")) exporter.threads(Integer.parseInt(a.substring(10)));
+                else {
+                    printError("Unknown option: " + a);
+                    return;
+                }
             }
+        } catch (IllegalArgumentException e) {
+            printError("Invalid option. Usage: " + USAGE);
+            return;
+        }
+        exporter.format(format != null ? format : GraphExporter.Format.DOT).gzip(gzip);
 
-            // Close the graph definition.
-            fw.write("}\n");
-            printSuccess("Exported graph to " + filename);
+        try {
+            GraphExporter.Result result = exporter.export(target);
+            String where = result.files.size() == 1 ? result.files.get(0).getPath()
+                    : result.files.size() + " files (" + result.files.get(0).getPath() + ", ...)";
+            printSuccess(String.format("Exported %,d nodes and %,d relations to %s in %,dms", result.nodes,
+                    result.relations, where, result.millis));
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
         } catch (IOException e) {
             printError("Export failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            printError("Export interrupted.");
         }
     }
-}
\ No newline at end of file
+}
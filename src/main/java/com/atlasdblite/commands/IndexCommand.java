@@ -4,8 +4,8 @@ import com.atlasdblite.engine.GraphEngine;
 
 /**
  * Command to enable or disable the automatic in-memory indexing feature.
- * When enabled, the graph engine maintains an inverted index for faster lookups (O(1) on average).
- * When disabled, searches revert to a linear scan (O(N)).
+ * When enabled, the graph engine maintains a persisted global index, so exact lookups only load
+ * the shards that hold matches. When disabled, searches revert to a linear scan (O(N)).
  */
 public class IndexCommand extends AbstractCommand {
     @Override
@@ -0,0 +1,146 @@
+package com.atlasdblite.commands;
+
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.engine.JobResult;
+import com.atlasdblite.engine.JobScheduler;
+import com.atlasdblite.models.Node;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command to run analytics in the background and follow them: submit a job, list jobs with
+ * their progress, cancel one, or show the persisted result of a finished one.
+ */
+public class JobsCommand extends AbstractCommand {
+    private static final int DEFAULT_TOP = 10;
+    private static final String USAGE = "jobs [list] | jobs submit <pagerank|communities|betweenness|wcc|scc|kcore|triangles|node2vec> [--option=value ...]"
+            + " | jobs status <id> | jobs cancel <id> | jobs result <id> [top]";
+
+    @Override
+    public String getName() { return "jobs"; }
+
+    @Override
+    public String getDescription() { return "Manages background analytics jobs. Usage: " + USAGE; }
+
+    @Override
+    public void execute(String[] args, GraphEngine engine) {
+        String action = args.length > 1 ? args[1].toLowerCase() : "list";
+        switch (action) {
+            case "list":
+                list(engine);
+                break;
+            case "submit":
+                submit(args, engine);
+                break;
+            case "status":
+            case "cancel":
+            case "result":
+                if (!validateArgs(args, 2, USAGE)) return;
+                long id;
+                try {
+                    id = Long.parseLong(args[2]);
+                } catch (NumberFormatException e) {
+                    printError("Invalid job id: " + args[2]);
+                    return;
+                }
+                JobScheduler.Job<?> job = engine.getJob(id);
+                if (job == null) {
+                    printError("No job " + id + ".");
+                    return;
+                }
+                if ("status".equals(action)) status(job);
+                else if ("cancel".equals(action)) cancel(job, engine);
+                else result(job, args, engine);
+                break;
+            default:
+                printError("Unknown action. Usage: " + USAGE);
+        }
+    }
+
+    private void list(GraphEngine engine) {
+        List<JobScheduler.Job<?>> jobs = engine.listJobs();
+        if (jobs.isEmpty()) {
+            System.out.println(" (no jobs)");
+            return;
+        }
+        System.out.printf("%n  %-5s %-12s %-10s %6s %9s  %s%n", "ID", "TYPE", "STATE", "DONE", "TIME", "OPTIONS");
+        for (JobScheduler.Job<?> job : jobs)
+            System.out.printf("  %-5d %-12s %-10s %5.0f%% %7dms  %s%n", job.getId(), job.getType(),
+                    job.getState(), job.progress() * 100, job.millis(), job.getParams().isEmpty() ? "" : job.getParams());
+        System.out.println();
+    }
+
+    private void submit(String[] args, GraphEngine engine) {
+        if (!validateArgs(args, 2, USAGE)) return;
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 3; i < args.length; i++) {
+            String a = args[i];
+            if (!a.startsWith("--")) {
+                printError("Options must look like --name=value: " + a);
+                return;
+            }
+            int eq = a.indexOf('=');
+            if (eq < 0) options.put(a.substring(2), "true");
+            else options.put(a.substring(2, eq), a.substring(eq + 1));
+        }
+        try {
+            JobScheduler.Job<?> job = engine.submitJob(args[2], options);
+            printSuccess("Job " + job.getId() + " (" + job.getType() + ") " + job.getState().name().toLowerCase()
+                    + ". Follow it with 'jobs status " + job.getId() + "'.");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            printError(e.getMessage());
+        }
+    }
+
+    private void status(JobScheduler.Job<?> job) {
+        System.out.printf(" Job %d (%s): %s", job.getId(), job.getType(), job.getState());
+        if (job.getState() == JobScheduler.State.RUNNING && job.getControl().getTotal() > 0)
+            System.out.printf(", %d / %d (%.0f%%)", job.getControl().getDone(), job.getControl().getTotal(), job.progress() * 100);
+        if (job.getStarted() > 0)
+            System.out.printf(", %dms", job.millis());
+        System.out.println();
+        if (job.getError() != null)
+            System.out.println("   Error: " + job.getError());
+        job.getSummary().forEach((k, v) -> System.out.printf("   %-14s %s%n", k, v));
+    }
+
+    private void cancel(JobScheduler.Job<?> job, GraphEngine engine) {
+        if (engine.cancelJob(job.getId()))
+            printSuccess("Cancellation of job " + job.getId() + " requested.");
+        else
+            printError("Job " + job.getId() + " has already finished.");
+    }
+
+    private void result(JobScheduler.Job<?> job, String[] args, GraphEngine engine) {
+        int top = DEFAULT_TOP;
+        if (args.length > 3) {
+            try {
+                top = Integer.parseInt(args[3]);
+            } catch (NumberFormatException e) {
+                printError("Invalid number: " + args[3]);
+                return;
+            }
+        }
+        if (job.getState() != JobScheduler.State.DONE) {
+            printError("Job " + job.getId() + " is " + job.getState().name().toLowerCase() + ".");
+            return;
+        }
+        JobResult result = engine.getJobResult(job.getId());
+        if (result == null) {
+            printError("No stored result for job " + job.getId() + ".");
+            return;
+        }
+        System.out.println("\n === JOB " + job.getId() + " (" + job.getType().toUpperCase() + ") ===");
+        result.getSummary().forEach((k, v) -> System.out.printf("  %-16s %s%n", k, v));
+        if (result.size() > 0) {
+            System.out.println("  --- Top " + top + " of " + result.size() + " nodes ---");
+            for (int i : result.top(top)) {
+                Node n = engine.getNode(result.idAt(i));
+                System.out.printf("  %-15s %-15s %12.4f%n", result.idAt(i), n != null ? n.getLabel() : "?", result.valueAt(i));
+            }
+        }
+        System.out.println(" ================================\n");
+    }
+}
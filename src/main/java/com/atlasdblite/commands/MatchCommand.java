@@ -0,0 +1,57 @@
+package com.atlasdblite.commands;
+
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.models.Node;
+import com.atlasdblite.query.MatchPattern;
+import com.atlasdblite.query.PatternMatcher;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Command to run multi-hop pattern queries.
+ * Rows are printed as the matcher produces them instead of after the whole result is built.
+ */
+public class MatchCommand extends AbstractCommand {
+    @Override
+    public String getName() { return "match"; }
+
+    @Override
+    public String getDescription() {
+        return "Pattern query. Usage: match (a:User)-[:MANAGES]->(s) [where a.key <op> val [and ...]] [limit N]";
+    }
+
+    /**
+     * Parses the pattern from the remaining arguments and streams matching rows.
+     *
+     * @param args The command arguments; everything after {@code args[0]} is the pattern text.
+     * @param engine The {@link GraphEngine} to query.
+     */
+    @Override
+    public void execute(String[] args, GraphEngine engine) {
+        if (!validateArgs(args, 1, "match (a:Label)-[:TYPE]->(b) [where a.key = val] [limit N]")) return;
+
+        MatchPattern pattern;
+        try {
+            pattern = MatchPattern.parse(String.join(" ", Arrays.copyOfRange(args, 1, args.length)));
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
+            return;
+        }
+
+        System.out.println(" ... Matching " + pattern.getNodes().size() + " variables, " + pattern.getEdges().size() + " edges");
+        int rows = new PatternMatcher(engine).execute(pattern, row -> {
+            StringBuilder sb = new StringBuilder(" >");
+            for (Map.Entry<String, Node> e : row.entrySet()) {
+                if (e.getKey().startsWith("_")) continue; // anonymous variable
+                sb.append(' ').append(e.getKey()).append('=').append(e.getValue().getId())
+                  .append(':').append(e.getValue().getLabel());
+            }
+            System.out.println(sb);
+            return true;
+        });
+
+        if (rows == 0) System.out.println(" > No matches found.");
+        else System.out.println(" > " + rows + " rows.");
+    }
+}
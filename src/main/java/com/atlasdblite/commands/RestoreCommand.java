@@ -0,0 +1,89 @@
+package com.atlasdblite.commands;
+
+import com.atlasdblite.engine.BackupManager;
+import com.atlasdblite.engine.GraphEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Rebuilds a database from a backup and the chain of earlier backups it refers to. By default it
+ * replaces the open database, which requires {@code --confirm}; {@code --to} restores into another,
+ * empty directory instead.
+ */
+public class RestoreCommand extends AbstractCommand {
+    private static final String USAGE = "restore <backup|latest> --confirm [--dir=backups] | restore <backup|latest> --to=<db-dir> [--dir=backups]";
+
+    @Override
+    public String getName() { return "restore"; }
+
+    @Override
+    public String getDescription() { return "Restores a database from a backup chain. Usage: " + USAGE; }
+
+    @Override
+    public void execute(String[] args, GraphEngine engine) {
+        if (!validateArgs(args, 1, USAGE)) return;
+
+        File root = new File(BackupCommand.DEFAULT_DIR);
+        String to = null;
+        boolean confirmed = false;
+        for (int i = 2; i < args.length; i++) {
+            String a = args[i];
+            if (a.startsWith("--dir=")) root = new File(a.substring(6));
+            else if (a.startsWith("--to=")) to = a.substring(5);
+            else if (a.equals("--confirm")) confirmed = true;
+            else {
+                printError("Unknown option: " + a + ". Usage: " + USAGE);
+                return;
+            }
+        }
+
+        try {
+            File backup = resolve(args[1], root);
+            if (backup == null) return;
+            BackupManager.Manifest manifest = BackupManager.verify(backup);
+            int[] chain = new int[1];
+            if (to != null) {
+                chain[0] = BackupManager.restore(backup, manifest, to);
+                printSuccess(String.format("Restored %s (%d files from %d backups) into %s; open it to replay %,d bytes of WAL.",
+                        manifest.name, manifest.files.size(), chain[0], to, manifest.walBytes));
+                return;
+            }
+            // Safety check: restoring replaces everything in the open database
+            if (!confirmed) {
+                printError("DANGER: Restoring replaces the entire database.");
+                printError("To proceed, type: restore " + args[1] + " --confirm");
+                return;
+            }
+            engine.replaceDatabase(dir -> chain[0] = BackupManager.restore(backup, manifest, dir));
+            printSuccess(String.format("Restored %s (%d files from %d backups, %,d bytes of WAL replayed).",
+                    manifest.name, manifest.files.size(), chain[0], manifest.walBytes));
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
+        } catch (IOException e) {
+            printError("Restore failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            printError("Restore interrupted.");
+        }
+    }
+
+    /** A backup directory by path, by name under {@code root}, or the newest one for {@code latest}. */
+    private File resolve(String name, File root) throws IOException {
+        if (name.equals("latest")) {
+            List<BackupManager.Manifest> all = BackupManager.list(root);
+            if (all.isEmpty()) {
+                printError("No backups in " + root.getPath());
+                return null;
+            }
+            return new File(root, all.get(all.size() - 1).name);
+        }
+        File direct = new File(name);
+        if (new File(direct, BackupManager.MANIFEST).isFile()) return direct;
+        File named = new File(root, name);
+        if (new File(named, BackupManager.MANIFEST).isFile()) return named;
+        printError("No backup found at " + name);
+        return null;
+    }
+}
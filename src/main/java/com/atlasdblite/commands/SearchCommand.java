@@ -1,32 +1,53 @@
 package com.atlasdblite.commands;
 
 import com.atlasdblite.engine.GraphEngine;
-import com.atlasdblite.models.Node;
+import com.atlasdblite.engine.SearchHit;
+import java.util.ArrayList;
 import java.util.List;
 
 public class SearchCommand extends AbstractCommand {
+    private static final int DEFAULT_TOP = 10;
+
     @Override
     public String getName() { return "search"; }
 
     @Override
-    public String getDescription() { return "Fuzzy search for nodes. Usage: search <query>"; }
+    public String getDescription() { return "Ranked full-text search. Usage: search <text...> [--top=N]"; }
 
     @Override
     public void execute(String[] args, GraphEngine engine) {
-        if (!validateArgs(args, 1, "search <text>")) return;
+        if (!validateArgs(args, 1, "search <text...> [--top=N]")) return;
+
+        int top = DEFAULT_TOP;
+        List<String> words = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--top=")) {
+                try {
+                    top = Integer.parseInt(args[i].substring(6));
+                } catch (NumberFormatException e) {
+                    printError("--top must be an integer.");
+                    return;
+                }
+                if (top < 0) {
+                    printError("--top must not be negative.");
+                    return;
+                }
+            } else {
+                words.add(args[i]);
+            }
+        }
+        String query = String.join(" ", words);
 
-        String query = args[1];
-        
-        // Delegate to engine.search() which handles Sharding + Indexing + List logic
-        List<Node> matches = engine.search(query);
+        // Tokenized, prefix-matching and typo-tolerant; best matches first
+        List<SearchHit> hits = engine.searchTop(query, top);
 
         System.out.println("--- Search Results for '" + query + "' ---");
-        if (matches.isEmpty()) {
+        if (hits.isEmpty()) {
             System.out.println(" > No matches found.");
         } else {
-            for (Node n : matches) {
-                System.out.println(" > " + n);
+            for (SearchHit hit : hits) {
+                System.out.println(String.format(" > [%.2f] %s", hit.score, hit.node));
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -2,8 +2,11 @@ package com.atlasdblite.commands;
 
 import com.atlasdblite.engine.GraphEngine;
 import com.atlasdblite.models.Node;
+import com.atlasdblite.query.Aggregation;
+import com.atlasdblite.query.Condition;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 public class SelectCommand extends AbstractCommand {
     @Override
@@ -11,11 +14,16 @@ public class SelectCommand extends AbstractCommand {
 
     @Override
     public String getDescription() { 
-        return "Runs AQL queries. Usage: select <label> where <key> <op> <val>"; 
+        return "Runs AQL queries. Usage: select <label> where <key> <op> <val> | select <fn>(<prop>|*) <Label|*|[TYPE]> [where ...] [group by key]"; 
     }
 
     @Override
     public void execute(String[] args, GraphEngine engine) {
+        if (args.length >= 3 && args[1].contains("(")) {
+            executeAggregate(String.join(" ", Arrays.copyOfRange(args, 1, args.length)), engine);
+            return;
+        }
+
         if (args.length < 6 || !args[2].equalsIgnoreCase("where")) {
             printError("Invalid Syntax. Usage: select <Label> where <Key> <Op> <Value>");
             printError("Operators: = , != , > , < , contains");
@@ -23,59 +31,48 @@ public class SelectCommand extends AbstractCommand {
         }
 
         String targetLabel = args[1];
-        String key = args[3];
-        String op = args[4];
-        String val = args[5];
+        Condition condition = new Condition(args[3], args[4], args[5]);
 
-        System.out.println(" ... Scanning for " + targetLabel + " where " + key + " " + op + " " + val);
+        System.out.println(" ... Scanning for " + targetLabel + " where " + condition);
 
-        List<Node> results = engine.getAllNodes().stream()
-            // 1. Filter by Label (case insensitive)
-            .filter(n -> n.getLabel().equalsIgnoreCase(targetLabel))
-            // 2. Filter by Condition (Handles Lists safely)
-            .filter(n -> checkCondition(n, key, op, val))
-            .collect(Collectors.toList());
+        // Served from the engine's query cache when nothing relevant was written since the last run
+        List<Node> results = engine.select(targetLabel, condition);
 
         printTable(results);
     }
 
-    private boolean checkCondition(Node n, String key, String op, String expectedVal) {
-        Object actualObj = n.getProperties().get(key);
-        if (actualObj == null) return false;
-
-        // Handle List: [Java, Python] contains Java
-        if (actualObj instanceof List) {
-            List<?> list = (List<?>) actualObj;
-            if (op.equalsIgnoreCase("contains")) {
-                return list.stream().anyMatch(item -> item.toString().equalsIgnoreCase(expectedVal));
-            }
-            // For Lists, operators like >, <, = are ambiguous in this simple engine.
-            // We treat '=' as "List contains this exact value" for usability.
-            if (op.equals("=")) {
-                return list.contains(expectedVal);
-            }
-            return false;
+    /**
+     * Runs an aggregate such as {@code select count(*) Person group by city}; see {@link Aggregation#parse}.
+     */
+    private void executeAggregate(String text, GraphEngine engine) {
+        Aggregation agg;
+        try {
+            agg = Aggregation.parse(text);
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
+            printError("Functions: count, sum, avg, min, max");
+            return;
         }
 
-        // Handle String/Number
-        String actualVal = actualObj.toString();
-
-        switch (op.toLowerCase()) {
-            case "=": return actualVal.equalsIgnoreCase(expectedVal);
-            case "!=": return !actualVal.equalsIgnoreCase(expectedVal);
-            case "contains": return actualVal.toLowerCase().contains(expectedVal.toLowerCase());
-            case ">": 
-            case "<":
-                try {
-                    double actualNum = Double.parseDouble(actualVal);
-                    double expectedNum = Double.parseDouble(expectedVal);
-                    return op.equals(">") ? actualNum > expectedNum : actualNum < expectedNum;
-                } catch (NumberFormatException e) {
-                    return false;
-                }
-            default:
-                return false;
+        Map<String, Number> rows = engine.aggregate(agg);
+        String header = agg.getFunction().name().toLowerCase() + "(" + (agg.getProperty() == null ? "*" : agg.getProperty()) + ")";
+        if (agg.getGroupBy() == null) {
+            System.out.println(" > " + header + " = " + format(rows.get(Aggregation.ALL)));
+            return;
         }
+
+        System.out.println(String.format("+-%-25s-+-%-15s-+", "-------------------------", "---------------"));
+        System.out.println(String.format("| %-25s | %-15s |", agg.getGroupBy().toUpperCase(), header.toUpperCase()));
+        System.out.println(String.format("+-%-25s-+-%-15s-+", "-------------------------", "---------------"));
+        rows.forEach((group, value) -> System.out.println(String.format("| %-25s | %-15s |", group, format(value))));
+        System.out.println(String.format("+-%-25s-+-%-15s-+", "-------------------------", "---------------"));
+        System.out.println(" > " + rows.size() + " groups.");
+    }
+
+    private static String format(Number n) {
+        if (n == null) return "n/a";
+        if (n instanceof Long) return n.toString();
+        return String.format("%.4f", n.doubleValue());
     }
 
     private void printTable(List<Node> nodes) {
@@ -0,0 +1,57 @@
+package com.atlasdblite.commands;
+
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.engine.SearchHit;
+import com.atlasdblite.models.Node;
+import java.util.List;
+
+/**
+ * Command to find the nodes most similar to a vectorized node, by approximate nearest-neighbour
+ * search over their feature vectors.
+ */
+public class SimilarCommand extends AbstractCommand {
+    private static final int DEFAULT_TOP = 10;
+
+    @Override
+    public String getName() { return "similar"; }
+
+    @Override
+    public String getDescription() { return "Nodes most similar to a vectorized node. Usage: similar <node> [k]"; }
+
+    @Override
+    public void execute(String[] args, GraphEngine engine) {
+        if (!validateArgs(args, 1, "similar <node> [k]")) return;
+
+        int k = DEFAULT_TOP;
+        if (args.length > 2) {
+            try {
+                k = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                printError("k must be an integer.");
+                return;
+            }
+        }
+        Node node = resolveNode(args[1], engine);
+        if (node == null) return;
+
+        List<SearchHit> hits;
+        long start = System.nanoTime();
+        try {
+            hits = engine.similar(node.getId(), k);
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
+            return;
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+
+        System.out.println("--- Most similar to " + node.getId() + " ---");
+        if (hits.isEmpty()) {
+            System.out.println(" > No other vectorized nodes.");
+        } else {
+            for (SearchHit hit : hits) {
+                System.out.println(String.format(" > [%.3f] %s", hit.score, hit.node));
+            }
+        }
+        System.out.printf(" [DONE] %d results in %.2fms%n", hits.size(), micros / 1000.0);
+    }
+}
@@ -1,6 +1,7 @@
 package com.atlasdblite.commands;
 
 import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.engine.QueryCache;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -16,11 +17,11 @@ public class StatsCommand extends AbstractCommand {
 
     @Override
     public void execute(String[] args, GraphEngine engine) {
-        System.out.println(" ... Calculating statistics (scanning shards)...");
+        System.out.println(" ... Calculating statistics...");
 
-        // 1. Get Logical Counts (Triggers lazy loading of all shards)
-        int nodes = engine.getAllNodes().size();
-        int edges = engine.getAllRelations().size();
+        // 1. Get Logical Counts (from the catalog for unloaded shards, so nothing is loaded)
+        long nodes = engine.countNodes();
+        long edges = engine.countRelations();
         
         // 2. Calculate Physical Storage Size
         long totalSize = 0;
@@ -46,6 +47,10 @@ public class StatsCommand extends AbstractCommand {
         System.out.println(String.format("  %-15s : %.2f KB", "Disk Usage", totalSize / 1024.0));
         System.out.println(String.format("  %-15s : %s", "Encryption", "AES-256"));
         System.out.println(String.format("  %-15s : %s", "Auto-Index", engine.isAutoIndexing() ? "ENABLED (O(1))" : "DISABLED (O(N))"));
+        QueryCache cache = engine.getQueryCache();
+        System.out.println(String.format("  %-15s : %d entries, %.1f%% hit rate (%d hits / %d misses)",
+                "Query Cache", cache.size(), cache.getHitRate() * 100, cache.getHits(), cache.getMisses()));
+        System.out.println(String.format("  %-15s : %d invalidated, %d evicted", "", cache.getInvalidations(), cache.getEvictions()));
         System.out.println(" =========================================");
     }
 }
\ No newline at end of file
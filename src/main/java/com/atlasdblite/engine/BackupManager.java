@@ -0,0 +1,400 @@
+package com.atlasdblite.engine;
+
+import com.atlasdblite.security.CryptoManager;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Online, incremental backups of a database directory, and restores from them.
+ * <p>
+ * The engine never rewrites its files in place: shards, sidecars, the catalog and job files are
+ * all replaced by an atomic rename. A hard link to one of them is therefore a consistent copy of
+ * that version, made instantly and without blocking anything; where links are not possible the
+ * file is copied instead. A shard file is identified by the save counter and highest WAL entry in
+ * its header, which every save changes; modification times are too coarse for files that can be
+ * rewritten at the same length within one tick. Other files are identified by their length and
+ * modification time. A backup stores the files whose stamp differs from the previous backup of
+ * the same database and refers to that backup for the rest, so a chain of incrementals costs one
+ * full backup plus what changed.
+ * <p>
+ * Changes not yet saved to a shard file are in the WAL. A backup takes its files first, then the
+ * WAL up to the last complete entry, so a restore replays the WAL over the files and ends at the
+ * moment the WAL was read, as crash recovery would. Checkpoints do not truncate the WAL while a
+ * backup runs, or files taken before the checkpoint would lose the entries that cover them.
+ * <p>
+ * A backup directory holds {@code manifest.properties}, the key and the stored files under
+ * {@code atlas_db}. The manifest is written last; a directory without one is ignored.
+ */
+public class BackupManager {
+    public static final String MANIFEST = "manifest.properties";
+    private static final String DATA_DIR = "atlas_db";
+    private static final String KEY_FILE = "atlas.key";
+    private static final int FORMAT = 1;
+
+    public static class Result {
+        public final File directory;
+        /** The backup this one refers to for unchanged files, or null for a full backup. */
+        public final String parent;
+        public final int files;
+        /** Files stored in this backup; the rest are in earlier ones. */
+        public final int stored;
+        public final long storedBytes;
+        /** Bytes of WAL included, i.e. the log position the backup is consistent at. */
+        public final long walBytes;
+        public final long millis;
+
+        Result(File directory, String parent, int files, int stored, long storedBytes, long walBytes, long millis) {
+            this.directory = directory;
+            this.parent = parent;
+            this.files = files;
+            this.stored = stored;
+            this.storedBytes = storedBytes;
+            this.walBytes = walBytes;
+            this.millis = millis;
+        }
+
+        public boolean isFull() {
+            return parent == null;
+        }
+    }
+
+    private final File root;
+    private boolean full;
+    private boolean copy;
+    // Cleared for the rest of a backup once a link fails, e.g. across file systems
+    private boolean linking;
+
+    /** @param root The directory that holds the backups, each in a {@code backup_<time>} subdirectory. */
+    public BackupManager(File root) {
+        this.root = root;
+    }
+
+    /** Stores every file, starting a new chain, even if an earlier backup could be referred to. */
+    public BackupManager full(boolean on) { this.full = on; return this; }
+
+    /** Copies files instead of hard-linking them, e.g. when the backup must not share disk blocks with the database. */
+    public BackupManager copy(boolean on) { this.copy = on; return this; }
+
+    // --- Backup ---
+
+    /**
+     * Writes a backup of {@code dbDirectory}. Called by {@link GraphEngine#backup}, which keeps the
+     * WAL from being truncated meanwhile.
+     */
+    Result write(String dbDirectory, TransactionManager wal, CryptoManager crypto) throws IOException {
+        long start = System.currentTimeMillis();
+        Path db = Paths.get(dbDirectory).toAbsolutePath().normalize();
+        root.mkdirs();
+        linking = !copy;
+        Manifest parent = full ? null : latest(db.toString());
+        File dir = newBackupDir(start);
+        Path data = dir.toPath().resolve(DATA_DIR);
+        Files.createDirectories(data);
+
+        Manifest manifest = new Manifest(dir.getName());
+        manifest.database = db.toString();
+        manifest.parent = parent != null ? parent.name : null;
+        manifest.created = start;
+        int stored = 0;
+        long storedBytes = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(db, BackupManager::isPersistent)) {
+            for (Path file : files) {
+                FileEntry previous = parent != null ? parent.files.get(file.getFileName().toString()) : null;
+                FileEntry entry = take(file, data, previous, dir.getName(), crypto);
+                if (entry == null) continue; // deleted meanwhile
+                manifest.files.put(entry.name, entry);
+                if (entry.holder.equals(dir.getName())) {
+                    stored++;
+                    storedBytes += entry.length;
+                }
+            }
+        }
+
+        // The WAL last: its entries cover every change since the files above were written
+        manifest.walBytes = wal.length();
+        try (FileChannel in = FileChannel.open(db.resolve(TransactionManager.WAL_FILE), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(data.resolve(TransactionManager.WAL_FILE), StandardOpenOption.CREATE_NEW,
+                     StandardOpenOption.WRITE)) {
+            long copied = 0;
+            while (copied < manifest.walBytes) {
+                long n = in.transferTo(copied, manifest.walBytes - copied, out);
+                if (n <= 0) break; // truncated by a wipe
+                copied += n;
+            }
+            manifest.walBytes = copied;
+        }
+
+        Path key = Paths.get(KEY_FILE);
+        if (Files.exists(key)) Files.copy(key, dir.toPath().resolve(KEY_FILE));
+        manifest.save(new File(dir, MANIFEST));
+        return new Result(dir, manifest.parent, manifest.files.size(), stored, storedBytes, manifest.walBytes,
+                System.currentTimeMillis() - start);
+    }
+
+    /** Files the engine replaces by rename (not the WAL or scratch files). */
+    private static boolean isPersistent(Path p) {
+        String name = p.getFileName().toString();
+        return Files.isRegularFile(p) && (name.endsWith(".dat") || name.endsWith(".idx") || name.endsWith(".res"));
+    }
+
+    private static boolean isShard(String name) {
+        return name.startsWith("part_") && name.endsWith(".dat");
+    }
+
+    /**
+     * Refers to {@code previous} if the file is unchanged since, otherwise links or copies it into
+     * {@code data}. Returns null if the file no longer exists.
+     */
+    private FileEntry take(Path file, Path data, FileEntry previous, String backupName, CryptoManager crypto)
+            throws IOException {
+        String name = file.getFileName().toString();
+        if (isShard(name)) {
+            long[] saved;
+            try {
+                saved = DataSegment.readSavedStamp(file, crypto);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            if (saved != null && previous != null && previous.version == saved[0] && previous.lsn == saved[1])
+                return previous;
+            FileEntry entry = store(file, data.resolve(name), name, backupName);
+            if (entry == null) return null;
+            // Stamped from what was stored, which may be newer than the version read above
+            long[] kept = DataSegment.readSavedStamp(data.resolve(name), crypto);
+            return kept == null ? entry : new FileEntry(name, backupName, entry.length, entry.modified, kept[0], kept[1]);
+        }
+        try {
+            BasicFileAttributes current = Files.readAttributes(file, BasicFileAttributes.class);
+            if (previous != null && previous.length == current.size()
+                    && previous.modified == current.lastModifiedTime().toMillis())
+                return previous;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return store(file, data.resolve(name), name, backupName);
+    }
+
+    /** Links or copies the file to {@code target}. Returns null if the file no longer exists. */
+    private FileEntry store(Path file, Path target, String name, String backupName) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            BasicFileAttributes before;
+            try {
+                before = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            long modified = before.lastModifiedTime().toMillis();
+
+            if (linking) {
+                try {
+                    // The link names the version the path had at this instant; read its stamp from the link
+                    Files.createLink(target, file);
+                    BasicFileAttributes linked = Files.readAttributes(target, BasicFileAttributes.class);
+                    return new FileEntry(name, backupName, linked.size(), linked.lastModifiedTime().toMillis());
+                } catch (NoSuchFileException e) {
+                    if (!Files.exists(file)) return null;
+                    continue;
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    linking = false;
+                }
+            }
+            try {
+                Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            // A rename during the copy swaps the file under us only between opens, so a matching
+            // stamp afterwards means the copy is of the version stamped
+            BasicFileAttributes after = Files.readAttributes(target, BasicFileAttributes.class);
+            if (after.size() == before.size() && after.lastModifiedTime().toMillis() == modified)
+                return new FileEntry(name, backupName, before.size(), modified);
+            if (attempt >= 3) throw new IOException("File keeps changing during backup: " + name);
+        }
+    }
+
+    private File newBackupDir(long time) {
+        String base = "backup_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date(time));
+        File dir = new File(root, base);
+        for (int i = 1; dir.exists(); i++) dir = new File(root, base + "_" + i);
+        return dir;
+    }
+
+    /** The newest complete backup of the given database, or null. */
+    private Manifest latest(String database) throws IOException {
+        List<Manifest> all = list(root);
+        for (int i = all.size() - 1; i >= 0; i--)
+            if (database.equals(all.get(i).database)) return all.get(i);
+        return null;
+    }
+
+    // --- Listing ---
+
+    /** The complete backups under {@code root}, oldest first. */
+    public static List<Manifest> list(File root) throws IOException {
+        List<Manifest> all = new ArrayList<>();
+        File[] dirs = root.listFiles(f -> new File(f, MANIFEST).isFile());
+        if (dirs == null) return all;
+        Arrays.sort(dirs, Comparator.comparing(File::getName));
+        for (File d : dirs) all.add(Manifest.load(d));
+        return all;
+    }
+
+    // --- Restore ---
+
+    /**
+     * Checks that a backup and every backup it refers to are present and intact, and that it was
+     * made with this installation's key (installing the key if there is none yet).
+     * @param backup A backup directory; the backups it refers to are looked for next to it.
+     * @return The backup's manifest, for {@link #restore}.
+     * @throws IOException If a file of the chain is missing or has the wrong length, or the key differs.
+     */
+    public static Manifest verify(File backup) throws IOException {
+        if (!new File(backup, MANIFEST).isFile()) throw new IOException("Not a complete backup: " + backup.getPath());
+        Manifest manifest = Manifest.load(backup);
+        File root = backup.getAbsoluteFile().getParentFile();
+        for (FileEntry e : manifest.files.values()) {
+            File f = new File(new File(new File(root, e.holder), DATA_DIR), e.name);
+            if (f.length() != e.length)
+                throw new IOException("Backup chain is broken: " + e.holder + "/" + DATA_DIR + "/" + e.name
+                        + (f.exists() ? " has the wrong length" : " is missing"));
+        }
+        Path backupKey = backup.toPath().resolve(KEY_FILE);
+        Path key = Paths.get(KEY_FILE);
+        if (Files.exists(backupKey)) {
+            if (!Files.exists(key)) Files.copy(backupKey, key);
+            else if (!Arrays.equals(Files.readAllBytes(key), Files.readAllBytes(backupKey)))
+                throw new IOException("Backup was made with a different key (" + backupKey + ")");
+        }
+        return manifest;
+    }
+
+    /**
+     * Rebuilds {@code dbDirectory} from a verified backup: every file from the backup that holds
+     * it, then the WAL, which the engine replays when it opens the database. Use
+     * {@link GraphEngine#replaceDatabase} to restore over an open database.
+     * @throws IllegalArgumentException If the directory already holds shards.
+     */
+    public static int restore(File backup, Manifest manifest, String dbDirectory) throws IOException {
+        Path db = Paths.get(dbDirectory);
+        Files.createDirectories(db);
+        try (DirectoryStream<Path> existing = Files.newDirectoryStream(db, "part_*.dat")) {
+            if (existing.iterator().hasNext())
+                throw new IllegalArgumentException("Database directory already holds data: " + dbDirectory);
+        }
+        File root = backup.getAbsoluteFile().getParentFile();
+        Set<String> holders = new TreeSet<>();
+        for (FileEntry e : manifest.files.values()) {
+            Path source = root.toPath().resolve(e.holder).resolve(DATA_DIR).resolve(e.name);
+            Path target = db.resolve(e.name);
+            // Linking back is safe too: the engine replaces these files, it never writes into them
+            try {
+                Files.deleteIfExists(target);
+                Files.createLink(target, source);
+            } catch (UnsupportedOperationException | FileSystemException linkFailed) {
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            holders.add(e.holder);
+        }
+        // Appended rather than replaced, so an engine holding the (empty) log open writes after it
+        Path walSource = backup.toPath().resolve(DATA_DIR).resolve(TransactionManager.WAL_FILE);
+        try (FileChannel in = FileChannel.open(walSource, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(db.resolve(TransactionManager.WAL_FILE), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long size = in.size();
+            for (long done = 0; done < size; ) done += in.transferTo(done, size - done, out);
+        }
+        return holders.size();
+    }
+
+    // --- Manifest ---
+
+    public static class FileEntry {
+        public final String name;
+        /** The backup directory that stores the file. */
+        public final String holder;
+        public final long length;
+        public final long modified;
+        /** For shard files, the save counter and highest WAL entry held; -1 otherwise. */
+        public final long version;
+        public final long lsn;
+
+        FileEntry(String name, String holder, long length, long modified) {
+            this(name, holder, length, modified, -1, -1);
+        }
+
+        FileEntry(String name, String holder, long length, long modified, long version, long lsn) {
+            this.name = name;
+            this.holder = holder;
+            this.length = length;
+            this.modified = modified;
+            this.version = version;
+            this.lsn = lsn;
+        }
+    }
+
+    /** What a backup contains: per file, its stamp and which backup stores it. */
+    public static class Manifest {
+        public final String name;
+        public String database;
+        public String parent;
+        public long created;
+        public long walBytes;
+        public final Map<String, FileEntry> files = new TreeMap<>();
+
+        Manifest(String name) {
+            this.name = name;
+        }
+
+        /** Files stored in this backup itself. */
+        public int stored() {
+            int n = 0;
+            for (FileEntry e : files.values()) if (e.holder.equals(name)) n++;
+            return n;
+        }
+
+        void save(File file) throws IOException {
+            Properties p = new Properties();
+            p.setProperty("format", String.valueOf(FORMAT));
+            p.setProperty("database", database);
+            if (parent != null) p.setProperty("parent", parent);
+            p.setProperty("created", String.valueOf(created));
+            p.setProperty("wal.bytes", String.valueOf(walBytes));
+            for (FileEntry e : files.values())
+                p.setProperty("file." + e.name, e.holder + "," + e.length + "," + e.modified
+                        + (e.version >= 0 ? "," + e.version + "," + e.lsn : ""));
+            File temp = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temp)) {
+                p.store(out, "AtlasDB backup");
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        static Manifest load(File dir) throws IOException {
+            Properties p = new Properties();
+            try (InputStream in = new FileInputStream(new File(dir, MANIFEST))) {
+                p.load(in);
+            }
+            int format = Integer.parseInt(p.getProperty("format", "0"));
+            if (format != FORMAT) throw new IOException("Unsupported backup format " + format + " in " + dir.getPath());
+            Manifest m = new Manifest(dir.getName());
+            m.database = p.getProperty("database");
+            m.parent = p.getProperty("parent");
+            m.created = Long.parseLong(p.getProperty("created", "0"));
+            m.walBytes = Long.parseLong(p.getProperty("wal.bytes", "0"));
+            for (String key : p.stringPropertyNames()) {
+                if (!key.startsWith("file.")) continue;
+                String[] v = p.getProperty(key).split(",");
+                String name = key.substring(5);
+                m.files.put(name, v.length >= 5
+                        ? new FileEntry(name, v[0], Long.parseLong(v[1]), Long.parseLong(v[2]), Long.parseLong(v[3]), Long.parseLong(v[4]))
+                        : new FileEntry(name, v[0], Long.parseLong(v[1]), Long.parseLong(v[2])));
+            }
+            return m;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.atlasdblite.engine;
+
+import com.atlasdblite.security.CryptoManager;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Persisted per-shard statistics, so counts can be answered for shards that are not loaded.
+ * <p>
+ * Each entry is stamped with the length and modification time of the shard file it describes.
+ * An entry whose stamp no longer matches the file (e.g. a crash between the segment write and the
+ * catalog write, or a restored backup) is ignored and the shard is loaded instead.
+ */
+public class Catalog {
+    private static final String CATALOG_FILE = "catalog.dat";
+    private static final String HEADER = "CAT_V1";
+
+    private static class Entry {
+        final long fileLength;
+        final long fileModified;
+        final SegmentStats stats;
+
+        Entry(long fileLength, long fileModified, SegmentStats stats) {
+            this.fileLength = fileLength;
+            this.fileModified = fileModified;
+            this.stats = stats;
+        }
+    }
+
+    private final String path;
+    private final CryptoManager crypto;
+    private final Entry[] entries;
+
+    /**
+     * Opens the catalog of a database directory, reading it if present.
+     * @param crypto The security manager used to encrypt the catalog file.
+     * @param dbDirectory The database directory that owns the shards.
+     * @param segmentCount Number of shards.
+     */
+    public Catalog(CryptoManager crypto, String dbDirectory, int segmentCount) {
+        this.crypto = crypto;
+        this.path = dbDirectory + File.separator + CATALOG_FILE;
+        this.entries = new Entry[segmentCount];
+        load();
+    }
+
+    /**
+     * Returns the recorded stats for a shard if they still describe its file on disk, else null.
+     */
+    public synchronized SegmentStats get(int segment, File segmentFile) {
+        Entry e = entries[segment];
+        if (e == null) return null;
+        if (!segmentFile.exists()) return e.fileLength < 0 ? e.stats : null;
+        return e.fileLength == segmentFile.length() && e.fileModified == segmentFile.lastModified() ? e.stats : null;
+    }
+
+    /**
+     * Records the stats of a shard whose in-memory state has just been written to {@code segmentFile}.
+     */
+    public synchronized void update(int segment, File segmentFile, SegmentStats stats) {
+        boolean exists = segmentFile.exists();
+        entries[segment] = new Entry(exists ? segmentFile.length() : -1, exists ? segmentFile.lastModified() : -1, stats);
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(entries, null);
+        new File(path).delete();
+    }
+
+    // --- Persistence ---
+
+    /** Writes the catalog atomically, in the same encrypted envelope as the shard files. */
+    public synchronized void save() {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeUTF(HEADER);
+            out.writeInt(entries.length);
+            for (Entry e : entries) {
+                out.writeBoolean(e != null);
+                if (e == null) continue;
+                out.writeLong(e.fileLength);
+                out.writeLong(e.fileModified);
+                e.stats.writeTo(out);
+            }
+            String enc = crypto.encrypt(Base64.getEncoder().encodeToString(baos.toByteArray()));
+            Path target = Paths.get(path);
+            Path temp = Paths.get(path + ".tmp");
+            Files.write(temp, enc.getBytes());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            System.err.println("Catalog Save Failed: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        File file = new File(path);
+        if (!file.exists()) return;
+        try {
+            String raw = crypto.decrypt(new String(Files.readAllBytes(file.toPath())));
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(raw)))) {
+                if (!HEADER.equals(in.readUTF())) throw new IOException("Bad Header");
+                int count = in.readInt();
+                if (count != entries.length) return; // shard layout changed: every entry is stale
+                for (int i = 0; i < count; i++) {
+                    if (!in.readBoolean()) continue;
+                    long length = in.readLong();
+                    long modified = in.readLong();
+                    entries[i] = new Entry(length, modified, SegmentStats.readFrom(in));
+                }
+            }
+        } catch (Exception e) {
+            // A damaged catalog only costs shard loads; never fail startup on it
+            Arrays.fill(entries, null);
+        }
+    }
+}
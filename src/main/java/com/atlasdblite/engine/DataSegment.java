@@ -2,6 +2,7 @@ package com.atlasdblite.engine;
 
 import com.atlasdblite.models.Node;
 import com.atlasdblite.models.Relation;
+import com.atlasdblite.query.Aggregation;
 import com.atlasdblite.security.CryptoManager;
 
 import java.io.*;
@@ -11,11 +12,15 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
  * Represents a single partition (shard) of the database.
- * Manages atomic persistence, concurrency locks, and the inverted index.
+ * Manages atomic persistence, concurrency locks, and the full-text index.
  */
 public class DataSegment {
     private final int id;
@@ -24,11 +29,28 @@ public class DataSegment {
     private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
     
     private final Map<String, Node> nodes = new HashMap<>();
-    private final List<Relation> relations = new ArrayList<>();
-    private final Map<String, Set<String>> invertedIndex = new HashMap<>();
+    // Outgoing adjacency: sourceId -> relations leaving that node
+    private final Map<String, List<Relation>> outgoing = new HashMap<>();
+    private final Map<String, Long> labelCounts = new HashMap<>();
+    private final Map<String, Long> typeCounts = new HashMap<>();
+    // Shard-local node ordinals: stable across unload/reload so callers can keep BitSets over them
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private int nextOrdinal = 0;
+    private int relationCount = 0;
+    // Incremented on every save
+    private long version = 0;
+    // WAL entries this shard holds: every LSN up to appliedLsn, plus the later ones in appliedAbove.
+    // Saved with the shard, so replay skips what the file already contains
+    private final LongSupplier settledLsn;
+    private long appliedLsn = 0;
+    private final TreeSet<Long> appliedAbove = new TreeSet<>();
+
+    // Full-text index: built or read from the sidecar on first use, then maintained incrementally
+    private final String textIndexPath;
+    private TextIndex textIndex = null;
+    private boolean textIndexDirty = false;
     
-    private boolean indexingEnabled = false;
-    private boolean isLoaded = false;
+    private volatile boolean isLoaded = false;
     private boolean isDirty = false;
 
     /**
@@ -38,8 +60,18 @@ public class DataSegment {
      * @param crypto The security manager for encryption.
      */
     public DataSegment(int id, String rootDir, CryptoManager crypto) {
+        this(id, rootDir, crypto, () -> 0);
+    }
+
+    /**
+     * @param settledLsn The WAL's {@link TransactionManager#appliedLsn}: every entry up to it has
+     *                   been applied everywhere, so the shard need not list those one by one.
+     */
+    public DataSegment(int id, String rootDir, CryptoManager crypto, LongSupplier settledLsn) {
         this.id = id;
+        this.settledLsn = settledLsn;
         this.filePath = rootDir + File.separator + "part_" + id + ".dat";
+        this.textIndexPath = rootDir + File.separator + "part_" + id + ".idx";
         this.crypto = crypto;
     }
 
@@ -48,166 +80,435 @@ public class DataSegment {
     /**
      * Loads the segment from disk if not already in memory.
      * Handles decryption and binary parsing.
+     * @return False if the file could not be read.
      */
-    public void loadIfRequired() {
-        if (isLoaded) return;
+    public boolean loadIfRequired() {
+        if (isLoaded) return true;
         rwLock.writeLock().lock();
         try {
-            if (isLoaded) return;
+            if (isLoaded) return true;
             File file = new File(filePath);
-            if (!file.exists()) { isLoaded = true; return; }
+            if (!file.exists()) { isLoaded = true; return true; }
             
             byte[] fileBytes = Files.readAllBytes(file.toPath());
             String rawBase64 = crypto.decrypt(new String(fileBytes));
             byte[] binaryData = Base64.getDecoder().decode(rawBase64);
             
             try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(binaryData))) {
-                if (!"SEG_V1".equals(in.readUTF())) throw new IOException("Bad Header");
+                String header = in.readUTF();
+                boolean hasLsn = "SEG_V4".equals(header);
+                boolean hasVersion = hasLsn || "SEG_V3".equals(header);
+                boolean hasOrdinals = hasVersion || "SEG_V2".equals(header);
+                if (!hasOrdinals && !"SEG_V1".equals(header)) throw new IOException("Bad Header");
+                if (hasVersion) version = in.readLong();
+                if (hasLsn) {
+                    appliedLsn = in.readLong();
+                    int above = in.readInt();
+                    for (int i = 0; i < above; i++) appliedAbove.add(in.readLong());
+                }
+                if (hasOrdinals) nextOrdinal = in.readInt();
                 int nc = in.readInt();
                 for(int i=0; i<nc; i++) {
+                    int ordinal = hasOrdinals ? in.readInt() : nextOrdinal++;
                     Node n = Node.readFrom(in);
                     nodes.put(n.getId(), n);
-                    if (indexingEnabled) indexNode(n);
+                    ordinals.put(n.getId(), ordinal);
+                    adjustLabelCount(n.getLabel(), 1);
                 }
                 int rc = in.readInt();
-                for(int i=0; i<rc; i++) relations.add(Relation.readFrom(in));
+                for(int i=0; i<rc; i++) link(Relation.readFrom(in));
             }
             isLoaded = true;
-        } catch (Exception e) { System.err.println("Load Failed: " + e.getMessage()); }
+            return true;
+        } catch (Exception e) { System.err.println("Load Failed: " + e.getMessage()); return false; }
         finally { rwLock.writeLock().unlock(); }
     }
 
+    /**
+     * Takes the read lock on the loaded segment. An unload can slip in between a load and the
+     * lock, e.g. when another thread evicts this shard, so the load is retried under the lock
+     * rather than reading the emptied maps.
+     */
+    private void readLockLoaded() {
+        while (true) {
+            boolean loaded = loadIfRequired();
+            rwLock.readLock().lock();
+            // A failed load leaves the segment unloaded; reading what is there is all that can be done
+            if (isLoaded || !loaded) return;
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /** Takes the write lock on the loaded segment, loading it under that lock if necessary. */
+    private void writeLockLoaded() {
+        rwLock.writeLock().lock();
+        loadIfRequired();
+    }
+
     /**
      * Saves the segment to disk atomically.
      * Writes to a .tmp file first, then performs an atomic move.
      */
     public void save() {
         rwLock.readLock().lock();
-        try { if (!isDirty && isLoaded) return; } finally { rwLock.readLock().unlock(); }
+        try { if ((!isDirty && !textIndexDirty) || !isLoaded) return; } finally { rwLock.readLock().unlock(); }
         
         rwLock.writeLock().lock();
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            DataOutputStream out = new DataOutputStream(baos);
-            
-            out.writeUTF("SEG_V1");
-            out.writeInt(nodes.size());
-            for(Node n : nodes.values()) n.writeTo(out);
-            out.writeInt(relations.size());
-            for(Relation r : relations) r.writeTo(out);
-            
-            String enc = crypto.encrypt(Base64.getEncoder().encodeToString(baos.toByteArray()));
-            Path targetPath = Paths.get(filePath);
-            Path tempPath = Paths.get(filePath + ".tmp");
-            
-            Files.write(tempPath, enc.getBytes());
-            Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
-            isDirty = false;
+            if (isDirty) writeSegmentFile();
+            if (textIndexDirty && textIndex != null) writeTextIndex();
         } catch(Exception e) { System.err.println("Save Failed: " + e.getMessage()); }
         finally { rwLock.writeLock().unlock(); }
     }
 
-    // --- Indexing Logic ---
-
-    private void indexNode(Node n) {
-        addToIndex(n.getId(), n.getId());
-        addToIndex(n.getLabel(), n.getId());
+    private void writeSegmentFile() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
         
-        for (Object val : n.getProperties().values()) {
-            if (val instanceof List) {
-                // Index individual list items so search finds them
-                for (Object item : (List<?>) val) {
-                    addToIndex(item.toString(), n.getId());
-                }
-            } else {
-                addToIndex(val.toString(), n.getId());
+        settle();
+        out.writeUTF("SEG_V4");
+        out.writeLong(version + 1);
+        out.writeLong(appliedLsn);
+        out.writeInt(appliedAbove.size());
+        for (long lsn : appliedAbove) out.writeLong(lsn);
+        out.writeInt(nextOrdinal);
+        out.writeInt(nodes.size());
+        for(Node n : nodes.values()) {
+            out.writeInt(ordinals.get(n.getId()));
+            n.writeTo(out);
+        }
+        out.writeInt(relationCount);
+        for(List<Relation> rels : outgoing.values()) for(Relation r : rels) r.writeTo(out);
+        
+        String enc = crypto.encrypt(Base64.getEncoder().encodeToString(baos.toByteArray()));
+        Path targetPath = Paths.get(filePath);
+        Path tempPath = Paths.get(filePath + ".tmp");
+        
+        Files.write(tempPath, enc.getBytes());
+        Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        version++;
+        isDirty = false;
+        // Any sidecar on disk now describes the previous version
+        if (textIndex != null) textIndexDirty = true;
+    }
+
+    private void writeTextIndex() throws Exception {
+        File file = new File(filePath);
+        if (!file.exists()) return; // describes nothing on disk yet; written after the first save
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        textIndex.writeTo(new DataOutputStream(baos), file.length(), file.lastModified());
+        String enc = crypto.encrypt(Base64.getEncoder().encodeToString(baos.toByteArray()));
+        Path tempPath = Paths.get(textIndexPath + ".tmp");
+        Files.write(tempPath, enc.getBytes());
+        Files.move(tempPath, Paths.get(textIndexPath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        textIndexDirty = false;
+    }
+
+    /**
+     * Reads the save counter and the highest WAL entry a shard file holds, decrypting only its
+     * header: the cipher works block by block, so the rest of the file is never read. Every save
+     * raises the counter, so the pair tells saved versions apart without trusting file times.
+     * @return {version, highest LSN held}, or null for a file written before versions were saved.
+     * @throws IOException If the file cannot be read ({@code NoSuchFileException} if it is gone).
+     */
+    public static long[] readSavedStamp(Path file, CryptoManager crypto) throws IOException {
+        InputStream raw = new BufferedInputStream(Files.newInputStream(file));
+        InputStream plain;
+        try {
+            plain = crypto.decryptingStream(raw);
+        } catch (Exception e) {
+            raw.close();
+            throw new IOException("Cannot decrypt segment: " + e.getMessage(), e);
+        }
+        try (DataInputStream in = new DataInputStream(Base64.getDecoder().wrap(plain))) {
+            String header = in.readUTF();
+            if ("SEG_V3".equals(header)) return new long[]{in.readLong(), 0};
+            if (!"SEG_V4".equals(header)) return null;
+            long version = in.readLong();
+            long lsn = in.readLong();
+            int above = in.readInt();
+            for (int i = 0; i < above; i++) lsn = Math.max(lsn, in.readLong());
+            return new long[]{version, lsn};
+        }
+    }
+
+    /**
+     * Streams a shard file straight to disk in the format {@link #save()} writes, for offline bulk
+     * loading: nothing is held in memory beyond the write buffers. Nodes come first and take
+     * ordinals in write order, then {@link #beginRelations} and the relations; both counts are
+     * given up front, as the format needs them. The file replaces any existing one atomically on
+     * {@link #close()}, and only if every announced record was written.
+     */
+    public static class Writer implements Closeable {
+        private final Path target;
+        private final Path temp;
+        private final DataOutputStream out;
+        private final int nodeCount;
+        private int nodesWritten;
+        private int relationCount = -1;
+        private int relationsWritten;
+
+        /**
+         * @param id The shard ID.
+         * @param rootDir The root database directory.
+         * @param crypto The security manager for encryption.
+         * @param nodeCount Number of nodes that will be written.
+         */
+        public Writer(int id, String rootDir, CryptoManager crypto, int nodeCount) throws IOException {
+            this.target = Paths.get(rootDir, "part_" + id + ".dat");
+            this.temp = Paths.get(rootDir, "part_" + id + ".dat.tmp");
+            this.nodeCount = nodeCount;
+            OutputStream file = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16);
+            try {
+                OutputStream encrypted = crypto.encryptingStream(file);
+                this.out = new DataOutputStream(new BufferedOutputStream(Base64.getEncoder().wrap(encrypted), 1 << 16));
+            } catch (Exception e) {
+                file.close();
+                throw new IOException("Cannot encrypt segment: " + e.getMessage(), e);
             }
+            out.writeUTF("SEG_V4");
+            out.writeLong(1);
+            out.writeLong(0); // holds no WAL entries
+            out.writeInt(0);
+            out.writeInt(nodeCount); // next ordinal
+            out.writeInt(nodeCount);
+        }
+
+        /** Appends a node as encoded by {@link Node#writeTo}. */
+        public void writeNode(byte[] encoded) throws IOException {
+            if (relationCount >= 0 || nodesWritten == nodeCount) throw new IllegalStateException("Unexpected node");
+            out.writeInt(nodesWritten++);
+            out.write(encoded);
+        }
+
+        public void beginRelations(int count) throws IOException {
+            if (nodesWritten != nodeCount || relationCount >= 0)
+                throw new IllegalStateException(nodesWritten + " of " + nodeCount + " nodes written");
+            relationCount = count;
+            out.writeInt(count);
+        }
+
+        /** Appends a relation as encoded by {@link Relation#writeTo}. */
+        public void writeRelation(byte[] encoded) throws IOException {
+            if (relationCount < 0 || relationsWritten == relationCount) throw new IllegalStateException("Unexpected relation");
+            relationsWritten++;
+            out.write(encoded);
+        }
+
+        @Override
+        public void close() throws IOException {
+            boolean complete = nodesWritten == nodeCount && relationsWritten == Math.max(0, relationCount);
+            if (complete && relationCount < 0) out.writeInt(0);
+            out.close();
+            if (!complete) {
+                Files.deleteIfExists(temp);
+                throw new IllegalStateException("Incomplete segment: " + nodesWritten + "/" + nodeCount + " nodes, "
+                        + relationsWritten + "/" + Math.max(0, relationCount) + " relations");
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         }
     }
 
-    private void removeFromIndex(Node n) {
-        removeFromIndexKey(n.getId(), n.getId());
-        removeFromIndexKey(n.getLabel(), n.getId());
-        for (Object val : n.getProperties().values()) {
-             if (val instanceof List) {
-                for (Object item : (List<?>) val) {
-                    removeFromIndexKey(item.toString(), n.getId());
-                }
-            } else {
-                removeFromIndexKey(val.toString(), n.getId());
+    /**
+     * Makes the full-text index available: reads the sidecar if it matches this shard's file,
+     * otherwise builds it from the resident nodes. Caller must hold the write lock.
+     */
+    private void ensureTextIndex() {
+        if (textIndex != null) return;
+        // Unsaved changes (e.g. WAL replay) are not reflected in any sidecar
+        if (!isDirty) textIndex = readTextIndex();
+        if (textIndex == null || textIndex.size() != nodes.size()) {
+            textIndex = new TextIndex();
+            for (Node n : nodes.values()) textIndex.add(n);
+            textIndexDirty = true;
+        }
+    }
+
+    /**
+     * Reads the sidecar if its stamp matches the length and modification time of the shard
+     * file, as {@link GlobalIndex} checks its stamps; only the small sidecar is decrypted.
+     * Caller holds a lock, so the shard file cannot be replaced meanwhile.
+     * @return The index, or null if there is no current sidecar.
+     */
+    private TextIndex readTextIndex() {
+        File sidecar = new File(textIndexPath), file = new File(filePath);
+        if (!sidecar.exists() || !file.exists()) return null;
+        try {
+            byte[] raw = Base64.getDecoder().decode(crypto.decrypt(new String(Files.readAllBytes(sidecar.toPath()))));
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+                return TextIndex.readFrom(in, file.length(), file.lastModified());
             }
+        } catch (Exception e) {
+            return null;
         }
     }
 
-    private void addToIndex(String key, String nodeId) { 
-        invertedIndex.computeIfAbsent(key.toLowerCase(), k -> new HashSet<>()).add(nodeId); 
+    // --- WAL positions ---
+
+    /**
+     * True if this shard already holds the WAL entry with the given LSN, so replay must skip it.
+     * Entries from logs written before LSNs (0) are never held.
+     */
+    public boolean holds(long lsn) {
+        readLockLoaded();
+        try { return lsn > 0 && (lsn <= appliedLsn || appliedAbove.contains(lsn)); }
+        finally { rwLock.readLock().unlock(); }
     }
-    
-    private void removeFromIndexKey(String key, String nodeId) { 
-        String k = key.toLowerCase(); 
-        if (invertedIndex.containsKey(k)) { 
-            Set<String> ids = invertedIndex.get(k); 
-            ids.remove(nodeId); 
-            if (ids.isEmpty()) invertedIndex.remove(k); 
-        } 
+
+    /** Records a WAL entry applied here. Caller holds the write lock. */
+    private void noteApplied(long lsn) {
+        if (lsn <= appliedLsn) return;
+        appliedAbove.add(lsn);
+        if (appliedAbove.size() > 64) settle();
+    }
+
+    /** Folds the LSNs that every shard has applied into appliedLsn. Caller holds the write lock. */
+    private void settle() {
+        long settled = settledLsn.getAsLong();
+        if (settled <= appliedLsn) return;
+        appliedLsn = settled;
+        appliedAbove.headSet(settled, true).clear();
+    }
+
+    // --- Adjacency & Statistics ---
+
+    private void link(Relation r) {
+        outgoing.computeIfAbsent(r.getSourceId(), k -> new ArrayList<>()).add(r);
+        adjustCount(typeCounts, r.getType(), 1);
+        relationCount++;
+    }
+
+    private int unlinkFrom(String sourceId, Predicate<Relation> filter) {
+        List<Relation> rels = outgoing.get(sourceId);
+        if (rels == null) return 0;
+        int removed = 0;
+        for (Iterator<Relation> it = rels.iterator(); it.hasNext(); ) {
+            Relation r = it.next();
+            if (!filter.test(r)) continue;
+            it.remove();
+            adjustCount(typeCounts, r.getType(), -1);
+            removed++;
+        }
+        if (rels.isEmpty()) outgoing.remove(sourceId);
+        relationCount -= removed;
+        return removed;
+    }
+
+    private void adjustLabelCount(String label, int delta) {
+        adjustCount(labelCounts, label, delta);
+    }
+
+    private static void adjustCount(Map<String, Long> counts, String key, long delta) {
+        if (counts.merge(key, delta, Long::sum) <= 0) counts.remove(key);
     }
 
     // --- CRUD ---
+    // Writes take the LSN of their WAL entry and record it under the same lock as the change, so
+    // a save captures both or neither.
 
     /**
      * Adds or updates a node in the segment.
      * Updates indices if enabled.
+     * @param lsn The WAL entry of this write.
+     * @return The node previously stored under the same ID, or {@code null}.
      */
-    public void putNode(Node node) {
-        loadIfRequired();
-        rwLock.writeLock().lock();
+    public Node putNode(Node node, long lsn) {
+        writeLockLoaded();
+        try { noteApplied(lsn); return put(node); } finally { rwLock.writeLock().unlock(); }
+    }
+
+    /**
+     * Adds or updates a batch of nodes under a single lock acquisition.
+     * @return For each node, in order, the node it replaced or {@code null}.
+     */
+    public Node[] putNodes(List<Node> batch, long lsn) {
+        Node[] previous = new Node[batch.size()];
+        writeLockLoaded();
         try {
-            if (indexingEnabled) {
-                if (nodes.containsKey(node.getId())) removeFromIndex(nodes.get(node.getId()));
-                indexNode(node);
-            }
-            nodes.put(node.getId(), node);
-            isDirty = true;
+            noteApplied(lsn);
+            for (int i = 0; i < previous.length; i++) previous[i] = put(batch.get(i));
+            return previous;
         } finally { rwLock.writeLock().unlock(); }
     }
 
+    private Node put(Node node) {
+        Node previous = nodes.put(node.getId(), node);
+        if (textIndex != null) {
+            if (previous != null) textIndex.remove(previous);
+            textIndex.add(node);
+            textIndexDirty = true;
+        }
+        if (previous != null) adjustLabelCount(previous.getLabel(), -1);
+        else ordinals.put(node.getId(), nextOrdinal++);
+        adjustLabelCount(node.getLabel(), 1);
+        isDirty = true;
+        return previous;
+    }
+
     public Node getNode(String id) {
-        loadIfRequired();
-        rwLock.readLock().lock();
+        readLockLoaded();
         try { return nodes.get(id); } finally { rwLock.readLock().unlock(); }
     }
     
-    public boolean removeNode(String id) {
-        loadIfRequired();
-        rwLock.writeLock().lock();
+    /**
+     * Removes a node and its outgoing relations.
+     * @return The removed node, or {@code null} if it did not exist.
+     */
+    public Node removeNode(String id, long lsn) {
+        writeLockLoaded();
         try {
+            noteApplied(lsn);
             Node n = nodes.remove(id);
             if (n != null) {
-                if (indexingEnabled) removeFromIndex(n);
-                relations.removeIf(r -> r.getSourceId().equals(id));
+                if (textIndex != null) { textIndex.remove(n); textIndexDirty = true; }
+                adjustLabelCount(n.getLabel(), -1);
+                ordinals.remove(id);
+                unlinkFrom(id, r -> true);
                 isDirty = true;
-                return true;
             }
-            return false;
+            return n;
         } finally { rwLock.writeLock().unlock(); }
     }
 
-    public void addRelation(Relation r) {
-        loadIfRequired();
-        rwLock.writeLock().lock();
-        try { relations.add(r); isDirty = true; } finally { rwLock.writeLock().unlock(); }
+    public void addRelation(Relation r, long lsn) {
+        writeLockLoaded();
+        try { noteApplied(lsn); link(r); isDirty = true; } finally { rwLock.writeLock().unlock(); }
     }
 
-    public boolean removeRelation(String sourceId, String targetId, String type) {
-        loadIfRequired();
-        rwLock.writeLock().lock();
+    /** Adds a batch of relations, all sourced in this segment, under a single lock acquisition. */
+    public void addRelations(List<Relation> batch, long lsn) {
+        writeLockLoaded();
+        try {
+            noteApplied(lsn);
+            for (Relation r : batch) link(r);
+            isDirty = true;
+        } finally { rwLock.writeLock().unlock(); }
+    }
+
+    /** IDs among {@code ids} that have no node here, checked under one read-lock acquisition. */
+    public List<String> missingNodes(Collection<String> ids) {
+        List<String> missing = new ArrayList<>();
+        readLockLoaded();
         try {
-            boolean removed = relations.removeIf(r -> 
-                r.getSourceId().equals(sourceId) && 
+            for (String id : ids)
+                if (!nodes.containsKey(id)) missing.add(id);
+            return missing;
+        } finally { rwLock.readLock().unlock(); }
+    }
+
+    /**
+     * Removes every relation from the source to the target with the given type (case-insensitive).
+     * @return Number of relations removed; duplicates all go.
+     */
+    public int removeRelation(String sourceId, String targetId, String type, long lsn) {
+        writeLockLoaded();
+        try {
+            noteApplied(lsn);
+            int removed = unlinkFrom(sourceId, r ->
                 r.getTargetId().equals(targetId) && 
                 r.getType().equalsIgnoreCase(type)
             );
-            if (removed) isDirty = true;
+            if (removed > 0) isDirty = true;
             return removed;
         } finally { rwLock.writeLock().unlock(); }
     }
@@ -219,58 +520,204 @@ public class DataSegment {
         try {
             if (!isLoaded) return;
             save();
-            nodes.clear(); relations.clear(); invertedIndex.clear();
+            nodes.clear(); outgoing.clear(); labelCounts.clear(); typeCounts.clear(); ordinals.clear();
+            relationCount = 0; nextOrdinal = 0; version = 0;
+            appliedLsn = 0; appliedAbove.clear();
+            textIndex = null; textIndexDirty = false;
             isLoaded = false;
         } finally { rwLock.writeLock().unlock(); }
     }
 
-    public void setIndexing(boolean enabled) {
-        rwLock.writeLock().lock();
-        try { this.indexingEnabled = enabled; if (enabled && isLoaded) rebuildIndex(); else invertedIndex.clear(); }
-        finally { rwLock.writeLock().unlock(); }
+    /**
+     * Substring scan of this shard. Exact-value lookups go through the engine's {@link GlobalIndex}.
+     */
+    public List<Node> search(String query) {
+        readLockLoaded();
+        try {
+            String q = query.toLowerCase();
+            return nodes.values().stream().filter(n -> containsText(n, q)).collect(Collectors.toList());
+        } finally { rwLock.readLock().unlock(); }
     }
 
-    private void rebuildIndex() { invertedIndex.clear(); for (Node n : nodes.values()) indexNode(n); }
+    /** Substring match over ID, label and property values, without formatting the whole node. */
+    private static boolean containsText(Node n, String lowerQuery) {
+        if (n.getId().toLowerCase().contains(lowerQuery) || n.getLabel().toLowerCase().contains(lowerQuery)) return true;
+        for (Object v : n.getProperties().values()) {
+            if (v instanceof List) {
+                for (Object item : (List<?>) v)
+                    if (item != null && item.toString().toLowerCase().contains(lowerQuery)) return true;
+            } else if (v != null && !(v instanceof byte[]) && v.toString().toLowerCase().contains(lowerQuery)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-    public List<Node> search(String query) {
-        loadIfRequired();
+    /**
+     * Ranked full-text search over this shard (tokens, prefix of the last token, typo tolerance),
+     * by node ID only. A shard that is not resident is scored from its sidecar when that is
+     * current, without loading the shard; the file of an unloaded shard holds all its data.
+     * @return Up to {@code k} hits, best first, or null if the shard is not resident and has no
+     *         current sidecar: the caller loads it (so the load is accounted for) and asks again.
+     */
+    public List<TextIndex.Hit> scoreText(String query, int k) {
         rwLock.readLock().lock();
         try {
-            if (indexingEnabled) {
-                Set<String> ids = invertedIndex.getOrDefault(query.toLowerCase(), Collections.emptySet());
-                return ids.stream().map(nodes::get).filter(Objects::nonNull).collect(Collectors.toList());
-            } else {
-                String q = query.toLowerCase();
-                return nodes.values().stream().filter(n -> n.toString().toLowerCase().contains(q)).collect(Collectors.toList());
+            if (!isLoaded) {
+                if (!new File(filePath).exists()) return new ArrayList<>(); // never saved: empty
+                TextIndex stored = readTextIndex();
+                return stored == null ? null : stored.search(query, k);
             }
         } finally { rwLock.readLock().unlock(); }
+        readLockLoaded();
+        while (textIndex == null) {
+            rwLock.readLock().unlock();
+            writeLockLoaded();
+            try { ensureTextIndex(); } finally { rwLock.writeLock().unlock(); }
+            readLockLoaded(); // may have been unloaded again in between
+        }
+        try {
+            return textIndex.search(query, k);
+        } finally { rwLock.readLock().unlock(); }
     }
 
-    public void removeRelationsTo(String tId) { 
-        loadIfRequired(); 
-        rwLock.writeLock().lock(); 
-        try { if(relations.removeIf(r -> r.getTargetId().equals(tId))) isDirty = true; } 
+    public void removeRelationsTo(String tId, long lsn) { 
+        writeLockLoaded(); 
+        try {
+            noteApplied(lsn);
+            int removed = 0;
+            for (String src : new ArrayList<>(outgoing.keySet())) removed += unlinkFrom(src, r -> r.getTargetId().equals(tId));
+            if (removed > 0) isDirty = true;
+        } 
         finally { rwLock.writeLock().unlock(); } 
     }
 
     public List<Relation> getRelationsFrom(String sId) { 
-        loadIfRequired(); 
-        rwLock.readLock().lock(); 
-        try { return relations.stream().filter(r -> r.getSourceId().equals(sId)).collect(Collectors.toList()); } 
+        readLockLoaded(); 
+        try { return new ArrayList<>(outgoing.getOrDefault(sId, Collections.emptyList())); } 
         finally { rwLock.readLock().unlock(); } 
     }
 
+    /**
+     * Returns the nodes carrying the given label (case-insensitive).
+     * The label filter runs under the read lock so only matching nodes are copied.
+     */
+    public List<Node> getNodesByLabel(String label) {
+        readLockLoaded();
+        try {
+            if (SegmentStats.countIgnoreCase(labelCounts, label) == 0) return Collections.emptyList();
+            return nodes.values().stream().filter(n -> n.getLabel().equalsIgnoreCase(label)).collect(Collectors.toList());
+        } finally { rwLock.readLock().unlock(); }
+    }
+
+    /**
+     * Visits every relation of the given type (or all types if {@code type} is null)
+     * without copying the relation list.
+     */
+    public void forEachRelation(String type, Consumer<Relation> visitor) {
+        readLockLoaded();
+        try {
+            for (List<Relation> rels : outgoing.values())
+                for (Relation r : rels)
+                    if (type == null || r.getType().equalsIgnoreCase(type)) visitor.accept(r);
+        } finally { rwLock.readLock().unlock(); }
+    }
+
+    /**
+     * Visits every node and then every relation of this shard under one read-lock acquisition.
+     */
+    public void forEach(Consumer<Node> nodeVisitor, Consumer<Relation> relationVisitor) {
+        readLockLoaded();
+        try {
+            for (Node n : nodes.values()) nodeVisitor.accept(n);
+            for (List<Relation> rels : outgoing.values())
+                for (Relation r : rels) relationVisitor.accept(r);
+        } finally { rwLock.readLock().unlock(); }
+    }
+
+    /**
+     * Runs one level of a breadth-first expansion for the frontier nodes owned by this shard,
+     * under a single read-lock acquisition.
+     * <p>
+     * Each arriving ID that exists here and is not yet marked in {@code visited} (indexed by the
+     * shard-local ordinal) is marked and reported to {@code admitted} with whether it carries
+     * {@code label}. If {@code next} is non-null, the targets of its outgoing relations whose
+     * type is in {@code types} (all types if null) are reported to it.
+     */
+    public void expandFrontier(Collection<String> arrivals, BitSet visited, Collection<String> types, String label,
+                               BiConsumer<String, Boolean> admitted, Consumer<String> next) {
+        readLockLoaded();
+        try {
+            for (String id : arrivals) {
+                Integer ordinal = ordinals.get(id);
+                if (ordinal == null || visited.get(ordinal)) continue;
+                visited.set(ordinal);
+                admitted.accept(id, label == null || nodes.get(id).getLabel().equalsIgnoreCase(label));
+                if (next == null) continue;
+                for (Relation r : outgoing.getOrDefault(id, Collections.emptyList()))
+                    if (types == null || matchesType(r, types)) next.accept(r.getTargetId());
+            }
+        } finally { rwLock.readLock().unlock(); }
+    }
+
+    private static boolean matchesType(Relation r, Collection<String> types) {
+        for (String t : types) if (r.getType().equalsIgnoreCase(t)) return true;
+        return false;
+    }
+
+    /** Snapshot of this shard's node, relation, label and type counts. */
+    public SegmentStats getStats() {
+        readLockLoaded();
+        try { return new SegmentStats(nodes.size(), relationCount, labelCounts, typeCounts); }
+        finally { rwLock.readLock().unlock(); }
+    }
+
+    public boolean isLoaded() {
+        return isLoaded;
+    }
+
+    /** True if the shard holds changes not yet written to its file. */
+    public boolean isDirty() {
+        return isDirty;
+    }
+
+    public File getFile() {
+        return new File(filePath);
+    }
+
+    /**
+     * Computes this shard's partial result for an aggregation under one read-lock acquisition.
+     * Rows are filtered and folded in place; nothing is copied out of the shard.
+     */
+    public Aggregation.Partial aggregate(Aggregation agg) {
+        readLockLoaded();
+        try {
+            Aggregation.Partial partial = new Aggregation.Partial();
+            if (agg.isOverRelations()) {
+                for (List<Relation> rels : outgoing.values())
+                    for (Relation r : rels)
+                        if (agg.accepts(r)) partial.add(agg.groupOf(r), agg.valueOf(r));
+            } else {
+                for (Node n : nodes.values())
+                    if (agg.accepts(n)) partial.add(agg.groupOf(n), agg.valueOf(n));
+            }
+            return partial;
+        } finally { rwLock.readLock().unlock(); }
+    }
+
     public Collection<Node> getNodes() { 
-        loadIfRequired(); 
-        rwLock.readLock().lock(); 
+        readLockLoaded(); 
         try { return new ArrayList<>(nodes.values()); } 
         finally { rwLock.readLock().unlock(); } 
     }
 
     public List<Relation> getAllRelations() { 
-        loadIfRequired(); 
-        rwLock.readLock().lock(); 
-        try { return new ArrayList<>(relations); } 
+        readLockLoaded(); 
+        try {
+            List<Relation> all = new ArrayList<>(relationCount);
+            for (List<Relation> rels : outgoing.values()) all.addAll(rels);
+            return all;
+        } 
         finally { rwLock.readLock().unlock(); } 
     }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.atlasdblite.engine;
+
+import com.atlasdblite.models.Node;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic feature vectors for nodes, so vector search needs no external embedding service.
+ * <p>
+ * The label, each property as {@code key=value}, and the character trigrams of each value are
+ * hashed into {@link #DIMENSIONS} buckets with a hash-chosen sign (the "hashing trick"). Trigrams
+ * make near-identical spellings land close together; a value's trigrams share one unit of weight
+ * so long text does not drown out the other properties. Vectors are L2-normalized, so the dot
+ * product of two vectors is their cosine similarity. Properties whose key starts with
+ * {@code "__"} are engine flags and are ignored.
+ * <p>
+ * A node that carries a learned embedding of the right size in {@link #EMBEDDING} (e.g. from
+ * node2vec) is represented by that vector instead of its hashed features.
+ */
+public final class Featurizer {
+    public static final int DIMENSIONS = 128;
+    /** Node property that marks a node for the vector index. */
+    public static final String FLAG = "__vectorize";
+    /** Node property holding a learned embedding: {@link #DIMENSIONS} float32 values, big-endian. */
+    public static final String EMBEDDING = "__embedding";
+
+    private Featurizer() {}
+
+    /** True if the node asked to be vectorized ({@code __vectorize} set to true). */
+    public static boolean isVectorized(Node n) {
+        Object flag = n.getProperties().get(FLAG);
+        return flag != null && (Boolean.TRUE.equals(flag) || "true".equalsIgnoreCase(flag.toString()));
+    }
+
+    public static float[] embed(Node n) {
+        Object stored = n.getProperties().get(EMBEDDING);
+        if (stored instanceof byte[] && ((byte[]) stored).length == DIMENSIONS * Float.BYTES)
+            return normalize(toFloats((byte[]) stored));
+        float[] v = new float[DIMENSIONS];
+        add(v, "L:" + n.getLabel().toLowerCase(), 1.0f);
+        for (Map.Entry<String, Object> e : n.getProperties().entrySet()) {
+            if (e.getKey().startsWith("__") || e.getValue() == null) continue;
+            if (e.getValue() instanceof List) {
+                for (Object item : (List<?>) e.getValue())
+                    if (item != null) addValue(v, e.getKey(), item.toString());
+            } else {
+                addValue(v, e.getKey(), e.getValue().toString());
+            }
+        }
+        return normalize(v);
+    }
+
+    /** Packs a vector into the byte form stored in node properties. */
+    public static byte[] toBytes(float[] v) {
+        ByteBuffer buffer = ByteBuffer.allocate(v.length * Float.BYTES);
+        buffer.asFloatBuffer().put(v);
+        return buffer.array();
+    }
+
+    public static float[] toFloats(byte[] bytes) {
+        float[] v = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(v);
+        return v;
+    }
+
+    private static float[] normalize(float[] v) {
+        double norm = 0;
+        for (float x : v) norm += x * x;
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < v.length; i++) v[i] *= scale;
+        }
+        return v;
+    }
+
+    private static void addValue(float[] v, String key, String value) {
+        String text = value.toLowerCase();
+        add(v, "P:" + key + "=" + text, 1.0f);
+        String padded = " " + text + " ";
+        int grams = padded.length() - 2;
+        if (grams <= 0) return;
+        float weight = (float) (1.0 / Math.sqrt(grams));
+        for (int i = 0; i < grams; i++)
+            add(v, "G:" + padded.substring(i, i + 3), weight);
+    }
+
+    private static void add(float[] v, String feature, float weight) {
+        long h = hash(feature);
+        int bucket = (int) ((h >>> 1) % DIMENSIONS);
+        v[bucket] += (h & 1) == 0 ? weight : -weight;
+    }
+
+    /** 64-bit FNV-1a over the UTF-16 code units, with a final avalanche step. */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,349 @@
+package com.atlasdblite.engine;
+
+import com.atlasdblite.models.Node;
+import com.atlasdblite.security.CryptoManager;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Engine-wide exact-value index: lowercased term to the IDs of the nodes holding it.
+ * <p>
+ * Terms are a node's ID, its label and each property value (list items individually).
+ * The index lives outside the shards, so a lookup only loads the shards its postings point to
+ * and it survives shard eviction. It is persisted as {@code global.idx} with sorted,
+ * front-coded terms and postings, stamped with the length and modification time of every
+ * shard file it reflects; shards whose files changed behind its back are re-indexed on open.
+ */
+public class GlobalIndex {
+    private static final String INDEX_FILE = "global.idx";
+    private static final String HEADER = "GIX_V2"; // V1 files may hold postings for binary values and are rebuilt
+
+    private final String path;
+    private final CryptoManager crypto;
+    private final Map<String, Set<String>> postings = new HashMap<>();
+    private final long[] fileLengths;
+    private final long[] fileModified;
+
+    private GlobalIndex(CryptoManager crypto, String dbDirectory, int segmentCount) {
+        this.crypto = crypto;
+        this.path = dbDirectory + File.separator + INDEX_FILE;
+        this.fileLengths = new long[segmentCount];
+        this.fileModified = new long[segmentCount];
+        Arrays.fill(fileLengths, Long.MIN_VALUE); // no shard reflected yet
+    }
+
+    /**
+     * Reads the persisted index of a database directory, or returns an empty one if there is none.
+     * Callers must pass every shard for which {@link #isCurrent} is false to {@link #reindexSegment}.
+     */
+    public static GlobalIndex open(CryptoManager crypto, String dbDirectory, int segmentCount) {
+        GlobalIndex index = new GlobalIndex(crypto, dbDirectory, segmentCount);
+        index.load();
+        return index;
+    }
+
+    /** True if a database directory has a persisted index, i.e. indexing was on at its last checkpoint. */
+    public static boolean exists(String dbDirectory) {
+        return new File(dbDirectory + File.separator + INDEX_FILE).exists();
+    }
+
+    /** Deletes the persisted index of a database directory. */
+    public static void delete(String dbDirectory) {
+        new File(dbDirectory + File.separator + INDEX_FILE).delete();
+    }
+
+    /** Index keys of a node, lowercased. Binary values (e.g. embeddings) have no text form and are skipped. */
+    public static Set<String> keysOf(Node n) {
+        Set<String> keys = new HashSet<>();
+        keys.add(n.getId().toLowerCase());
+        keys.add(n.getLabel().toLowerCase());
+        for (Object val : n.getProperties().values()) {
+            if (val instanceof List) {
+                for (Object item : (List<?>) val)
+                    if (item != null && !(item instanceof byte[])) keys.add(item.toString().toLowerCase());
+            } else if (val != null && !(val instanceof byte[])) {
+                keys.add(val.toString().toLowerCase());
+            }
+        }
+        return keys;
+    }
+
+    // --- Maintenance ---
+
+    /** Replaces the postings of {@code before} with those of {@code after}; either may be null. */
+    public synchronized void update(Node before, Node after) {
+        if (before != null) {
+            Set<String> keep = after != null && after.getId().equals(before.getId()) ? keysOf(after) : Collections.emptySet();
+            for (String key : keysOf(before)) if (!keep.contains(key)) removePosting(key, before.getId());
+        }
+        if (after != null) {
+            for (String key : keysOf(after)) postings.computeIfAbsent(key, k -> new HashSet<>()).add(after.getId());
+        }
+    }
+
+    private void removePosting(String key, String id) {
+        Set<String> ids = postings.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) postings.remove(key);
+    }
+
+    /** True if the postings for a shard reflect its file as currently on disk. */
+    public synchronized boolean isCurrent(int segment, File segmentFile) {
+        long length = segmentFile.exists() ? segmentFile.length() : -1;
+        long modified = segmentFile.exists() ? segmentFile.lastModified() : -1;
+        return fileLengths[segment] == length && fileModified[segment] == modified;
+    }
+
+    /**
+     * Drops every posting of the shard's nodes and re-adds its current contents.
+     * @param belongs Tells whether a node ID routes to this shard.
+     */
+    public synchronized void reindexSegment(Collection<Node> nodes, Predicate<String> belongs) {
+        postings.values().removeIf(ids -> {
+            ids.removeIf(belongs);
+            return ids.isEmpty();
+        });
+        for (Node n : nodes) update(null, n);
+    }
+
+    // --- Lookup ---
+
+    /** IDs of nodes holding the term (case-insensitive). */
+    public synchronized Set<String> lookup(String term) {
+        Set<String> ids = postings.get(term.toLowerCase());
+        return ids == null ? Collections.emptySet() : new HashSet<>(ids);
+    }
+
+    public synchronized int count(String term) {
+        Set<String> ids = postings.get(term.toLowerCase());
+        return ids == null ? 0 : ids.size();
+    }
+
+    public synchronized int termCount() {
+        return postings.size();
+    }
+
+    // --- Persistence ---
+
+    /**
+     * Writes the index, stamping each shard with its current file metadata.
+     * Only call once every shard file is up to date with the in-memory postings (e.g. at checkpoint).
+     */
+    public synchronized void save(File[] segmentFiles) {
+        try {
+            for (int i = 0; i < segmentFiles.length; i++) {
+                boolean exists = segmentFiles[i].exists();
+                fileLengths[i] = exists ? segmentFiles[i].length() : -1;
+                fileModified[i] = exists ? segmentFiles[i].lastModified() : -1;
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeUTF(HEADER);
+            out.writeInt(fileLengths.length);
+            for (int i = 0; i < fileLengths.length; i++) {
+                out.writeLong(fileLengths[i]);
+                out.writeLong(fileModified[i]);
+            }
+            List<String> terms = new ArrayList<>(postings.keySet());
+            Collections.sort(terms);
+            writeVarInt(out, terms.size());
+            String prevTerm = "";
+            for (String term : terms) {
+                writeFrontCoded(out, prevTerm, term);
+                prevTerm = term;
+                List<String> ids = new ArrayList<>(postings.get(term));
+                Collections.sort(ids);
+                writeVarInt(out, ids.size());
+                String prevId = "";
+                for (String id : ids) {
+                    writeFrontCoded(out, prevId, id);
+                    prevId = id;
+                }
+            }
+            String enc = crypto.encrypt(Base64.getEncoder().encodeToString(baos.toByteArray()));
+            Path target = Paths.get(path);
+            Path temp = Paths.get(path + ".tmp");
+            Files.write(temp, enc.getBytes());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            System.err.println("Index Save Failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes an index file from (term, id) pairs, for offline bulk loading, in the format
+     * {@link #save} writes. Pairs must arrive grouped by term. Terms and their postings are
+     * staged in a scratch file beside the index (a term's postings are held in memory only up to
+     * {@link #SPILL_BYTES}), because the format puts counts before the entries they count.
+     * Close once every shard file is final: the shards are stamped then.
+     */
+    public static class Writer implements Closeable {
+        private static final int SPILL_BYTES = 1 << 22;
+
+        private final CryptoManager crypto;
+        private final File target;
+        private final File body;
+        private final File postingSpill;
+        private final File[] segmentFiles;
+        private final DataOutputStream bodyOut;
+        private ByteArrayOutputStream posting = new ByteArrayOutputStream();
+        private DataOutputStream postingOut = new DataOutputStream(posting);
+        private boolean spilled;
+        private String term;
+        private String previousTerm = "";
+        private String previousId = "";
+        private int postingCount;
+        private int termCount;
+
+        public Writer(CryptoManager crypto, String dbDirectory, File[] segmentFiles) throws IOException {
+            this.crypto = crypto;
+            this.target = new File(dbDirectory, INDEX_FILE);
+            this.body = new File(dbDirectory, INDEX_FILE + ".terms");
+            this.postingSpill = new File(dbDirectory, INDEX_FILE + ".postings");
+            this.segmentFiles = segmentFiles;
+            this.bodyOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(body), 1 << 16));
+        }
+
+        /** Adds a posting; {@code term} must be lowercased, as {@link #keysOf} returns them. */
+        public void add(String term, String id) throws IOException {
+            if (!term.equals(this.term)) {
+                finishTerm();
+                this.term = term;
+            }
+            writeFrontCoded(postingOut, previousId, id);
+            previousId = id;
+            postingCount++;
+            if (!spilled && posting.size() > SPILL_BYTES) {
+                postingOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(postingSpill), 1 << 16));
+                posting.writeTo(postingOut);
+                posting = null;
+                spilled = true;
+            }
+        }
+
+        private void finishTerm() throws IOException {
+            if (term == null) return;
+            writeFrontCoded(bodyOut, previousTerm, term);
+            writeVarInt(bodyOut, postingCount);
+            if (spilled) {
+                postingOut.close();
+                Files.copy(postingSpill.toPath(), bodyOut);
+                postingSpill.delete();
+                posting = new ByteArrayOutputStream();
+                spilled = false;
+            } else {
+                posting.writeTo(bodyOut);
+                posting.reset();
+            }
+            postingOut = new DataOutputStream(posting);
+            previousTerm = term;
+            previousId = "";
+            postingCount = 0;
+            termCount++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finishTerm();
+                bodyOut.close();
+                File temp = new File(target.getPath() + ".tmp");
+                OutputStream file = new BufferedOutputStream(new FileOutputStream(temp), 1 << 16);
+                OutputStream encrypted;
+                try {
+                    encrypted = crypto.encryptingStream(file);
+                } catch (Exception e) {
+                    file.close();
+                    throw new IOException("Cannot encrypt index: " + e.getMessage(), e);
+                }
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Base64.getEncoder().wrap(encrypted), 1 << 16))) {
+                    out.writeUTF(HEADER);
+                    out.writeInt(segmentFiles.length);
+                    for (File f : segmentFiles) {
+                        out.writeLong(f.exists() ? f.length() : -1);
+                        out.writeLong(f.exists() ? f.lastModified() : -1);
+                    }
+                    writeVarInt(out, termCount);
+                    Files.copy(body.toPath(), out);
+                }
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                bodyOut.close();
+                body.delete();
+                postingSpill.delete();
+            }
+        }
+    }
+
+    private void load() {
+        File file = new File(path);
+        if (!file.exists()) return;
+        try {
+            byte[] raw = Base64.getDecoder().decode(crypto.decrypt(new String(Files.readAllBytes(file.toPath()))));
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+                if (!HEADER.equals(in.readUTF())) throw new IOException("Bad Header");
+                if (in.readInt() != fileLengths.length) throw new IOException("Shard count changed");
+                for (int i = 0; i < fileLengths.length; i++) {
+                    fileLengths[i] = in.readLong();
+                    fileModified[i] = in.readLong();
+                }
+                int terms = readVarInt(in);
+                String term = "";
+                for (int t = 0; t < terms; t++) {
+                    term = readFrontCoded(in, term);
+                    int count = readVarInt(in);
+                    Set<String> ids = new HashSet<>(count * 2);
+                    String id = "";
+                    for (int i = 0; i < count; i++) {
+                        id = readFrontCoded(in, id);
+                        ids.add(id);
+                    }
+                    postings.put(term, ids);
+                }
+            }
+        } catch (Exception e) {
+            // Unreadable: start empty with every shard marked stale
+            postings.clear();
+            Arrays.fill(fileLengths, Long.MIN_VALUE);
+        }
+    }
+
+    // --- Encoding helpers ---
+
+    /** Writes {@code value} as the length of the prefix it shares with {@code previous} plus the remaining suffix. */
+    static void writeFrontCoded(DataOutputStream out, String previous, String value) throws IOException {
+        int shared = 0;
+        int max = Math.min(previous.length(), value.length());
+        while (shared < max && previous.charAt(shared) == value.charAt(shared)) shared++;
+        writeVarInt(out, shared);
+        out.writeUTF(value.substring(shared));
+    }
+
+    static String readFrontCoded(DataInputStream in, String previous) throws IOException {
+        int shared = readVarInt(in);
+        return previous.substring(0, shared) + in.readUTF();
+    }
+
+    /** Writes a non-negative int in 7-bit groups, low group first; shared by the binary file formats. */
+    public static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+}
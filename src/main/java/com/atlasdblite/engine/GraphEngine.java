@@ -1,117 +1,651 @@
 package com.atlasdblite.engine;
 
+import com.atlasdblite.analytics.Betweenness;
+import com.atlasdblite.analytics.Communities;
+import com.atlasdblite.analytics.Components;
+import com.atlasdblite.analytics.GraphProjection;
+import com.atlasdblite.analytics.IncrementalPageRank;
+import com.atlasdblite.analytics.JobControl;
+import com.atlasdblite.analytics.PageRank;
+import com.atlasdblite.analytics.PersonalizedPageRank;
+import com.atlasdblite.analytics.RandomWalks;
+import com.atlasdblite.analytics.SkipGram;
+import com.atlasdblite.analytics.Triangles;
 import com.atlasdblite.models.Node;
+import com.atlasdblite.models.PropertyCodec;
 import com.atlasdblite.models.Relation;
+import com.atlasdblite.query.Aggregation;
+import com.atlasdblite.query.Condition;
 import com.atlasdblite.security.CryptoManager;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.ToNumberPolicy;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class GraphEngine {
     private static final int BUCKET_COUNT = 16;
     private static final int MAX_ACTIVE_SEGMENTS = 8;
 
+    // Live PageRank updates always run; a full recompute is scheduled after max(this, n/10) of them
+    private static final int LIVE_RANK_MIN_UPDATES = 1000;
+    // Projections built to seed live PageRank before seeding anyway against one that writes overlapped
+    private static final int LIVE_RANK_SEED_ATTEMPTS = 3;
+    // Background jobs: how many run at once, and how many threads each may use, so that together
+    // they leave about half the cores to reads and writes
+    private static final int JOB_WORKERS = 2;
+    private static final int JOB_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / (2 * JOB_WORKERS));
+
     private final DataSegment[] segments;
     private final String dbDirectory;
     private final CryptoManager crypto;
     private final TransactionManager wal;
     private final Gson gson;
     private final ConcurrentLinkedDeque<Integer> lruQueue = new ConcurrentLinkedDeque<>();
+    private final QueryCache queryCache = new QueryCache();
+    private final AtomicLong topologyVersion = new AtomicLong();
+    // Writes between changing a shard and taking their version. While none runs, a projection whose
+    // version is still current holds exactly the writes up to that version
+    private final AtomicInteger topologyWrites = new AtomicInteger();
+    private final Map<String, GraphProjection> projections = new ConcurrentHashMap<>();
+    // Last decomposition of each kind; a result is current while its projection's version is
+    private final Map<Components.Kind, Components.Result> structure = new ConcurrentHashMap<>();
+    private Catalog catalog;
+    // Opened lazily on the first lookup; null while auto-indexing is off or not yet needed
+    private GlobalIndex globalIndex;
+    // Opened on the first similarity query, then maintained by every node write
+    private VectorIndex vectorIndex;
 
     private boolean autoIndexing = false;
+    // Online backups in progress; while any runs, checkpoints leave the WAL in place
+    private final Object backupLock = new Object();
+    private int backupsRunning;
 
-    // Cache for Analytics
-    private Map<String, Double> pageRankScores = new HashMap<>();
+    // Published analytics results: replaced wholesale, never mutated
+    private volatile Map<String, Double> pageRankScores = Collections.emptyMap();
+    private JobScheduler.Job<PageRank.Result> pageRankJob;
+    private volatile Communities.Result communities;
+    private JobScheduler.Job<Communities.Result> communityJob;
+    private volatile Betweenness.Result betweenness;
+    private JobScheduler.Job<Betweenness.Result> betweennessJob;
+    private final JobScheduler jobs;
+    // Keeps unweighted scores current between full runs; guarded by rankLock
+    private final Object rankLock = new Object();
+    private volatile IncrementalPageRank livePageRank;
+    private boolean incrementalPageRank = true;
 
     public GraphEngine(String dbDirectory) {
         this.dbDirectory = dbDirectory;
         this.crypto = new CryptoManager();
-        this.gson = new Gson();
-        this.wal = new TransactionManager(crypto);
+        // Legacy JSON WAL entries: keep integral numbers as Long rather than Double
+        this.gson = new GsonBuilder().setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE).create();
+        this.wal = new TransactionManager(crypto, dbDirectory);
         this.segments = new DataSegment[BUCKET_COUNT];
 
         initialize();
+        this.jobs = new JobScheduler(crypto, dbDirectory, JOB_WORKERS);
+        // Indexing stays on across restarts if it was on at the last checkpoint
+        this.autoIndexing = GlobalIndex.exists(dbDirectory);
         recover();
+        restorePageRank();
     }
 
     private void initialize() {
         File dir = new File(dbDirectory);
         if (!dir.exists())
             dir.mkdirs();
+        // Walk corpora spooled here by earlier versions hold node IDs in clear text
+        File[] spooled = dir.listFiles((d, name) -> name.startsWith("walks") && name.endsWith(".bin"));
+        if (spooled != null)
+            for (File f : spooled) f.delete();
         for (int i = 0; i < BUCKET_COUNT; i++) {
-            segments[i] = new DataSegment(i, dbDirectory, crypto);
+            segments[i] = new DataSegment(i, dbDirectory, crypto, wal::appliedLsn);
         }
+        this.catalog = new Catalog(crypto, dbDirectory, BUCKET_COUNT);
+    }
+
+    // --- Analytics ---
+
+    /**
+     * A primitive-array projection of the current topology, optionally carrying edge weights from a
+     * relation property. Projections are cached per weight property and rebuilt, by streaming each
+     * shard once, only after a write has changed the topology.
+     */
+    public GraphProjection getProjection(String weightProperty) {
+        String key = weightProperty == null ? "" : weightProperty;
+        long version = topologyVersion.get();
+        GraphProjection cached = projections.get(key);
+        if (cached != null && cached.getVersion() == version)
+            return cached;
+
+        GraphProjection.Builder builder = new GraphProjection.Builder(weightProperty, version);
+        scan(n -> builder.addNode(n.getId()), builder::addRelation);
+        GraphProjection built = builder.build();
+        projections.put(key, built);
+        return built;
     }
 
-    // --- NEW: PageRank Algorithm ---
+    /** Incremented by every write that adds or removes a node or relation. */
+    public long getTopologyVersion() {
+        return topologyVersion.get();
+    }
+
+    /**
+     * Visits every node and relation, one shard at a time, loading each shard once.
+     * Within a shard all nodes are visited before its relations.
+     */
+    public void scan(Consumer<Node> nodeVisitor, Consumer<Relation> relationVisitor) {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            scanShard(i, nodeVisitor, relationVisitor);
+    }
+
+    /**
+     * Visits the nodes, then the relations, of one shard under a single read-lock acquisition.
+     * Safe to call for different shards from several threads, e.g. to export shards in parallel.
+     */
+    public void scanShard(int shard, Consumer<Node> nodeVisitor, Consumer<Relation> relationVisitor) {
+        // forEach (re)loads the shard under its lock, so an eviction racing this cannot empty the scan
+        touchSegment(shard);
+        segments[shard].forEach(nodeVisitor, relationVisitor);
+    }
 
+    /**
+     * Runs PageRank synchronously with a fixed iteration budget (stopping early on convergence)
+     * and publishes the scores.
+     * @return Scores scaled so the top node has 10.0.
+     */
     public Map<String, Double> calculatePageRank(int iterations, double dampingFactor) {
-        System.out.println(" [ANALYTICS] Loading topology for PageRank...");
+        try {
+            runPageRank(new PageRank().maxIterations(iterations).damping(dampingFactor), null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return pageRankScores;
+    }
 
-        // 1. Build lightweight adjacency map (ID -> List<TargetID>)
-        // We load all data to build this map.
-        Collection<Node> allNodes = getAllNodes();
-        List<Relation> allEdges = getAllRelations();
+    /**
+     * Runs PageRank on the current projection and atomically replaces the published scores.
+     * @param weightProperty Relation property to use as edge weight, or null for unweighted.
+     */
+    public PageRank.Result runPageRank(PageRank pageRank, String weightProperty) throws InterruptedException {
+        return runPageRank(pageRank, weightProperty, new JobControl());
+    }
 
-        Map<String, List<String>> incomingLinks = new HashMap<>(); // Who points to me?
-        Map<String, Integer> outDegree = new HashMap<>(); // How many do I point to?
+    private PageRank.Result runPageRank(PageRank pageRank, String weightProperty, JobControl control)
+            throws InterruptedException {
+        GraphProjection g = getProjection(weightProperty);
+        PageRank.Result result = pageRank.run(g, control);
+        double[] scaled = PageRank.normalizeToMax(result.ranks, 10.0);
+        Map<String, Double> scores = new HashMap<>(g.size() * 2);
+        for (int v = 0; v < g.size(); v++)
+            scores.put(g.idOf(v), scaled[v]);
+        if (weightProperty != null || !incrementalPageRank) {
+            synchronized (rankLock) {
+                this.pageRankScores = Collections.unmodifiableMap(scores);
+                this.livePageRank = null;
+            }
+            return result;
+        }
+        // Writers wait on rankLock to update the live scores, so the projection to seed against is
+        // built outside it and only checked inside
+        for (int attempt = 1; ; attempt++) {
+            GraphProjection current = getProjection(null);
+            synchronized (rankLock) {
+                boolean exact = topologyWrites.get() == 0 && topologyVersion.get() == current.getVersion();
+                if (exact || attempt == LIVE_RANK_SEED_ATTEMPTS) {
+                    this.pageRankScores = Collections.unmodifiableMap(scores);
+                    this.livePageRank = seedLivePageRank(g, current, result.ranks, pageRank.getDamping());
+                    return result;
+                }
+            }
+        }
+    }
 
-        for (Node n : allNodes) {
-            incomingLinks.put(n.getId(), new ArrayList<>());
-            outDegree.put(n.getId(), 0);
+    /**
+     * Seeds incremental maintenance from a finished run. Writes that landed while the run was in
+     * progress are picked up by seeding against the current topology instead; later writes reach
+     * the live scores through {@link #maintainPageRank}.
+     */
+    private IncrementalPageRank seedLivePageRank(GraphProjection g, GraphProjection current, double[] ranks, double damping) {
+        if (current.getVersion() == g.getVersion())
+            return new IncrementalPageRank(g, ranks, damping);
+        double[] mapped = new double[current.size()];
+        for (int v = 0; v < current.size(); v++) {
+            int old = g.indexOf(current.idOf(v));
+            mapped[v] = old >= 0 ? ranks[old] : 0.0;
         }
+        return new IncrementalPageRank(current, mapped, damping);
+    }
 
-        for (Relation r : allEdges) {
-            // Only count if both nodes exist (Data integrity check)
-            if (incomingLinks.containsKey(r.getTargetId()) && incomingLinks.containsKey(r.getSourceId())) {
-                incomingLinks.get(r.getTargetId()).add(r.getSourceId());
-                outDegree.put(r.getSourceId(), outDegree.get(r.getSourceId()) + 1);
+    /**
+     * Applies a topology change to the live scores. After enough changes, or if a change could not
+     * be fully propagated within its push budget, a full run is started in the background to
+     * reset accumulated drift.
+     */
+    private void maintainPageRank(long version, Consumer<IncrementalPageRank> change) {
+        if (livePageRank == null)
+            return;
+        synchronized (rankLock) {
+            IncrementalPageRank live = livePageRank;
+            if (live == null || version <= live.getVersion())
+                return;
+            change.accept(live);
+            int limit = Math.max(LIVE_RANK_MIN_UPDATES, live.size() / 10);
+            if (live.hasBacklog() || live.updatesSinceSeed() > limit) {
+                try {
+                    computePageRankAsync(new PageRank().damping(live.getDamping()), null);
+                } catch (IllegalStateException e) {
+                    // Job queue full: a later write will try again
+                }
             }
         }
+    }
 
-        // 2. Initialize Ranks
-        Map<String, Double> ranks = new HashMap<>();
-        double initialRank = 1.0 / allNodes.size();
-        for (Node n : allNodes)
-            ranks.put(n.getId(), initialRank);
+    /**
+     * Nodes most related to the seeds by personalized PageRank, best first, seeds excluded.
+     * Runs on the cached projection, so repeated queries cost only the local push.
+     * @throws IllegalArgumentException If a seed does not exist.
+     */
+    public PersonalizedPageRank.Result personalizedPageRank(Collection<String> seeds, int k, String weightProperty) {
+        return new PersonalizedPageRank().topK(getProjection(weightProperty), seeds, k);
+    }
 
-        // 3. Iterate
-        System.out.println(" [ANALYTICS] Running " + iterations + " iterations...");
-        for (int i = 0; i < iterations; i++) {
-            Map<String, Double> newRanks = new HashMap<>();
+    /**
+     * Weak or strong components, or core numbers, of the current topology. Results are cached
+     * until the topology changes; pathfinding uses a current weak-component result for pruning.
+     */
+    public Components.Result components(Components.Kind kind) throws InterruptedException {
+        return components(kind, Runtime.getRuntime().availableProcessors(), new JobControl());
+    }
 
-            for (String nodeId : ranks.keySet()) {
-                double rankSum = 0.0;
-                // Sum(PR(neighbor) / OutDegree(neighbor))
-                for (String neighbor : incomingLinks.get(nodeId)) {
-                    if (outDegree.get(neighbor) > 0) {
-                        rankSum += ranks.get(neighbor) / outDegree.get(neighbor);
-                    }
-                }
+    private Components.Result components(Components.Kind kind, int threads, JobControl control)
+            throws InterruptedException {
+        Components.Result cached = structure.get(kind);
+        if (cached != null && cached.getVersion() == topologyVersion.get())
+            return cached;
+        GraphProjection g = getProjection(null);
+        Components.Result result;
+        switch (kind) {
+            case WCC: result = Components.weak(g, threads, control); break;
+            case SCC: result = Components.strong(g, threads, control); break;
+            default: result = Components.cores(g, threads, control); break;
+        }
+        // A cancelled pass may have stopped early; only a complete one may serve path queries
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+        structure.put(kind, result);
+        return result;
+    }
+
+    /**
+     * Writes each node's component or core number into a node property.
+     * @return Number of nodes updated.
+     */
+    public int storeComponents(Components.Result result, String property) {
+        return storeValues(result.getGraph(), result.values, property);
+    }
+
+    /**
+     * Writes a per-vertex value (indexed like {@code g}) into a node property.
+     * @return Number of nodes updated.
+     */
+    public int storeValues(GraphProjection g, int[] values, String property) {
+        int updated = 0;
+        for (int v = 0; v < g.size(); v++)
+            if (updateNode(g.idOf(v), property, (long) values[v]))
+                updated++;
+        return updated;
+    }
+
+    /** Writes a per-vertex value (indexed like {@code g}) into a node property. */
+    public int storeValues(GraphProjection g, double[] values, String property) {
+        int updated = 0;
+        for (int v = 0; v < g.size(); v++)
+            if (updateNode(g.idOf(v), property, values[v]))
+                updated++;
+        return updated;
+    }
 
-                // PageRank Formula
-                double pr = (1 - dampingFactor) + (dampingFactor * rankSum);
-                newRanks.put(nodeId, pr);
+    /**
+     * Triangle counts and clustering coefficients of the current topology, read from the cached
+     * projection rather than from materialized relations.
+     * @param samples Number of wedges to sample, or 0 for an exact count.
+     */
+    public Triangles.Result triangles(int samples) throws InterruptedException {
+        return triangles(samples, Runtime.getRuntime().availableProcessors(), new JobControl());
+    }
+
+    private Triangles.Result triangles(int samples, int threads, JobControl control) throws InterruptedException {
+        GraphProjection g = getProjection(null);
+        return samples > 0 ? Triangles.sampled(g, samples, 42, control) : Triangles.exact(g, threads, control);
+    }
+
+    // --- Embeddings ---
+
+    /**
+     * Streams a random-walk corpus of the current topology (relations taken as undirected) to
+     * {@code out}, in the format read by {@link RandomWalks.Reader}.
+     */
+    public RandomWalks.Stats writeWalks(RandomWalks walks, OutputStream out, JobControl control)
+            throws IOException, InterruptedException {
+        return walks.write(getProjection(null), out, control);
+    }
+
+    /**
+     * Learns node2vec-style embeddings: walks over the current topology are spooled to a
+     * temporary file, which the skip-gram trainer then streams. The corpus holds node IDs in
+     * clear text, so it goes to the system temporary directory rather than next to the
+     * encrypted shards.
+     */
+    public SkipGram.Result node2vec(RandomWalks walks, SkipGram trainer, JobControl control)
+            throws IOException, InterruptedException {
+        File corpus = File.createTempFile("atlas-walks", ".bin");
+        corpus.deleteOnExit();
+        try {
+            try (OutputStream out = new FileOutputStream(corpus)) {
+                writeWalks(walks, out, control);
             }
-            ranks = newRanks;
+            return trainer.train(corpus, control);
+        } finally {
+            corpus.delete();
         }
+    }
 
-        System.out.print("atlas> ");
+    /**
+     * Writes each node's embedding into a node property as packed float32 values. Stored under
+     * {@link Featurizer#EMBEDDING} with {@link Featurizer#DIMENSIONS} dimensions, the embeddings
+     * replace hashed features in the vector index.
+     * @return Number of nodes updated.
+     */
+    public int storeEmbeddings(SkipGram.Result result, String property) {
+        int updated = 0;
+        for (int i = 0; i < result.size(); i++)
+            if (updateNode(result.idAt(i), property, Featurizer.toBytes(result.vector(i))))
+                updated++;
+        return updated;
+    }
 
-        // 4. Normalize scores (0.0 to 10.0 for easier reading)
-        double maxScore = Collections.max(ranks.values());
-        for (Map.Entry<String, Double> entry : ranks.entrySet()) {
-            entry.setValue((entry.getValue() / maxScore) * 10.0);
+    /**
+     * Detects communities on the current topology and publishes them.
+     * @param method {@code "louvain"} (modularity-optimizing) or {@code "lpa"} (label propagation).
+     */
+    public Communities.Result detectCommunities(String method) throws InterruptedException {
+        return detectCommunities(method, Runtime.getRuntime().availableProcessors(), new JobControl());
+    }
+
+    private Communities.Result detectCommunities(String method, int threads, JobControl control)
+            throws InterruptedException {
+        GraphProjection g = getProjection(null);
+        Communities.Result result = "lpa".equalsIgnoreCase(method)
+                ? Communities.labelPropagation(g, threads, Communities.DEFAULT_LPA_ITERATIONS, control)
+                : Communities.louvain(g, control);
+        this.communities = result;
+        return result;
+    }
+
+    /**
+     * Runs {@link #detectCommunities} as a background job unless a run is already in progress.
+     * The job result holds each node's community number.
+     */
+    public synchronized CompletableFuture<Communities.Result> detectCommunitiesAsync(String method) {
+        if (isActive(communityJob))
+            return communityJob.future();
+        String name = "lpa".equalsIgnoreCase(method) ? "lpa" : "louvain";
+        communityJob = jobs.submit("communities", Map.of("method", name),
+                control -> detectCommunities(name, JOB_THREADS, control),
+                r -> JobResult.of(r.getGraph(), r.labels, summary("method", r.method, "communities", r.count,
+                        "modularity", r.modularity, "rounds", r.rounds)));
+        return communityJob.future();
+    }
+
+    public synchronized boolean isCommunityDetectionRunning() {
+        return isActive(communityJob);
+    }
+
+    /**
+     * Computes betweenness centrality on the current topology and publishes it.
+     * @throws CancellationException If {@code control} is cancelled.
+     */
+    public Betweenness.Result betweenness(Betweenness config, JobControl control) throws InterruptedException {
+        Betweenness.Result result = config.run(getProjection(null), control);
+        this.betweenness = result;
+        return result;
+    }
+
+    /**
+     * Starts betweenness in the background unless a run is already in progress.
+     * @return The control of the running job, for progress and cancellation.
+     */
+    public synchronized JobControl computeBetweennessAsync(Betweenness config) {
+        return computeBetweennessAsync(config, Collections.emptyMap()).getControl();
+    }
+
+    private synchronized JobScheduler.Job<Betweenness.Result> computeBetweennessAsync(Betweenness config, Map<String, String> params) {
+        if (isActive(betweennessJob))
+            return betweennessJob;
+        config.threads(JOB_THREADS);
+        betweennessJob = jobs.submit("betweenness", params, control -> betweenness(config, control),
+                r -> JobResult.of(r.getGraph(), r.scores, summary("sources", r.sources, "exact", r.exact,
+                        "errorBound", r.errorBound)));
+        return betweennessJob;
+    }
+
+    /** Control of the running or most recent background betweenness job, or null. */
+    public synchronized JobControl getBetweennessJob() {
+        return betweennessJob == null ? null : betweennessJob.getControl();
+    }
+
+    public synchronized boolean isBetweennessRunning() {
+        return isActive(betweennessJob);
+    }
+
+    /** The last published betweenness result, or null. */
+    public Betweenness.Result getBetweenness() {
+        return betweenness;
+    }
+
+    /** The last published communities (possibly older than the current topology), or null. */
+    public Communities.Result getCommunities() {
+        return communities;
+    }
+
+    /** Turns incremental maintenance of unweighted PageRank scores on or off (on by default). */
+    public void setIncrementalPageRank(boolean enabled) {
+        synchronized (rankLock) {
+            this.incrementalPageRank = enabled;
+            if (!enabled)
+                livePageRank = null;
         }
+    }
 
-        this.pageRankScores = ranks; // Cache it
-        return ranks;
+    public boolean isIncrementalPageRank() {
+        return incrementalPageRank;
     }
 
+    /** Relative L1 error bound of the live scores, or -1 when they are not maintained. */
+    public double getPageRankErrorBound() {
+        synchronized (rankLock) {
+            return livePageRank == null ? -1 : livePageRank.errorBound();
+        }
+    }
+
+    /**
+     * Starts PageRank in the background unless a run is already in progress, in which case that
+     * run is returned. Readers keep seeing the previous scores until the new ones are published.
+     */
+    public synchronized CompletableFuture<PageRank.Result> computePageRankAsync(PageRank pageRank, String weightProperty) {
+        if (isActive(pageRankJob))
+            return pageRankJob.future();
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("damping", String.valueOf(pageRank.getDamping()));
+        if (weightProperty != null)
+            params.put("weight", weightProperty);
+        pageRank.threads(JOB_THREADS);
+        pageRankJob = jobs.submit("pagerank", params, control -> runPageRank(pageRank, weightProperty, control),
+                r -> JobResult.of(r.getGraph(), PageRank.normalizeToMax(r.ranks, 10.0), summary("iterations",
+                        r.iterations, "residual", r.residual, "converged", r.converged)));
+        return pageRankJob.future();
+    }
+
+    public synchronized boolean isPageRankRunning() {
+        return isActive(pageRankJob);
+    }
+
+    // --- Jobs ---
+
+    /**
+     * Starts an analytics job in the background. PageRank, communities and betweenness publish
+     * their results as their synchronous forms do; only one job of each of those runs at a time,
+     * and submitting another while one is running returns the running one.
+     * @param type {@code pagerank}, {@code communities}, {@code betweenness}, {@code wcc},
+     *             {@code scc}, {@code kcore}, {@code triangles} or {@code node2vec}.
+     * @param options Job options, e.g. {@code weight}, {@code damping}, {@code method},
+     *                {@code samples}, {@code epsilon}.
+     * @throws IllegalArgumentException If the type or an option is invalid.
+     * @throws IllegalStateException If too many jobs are queued.
+     */
+    public JobScheduler.Job<?> submitJob(String type, Map<String, String> options) {
+        switch (type.toLowerCase()) {
+            case "pagerank": {
+                PageRank pageRank = new PageRank();
+                if (options.containsKey("damping")) pageRank.damping(Double.parseDouble(options.get("damping")));
+                if (options.containsKey("tol")) pageRank.tolerance(Double.parseDouble(options.get("tol")));
+                if (options.containsKey("iterations")) pageRank.maxIterations(Integer.parseInt(options.get("iterations")));
+                synchronized (this) {
+                    computePageRankAsync(pageRank, options.get("weight"));
+                    return pageRankJob;
+                }
+            }
+            case "communities": {
+                String method = options.getOrDefault("method", "louvain");
+                if (!method.equalsIgnoreCase("louvain") && !method.equalsIgnoreCase("lpa"))
+                    throw new IllegalArgumentException("Unknown method '" + method + "'. Use louvain or lpa.");
+                synchronized (this) {
+                    detectCommunitiesAsync(method);
+                    return communityJob;
+                }
+            }
+            case "betweenness": {
+                Betweenness config = new Betweenness();
+                if (options.containsKey("exact")) config.exact();
+                if (options.containsKey("samples")) config.samples(Integer.parseInt(options.get("samples")));
+                if (options.containsKey("epsilon")) config.epsilon(Double.parseDouble(options.get("epsilon")));
+                return computeBetweennessAsync(config, options);
+            }
+            case "wcc":
+            case "scc":
+            case "kcore": {
+                Components.Kind kind = Components.Kind.valueOf(type.toUpperCase());
+                return jobs.submit(type.toLowerCase(), options, control -> components(kind, JOB_THREADS, control),
+                        r -> JobResult.of(r.getGraph(), r.values, summary(
+                                kind == Components.Kind.KCORE ? "maxCore" : "count", r.count)));
+            }
+            case "triangles": {
+                int samples = options.containsKey("samples") ? Integer.parseInt(options.get("samples")) : 0;
+                return jobs.submit("triangles", options, control -> triangles(samples, JOB_THREADS, control), r -> {
+                    Map<String, Object> summary = summary("triangles", r.triangles, "wedges", r.wedges,
+                            "transitivity", r.transitivity, "exact", r.exact, "errorBound", r.errorBound);
+                    return r.exact ? JobResult.of(r.getGraph(), r.clustering, summary) : new JobResult(summary);
+                });
+            }
+            case "node2vec": {
+                RandomWalks walks = walkOptions(options);
+                SkipGram trainer = new SkipGram().threads(JOB_THREADS);
+                if (options.containsKey("dim")) trainer.dimensions(Integer.parseInt(options.get("dim")));
+                if (options.containsKey("window")) trainer.window(Integer.parseInt(options.get("window")));
+                if (options.containsKey("epochs")) trainer.epochs(Integer.parseInt(options.get("epochs")));
+                // A bare --store keeps the embeddings where the vector index looks for them
+                String property = "true".equals(options.get("store")) ? Featurizer.EMBEDDING : options.get("store");
+                return jobs.submit("node2vec", options, control -> {
+                    SkipGram.Result r = node2vec(walks, trainer, control);
+                    int stored = property == null ? 0 : storeEmbeddings(r, property);
+                    return summary("nodes", r.size(), "dimensions", r.getDimensions(), "words", r.getTrainedWords(),
+                            "stored", stored);
+                }, JobResult::new);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown job type '" + type
+                        + "'. Supported: pagerank, communities, betweenness, wcc, scc, kcore, triangles, node2vec");
+        }
+    }
+
+    public JobScheduler.Job<?> getJob(long id) {
+        return jobs.get(id);
+    }
+
+    /** Known jobs, oldest first: those still queued or running, and the most recent finished ones. */
+    public List<JobScheduler.Job<?>> listJobs() {
+        return jobs.list();
+    }
+
+    /** @return False if the job is unknown or already finished. */
+    public boolean cancelJob(long id) {
+        return jobs.cancel(id);
+    }
+
+    /** The persisted result of a finished job, or null if it has none. */
+    public JobResult getJobResult(long id) {
+        return jobs.result(id);
+    }
+
+    private static boolean isActive(JobScheduler.Job<?> job) {
+        return job != null && !job.getState().isFinished();
+    }
+
+    private static Map<String, Object> summary(Object... pairs) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2)
+            map.put((String) pairs[i], pairs[i + 1]);
+        return map;
+    }
+
+    private static RandomWalks walkOptions(Map<String, String> options) {
+        RandomWalks walks = new RandomWalks().threads(JOB_THREADS);
+        if (options.containsKey("length")) walks.length(Integer.parseInt(options.get("length")));
+        if (options.containsKey("walks")) walks.walksPerNode(Integer.parseInt(options.get("walks")));
+        if (options.containsKey("p")) walks.p(Double.parseDouble(options.get("p")));
+        if (options.containsKey("q")) walks.q(Double.parseDouble(options.get("q")));
+        if (options.containsKey("seed")) walks.seed(Long.parseLong(options.get("seed")));
+        return walks;
+    }
+
+    /** Publishes the scores of the last unweighted PageRank job, so they survive a restart. */
+    private void restorePageRank() {
+        JobScheduler.Job<?> last = null;
+        for (JobScheduler.Job<?> job : jobs.list())
+            if (job.getType().equals("pagerank") && job.hasResult() && !job.getParams().containsKey("weight"))
+                last = job;
+        if (last == null)
+            return;
+        JobResult result = jobs.result(last.getId());
+        if (result != null)
+            pageRankScores = Collections.unmodifiableMap(result.toMap());
+    }
+
+    /**
+     * The most recently published PageRank scores (top node = 10.0); empty until a run completes.
+     * After an unweighted run, the scores follow later writes without another full run.
+     */
     public Map<String, Double> getPageRankScores() {
+        IncrementalPageRank live = livePageRank;
+        if (live != null && live.isDirty()) {
+            synchronized (rankLock) {
+                if (livePageRank != null && livePageRank.isDirty())
+                    pageRankScores = livePageRank.snapshot(10.0);
+            }
+        }
         return pageRankScores;
     }
 
@@ -120,36 +654,89 @@ public class GraphEngine {
     // RECOVERY
     private void recover() {
         List<TransactionManager.WalEntry> logs = wal.readLog();
-        if (logs.isEmpty())
-            return;
-        System.out.println(" [RECOVERY] Replaying " + logs.size() + " ops...");
+        long lastLsn = 0;
         for (TransactionManager.WalEntry entry : logs)
-            applyOpToMemory(entry.operation, entry.payload);
-        System.out.println(" [RECOVERY] Done.");
+            lastLsn = Math.max(lastLsn, entry.lsn);
+        logs.removeIf(entry -> TransactionManager.MARK.equals(entry.operation));
+        if (!logs.isEmpty()) {
+            System.out.println(" [RECOVERY] Replaying " + logs.size() + " ops...");
+            for (TransactionManager.WalEntry entry : logs)
+                applyOpToMemory(entry);
+            System.out.println(" [RECOVERY] Done.");
+        }
+        wal.resume(lastLsn);
     }
 
-    private void applyOpToMemory(String op, String json) {
+    /**
+     * Re-applies one logged write to each shard it touches that does not already hold it. Shards
+     * are saved on eviction and at checkpoints while the WAL keeps growing, so a shard file may
+     * contain some of the entries being replayed; relations would be linked twice otherwise.
+     */
+    private void applyOpToMemory(TransactionManager.WalEntry entry) {
+        topologyVersion.incrementAndGet();
+        long lsn = entry.lsn;
         try {
-            switch (op) {
+            switch (entry.operation) {
                 case "ADD_NODE":
                 case "UPDATE_NODE":
-                    Node n = gson.fromJson(json, Node.class);
-                    getSegment(n.getId()).putNode(n);
+                    Node n = entry.readNode(gson);
+                    DataSegment home = getSegment(n.getId());
+                    if (home.holds(lsn))
+                        break;
+                    Node replaced = home.putNode(n, lsn);
+                    if (globalIndex != null)
+                        globalIndex.update(replaced, n);
+                    if (vectorIndex != null)
+                        vectorIndex.update(replaced, n);
+                    break;
+                case "ADD_NODES":
+                    for (Map.Entry<Integer, List<Node>> group : bySegment(entry.readNodes(), Node::getId).entrySet()) {
+                        DataSegment seg = segmentAt(group.getKey());
+                        if (seg.holds(lsn))
+                            continue;
+                        List<Node> batch = group.getValue();
+                        Node[] previous = seg.putNodes(batch, lsn);
+                        for (int i = 0; i < previous.length; i++) {
+                            if (globalIndex != null)
+                                globalIndex.update(previous[i], batch.get(i));
+                            if (vectorIndex != null)
+                                vectorIndex.update(previous[i], batch.get(i));
+                        }
+                    }
                     break;
                 case "DELETE_NODE":
-                    String id = json;
-                    if (getSegment(id).removeNode(id))
-                        for (DataSegment s : segments)
-                            if (s != null)
-                                s.removeRelationsTo(id);
+                    String id = entry.payload;
+                    DataSegment owner = getSegment(id);
+                    Node deleted = owner.holds(lsn) ? null : owner.removeNode(id, lsn);
+                    if (deleted != null) {
+                        if (globalIndex != null)
+                            globalIndex.update(deleted, null);
+                        if (vectorIndex != null)
+                            vectorIndex.update(deleted, null);
+                    }
+                    // Other shards may have been saved before the delete reached them
+                    for (DataSegment s : segments)
+                        if (s != null && !s.holds(lsn))
+                            s.removeRelationsTo(id, lsn);
                     break;
                 case "ADD_LINK":
-                    Relation r = gson.fromJson(json, Relation.class);
-                    getSegment(r.getSourceId()).addRelation(r);
+                    Relation r = entry.readRelation(gson);
+                    DataSegment source = getSegment(r.getSourceId());
+                    if (!source.holds(lsn))
+                        source.addRelation(r, lsn);
+                    break;
+                case "ADD_LINKS":
+                    for (Map.Entry<Integer, List<Relation>> group : bySegment(entry.readRelations(), Relation::getSourceId).entrySet()) {
+                        DataSegment seg = segmentAt(group.getKey());
+                        if (!seg.holds(lsn))
+                            seg.addRelations(group.getValue(), lsn);
+                    }
                     break;
                 case "DELETE_LINK":
-                    Relation d = gson.fromJson(json, Relation.class);
-                    getSegment(d.getSourceId()).removeRelation(d.getSourceId(), d.getTargetId(), d.getType());
+                    Relation d = entry.readRelation(gson);
+                    DataSegment from = getSegment(d.getSourceId());
+                    if (!from.holds(lsn))
+                        from.removeRelation(d.getSourceId(), d.getTargetId(), d.getType(), lsn);
                     break;
             }
         } catch (Exception e) {
@@ -157,55 +744,331 @@ public class GraphEngine {
     }
 
     // Routing
+    static int segmentIndex(String id) {
+        return Math.abs(id.hashCode()) % BUCKET_COUNT;
+    }
+
+    /**
+     * Number of shards kept in memory at once. Parallel scans should use fewer threads than this,
+     * or their shards evict each other.
+     */
+    public static int residentShardLimit() {
+        return MAX_ACTIVE_SEGMENTS;
+    }
+
+    /** Number of shards; node IDs map to them with {@link #shardOf}. */
+    public static int shardCount() {
+        return BUCKET_COUNT;
+    }
+
+    /** The shard holding a node and the relations it is the source of. */
+    public static int shardOf(String id) {
+        return segmentIndex(id);
+    }
+
+    /**
+     * True if the shard is one of those kept in memory. Writing to other shards evicts (saves)
+     * the least recently used one, so bulk writers favour these.
+     */
+    public boolean isShardResident(int shard) {
+        return lruQueue.contains(shard);
+    }
+
     private DataSegment getSegment(String id) {
-        int segId = Math.abs(id.hashCode()) % BUCKET_COUNT;
+        return segmentAt(segmentIndex(id));
+    }
+
+    /** Items grouped by the shard of their ID, in shard order. */
+    private static <T> Map<Integer, List<T>> bySegment(Collection<T> items, Function<T, String> id) {
+        Map<Integer, List<T>> groups = new TreeMap<>();
+        for (T item : items)
+            groups.computeIfAbsent(segmentIndex(id.apply(item)), k -> new ArrayList<>()).add(item);
+        return groups;
+    }
+
+    /**
+     * Reorders shard groups so the resident shards come first: a batch spanning more shards than
+     * stay loaded then evicts only shards it has already finished with.
+     */
+    private <T> Map<Integer, List<T>> residentFirst(Map<Integer, List<T>> groups) {
+        Map<Integer, List<T>> ordered = new LinkedHashMap<>();
+        groups.forEach((seg, items) -> { if (lruQueue.contains(seg)) ordered.put(seg, items); });
+        ordered.putAll(groups);
+        return ordered;
+    }
+
+    DataSegment segmentAt(int segId) {
         touchSegment(segId);
         return segments[segId];
     }
 
+    /** Number of shards currently in memory. */
+    int residentSegments() {
+        int count = 0;
+        for (DataSegment s : segments)
+            if (s.isLoaded())
+                count++;
+        return count;
+    }
+
     private void touchSegment(int segId) {
-        lruQueue.remove(segId);
-        lruQueue.addFirst(segId);
-        while (lruQueue.size() > MAX_ACTIVE_SEGMENTS) {
-            Integer lruId = lruQueue.pollLast();
-            if (lruId != null)
-                segments[lruId].unload();
+        // Reordered atomically so concurrent touches cannot duplicate an entry; the victim is saved
+        // outside the lock, and a shard evicted while in use is reloaded by its next access
+        Integer victim;
+        synchronized (lruQueue) {
+            lruQueue.remove(segId);
+            lruQueue.addFirst(segId);
+            victim = lruQueue.size() > MAX_ACTIVE_SEGMENTS ? lruQueue.pollLast() : null;
+        }
+        if (victim != null)
+            evict(victim);
+    }
+
+    /** Unloads a shard, recording its counts in the catalog so they stay answerable while it is on disk. */
+    private void evict(int segId) {
+        DataSegment seg = segments[segId];
+        if (!seg.isLoaded())
+            return;
+        SegmentStats stats = seg.getStats();
+        seg.unload();
+        catalog.update(segId, seg.getFile(), stats);
+        catalog.save();
+    }
+
+    /**
+     * Counts for a shard without loading it when possible: live counts if it is in memory,
+     * otherwise the catalog entry if it still matches the shard file, otherwise a load.
+     */
+    private SegmentStats statsOf(int segId) {
+        DataSegment seg = segments[segId];
+        if (!seg.isLoaded()) {
+            SegmentStats cached = catalog.get(segId, seg.getFile());
+            if (cached != null)
+                return cached;
+            touchSegment(segId);
         }
+        return seg.getStats();
     }
 
     // CRUD Delegates
     public void persistNode(Node n) {
-        wal.writeEntry(new TransactionManager.WalEntry("ADD_NODE", gson.toJson(n)));
-        getSegment(n.getId()).putNode(n);
+        Node previous;
+        long version = 0;
+        long lsn = wal.writeEntry(TransactionManager.WalEntry.ofNode("ADD_NODE", n));
+        topologyWrites.incrementAndGet();
+        try {
+            previous = getSegment(n.getId()).putNode(n, lsn);
+            if (previous == null)
+                version = topologyVersion.incrementAndGet();
+        } finally {
+            wal.applied(lsn);
+            topologyWrites.decrementAndGet();
+        }
+        if (previous == null) {
+            long added = version;
+            maintainPageRank(added, live -> live.addNode(n.getId()));
+        }
+        if (globalIndex != null)
+            globalIndex.update(previous, n);
+        if (vectorIndex != null)
+            vectorIndex.update(previous, n);
+        invalidateNode(previous, n);
     }
 
-    public boolean updateNode(String id, String k, String v) {
-        Node n = getSegment(id).getNode(id);
-        if (n == null)
+    /**
+     * Writes a batch of nodes with one WAL record, applying each shard's share under a single
+     * lock acquisition. Nodes that already exist are replaced, as with {@link #persistNode}.
+     * @throws IllegalArgumentException If a node lacks an ID or label; nothing is written then.
+     */
+    public void persistNodes(Collection<Node> batch) {
+        if (batch.isEmpty())
+            return;
+        for (Node n : batch)
+            if (n.getId() == null || n.getLabel() == null)
+                throw new IllegalArgumentException("Node without ID or label in batch");
+        List<String> added = new ArrayList<>();
+        Map<Integer, List<Node>> groups = residentFirst(bySegment(batch, Node::getId));
+        Map<Integer, Node[]> replaced = new HashMap<>();
+        long version;
+        long lsn = wal.writeEntry(TransactionManager.WalEntry.ofNodes("ADD_NODES", batch));
+        topologyWrites.incrementAndGet();
+        try {
+            for (Map.Entry<Integer, List<Node>> group : groups.entrySet())
+                replaced.put(group.getKey(), segmentAt(group.getKey()).putNodes(group.getValue(), lsn));
+            version = topologyVersion.incrementAndGet();
+        } finally {
+            wal.applied(lsn);
+            topologyWrites.decrementAndGet();
+        }
+        for (Map.Entry<Integer, List<Node>> group : groups.entrySet()) {
+            List<Node> nodes = group.getValue();
+            Node[] previous = replaced.get(group.getKey());
+            Set<String> labels = new HashSet<>();
+            Set<String> keys = new HashSet<>(Collections.singleton("id"));
+            for (int i = 0; i < previous.length; i++) {
+                Node n = nodes.get(i);
+                if (previous[i] == null) {
+                    added.add(n.getId());
+                } else {
+                    labels.add(previous[i].getLabel());
+                    keys.addAll(previous[i].getProperties().keySet());
+                }
+                labels.add(n.getLabel());
+                keys.addAll(n.getProperties().keySet());
+                if (globalIndex != null)
+                    globalIndex.update(previous[i], n);
+                if (vectorIndex != null)
+                    vectorIndex.update(previous[i], n);
+            }
+            queryCache.invalidateNode(group.getKey(), labels, keys);
+        }
+        if (!added.isEmpty())
+            maintainPageRank(version, live -> added.forEach(live::addNode));
+    }
+
+    public boolean updateNode(String id, String k, Object v) {
+        Node current = getSegment(id).getNode(id);
+        if (current == null)
             return false;
+        // Write a copy so indexes can still see the old values of the stored node
+        Node n = new Node(id, current.getLabel());
+        current.getProperties().forEach(n::addProperty);
         n.addProperty(k, v);
-        wal.writeEntry(new TransactionManager.WalEntry("UPDATE_NODE", gson.toJson(n)));
-        getSegment(id).putNode(n);
+        long lsn = wal.writeEntry(TransactionManager.WalEntry.ofNode("UPDATE_NODE", n));
+        try {
+            getSegment(id).putNode(n, lsn);
+        } finally {
+            wal.applied(lsn);
+        }
+        if (globalIndex != null)
+            globalIndex.update(current, n);
+        if (vectorIndex != null)
+            vectorIndex.update(current, n);
+        queryCache.invalidateNode(segmentIndex(id), Collections.singleton(n.getLabel()), Collections.singleton(k));
         return true;
     }
 
     public boolean deleteNode(String id) {
-        wal.writeEntry(new TransactionManager.WalEntry("DELETE_NODE", id));
-        boolean rem = getSegment(id).removeNode(id);
-        if (rem)
-            for (int i = 0; i < BUCKET_COUNT; i++) {
-                touchSegment(i);
-                segments[i].removeRelationsTo(id);
+        Node removed;
+        long version = 0;
+        long lsn = wal.writeEntry(new TransactionManager.WalEntry("DELETE_NODE", id));
+        topologyWrites.incrementAndGet();
+        try {
+            removed = getSegment(id).removeNode(id, lsn);
+            if (removed != null) {
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    touchSegment(i);
+                    segments[i].removeRelationsTo(id, lsn);
+                }
+                version = topologyVersion.incrementAndGet();
             }
-        return rem;
+        } finally {
+            wal.applied(lsn);
+            topologyWrites.decrementAndGet();
+        }
+        if (removed != null) {
+            long deleted = version;
+            if (globalIndex != null)
+                globalIndex.update(removed, null);
+            if (vectorIndex != null)
+                vectorIndex.update(removed, null);
+            invalidateNode(removed, null);
+            queryCache.invalidateRelation(-1, null);
+            maintainPageRank(deleted, live -> live.removeNode(id));
+        }
+        return removed != null;
+    }
+
+    /**
+     * Evicts cached queries that may observe the change from {@code before} to {@code after}
+     * (either may be null for inserts and deletes).
+     */
+    private void invalidateNode(Node before, Node after) {
+        Node any = before != null ? before : after;
+        Set<String> labels = new HashSet<>();
+        Set<String> keys = new HashSet<>();
+        if (before != null) labels.add(before.getLabel());
+        if (after != null) labels.add(after.getLabel());
+
+        if (before == null || after == null || before == after || !before.getLabel().equalsIgnoreCase(after.getLabel())) {
+            // Membership changed (or the change can't be diffed): every key of either version is affected.
+            keys.add("id");
+            if (before != null) keys.addAll(before.getProperties().keySet());
+            if (after != null) keys.addAll(after.getProperties().keySet());
+        } else {
+            Set<String> all = new HashSet<>(before.getProperties().keySet());
+            all.addAll(after.getProperties().keySet());
+            for (String k : all)
+                if (!Objects.equals(before.getProperties().get(k), after.getProperties().get(k)))
+                    keys.add(k);
+        }
+        queryCache.invalidateNode(segmentIndex(any.getId()), labels, keys);
     }
 
     public void persistRelation(String f, String t, String type, Map<String, Object> p) {
         if (getSegment(f).getNode(f) == null || getSegment(t).getNode(t) == null)
             throw new IllegalArgumentException("Nodes not found");
         Relation r = new Relation(f, t, type, p);
-        wal.writeEntry(new TransactionManager.WalEntry("ADD_LINK", gson.toJson(r)));
-        getSegment(f).addRelation(r);
+        long version;
+        long lsn = wal.writeEntry(TransactionManager.WalEntry.ofRelation("ADD_LINK", r));
+        topologyWrites.incrementAndGet();
+        try {
+            getSegment(f).addRelation(r, lsn);
+            version = topologyVersion.incrementAndGet();
+        } finally {
+            wal.applied(lsn);
+            topologyWrites.decrementAndGet();
+        }
+        queryCache.invalidateRelation(segmentIndex(f), type);
+        maintainPageRank(version, live -> live.addEdge(f, t));
+    }
+
+    /**
+     * Writes a batch of relations with one WAL record. Endpoints are checked for the whole batch
+     * first, one lock acquisition per shard, and each shard's share is then linked under a single
+     * lock acquisition.
+     * @throws IllegalArgumentException If an endpoint does not exist or a type is missing; nothing
+     *                                  is written then.
+     */
+    public void persistRelations(Collection<Relation> batch) {
+        if (batch.isEmpty())
+            return;
+        Set<String> endpoints = new HashSet<>();
+        for (Relation r : batch) {
+            if (r.getType() == null)
+                throw new IllegalArgumentException("Relation without type in batch");
+            endpoints.add(r.getSourceId());
+            endpoints.add(r.getTargetId());
+        }
+        Set<String> missing = findMissingNodes(endpoints);
+        if (!missing.isEmpty())
+            throw new IllegalArgumentException("Nodes not found: " + missing.stream().limit(5).collect(Collectors.joining(", "))
+                    + (missing.size() > 5 ? " (+" + (missing.size() - 5) + " more)" : ""));
+        Map<Integer, List<Relation>> groups = residentFirst(bySegment(batch, Relation::getSourceId));
+        long version;
+        long lsn = wal.writeEntry(TransactionManager.WalEntry.ofRelations("ADD_LINKS", batch));
+        topologyWrites.incrementAndGet();
+        try {
+            for (Map.Entry<Integer, List<Relation>> group : groups.entrySet())
+                segmentAt(group.getKey()).addRelations(group.getValue(), lsn);
+            version = topologyVersion.incrementAndGet();
+        } finally {
+            wal.applied(lsn);
+            topologyWrites.decrementAndGet();
+        }
+        for (Map.Entry<Integer, List<Relation>> group : groups.entrySet()) {
+            group.getValue().stream().map(Relation::getType).distinct()
+                    .forEach(type -> queryCache.invalidateRelation(group.getKey(), type));
+        }
+        maintainPageRank(version, live -> batch.forEach(r -> live.addEdge(r.getSourceId(), r.getTargetId())));
+    }
+
+    /** The IDs among {@code ids} that have no node, checked with one lock acquisition per shard. */
+    public Set<String> findMissingNodes(Collection<String> ids) {
+        Set<String> missing = new HashSet<>();
+        for (Map.Entry<Integer, List<String>> group : residentFirst(bySegment(ids, id -> id)).entrySet())
+            missing.addAll(segmentAt(group.getKey()).missingNodes(group.getValue()));
+        return missing;
     }
 
     public void persistRelation(String f, String t, String type) {
@@ -214,8 +1077,25 @@ public class GraphEngine {
 
     public boolean deleteRelation(String f, String t, String type) {
         Relation tg = new Relation(f, t, type);
-        wal.writeEntry(new TransactionManager.WalEntry("DELETE_LINK", gson.toJson(tg)));
-        return getSegment(f).removeRelation(f, t, type);
+        int removed;
+        long version = 0;
+        long lsn = wal.writeEntry(TransactionManager.WalEntry.ofRelation("DELETE_LINK", tg));
+        topologyWrites.incrementAndGet();
+        try {
+            removed = getSegment(f).removeRelation(f, t, type, lsn);
+            if (removed > 0)
+                version = topologyVersion.incrementAndGet();
+        } finally {
+            wal.applied(lsn);
+            topologyWrites.decrementAndGet();
+        }
+        if (removed > 0) {
+            long unlinked = version;
+            queryCache.invalidateRelation(segmentIndex(f), type);
+            // Every duplicate went from the shard, so every copy leaves the live out-list too
+            maintainPageRank(unlinked, live -> live.removeEdge(f, t, removed));
+        }
+        return removed > 0;
     }
 
     public boolean updateRelation(String f, String t, String old, String newT) {
@@ -228,9 +1108,26 @@ public class GraphEngine {
 
     public void checkpoint() {
         System.out.println(" [ENGINE] Checkpointing...");
-        for (Integer id : lruQueue)
-            segments[id].save();
-        wal.clearLog();
+        // Entries before the mark are in memory and saved below, so they can go. Later ones stay in
+        // the WAL, and replay skips those a saved shard already holds
+        long saved = wal.appliedLength();
+        // Every loaded shard, not just the LRU ones: a shard reloaded by an access racing its eviction
+        // may be in memory without being queued
+        for (int id = 0; id < BUCKET_COUNT; id++) {
+            DataSegment seg = segments[id];
+            seg.save();
+            if (seg.isLoaded())
+                catalog.update(id, seg.getFile(), seg.getStats());
+        }
+        catalog.save();
+        if (globalIndex != null)
+            globalIndex.save(segmentFiles());
+        if (vectorIndex != null)
+            vectorIndex.save(segmentFiles());
+        synchronized (backupLock) {
+            if (backupsRunning == 0)
+                wal.truncateHead(saved);
+        }
         System.out.println(" [ENGINE] Done.");
     }
 
@@ -246,33 +1143,367 @@ public class GraphEngine {
         return null;
     }
 
+    /**
+     * Exact-value search (ID, label or property value) when auto-indexing is on, answered from the
+     * global index so only shards holding hits are loaded; otherwise a substring scan of every shard.
+     */
     public List<Node> search(String q) {
-        List<Node> r = new ArrayList<>();
+        List<String> ids = queryCache.getOrCompute(QueryCache.key("search", q.toLowerCase()), QueryCache.Dependencies.any(), () -> {
+            List<String> r = new ArrayList<>();
+            GlobalIndex index = index();
+            if (index != null) {
+                // Group by shard so each shard is touched once
+                Map<Integer, List<String>> byShard = new TreeMap<>();
+                for (String id : index.lookup(q))
+                    byShard.computeIfAbsent(segmentIndex(id), k -> new ArrayList<>()).add(id);
+                for (Map.Entry<Integer, List<String>> e : byShard.entrySet()) {
+                    DataSegment seg = segmentAt(e.getKey());
+                    for (String id : e.getValue())
+                        if (seg.getNode(id) != null)
+                            r.add(id);
+                }
+                return r;
+            }
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                touchSegment(i);
+                for (Node n : segments[i].search(q))
+                    r.add(n.getId());
+            }
+            return r;
+        });
+        return hydrate(ids);
+    }
+
+    /**
+     * Ranked full-text search: tokenized, with prefix matching on the last word and typo tolerance.
+     * Each shard scores its own best {@code k} node IDs and the merged list is cut back to
+     * {@code k}. Fuzzy terms cannot be looked up in the global index, so every shard is scored, but
+     * shards that are not resident are scored from their text index sidecars; only shards without
+     * a current sidecar, and those holding the final hits, are loaded.
+     *
+     * @return Up to {@code k} hits, best first.
+     * @throws IllegalArgumentException If {@code k} is negative.
+     */
+    public List<SearchHit> searchTop(String q, int k) {
+        if (k < 0) throw new IllegalArgumentException("Result limit must not be negative");
+        List<TextIndex.Hit> scored = new ArrayList<>();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            List<TextIndex.Hit> shardHits;
+            while ((shardHits = segments[i].scoreText(q, k)) == null)
+                touchSegment(i);
+            scored.addAll(shardHits);
+        }
+        scored.sort(TextIndex.BY_SCORE);
+        List<SearchHit> hits = new ArrayList<>(Math.min(k, scored.size()));
+        for (TextIndex.Hit hit : scored.subList(0, Math.min(k, scored.size()))) {
+            Node n = getNode(hit.id);
+            if (n != null)
+                hits.add(new SearchHit(n, hit.score));
+        }
+        return hits;
+    }
+
+    /**
+     * Nodes most similar to a vectorized node by the cosine similarity of their feature vectors
+     * (see {@link Featurizer}), best first, found through the HNSW vector index.
+     * @throws IllegalArgumentException If the node does not exist or was not created with
+     *                                  {@code __vectorize=true}.
+     */
+    public List<SearchHit> similar(String id, int k) {
+        Node node = getNode(id);
+        if (node == null)
+            throw new IllegalArgumentException("Unknown node: " + id);
+        List<VectorIndex.Hit> nearest = vectors().similar(id, k);
+        if (nearest == null)
+            throw new IllegalArgumentException("Node " + id + " is not vectorized (create it with --vectorize)");
+        List<SearchHit> hits = new ArrayList<>(nearest.size());
+        for (VectorIndex.Hit hit : nearest) {
+            Node n = getNode(hit.id);
+            if (n != null)
+                hits.add(new SearchHit(n, hit.score));
+        }
+        return hits;
+    }
+
+    /** Number of nodes in the vector index. */
+    public int countVectorized() {
+        return vectors().size();
+    }
+
+    /**
+     * AQL selection: nodes with the given label matching the condition.
+     * Results are cached and only invalidated by writes to that label and property.
+     */
+    public List<Node> select(String label, Condition condition) {
+        String key = QueryCache.key("select", label.toLowerCase(), condition.toString());
+        QueryCache.Dependencies deps = QueryCache.Dependencies.any().label(label).property(condition.getKey());
+        List<String> ids = queryCache.getOrCompute(key, deps, () -> getNodesByLabel(label).stream()
+                .filter(condition::test).map(Node::getId).collect(Collectors.toList()));
+        return hydrate(ids);
+    }
+
+    private List<Node> hydrate(List<String> ids) {
+        List<Node> nodes = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Node n = getNode(id);
+            if (n != null)
+                nodes.add(n);
+        }
+        return nodes;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    public List<Relation> getRelationsFrom(String id) {
+        return getSegment(id).getRelationsFrom(id);
+    }
+
+    public List<Node> getNodesByLabel(String label) {
+        List<Node> all = new ArrayList<>();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            touchSegment(i);
+            all.addAll(segments[i].getNodesByLabel(label));
+        }
+        return all;
+    }
+
+    /**
+     * Streams every relation of a type (null for all) shard by shard without
+     * building the full relation list that {@link #getAllRelations()} returns.
+     */
+    public void forEachRelation(String type, Consumer<Relation> visitor) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            touchSegment(i);
+            segments[i].forEachRelation(type, visitor);
+        }
+    }
+
+    // Statistics (used by the query planner)
+    public long countNodes() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            total += statsOf(i).getNodes();
+        return total;
+    }
+
+    /** Total number of relations, answered from live shard counts or the catalog. */
+    public long countRelations() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            total += statsOf(i).getRelations();
+        return total;
+    }
+
+    /** Number of relations of a type (case-insensitive), answered from live shard counts or the catalog. */
+    public long countRelationsByType(String type) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            total += statsOf(i).countType(type);
+        return total;
+    }
+
+    // Aggregation
+
+    /**
+     * Runs an aggregate query. Plain counts (optionally grouped by label or type) are answered from
+     * shard statistics, which come from the catalog for unloaded shards; everything else is folded
+     * inside each shard under its read lock and the per-shard partials are merged here.
+     * Unloaded shards whose catalog entry shows no rows of the target label or type are skipped.
+     *
+     * @return Final values keyed by group, or by {@link Aggregation#ALL} when ungrouped.
+     */
+    public Map<String, Number> aggregate(Aggregation agg) {
+        Aggregation.Partial total = new Aggregation.Partial();
+        boolean fromStats = agg.isCountOnly() && (agg.getGroupBy() == null || agg.groupsByShape());
         for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (fromStats) {
+                addStatsCounts(total, statsOf(i), agg);
+                continue;
+            }
+            if (agg.getTarget() != null && !segments[i].isLoaded()) {
+                SegmentStats cached = catalog.get(i, segments[i].getFile());
+                if (cached != null && (agg.isOverRelations() ? cached.countType(agg.getTarget())
+                        : cached.countLabel(agg.getTarget())) == 0)
+                    continue;
+            }
             touchSegment(i);
-            r.addAll(segments[i].search(q));
+            total.merge(segments[i].aggregate(agg));
         }
-        return r;
+        return total.finish(agg);
+    }
+
+    private static void addStatsCounts(Aggregation.Partial total, SegmentStats stats, Aggregation agg) {
+        Map<String, Long> counts = agg.isOverRelations() ? stats.getTypes() : stats.getLabels();
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            if (agg.getTarget() != null && !e.getKey().equalsIgnoreCase(agg.getTarget()))
+                continue;
+            total.addCount(agg.getGroupBy() == null ? Aggregation.ALL : e.getKey(), e.getValue());
+        }
+    }
+
+    public long countNodesByLabel(String label) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            total += statsOf(i).countLabel(label);
+        return total;
+    }
+
+    /** Number of nodes the index holds for a term, or -1 if indexing is off. Never loads a shard. */
+    public long countIndexed(String term) {
+        GlobalIndex index = index();
+        return index == null ? -1 : index.count(term);
     }
 
     public List<Node> traverse(String f, String t) {
-        return getSegment(f).getRelationsFrom(f).stream().filter(r -> r.getType().equalsIgnoreCase(t))
-                .map(r -> getSegment(r.getTargetId()).getNode(r.getTargetId())).filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        QueryCache.Dependencies deps = QueryCache.Dependencies.relationsOnly().relationType(t).segment(segmentIndex(f));
+        List<String> ids = queryCache.getOrCompute(QueryCache.key("traverse", f, t.toUpperCase()), deps,
+                () -> getSegment(f).getRelationsFrom(f).stream().filter(r -> r.getType().equalsIgnoreCase(t))
+                        .map(Relation::getTargetId).collect(Collectors.toList()));
+        return hydrate(ids);
+    }
+
+    /**
+     * Starts a lazy k-hop expansion.
+     * @param seeds Start node IDs (depth 0).
+     * @param minDepth Smallest hop count to return.
+     * @param maxDepth Largest hop count to expand to.
+     * @param types Relation types to follow; null or empty follows all.
+     * @param label Only return nodes with this label; null returns all (traversal is not filtered).
+     */
+    public KHopExpansion expand(Collection<String> seeds, int minDepth, int maxDepth, Collection<String> types, String label) {
+        if (minDepth < 0 || maxDepth < minDepth)
+            throw new IllegalArgumentException("Invalid depth range: " + minDepth + ".." + maxDepth);
+        return new KHopExpansion(this, BUCKET_COUNT, seeds, minDepth, maxDepth, types, label);
     }
 
     // Pathfinding
+    /**
+     * Dijkstra over the relation property {@code k}. Typed numeric weights are read without
+     * parsing; relations without a numeric weight count as 1.0 and negative weights are skipped.
+     * With {@code min == false} the search prefers heavy edges by walking on {@code 1 / weight};
+     * the reported cost is always the sum of the original weights.
+     * @return The path and its cost, or {@code null} if the target is unreachable.
+     */
     public PathResult findWeightedPath(String s, String e, String k, boolean min) {
-        // (Paste previous Dijkstra logic here)
-        // For brevity in this response, assume previous logic exists
+        Map<String, Double> dist = new HashMap<>();
+        Map<String, Double> cost = new HashMap<>();
+        Map<String, String> prev = new HashMap<>();
+        PriorityQueue<Object[]> queue = new PriorityQueue<>(Comparator.comparingDouble(o -> (Double) o[1]));
+        dist.put(s, 0.0);
+        cost.put(s, 0.0);
+        queue.add(new Object[] { s, 0.0 });
+
+        while (!queue.isEmpty()) {
+            Object[] head = queue.poll();
+            String u = (String) head[0];
+            double d = (Double) head[1];
+            if (d > dist.get(u))
+                continue; // stale queue entry
+            if (u.equals(e)) {
+                LinkedList<String> path = new LinkedList<>();
+                for (String at = e; at != null; at = prev.get(at))
+                    path.addFirst(at);
+                return new PathResult(path, cost.get(e));
+            }
+            for (Relation r : getRelationsFrom(u)) {
+                double w = PropertyCodec.asDouble(r.getProperties().get(k));
+                if (Double.isNaN(w))
+                    w = 1.0;
+                if (w < 0 || (!min && w == 0))
+                    continue;
+                double nd = d + (min ? w : 1.0 / w);
+                String v = r.getTargetId();
+                if (nd < dist.getOrDefault(v, Double.POSITIVE_INFINITY)) {
+                    dist.put(v, nd);
+                    cost.put(v, cost.get(u) + w);
+                    prev.put(v, u);
+                    queue.add(new Object[] { v, nd });
+                }
+            }
+        }
         return null;
     }
 
+    /**
+     * Fewest-hops path of at most {@code d} hops, or an empty list. Returns immediately when a
+     * current weak-component result puts the endpoints in different components, and walks the
+     * cached projection instead of the shards when one is current.
+     */
     public List<String> findShortestPath(String s, String e, int d) {
-        // (Paste previous BFS logic here)
+        if (getNode(s) == null || getNode(e) == null)
+            return Collections.emptyList();
+        if (s.equals(e))
+            return Collections.singletonList(s);
+        long version = topologyVersion.get();
+        Components.Result wcc = structure.get(Components.Kind.WCC);
+        if (wcc != null && wcc.getVersion() == version && wcc.valueOf(s) != wcc.valueOf(e))
+            return Collections.emptyList();
+
+        GraphProjection g = projections.get("");
+        if (g != null && g.getVersion() == version)
+            return shortestPathOn(g, g.indexOf(s), g.indexOf(e), d);
+
+        Map<String, String> prev = new HashMap<>();
+        prev.put(s, null);
+        List<String> frontier = Collections.singletonList(s);
+        for (int depth = 0; depth < d && !frontier.isEmpty(); depth++) {
+            List<String> next = new ArrayList<>();
+            for (String u : frontier) {
+                for (Relation r : getRelationsFrom(u)) {
+                    String v = r.getTargetId();
+                    if (prev.containsKey(v))
+                        continue;
+                    prev.put(v, u);
+                    if (v.equals(e))
+                        return unwind(prev, e);
+                    next.add(v);
+                }
+            }
+            frontier = next;
+        }
+        return Collections.emptyList();
+    }
+
+    private static List<String> shortestPathOn(GraphProjection g, int s, int e, int d) {
+        int[] prev = new int[g.size()];
+        Arrays.fill(prev, -2);
+        prev[s] = -1;
+        int[] offsets = g.outOffsets(), targets = g.outTargets();
+        int[] frontier = { s };
+        for (int depth = 0; depth < d && frontier.length > 0; depth++) {
+            int[] next = new int[16];
+            int size = 0;
+            for (int u : frontier) {
+                for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                    int v = targets[i];
+                    if (prev[v] != -2)
+                        continue;
+                    prev[v] = u;
+                    if (v == e) {
+                        LinkedList<String> path = new LinkedList<>();
+                        for (int at = e; at >= 0; at = prev[at])
+                            path.addFirst(g.idOf(at));
+                        return path;
+                    }
+                    if (size == next.length)
+                        next = Arrays.copyOf(next, size * 2);
+                    next[size++] = v;
+                }
+            }
+            frontier = Arrays.copyOf(next, size);
+        }
         return Collections.emptyList();
     }
 
+    private static List<String> unwind(Map<String, String> prev, String end) {
+        LinkedList<String> path = new LinkedList<>();
+        for (String at = end; at != null; at = prev.get(at))
+            path.addFirst(at);
+        return path;
+    }
+
     public static class PathResult {
         public List<String> path;
         public double totalCost;
@@ -284,10 +1515,74 @@ public class GraphEngine {
     }
 
     // Admin
+    /**
+     * Turns the exact-value index on or off. Turning it on reads the persisted global index and
+     * re-indexes only the shards that changed since it was saved; turning it off deletes it.
+     */
     public void setAutoIndexing(boolean e) {
         this.autoIndexing = e;
-        for (DataSegment s : segments)
-            s.setIndexing(e);
+        if (e) {
+            index();
+        } else {
+            globalIndex = null;
+            GlobalIndex.delete(dbDirectory);
+        }
+        queryCache.clear(); // search switches between exact-term and substring semantics
+    }
+
+    /**
+     * The global index, opened on first use. Writes made before it is opened are picked up then:
+     * their shards are either dirty in memory or have files newer than the index's stamps.
+     */
+    private synchronized GlobalIndex index() {
+        if (autoIndexing && globalIndex == null)
+            globalIndex = openGlobalIndex();
+        return globalIndex;
+    }
+
+    private GlobalIndex openGlobalIndex() {
+        GlobalIndex index = GlobalIndex.open(crypto, dbDirectory, BUCKET_COUNT);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            DataSegment seg = segments[i];
+            if (index.isCurrent(i, seg.getFile()) && !(seg.isLoaded() && seg.isDirty()))
+                continue;
+            touchSegment(i);
+            final int shard = i;
+            index.reindexSegment(seg.getNodes(), id -> segmentIndex(id) == shard);
+        }
+        return index;
+    }
+
+    /**
+     * The vector index, opened on first use. As with the global index, shards written before it
+     * was opened are re-indexed then.
+     */
+    private synchronized VectorIndex vectors() {
+        if (vectorIndex == null) {
+            VectorIndex index = VectorIndex.open(crypto, dbDirectory, BUCKET_COUNT);
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                DataSegment seg = segments[i];
+                if (index.isCurrent(i, seg.getFile()) && !(seg.isLoaded() && seg.isDirty()))
+                    continue;
+                touchSegment(i);
+                final int shard = i;
+                index.reindexSegment(seg.getNodes(), id -> segmentIndex(id) == shard);
+            }
+            vectorIndex = index;
+        }
+        return vectorIndex;
+    }
+
+    private File[] segmentFiles() {
+        File[] files = new File[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            files[i] = segments[i].getFile();
+        return files;
+    }
+
+    /** The directory this engine keeps its files in. */
+    public String getDbDirectory() {
+        return dbDirectory;
     }
 
     public boolean isAutoIndexing() {
@@ -313,14 +1608,80 @@ public class GraphEngine {
     }
 
     public void wipeDatabase() {
-        wal.clearLog();
+        clearFiles();
+        reopen();
+    }
+
+    /** Writes a database into an emptied directory, e.g. {@link com.atlasdblite.io.GraphDump#restore}. */
+    public interface Loader {
+        void load(String dbDirectory) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Replaces the whole database with what {@code loader} writes into the emptied directory.
+     * Caches and analytics results are reset as by {@link #wipeDatabase}, the global index is
+     * rebuilt if auto-indexing is on, and anything the loader appended to the WAL is replayed.
+     * If the loader fails, the database is left empty.
+     */
+    public void replaceDatabase(Loader loader) throws IOException, InterruptedException {
+        clearFiles();
+        try {
+            loader.load(dbDirectory);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            clearFiles();
+            throw e;
+        } finally {
+            reopen();
+        }
+        // The loader may have written a WAL (a backup's) for recovery to replay
+        wal.reopen();
+        recover();
+    }
+
+    /**
+     * Takes an online backup without checkpointing or blocking writers (see {@link BackupManager}).
+     * Checkpoints made meanwhile save shards as usual but leave the WAL for the next one.
+     */
+    public BackupManager.Result backup(BackupManager backup) throws IOException {
+        synchronized (backupLock) {
+            backupsRunning++;
+        }
+        try {
+            return backup.write(dbDirectory, wal, crypto);
+        } finally {
+            synchronized (backupLock) {
+                backupsRunning--;
+            }
+        }
+    }
+
+    private void clearFiles() {
         for (DataSegment s : segments)
             s.unload();
+        lruQueue.clear();
+        jobs.clear();
         File d = new File(dbDirectory);
         if (d.exists())
             for (File f : d.listFiles())
                 f.delete();
+        wal.reset();
+    }
+
+    private void reopen() {
+        queryCache.clear();
+        topologyVersion.incrementAndGet();
+        synchronized (rankLock) {
+            livePageRank = null;
+            pageRankScores = Collections.emptyMap();
+        }
+        structure.clear();
+        communities = null;
+        betweenness = null;
         initialize();
+        globalIndex = null;
+        vectorIndex = null;
+        if (autoIndexing)
+            index();
     }
 
     public void commit() {
@@ -0,0 +1,135 @@
+package com.atlasdblite.engine;
+
+import com.atlasdblite.analytics.GraphProjection;
+import com.atlasdblite.models.PropertyCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The output of a finished analytics job: a few summary figures and, optionally, one value per
+ * node. Entries are kept sorted by node ID, which lets IDs be front-coded on disk; values that
+ * are all small non-negative integers (component or community numbers) are written as varints,
+ * anything else as doubles.
+ */
+public class JobResult {
+    private final Map<String, Object> summary;
+    private final String[] ids;
+    private final double[] values;
+    private final boolean integral;
+
+    /** A result with summary figures only. */
+    public JobResult(Map<String, Object> summary) {
+        this(summary, new String[0], new double[0]);
+    }
+
+    /**
+     * @param ids Node IDs, in any order.
+     * @param values Value of each node, aligned with {@code ids}.
+     */
+    public JobResult(Map<String, Object> summary, String[] ids, double[] values) {
+        this.summary = Collections.unmodifiableMap(new LinkedHashMap<>(summary));
+        Integer[] order = new Integer[ids.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> ids[a].compareTo(ids[b]));
+        this.ids = new String[ids.length];
+        this.values = new double[ids.length];
+        boolean whole = true;
+        for (int i = 0; i < order.length; i++) {
+            this.ids[i] = ids[order[i]];
+            this.values[i] = values[order[i]];
+            double v = this.values[i];
+            if (v < 0 || v > Integer.MAX_VALUE || v != Math.rint(v)) whole = false;
+        }
+        this.integral = whole;
+    }
+
+    /** One value per vertex of {@code g}. */
+    public static JobResult of(GraphProjection g, double[] values, Map<String, Object> summary) {
+        String[] ids = new String[g.size()];
+        for (int v = 0; v < ids.length; v++) ids[v] = g.idOf(v);
+        return new JobResult(summary, ids, values);
+    }
+
+    /** One value per vertex of {@code g}. */
+    public static JobResult of(GraphProjection g, int[] values, Map<String, Object> summary) {
+        double[] widened = new double[values.length];
+        for (int v = 0; v < values.length; v++) widened[v] = values[v];
+        return of(g, widened, summary);
+    }
+
+    public Map<String, Object> getSummary() { return summary; }
+
+    /** Number of per-node values. */
+    public int size() { return ids.length; }
+
+    public String idAt(int i) { return ids[i]; }
+    public double valueAt(int i) { return values[i]; }
+
+    /** The value of a node, or null if the result has none for it. */
+    public Double valueOf(String id) {
+        int i = Arrays.binarySearch(ids, id);
+        return i < 0 ? null : values[i];
+    }
+
+    /** Entry indexes of the {@code k} highest values, best first. */
+    public List<Integer> top(int k) {
+        List<Integer> order = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) order.add(i);
+        order.sort((a, b) -> Double.compare(values[b], values[a]));
+        return order.subList(0, Math.min(k, order.size()));
+    }
+
+    /** All values keyed by node ID. */
+    public Map<String, Double> toMap() {
+        Map<String, Double> map = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) map.put(ids[i], values[i]);
+        return map;
+    }
+
+    // --- Persistence ---
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        GlobalIndex.writeVarInt(out, summary.size());
+        for (Map.Entry<String, Object> e : summary.entrySet()) {
+            out.writeUTF(e.getKey());
+            PropertyCodec.writeValue(out, e.getValue());
+        }
+        out.writeBoolean(integral);
+        GlobalIndex.writeVarInt(out, ids.length);
+        String previous = "";
+        for (int i = 0; i < ids.length; i++) {
+            GlobalIndex.writeFrontCoded(out, previous, ids[i]);
+            previous = ids[i];
+            if (integral) GlobalIndex.writeVarInt(out, (int) values[i]);
+            else out.writeDouble(values[i]);
+        }
+    }
+
+    public static JobResult readFrom(DataInputStream in) throws IOException {
+        int entries = GlobalIndex.readVarInt(in);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        for (int i = 0; i < entries; i++) {
+            String key = in.readUTF();
+            summary.put(key, PropertyCodec.readValue(in));
+        }
+        boolean integral = in.readBoolean();
+        int count = GlobalIndex.readVarInt(in);
+        String[] ids = new String[count];
+        double[] values = new double[count];
+        String previous = "";
+        for (int i = 0; i < count; i++) {
+            previous = ids[i] = GlobalIndex.readFrontCoded(in, previous);
+            values[i] = integral ? GlobalIndex.readVarInt(in) : in.readDouble();
+        }
+        return new JobResult(summary, ids, values);
+    }
+}
@@ -0,0 +1,393 @@
+package com.atlasdblite.engine;
+
+import com.atlasdblite.analytics.JobControl;
+import com.atlasdblite.models.PropertyCodec;
+import com.atlasdblite.security.CryptoManager;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs analytics jobs in the background, so long computations never hold a shell or HTTP thread.
+ * <p>
+ * Jobs run on a fixed number of low-priority daemon threads behind a bounded queue; a submission
+ * beyond the queue is refused rather than piling up work. Each job gets an ID and a
+ * {@link JobControl} for progress and cancellation.
+ * <p>
+ * When a job ends, its record is added to {@code jobs.dat} and its output written to
+ * {@code job_<id>.res}, both in the same encrypted envelope as the shard files, so finished jobs
+ * and their results survive a restart. Only the latest {@link #MAX_RETAINED} finished jobs are
+ * kept. Jobs still queued or running at shutdown are not recorded.
+ */
+public class JobScheduler {
+    public static final int MAX_RETAINED = 50;
+    public static final int MAX_QUEUED = 32;
+    private static final String INDEX_FILE = "jobs.dat";
+    private static final String HEADER = "JOBS_V1";
+    private static final String RESULT_HEADER = "JOBRES_V1";
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED;
+
+        public boolean isFinished() { return this != QUEUED && this != RUNNING; }
+    }
+
+    /** The work of a job; it should call {@link JobControl#checkpoint()} or check for interruption. */
+    @FunctionalInterface
+    public interface Task<T> {
+        T run(JobControl control) throws Exception;
+    }
+
+    /** A submitted job. Its future completes with the task's value, or exceptionally if it fails or is cancelled. */
+    public static class Job<T> {
+        private final long id;
+        private final String type;
+        private final Map<String, String> params;
+        private final JobControl control = new JobControl();
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private volatile State state = State.QUEUED;
+        private volatile long submitted, started, finished;
+        private volatile String error;
+        private volatile Map<String, Object> summary = Collections.emptyMap();
+        private volatile boolean hasResult;
+        private Future<?> execution;
+
+        Job(long id, String type, Map<String, String> params) {
+            this.id = id;
+            this.type = type;
+            this.params = Collections.unmodifiableMap(new LinkedHashMap<>(params));
+        }
+
+        public long getId() { return id; }
+        public String getType() { return type; }
+        public Map<String, String> getParams() { return params; }
+        public JobControl getControl() { return control; }
+        public CompletableFuture<T> future() { return future; }
+        public State getState() { return state; }
+        public long getSubmitted() { return submitted; }
+        public long getStarted() { return started; }
+        public long getFinished() { return finished; }
+        /** Failure message, or null. */
+        public String getError() { return error; }
+        /** Summary figures of the result; empty until the job is done. */
+        public Map<String, Object> getSummary() { return summary; }
+        /** True once a result has been persisted for this job. */
+        public boolean hasResult() { return hasResult; }
+
+        /** Fraction of work done, 0..1. */
+        public double progress() {
+            return state == State.DONE ? 1.0 : control.progress();
+        }
+
+        /** Wall time so far, or in total once finished; 0 while queued. */
+        public long millis() {
+            if (started == 0) return 0;
+            return (finished == 0 ? System.currentTimeMillis() : finished) - started;
+        }
+    }
+
+    private final CryptoManager crypto;
+    private final String dbDirectory;
+    private final ThreadPoolExecutor pool;
+    private final Map<Long, Job<?>> jobs = new TreeMap<>();
+    private long nextId = 1;
+
+    /**
+     * Opens the job history of a database directory.
+     * @param workers Number of jobs that may run at the same time.
+     */
+    public JobScheduler(CryptoManager crypto, String dbDirectory, int workers) {
+        this.crypto = crypto;
+        this.dbDirectory = dbDirectory;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED), r -> {
+                    Thread t = new Thread(r, "atlas-analytics-job-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY); // a hint: interactive requests go first
+                    return t;
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+        loadIndex();
+    }
+
+    /**
+     * Queues a job.
+     * @param type Short name of the job kind, e.g. {@code "pagerank"}.
+     * @param params Options the job was started with, kept for display.
+     * @param output Turns the task's value into the result to persist; may return null.
+     * @throws IllegalStateException If the queue is full.
+     */
+    public synchronized <T> Job<T> submit(String type, Map<String, String> params, Task<T> task, Function<T, JobResult> output) {
+        Job<T> job = new Job<>(nextId, type, params);
+        job.submitted = System.currentTimeMillis();
+        try {
+            job.execution = pool.submit(() -> execute(job, task, output));
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Too many analytics jobs queued (limit " + MAX_QUEUED + ")");
+        }
+        nextId++;
+        jobs.put(job.id, job);
+        return job;
+    }
+
+    private <T> void execute(Job<T> job, Task<T> task, Function<T, JobResult> output) {
+        if (job.control.isCancelled()) {
+            finish(job, State.CANCELLED, null);
+            return;
+        }
+        job.started = System.currentTimeMillis();
+        job.state = State.RUNNING;
+        T value;
+        JobResult result;
+        try {
+            value = task.run(job.control);
+            result = output == null ? null : output.apply(value);
+        } catch (CancellationException | InterruptedException e) {
+            finish(job, State.CANCELLED, null);
+            return;
+        } catch (Exception e) {
+            if (job.control.isCancelled()) finish(job, State.CANCELLED, null);
+            else finish(job, State.FAILED, e.getMessage() != null ? e.getMessage() : e.toString());
+            return;
+        }
+        // A task that returns after cancel() may have stopped short; its value is not a result
+        if (job.control.isCancelled() || Thread.currentThread().isInterrupted()) {
+            finish(job, State.CANCELLED, null);
+            return;
+        }
+        if (result != null && isTracked(job)) {
+            try {
+                writeResult(job.id, result);
+                job.summary = result.getSummary();
+                job.hasResult = true;
+            } catch (Exception e) {
+                System.err.println("Job Result Save Failed: " + e.getMessage());
+            }
+        }
+        finish(job, State.DONE, null);
+        job.future.complete(value);
+    }
+
+    private void finish(Job<?> job, State state, String error) {
+        synchronized (this) {
+            job.error = error;
+            job.finished = System.currentTimeMillis();
+            job.state = state;
+            if (jobs.get(job.id) == job) {
+                prune();
+                saveIndex();
+            }
+        }
+        if (state == State.CANCELLED) job.future.completeExceptionally(new CancellationException("Job " + job.id + " cancelled"));
+        else if (state == State.FAILED) job.future.completeExceptionally(new IllegalStateException(error));
+    }
+
+    // --- Queries ---
+
+    public synchronized Job<?> get(long id) {
+        return jobs.get(id);
+    }
+
+    /** All known jobs, oldest first. */
+    public synchronized List<Job<?>> list() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Asks a job to stop: a queued job is dropped, a running one stops at its next checkpoint.
+     * @return False if the job is unknown or already finished.
+     */
+    public boolean cancel(long id) {
+        Job<?> job;
+        synchronized (this) {
+            job = jobs.get(id);
+            if (job == null || job.state.isFinished()) return false;
+            job.control.cancel();
+        }
+        // Interrupts a running task; a queued one never starts, so it is finished here
+        if (job.execution.cancel(true) && job.started == 0)
+            finish(job, State.CANCELLED, null);
+        return true;
+    }
+
+    /**
+     * Reads the persisted result of a finished job.
+     * @return The result, or null if the job is unknown or produced none.
+     */
+    public JobResult result(long id) {
+        Job<?> job = get(id);
+        if (job == null || !job.hasResult) return null;
+        File file = resultFile(id);
+        if (!file.exists()) return null;
+        try {
+            byte[] raw = Base64.getDecoder().decode(crypto.decrypt(new String(Files.readAllBytes(file.toPath()))));
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+                if (!RESULT_HEADER.equals(in.readUTF())) throw new IOException("Bad Header");
+                return JobResult.readFrom(in);
+            }
+        } catch (Exception e) {
+            System.err.println("Job Result Load Failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Cancels everything and forgets the history, deleting its files. */
+    public void clear() {
+        List<Job<?>> all;
+        synchronized (this) {
+            all = new ArrayList<>(jobs.values());
+            jobs.clear();
+        }
+        for (Job<?> job : all) {
+            if (job.state.isFinished()) {
+                resultFile(job.id).delete();
+            } else {
+                job.control.cancel();
+                job.execution.cancel(true);
+            }
+        }
+        new File(dbDirectory, INDEX_FILE).delete();
+    }
+
+    private synchronized boolean isTracked(Job<?> job) {
+        return jobs.get(job.id) == job;
+    }
+
+    /** Drops the oldest finished jobs beyond the retention limit. */
+    private void prune() {
+        int finished = 0;
+        for (Job<?> job : jobs.values()) if (job.state.isFinished()) finished++;
+        List<Long> drop = new ArrayList<>();
+        for (Job<?> job : jobs.values()) {
+            if (finished <= MAX_RETAINED) break;
+            if (!job.state.isFinished()) continue;
+            drop.add(job.id);
+            finished--;
+        }
+        for (long id : drop) {
+            jobs.remove(id);
+            resultFile(id).delete();
+        }
+    }
+
+    // --- Persistence ---
+
+    private File resultFile(long id) {
+        return new File(dbDirectory, "job_" + id + ".res");
+    }
+
+    private void writeResult(long id, JobResult result) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeUTF(RESULT_HEADER);
+        result.writeTo(out);
+        writeEncrypted(resultFile(id).getPath(), baos.toByteArray());
+    }
+
+    /** Writes the records of all finished jobs. Caller holds the lock. */
+    private void saveIndex() {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeUTF(HEADER);
+            out.writeLong(nextId);
+            List<Job<?>> finished = new ArrayList<>();
+            for (Job<?> job : jobs.values()) if (job.state.isFinished()) finished.add(job);
+            out.writeInt(finished.size());
+            for (Job<?> job : finished) {
+                out.writeLong(job.id);
+                out.writeUTF(job.type);
+                out.writeInt(job.params.size());
+                for (Map.Entry<String, String> e : job.params.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeUTF(e.getValue());
+                }
+                out.writeByte(job.state.ordinal());
+                out.writeLong(job.submitted);
+                out.writeLong(job.started);
+                out.writeLong(job.finished);
+                out.writeBoolean(job.error != null);
+                if (job.error != null) out.writeUTF(job.error);
+                out.writeBoolean(job.hasResult);
+                out.writeInt(job.summary.size());
+                for (Map.Entry<String, Object> e : job.summary.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    PropertyCodec.writeValue(out, e.getValue());
+                }
+            }
+            writeEncrypted(dbDirectory + File.separator + INDEX_FILE, baos.toByteArray());
+        } catch (Exception e) {
+            System.err.println("Job Index Save Failed: " + e.getMessage());
+        }
+    }
+
+    private void loadIndex() {
+        File file = new File(dbDirectory, INDEX_FILE);
+        if (!file.exists()) return;
+        try {
+            byte[] raw = Base64.getDecoder().decode(crypto.decrypt(new String(Files.readAllBytes(file.toPath()))));
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+                if (!HEADER.equals(in.readUTF())) throw new IOException("Bad Header");
+                nextId = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    long id = in.readLong();
+                    String type = in.readUTF();
+                    Map<String, String> params = new LinkedHashMap<>();
+                    int paramCount = in.readInt();
+                    for (int p = 0; p < paramCount; p++) {
+                        String key = in.readUTF();
+                        params.put(key, in.readUTF());
+                    }
+                    Job<Object> job = new Job<>(id, type, params);
+                    job.state = State.values()[in.readByte()];
+                    job.submitted = in.readLong();
+                    job.started = in.readLong();
+                    job.finished = in.readLong();
+                    job.error = in.readBoolean() ? in.readUTF() : null;
+                    job.hasResult = in.readBoolean();
+                    Map<String, Object> summary = new LinkedHashMap<>();
+                    int summaryCount = in.readInt();
+                    for (int s = 0; s < summaryCount; s++) {
+                        String key = in.readUTF();
+                        summary.put(key, PropertyCodec.readValue(in));
+                    }
+                    job.summary = Collections.unmodifiableMap(summary);
+                    job.future.complete(null);
+                    jobs.put(id, job);
+                }
+            }
+        } catch (Exception e) {
+            // A damaged history only loses old results; never fail startup on it
+            jobs.clear();
+        }
+    }
+
+    private void writeEncrypted(String path, byte[] data) throws Exception {
+        String enc = crypto.encrypt(Base64.getEncoder().encodeToString(data));
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        Files.write(temp, enc.getBytes());
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,93 @@
+package com.atlasdblite.engine;
+
+import com.atlasdblite.models.Node;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * A lazy, level-synchronous breadth-first expansion from one or more seed nodes.
+ * <p>
+ * The frontier of each level is grouped by shard, so every shard is visited (and locked) once per
+ * level rather than once per node. Visited nodes are tracked in one {@link BitSet} per shard over
+ * the shard-local node ordinals. A level is only expanded when the IDs of the previous one have
+ * been consumed, and nodes are only materialized when {@link #hydrated()} is used.
+ */
+public class KHopExpansion implements Iterator<String> {
+    private final GraphEngine engine;
+    private final int minDepth;
+    private final int maxDepth;
+    private final Collection<String> types;
+    private final String label;
+    private final BitSet[] visited;
+    private final ArrayDeque<String> buffer = new ArrayDeque<>();
+
+    private Map<Integer, List<String>> frontier = new TreeMap<>();
+    private int depth = -1;
+
+    KHopExpansion(GraphEngine engine, int bucketCount, Collection<String> seeds, int minDepth, int maxDepth,
+                  Collection<String> types, String label) {
+        this.engine = engine;
+        this.minDepth = minDepth;
+        this.maxDepth = maxDepth;
+        this.types = types == null || types.isEmpty() ? null : types;
+        this.label = label;
+        this.visited = new BitSet[bucketCount];
+        for (int i = 0; i < bucketCount; i++) visited[i] = new BitSet();
+        for (String s : seeds) enqueue(frontier, s);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (buffer.isEmpty()) {
+            if (!advance()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return buffer.poll();
+    }
+
+    /** Depth (hop count from the nearest seed) of the ID most recently returned by {@link #next()}. */
+    public int getDepth() {
+        return depth;
+    }
+
+    /** Wraps this expansion so that each ID is resolved to its {@link Node} on demand. */
+    public Iterator<Node> hydrated() {
+        return new Iterator<Node>() {
+            public boolean hasNext() { return KHopExpansion.this.hasNext(); }
+            public Node next() { return engine.getNode(KHopExpansion.this.next()); }
+        };
+    }
+
+    private boolean advance() {
+        if (frontier.isEmpty() || depth >= maxDepth) return false;
+        depth++;
+        boolean expandFurther = depth < maxDepth;
+        boolean emit = depth >= minDepth;
+        Map<Integer, List<String>> nextFrontier = new TreeMap<>();
+
+        for (Map.Entry<Integer, List<String>> shard : frontier.entrySet()) {
+            engine.segmentAt(shard.getKey()).expandFrontier(shard.getValue(), visited[shard.getKey()], types, label,
+                    (id, matches) -> { if (emit && matches) buffer.add(id); },
+                    expandFurther ? target -> enqueue(nextFrontier, target) : null);
+        }
+        frontier = nextFrontier;
+        return true;
+    }
+
+    private void enqueue(Map<Integer, List<String>> level, String id) {
+        level.computeIfAbsent(GraphEngine.segmentIndex(id), k -> new ArrayList<>()).add(id);
+    }
+}
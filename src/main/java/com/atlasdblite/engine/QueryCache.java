@@ -0,0 +1,172 @@
+package com.atlasdblite.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A bounded LRU cache of read-query results, keyed by normalized query text.
+ * <p>
+ * Entries hold node IDs rather than nodes, so cached rows always reflect the latest properties
+ * when they are resolved. Each entry records what it depends on; writes call the
+ * {@code invalidate*} methods and only evict entries whose dependencies they touch.
+ */
+public class QueryCache {
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final int MAX_CACHED_ROWS = 10_000;
+
+    /**
+     * What a cached result depends on. An empty label, property or segment set means "any";
+     * a null relation-type set means the result does not read relations at all.
+     */
+    public static class Dependencies {
+        final Set<String> labels = new HashSet<>();
+        final Set<String> properties = new HashSet<>();
+        final Set<Integer> segments = new HashSet<>();
+        Set<String> relationTypes = null;
+        boolean readsNodes = true;
+
+        /** Depends on every node write. */
+        public static Dependencies any() { return new Dependencies(); }
+
+        /** Depends only on relations (node writes are ignored unless they cascade to relations). */
+        public static Dependencies relationsOnly() {
+            Dependencies d = new Dependencies();
+            d.readsNodes = false;
+            return d;
+        }
+
+        public Dependencies label(String l) { labels.add(l.toLowerCase()); return this; }
+        public Dependencies property(String p) { properties.add(p); return this; }
+        public Dependencies segment(int s) { segments.add(s); return this; }
+        public Dependencies relationType(String t) {
+            if (relationTypes == null) relationTypes = new HashSet<>();
+            relationTypes.add(t.toUpperCase());
+            return this;
+        }
+
+        boolean affectedByNode(int segment, Collection<String> nodeLabels, Collection<String> changedKeys) {
+            if (!readsNodes) return false;
+            if (!segments.isEmpty() && !segments.contains(segment)) return false;
+            if (!labels.isEmpty() && nodeLabels.stream().noneMatch(l -> labels.contains(l.toLowerCase()))) return false;
+            return properties.isEmpty() || changedKeys.stream().anyMatch(properties::contains);
+        }
+
+        boolean affectedByRelation(int sourceSegment, String type) {
+            if (relationTypes == null) return false;
+            if (sourceSegment >= 0 && !segments.isEmpty() && !segments.contains(sourceSegment)) return false;
+            return type == null || relationTypes.contains(type.toUpperCase());
+        }
+    }
+
+    private static class Entry {
+        final List<String> ids;
+        final Dependencies deps;
+
+        Entry(List<String> ids, Dependencies deps) {
+            this.ids = ids;
+            this.deps = deps;
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<String, Entry> entries;
+    private long writeVersion = 0;
+    private long hits, misses, invalidations, evictions;
+
+    public QueryCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public QueryCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Collapses whitespace and lowercases the query keyword so equivalent queries share an entry. */
+    public static String key(String kind, String... parts) {
+        StringBuilder sb = new StringBuilder(kind.toLowerCase());
+        for (String p : parts) sb.append('\u0000').append(p == null ? "" : p.trim().replaceAll("\\s+", " "));
+        return sb.toString();
+    }
+
+    /**
+     * Returns the cached IDs for {@code key}, or computes, stores and returns them.
+     * A result computed while a write was invalidating the cache is returned but not stored.
+     */
+    public List<String> getOrCompute(String key, Dependencies deps, Supplier<List<String>> compute) {
+        long startVersion;
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null) {
+                hits++;
+                return e.ids;
+            }
+            misses++;
+            startVersion = writeVersion;
+        }
+
+        List<String> ids = Collections.unmodifiableList(new ArrayList<>(compute.get()));
+        if (ids.size() > MAX_CACHED_ROWS) return ids;
+
+        synchronized (this) {
+            if (writeVersion == startVersion) {
+                entries.put(key, new Entry(ids, deps));
+                if (entries.size() > capacity) {
+                    Iterator<String> eldest = entries.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                    evictions++;
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Invalidates entries that could observe a change to a node. */
+    public synchronized void invalidateNode(int segment, Collection<String> labels, Collection<String> changedKeys) {
+        writeVersion++;
+        entries.values().removeIf(e -> {
+            boolean hit = e.deps.affectedByNode(segment, labels, changedKeys);
+            if (hit) invalidations++;
+            return hit;
+        });
+    }
+
+    /**
+     * Invalidates entries that read relations of the given type ({@code null} for any type)
+     * leaving the given segment ({@code -1} for any segment).
+     */
+    public synchronized void invalidateRelation(int sourceSegment, String type) {
+        writeVersion++;
+        entries.values().removeIf(e -> {
+            boolean hit = e.deps.affectedByRelation(sourceSegment, type);
+            if (hit) invalidations++;
+            return hit;
+        });
+    }
+
+    public synchronized void clear() {
+        writeVersion++;
+        entries.clear();
+    }
+
+    // --- Metrics ---
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getInvalidations() { return invalidations; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized int size() { return entries.size(); }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,21 @@
+package com.atlasdblite.engine;
+
+import com.atlasdblite.models.Node;
+
+/**
+ * A node returned by ranked full-text search, with its relevance score (higher is better).
+ */
+public class SearchHit {
+    public final Node node;
+    public final double score;
+
+    public SearchHit(Node node, double score) {
+        this.node = node;
+        this.score = score;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.3f %s", score, node);
+    }
+}
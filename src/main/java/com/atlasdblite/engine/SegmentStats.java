@@ -0,0 +1,82 @@
+package com.atlasdblite.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable counts for one shard: nodes, relations, nodes per label and relations per type.
+ * Produced by a loaded {@link DataSegment} and kept in the {@link Catalog} while it is unloaded.
+ */
+public class SegmentStats {
+    public static final SegmentStats EMPTY = new SegmentStats(0, 0, Collections.emptyMap(), Collections.emptyMap());
+
+    private final long nodes;
+    private final long relations;
+    private final Map<String, Long> labels;
+    private final Map<String, Long> types;
+
+    public SegmentStats(long nodes, long relations, Map<String, Long> labels, Map<String, Long> types) {
+        this.nodes = nodes;
+        this.relations = relations;
+        this.labels = Collections.unmodifiableMap(new HashMap<>(labels));
+        this.types = Collections.unmodifiableMap(new HashMap<>(types));
+    }
+
+    public long getNodes() { return nodes; }
+    public long getRelations() { return relations; }
+    public Map<String, Long> getLabels() { return labels; }
+    public Map<String, Long> getTypes() { return types; }
+
+    /** Nodes with the given label, ignoring case. */
+    public long countLabel(String label) {
+        return countIgnoreCase(labels, label);
+    }
+
+    /** Relations of the given type, ignoring case. */
+    public long countType(String type) {
+        return countIgnoreCase(types, type);
+    }
+
+    static long countIgnoreCase(Map<String, Long> counts, String key) {
+        Long exact = counts.get(key);
+        if (exact != null) return exact;
+        long total = 0;
+        for (Map.Entry<String, Long> e : counts.entrySet())
+            if (e.getKey().equalsIgnoreCase(key)) total += e.getValue();
+        return total;
+    }
+
+    // --- Serialization ---
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(nodes);
+        out.writeLong(relations);
+        writeCounts(out, labels);
+        writeCounts(out, types);
+    }
+
+    public static SegmentStats readFrom(DataInputStream in) throws IOException {
+        long nodes = in.readLong();
+        long relations = in.readLong();
+        return new SegmentStats(nodes, relations, readCounts(in), readCounts(in));
+    }
+
+    private static void writeCounts(DataOutputStream out, Map<String, Long> counts) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeLong(e.getValue());
+        }
+    }
+
+    private static Map<String, Long> readCounts(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, Long> counts = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) counts.put(in.readUTF(), in.readLong());
+        return counts;
+    }
+}
@@ -0,0 +1,270 @@
+package com.atlasdblite.engine;
+
+import com.atlasdblite.models.Node;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Tokenized full-text index over one shard's nodes, with prefix completion,
+ * trigram-based typo tolerance and BM25 ranking.
+ * <p>
+ * Documents are nodes; their text is the ID, the label and every property value
+ * (list items individually, binary values skipped). Scores use shard-local statistics,
+ * which keeps shards independent at the cost of slightly different IDF per shard.
+ * Not thread-safe: {@link DataSegment} guards it with its own lock.
+ */
+public class TextIndex {
+    private static final String HEADER = "TIX_V2";
+    private static final String OLD_HEADER = "TIX_V1"; // stamped with the shard's internal version
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double PREFIX_WEIGHT = 0.7;
+    private static final double FUZZY_WEIGHT = 0.5;
+    private static final int MAX_EXPANSIONS = 32;
+
+    /** A ranked match: node ID and BM25 score. */
+    public static class Hit {
+        public final String id;
+        public final double score;
+
+        Hit(String id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    /** Best score first; ties broken by ID so results are deterministic. */
+    public static final Comparator<Hit> BY_SCORE = Comparator.comparingDouble((Hit h) -> -h.score).thenComparing(h -> h.id);
+
+    // token -> (nodeId -> term frequency); sorted so prefixes are a range scan
+    private final TreeMap<String, Map<String, Integer>> postings = new TreeMap<>();
+    // trigram -> tokens containing it
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+    private final Map<String, Integer> docLengths = new HashMap<>();
+    private long totalLength = 0;
+
+    // --- Tokenization ---
+
+    /** Lowercased alphanumeric runs; everything else separates tokens. */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        for (String t : text.toLowerCase().split("[^\\p{L}\\p{N}]+"))
+            if (!t.isEmpty()) tokens.add(t);
+        return tokens;
+    }
+
+    private static List<String> tokensOf(Node n) {
+        List<String> tokens = tokenize(n.getId());
+        tokens.addAll(tokenize(n.getLabel()));
+        for (Object v : n.getProperties().values()) {
+            if (v instanceof List) {
+                for (Object item : (List<?>) v) if (item != null) tokens.addAll(tokenize(item.toString()));
+            } else if (v != null && !(v instanceof byte[])) {
+                tokens.addAll(tokenize(v.toString()));
+            }
+        }
+        return tokens;
+    }
+
+    private static List<String> gramsOf(String token) {
+        String padded = "$" + token + "$";
+        List<String> grams = new ArrayList<>(padded.length());
+        for (int i = 0; i + 3 <= padded.length(); i++) grams.add(padded.substring(i, i + 3));
+        return grams;
+    }
+
+    // --- Maintenance ---
+
+    public void add(Node n) {
+        List<String> tokens = tokensOf(n);
+        for (String t : tokens) {
+            Map<String, Integer> docs = postings.get(t);
+            if (docs == null) {
+                docs = new HashMap<>();
+                postings.put(t, docs);
+                for (String g : gramsOf(t)) trigrams.computeIfAbsent(g, k -> new HashSet<>()).add(t);
+            }
+            docs.merge(n.getId(), 1, Integer::sum);
+        }
+        docLengths.put(n.getId(), tokens.size());
+        totalLength += tokens.size();
+    }
+
+    /** Removes a node; {@code n} must be the version that was added. */
+    public void remove(Node n) {
+        Integer length = docLengths.remove(n.getId());
+        if (length == null) return;
+        totalLength -= length;
+        for (String t : new HashSet<>(tokensOf(n))) {
+            Map<String, Integer> docs = postings.get(t);
+            if (docs == null) continue;
+            docs.remove(n.getId());
+            if (docs.isEmpty()) dropToken(t);
+        }
+    }
+
+    private void dropToken(String t) {
+        postings.remove(t);
+        for (String g : gramsOf(t)) {
+            Set<String> tokens = trigrams.get(g);
+            if (tokens != null && tokens.remove(t) && tokens.isEmpty()) trigrams.remove(g);
+        }
+    }
+
+    public int size() {
+        return docLengths.size();
+    }
+
+    // --- Query ---
+
+    /**
+     * Ranks documents against a free-text query and returns the best {@code k}.
+     * Each query token matches exactly; the last token also matches as a prefix (autocomplete);
+     * a token with no exact match falls back to vocabulary terms within a small edit distance.
+     */
+    public List<Hit> search(String query, int k) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || docLengths.isEmpty() || k <= 0) return Collections.emptyList();
+
+        Map<String, Double> scores = new HashMap<>();
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
+            if (postings.containsKey(term)) score(term, 1.0, scores);
+            if (i == terms.size() - 1) expandPrefix(term, scores);
+            if (!postings.containsKey(term)) expandFuzzy(term, scores);
+        }
+
+        PriorityQueue<Hit> top = new PriorityQueue<>(Comparator.comparingDouble((Hit h) -> h.score).thenComparing(h -> h.id, Comparator.reverseOrder()));
+        for (Map.Entry<String, Double> e : scores.entrySet()) {
+            top.add(new Hit(e.getKey(), e.getValue()));
+            if (top.size() > k) top.poll();
+        }
+        List<Hit> result = new ArrayList<>(top);
+        result.sort(BY_SCORE);
+        return result;
+    }
+
+    private void expandPrefix(String prefix, Map<String, Double> scores) {
+        int expanded = 0;
+        for (String t : postings.subMap(prefix, false, prefix + Character.MAX_VALUE, false).keySet()) {
+            score(t, PREFIX_WEIGHT * prefix.length() / t.length(), scores);
+            if (++expanded >= MAX_EXPANSIONS) break;
+        }
+    }
+
+    private void expandFuzzy(String term, Map<String, Double> scores) {
+        if (term.length() < 3) return;
+        List<String> grams = gramsOf(term);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String g : new HashSet<>(grams))
+            for (String t : trigrams.getOrDefault(g, Collections.emptySet())) shared.merge(t, 1, Integer::sum);
+
+        int maxEdits = term.length() <= 4 ? 1 : 2;
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>(shared.entrySet());
+        candidates.sort((a, b) -> b.getValue() - a.getValue());
+        int expanded = 0;
+        for (Map.Entry<String, Integer> c : candidates) {
+            String t = c.getKey();
+            if (Math.abs(t.length() - term.length()) > maxEdits) continue;
+            int edits = editDistance(term, t, maxEdits);
+            if (edits > maxEdits) continue;
+            score(t, FUZZY_WEIGHT * (1.0 - (double) edits / (term.length() + 1)), scores);
+            if (++expanded >= MAX_EXPANSIONS) break;
+        }
+    }
+
+    private void score(String term, double weight, Map<String, Double> scores) {
+        Map<String, Integer> docs = postings.get(term);
+        if (docs == null) return;
+        int n = docLengths.size();
+        double idf = Math.log(1 + (n - docs.size() + 0.5) / (docs.size() + 0.5));
+        double avgLength = Math.max(1.0, (double) totalLength / n);
+        for (Map.Entry<String, Integer> d : docs.entrySet()) {
+            int tf = d.getValue();
+            double norm = K1 * (1 - B + B * docLengths.get(d.getKey()) / avgLength);
+            scores.merge(d.getKey(), weight * idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+        }
+    }
+
+    /** Levenshtein distance, abandoning early once every cell in a row exceeds {@code limit}. */
+    static int editDistance(String a, String b, int limit) {
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) prev[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > limit) return limit + 1;
+            int[] tmp = prev; prev = cur; cur = tmp;
+        }
+        return prev[b.length()];
+    }
+
+    // --- Serialization ---
+
+    /**
+     * Writes the index stamped with the length and modification time of the shard file it
+     * describes, so it can be checked without decrypting that file.
+     * Documents are written once and postings refer to them by position.
+     */
+    public void writeTo(DataOutputStream out, long fileLength, long fileModified) throws IOException {
+        out.writeUTF(HEADER);
+        out.writeLong(fileLength);
+        out.writeLong(fileModified);
+        Map<String, Integer> docNumbers = new HashMap<>(docLengths.size() * 2);
+        out.writeInt(docLengths.size());
+        for (Map.Entry<String, Integer> d : docLengths.entrySet()) {
+            docNumbers.put(d.getKey(), docNumbers.size());
+            out.writeUTF(d.getKey());
+            out.writeInt(d.getValue());
+        }
+        out.writeInt(postings.size());
+        for (Map.Entry<String, Map<String, Integer>> p : postings.entrySet()) {
+            out.writeUTF(p.getKey());
+            out.writeInt(p.getValue().size());
+            for (Map.Entry<String, Integer> d : p.getValue().entrySet()) {
+                out.writeInt(docNumbers.get(d.getKey()));
+                out.writeInt(d.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo}.
+     * @return The index, or null if it was written for a different shard file (or in the old format).
+     * @throws IOException If the data is malformed.
+     */
+    public static TextIndex readFrom(DataInputStream in, long fileLength, long fileModified) throws IOException {
+        String header = in.readUTF();
+        if (OLD_HEADER.equals(header)) return null;
+        if (!HEADER.equals(header)) throw new IOException("Bad Header");
+        if (in.readLong() != fileLength || in.readLong() != fileModified) return null;
+        TextIndex index = new TextIndex();
+        String[] docs = new String[in.readInt()];
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = in.readUTF();
+            int length = in.readInt();
+            index.docLengths.put(docs[i], length);
+            index.totalLength += length;
+        }
+        int terms = in.readInt();
+        for (int i = 0; i < terms; i++) {
+            String term = in.readUTF();
+            int df = in.readInt();
+            Map<String, Integer> postings = new HashMap<>(df * 2);
+            for (int j = 0; j < df; j++) postings.put(docs[in.readInt()], in.readInt());
+            index.postings.put(term, postings);
+            for (String g : gramsOf(term)) index.trigrams.computeIfAbsent(g, k -> new HashSet<>()).add(term);
+        }
+        return index;
+    }
+}
@@ -1,37 +1,69 @@
 package com.atlasdblite.engine;
 
+import com.atlasdblite.models.Node;
+import com.atlasdblite.models.Relation;
 import com.atlasdblite.security.CryptoManager;
 import com.google.gson.Gson;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.List;
+import java.util.TreeMap;
 
 /**
  * Manages the Global Write-Ahead Log (WAL).
  * Ensures ACID properties by recording operations before they are applied to memory.
+ * <p>
+ * The log lives in the database directory it belongs to, as {@code <dir>/global.wal}, so every
+ * engine replays only its own operations.
+ * <p>
+ * Every entry gets a log sequence number (LSN), one higher than the last. Shards record the LSNs
+ * they hold, so replay can skip entries a shard file already contains. Emptying the log leaves a
+ * {@code MARK} entry with the last LSN, so numbering continues after a restart.
  */
 public class TransactionManager {
-    private static final String WAL_FILE = "atlas_db/global.wal";
+    static final String WAL_FILE = "global.wal";
+    /** Operation of the entry that carries the last LSN across an emptied log; replay ignores it. */
+    static final String MARK = "MARK";
+    private static final int LINE_END = System.lineSeparator().length();
+    private final String walPath;
     private final CryptoManager crypto;
     private final Gson gson;
     private PrintWriter writer;
+    private long lastLsn;
+    // Bytes in the file; entries are Base64 lines, so one char is one byte
+    private long bytes;
+    // LSN -> file offset of entries logged but not yet applied to memory
+    private final TreeMap<Long, Long> pending = new TreeMap<>();
 
-    public TransactionManager(CryptoManager crypto) {
+    /**
+     * Opens (or creates) the WAL inside the given database directory.
+     * @param crypto The security manager used to encrypt log entries.
+     * @param dbDirectory The database directory that owns this log.
+     */
+    public TransactionManager(CryptoManager crypto, String dbDirectory) {
         this.crypto = crypto;
+        this.walPath = dbDirectory + File.separator + WAL_FILE;
         this.gson = new Gson();
         initialize();
     }
 
     private void initialize() {
         try {
-            File wal = new File(WAL_FILE);
+            File wal = new File(walPath);
             if (!wal.exists()) {
                 if (wal.getParentFile() != null) wal.getParentFile().mkdirs();
                 wal.createNewFile();
             }
             // Append mode, Auto-flush enabled
             this.writer = new PrintWriter(new FileWriter(wal, true), true);
+            this.bytes = wal.length();
         } catch (IOException e) {
             throw new RuntimeException("CRITICAL: Could not open WAL. " + e.getMessage());
         }
@@ -39,33 +71,131 @@ public class TransactionManager {
 
     // --- Logging Primitives ---
 
-    public synchronized void writeEntry(WalEntry entry) {
+    /**
+     * Appends an entry under the next LSN. The caller applies it to memory and then reports that
+     * with {@link #applied}, also if applying fails.
+     * @return The entry's LSN.
+     */
+    public synchronized long writeEntry(WalEntry entry) {
+        entry.lsn = lastLsn + 1;
         try {
-            String json = gson.toJson(entry);
-            String encrypted = crypto.encrypt(json);
-            writer.println(encrypted);
+            pending.put(entry.lsn, append(entry));
         } catch (Exception e) {
             throw new RuntimeException("WAL Write Failed: " + e.getMessage());
         }
+        return lastLsn = entry.lsn;
+    }
+
+    /** Writes one line and returns the offset it starts at. */
+    private long append(WalEntry entry) throws Exception {
+        String encrypted = crypto.encrypt(gson.toJson(entry));
+        writer.println(encrypted);
+        long offset = bytes;
+        bytes += encrypted.length() + LINE_END;
+        return offset;
+    }
+
+    /** Marks an entry from {@link #writeEntry} as applied to memory. */
+    public synchronized void applied(long lsn) {
+        pending.remove(lsn);
+    }
+
+    /** The highest LSN up to which every entry has been applied to memory. */
+    public synchronized long appliedLsn() {
+        return pending.isEmpty() ? lastLsn : pending.firstKey() - 1;
+    }
+
+    /** Bytes of log before the first entry not yet applied to memory; a checkpoint may drop them. */
+    public synchronized long appliedLength() {
+        return pending.isEmpty() ? bytes : pending.firstEntry().getValue();
+    }
+
+    /** Continues numbering after {@code lsn}, the last one found by recovery. */
+    public synchronized void resume(long lsn) {
+        lastLsn = Math.max(lastLsn, lsn);
     }
 
     public synchronized void clearLog() {
         try {
             writer.close();
             // Truncate file
-            new FileOutputStream(WAL_FILE).close(); 
+            new FileOutputStream(walPath).close(); 
             // Re-open
-            this.writer = new PrintWriter(new FileWriter(WAL_FILE, true), true);
+            this.writer = new PrintWriter(new FileWriter(walPath, true), true);
+            this.bytes = 0;
+            // Entries still being applied are no longer in the log
+            pending.replaceAll((lsn, at) -> 0L);
+            if (lastLsn > 0) {
+                WalEntry mark = new WalEntry(MARK, null);
+                mark.lsn = lastLsn;
+                append(mark);
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to truncate WAL: " + e.getMessage());
+        }
+    }
+
+    /** Empties the log and restarts numbering, for a database whose files were all removed. */
+    public synchronized void reset() {
+        pending.clear();
+        lastLsn = 0;
+        clearLog();
+    }
+
+    /**
+     * Reopens the log after something else wrote to the file, e.g. a restore appending a
+     * backup's WAL. Numbering restarts; recovery then resumes it after the entries found.
+     */
+    public synchronized void reopen() {
+        writer.close();
+        pending.clear();
+        lastLsn = 0;
+        initialize();
+    }
+
+    /**
+     * Drops the first {@code cut} bytes of the log, which a checkpoint has just saved to the
+     * shards, and keeps the entries written since. Writers wait only while the kept tail is copied.
+     */
+    public synchronized void truncateHead(long cut) {
+        writer.flush();
+        File wal = new File(walPath);
+        if (cut >= bytes) {
+            clearLog();
+            return;
+        }
+        File temp = new File(walPath + ".tmp");
+        try (FileChannel in = FileChannel.open(wal.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long done = cut; done < size; ) done += in.transferTo(done, size - done, out);
+            writer.close();
+            Files.move(temp.toPath(), wal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            pending.replaceAll((lsn, at) -> Math.max(0, at - cut));
         } catch (IOException e) {
             System.err.println("Failed to truncate WAL: " + e.getMessage());
+        } finally {
+            initialize();
         }
     }
 
+    /** Bytes in the log, ending after the last complete entry; a backup copies this much. */
+    public synchronized long length() {
+        writer.flush();
+        return new File(walPath).length();
+    }
+
+    /** Closes the log file; used by tools that open a database directory without an engine. */
+    public synchronized void close() {
+        writer.close();
+    }
+
     // --- Recovery Logic ---
 
     public List<WalEntry> readLog() {
         List<WalEntry> entries = new ArrayList<>();
-        File wal = new File(WAL_FILE);
+        File wal = new File(walPath);
         if (!wal.exists()) return entries;
 
         try (BufferedReader br = new BufferedReader(new FileReader(wal))) {
@@ -87,14 +217,91 @@ public class TransactionManager {
 
     // --- DTO for Log Entries ---
     public static class WalEntry {
+        /** Payload is JSON (or a raw ID). Entries written before typed values use this. */
+        public static final int FORMAT_JSON = 0;
+        /** Payload is the Base64 binary record of a Node or Relation, preserving value types. */
+        public static final int FORMAT_BINARY = 1;
+
         public long timestamp;
+        public long lsn;         // Absent (0) in old logs: such entries are always replayed
         public String operation; // ADD_NODE, DELETE_LINK, etc.
-        public String payload;   // JSON representation of the object or ID
+        public String payload;   // Encoded object or ID
+        public int format;       // Absent in old logs, which Gson reads as FORMAT_JSON
 
         public WalEntry(String op, String data) {
+            this(op, data, FORMAT_JSON);
+        }
+
+        private WalEntry(String op, String data, int format) {
             this.timestamp = System.currentTimeMillis();
             this.operation = op;
             this.payload = data;
+            this.format = format;
+        }
+
+        public static WalEntry ofNode(String op, Node n) {
+            return new WalEntry(op, encode(n::writeTo), FORMAT_BINARY);
+        }
+
+        public static WalEntry ofRelation(String op, Relation r) {
+            return new WalEntry(op, encode(r::writeTo), FORMAT_BINARY);
+        }
+
+        /** One entry for a whole batch of nodes: a count, then the binary records. */
+        public static WalEntry ofNodes(String op, Collection<Node> nodes) {
+            return new WalEntry(op, encode(out -> {
+                out.writeInt(nodes.size());
+                for (Node n : nodes) n.writeTo(out);
+            }), FORMAT_BINARY);
+        }
+
+        public static WalEntry ofRelations(String op, Collection<Relation> relations) {
+            return new WalEntry(op, encode(out -> {
+                out.writeInt(relations.size());
+                for (Relation r : relations) r.writeTo(out);
+            }), FORMAT_BINARY);
+        }
+
+        public List<Node> readNodes() throws IOException {
+            DataInputStream in = decode();
+            int count = in.readInt();
+            List<Node> nodes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) nodes.add(Node.readFrom(in));
+            return nodes;
+        }
+
+        public List<Relation> readRelations() throws IOException {
+            DataInputStream in = decode();
+            int count = in.readInt();
+            List<Relation> relations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) relations.add(Relation.readFrom(in));
+            return relations;
+        }
+
+        public Node readNode(Gson json) throws IOException {
+            if (format == FORMAT_BINARY) return Node.readFrom(decode());
+            return json.fromJson(payload, Node.class);
+        }
+
+        public Relation readRelation(Gson json) throws IOException {
+            if (format == FORMAT_BINARY) return Relation.readFrom(decode());
+            return json.fromJson(payload, Relation.class);
+        }
+
+        private DataInputStream decode() {
+            return new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(payload)));
+        }
+
+        private interface Writer { void writeTo(DataOutputStream out) throws IOException; }
+
+        private static String encode(Writer w) {
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                w.writeTo(new DataOutputStream(baos));
+                return Base64.getEncoder().encodeToString(baos.toByteArray());
+            } catch (IOException e) {
+                throw new RuntimeException("WAL Encode Failed: " + e.getMessage());
+            }
         }
     }
 }
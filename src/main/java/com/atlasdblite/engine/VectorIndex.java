@@ -0,0 +1,635 @@
+package com.atlasdblite.engine;
+
+import com.atlasdblite.models.Node;
+import com.atlasdblite.security.CryptoManager;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Approximate nearest-neighbour index (HNSW) over the feature vectors of vectorized nodes.
+ * <p>
+ * Each vector sits on layer 0 and, with geometrically decreasing probability, on higher layers;
+ * every layer is a proximity graph whose links are chosen by the HNSW neighbour heuristic. A
+ * query descends greedily through the sparse upper layers and then runs a bounded best-first
+ * search on layer 0, so it touches a few hundred vectors whatever the index size.
+ * <p>
+ * Storage is primitive: vectors are packed into one {@code float[]}, layer-0 links into one
+ * {@code int[]} with a count slot per vertex. Removing a node leaves a tombstone that still
+ * routes searches but is never returned; updating one re-links its slot in place. Tombstones are
+ * persisted and compacted away at save once they pass a quarter of the slots.
+ * <p>
+ * Like {@link GlobalIndex}, the index lives outside the shards, is persisted as
+ * {@code vectors.idx} and is stamped with the file metadata of every shard it reflects, so shards
+ * that changed behind its back are re-indexed on open. Searches run concurrently; updates are
+ * exclusive.
+ */
+public class VectorIndex {
+    private static final String INDEX_FILE = "vectors.idx";
+    private static final String HEADER_V1 = "VIX_V1";
+    private static final String HEADER = "VIX_V2"; // V1 + tombstone flag per slot
+    private static final int DIM = Featurizer.DIMENSIONS;
+    private static final int M = 16;
+    private static final int M0 = 2 * M;
+    private static final int EF_CONSTRUCTION = 100;
+    private static final int EF_SEARCH = 64;
+    private static final double LEVEL_FACTOR = 1 / Math.log(M);
+    private static final int COMPACT_RATIO = 4; // compact once more than 1/4 of the slots are tombstones
+
+    /** A nearest neighbour: node ID and cosine similarity. */
+    public static class Hit {
+        public final String id;
+        public final float score;
+
+        Hit(String id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    private final String path;
+    private final CryptoManager crypto;
+    private final long[] fileLengths;
+    private final long[] fileModified;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Random random = new Random(42);
+    private final ThreadLocal<int[]> visitMarks = ThreadLocal.withInitial(() -> new int[0]);
+    private final ThreadLocal<int[]> visitEpoch = ThreadLocal.withInitial(() -> new int[1]);
+
+    // --- Graph state (guarded by lock) ---
+    private final Map<String, Integer> slots = new HashMap<>();
+    private int size;
+    private int tombstones;
+    private float[] vectors = new float[0];
+    private String[] ids = new String[0];
+    private int[] levels = new int[0];
+    private boolean[] deleted = new boolean[0];
+    private int[] layer0 = new int[0];      // per slot: [count, link...] in M0 + 1 ints
+    private int[][] upper = new int[0][];   // per slot: levels 1..L, each [count, link...] in M + 1 ints
+    private int entry = -1;
+    private int maxLevel = -1;
+
+    private VectorIndex(CryptoManager crypto, String dbDirectory, int segmentCount) {
+        this.crypto = crypto;
+        this.path = dbDirectory + File.separator + INDEX_FILE;
+        this.fileLengths = new long[segmentCount];
+        this.fileModified = new long[segmentCount];
+        Arrays.fill(fileLengths, Long.MIN_VALUE); // no shard reflected yet
+    }
+
+    /**
+     * Reads the persisted index of a database directory, or returns an empty one if there is none.
+     * Callers must pass every shard for which {@link #isCurrent} is false to {@link #reindexSegment}.
+     */
+    public static VectorIndex open(CryptoManager crypto, String dbDirectory, int segmentCount) {
+        VectorIndex index = new VectorIndex(crypto, dbDirectory, segmentCount);
+        index.load();
+        return index;
+    }
+
+    // --- Maintenance ---
+
+    /** Replaces the vector of {@code before} with that of {@code after}; either may be null. */
+    public void update(Node before, Node after) {
+        lock.writeLock().lock();
+        try {
+            if (before != null && after != null && before.getId().equals(after.getId())
+                    && Featurizer.isVectorized(after) && replace(after.getId(), Featurizer.embed(after)))
+                return;
+            if (before != null) remove(before.getId());
+            if (after != null && Featurizer.isVectorized(after)) insert(after.getId(), Featurizer.embed(after));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** True if the vectors for a shard reflect its file as currently on disk. */
+    public boolean isCurrent(int segment, File segmentFile) {
+        long length = segmentFile.exists() ? segmentFile.length() : -1;
+        long modified = segmentFile.exists() ? segmentFile.lastModified() : -1;
+        lock.readLock().lock();
+        try {
+            return fileLengths[segment] == length && fileModified[segment] == modified;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the vectors of the shard's nodes and re-adds its current contents.
+     * @param belongs Tells whether a node ID routes to this shard.
+     */
+    public void reindexSegment(Collection<Node> nodes, Predicate<String> belongs) {
+        lock.writeLock().lock();
+        try {
+            Set<String> stale = new HashSet<>();
+            for (String id : slots.keySet()) if (belongs.test(id)) stale.add(id);
+            List<Node> added = new ArrayList<>();
+            for (Node n : nodes) {
+                if (!Featurizer.isVectorized(n)) continue;
+                if (stale.remove(n.getId())) replace(n.getId(), Featurizer.embed(n));
+                else added.add(n);
+            }
+            for (String id : stale) remove(id);
+            for (Node n : added) insert(n.getId(), Featurizer.embed(n));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Number of indexed nodes. */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return slots.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Search ---
+
+    /**
+     * The {@code k} indexed nodes most similar to an indexed node, best first, excluding itself.
+     * @return The hits, or null if the node is not indexed.
+     */
+    public List<Hit> similar(String id, int k) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slots.get(id);
+            if (slot == null) return null;
+            return search(Arrays.copyOfRange(vectors, slot * DIM, (slot + 1) * DIM), k, slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** The {@code k} indexed nodes most similar to a query vector of {@link Featurizer#DIMENSIONS} floats. */
+    public List<Hit> nearest(float[] query, int k) {
+        lock.readLock().lock();
+        try {
+            return search(query, k, -1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Hit> search(float[] q, int k, int exclude) {
+        if (entry < 0 || k <= 0) return new ArrayList<>();
+        int cur = descend(q, entry, maxLevel, 0);
+        int ef = Math.max(EF_SEARCH, k + 1 + Math.min(tombstones, k));
+        Heap found = searchLayer(q, cur, ef, 0);
+        int[] order = found.drainAscending();
+        List<Hit> hits = new ArrayList<>(Math.min(k, order.length));
+        for (int i = 0; i < order.length && hits.size() < k; i++) {
+            int s = order[i];
+            if (s == exclude || deleted[s]) continue;
+            hits.add(new Hit(ids[s], 1 - distance(q, s)));
+        }
+        return hits;
+    }
+
+    /** Greedy walk from {@code start} down to layer {@code floor + 1}; returns the closest vertex found. */
+    private int descend(float[] q, int start, int top, int floor) {
+        int cur = start;
+        float curDist = distance(q, cur);
+        for (int level = top; level > floor; level--) {
+            boolean moved = true;
+            while (moved) {
+                moved = false;
+                int[] links = links(cur, level);
+                int base = base(cur, level);
+                for (int i = 1; i <= links[base]; i++) {
+                    int n = links[base + i];
+                    float d = distance(q, n);
+                    if (d < curDist) {
+                        curDist = d;
+                        cur = n;
+                        moved = true;
+                    }
+                }
+            }
+        }
+        return cur;
+    }
+
+    /** Best-first search of one layer, keeping the {@code ef} closest vertices seen. */
+    private Heap searchLayer(float[] q, int start, int ef, int level) {
+        int[] marks = visitMarks.get();
+        if (marks.length < size) {
+            marks = new int[Math.max(size, marks.length * 2)];
+            visitMarks.set(marks);
+        }
+        int[] epochHolder = visitEpoch.get();
+        int epoch = ++epochHolder[0];
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(marks, 0);
+            epoch = epochHolder[0] = 1;
+        }
+
+        Heap candidates = new Heap(false, ef * 2);
+        Heap results = new Heap(true, ef + 1);
+        float d0 = distance(q, start);
+        candidates.push(d0, start);
+        results.push(d0, start);
+        marks[start] = epoch;
+        while (candidates.size() > 0) {
+            float cd = candidates.peekKey();
+            if (results.size() >= ef && cd > results.peekKey()) break;
+            int c = candidates.pop();
+            int[] links = links(c, level);
+            int base = base(c, level);
+            for (int i = 1; i <= links[base]; i++) {
+                int n = links[base + i];
+                if (marks[n] == epoch) continue;
+                marks[n] = epoch;
+                float d = distance(q, n);
+                if (results.size() < ef || d < results.peekKey()) {
+                    candidates.push(d, n);
+                    results.push(d, n);
+                    if (results.size() > ef) results.pop();
+                }
+            }
+        }
+        return results;
+    }
+
+    // --- Insertion ---
+
+    private void insert(String id, float[] vector) {
+        int slot = size++;
+        ensureCapacity(size);
+        System.arraycopy(vector, 0, vectors, slot * DIM, DIM);
+        ids[slot] = id;
+        int level = (int) (-Math.log(1 - random.nextDouble()) * LEVEL_FACTOR);
+        levels[slot] = level;
+        deleted[slot] = false;
+        layer0[slot * (M0 + 1)] = 0;
+        upper[slot] = level > 0 ? new int[level * (M + 1)] : null;
+        slots.put(id, slot);
+
+        if (entry < 0) {
+            entry = slot;
+            maxLevel = level;
+            return;
+        }
+        connect(slot, vector, level, false);
+    }
+
+    /**
+     * Gives an indexed node a new vector in its existing slot, so updates leave no tombstone.
+     * New neighbours are merged into the slot's links; links other vertices hold to it stay as routes.
+     * @return False if the node is not indexed.
+     */
+    private boolean replace(String id, float[] vector) {
+        Integer slot = slots.get(id);
+        if (slot == null) return false;
+        int at = slot * DIM;
+        if (Arrays.equals(Arrays.copyOfRange(vectors, at, at + DIM), vector)) return true;
+        System.arraycopy(vector, 0, vectors, at, DIM);
+        if (size > 1) connect(slot, vector, levels[slot], true);
+        return true;
+    }
+
+    /**
+     * Selects the links of {@code slot} on each of its levels and links the chosen vertices back.
+     * @param relink Merge into the slot's existing links instead of replacing them, so the links
+     *               other vertices added to it while linking back are kept.
+     */
+    private void connect(int slot, float[] vector, int level, boolean relink) {
+        int cur = descend(vector, entry, maxLevel, level);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            Heap found = searchLayer(vector, cur, EF_CONSTRUCTION, l);
+            int[] order = found.drainAscending();
+            int max = l == 0 ? M0 : M;
+            int[] chosen = selectNeighbours(slot, order, max);
+            int[] links = links(slot, l);
+            int base = base(slot, l);
+            if (relink) {
+                for (int n : chosen) link(slot, n, l, max);
+            } else {
+                links[base] = chosen.length;
+                System.arraycopy(chosen, 0, links, base + 1, chosen.length);
+            }
+            for (int n : chosen) link(n, slot, l, max);
+            cur = order[0];
+        }
+        if (level > maxLevel) {
+            entry = slot;
+            maxLevel = level;
+        }
+    }
+
+    /** Adds {@code to} to the links of {@code from}, re-selecting them if the list is full. */
+    private void link(int from, int to, int level, int max) {
+        int[] links = links(from, level);
+        int base = base(from, level);
+        int count = links[base];
+        for (int i = 1; i <= count; i++) if (links[base + i] == to) return;
+        if (count < max) {
+            links[base + 1 + count] = to;
+            links[base] = count + 1;
+            return;
+        }
+        int[] pool = new int[count + 1];
+        System.arraycopy(links, base + 1, pool, 0, count);
+        pool[count] = to;
+        float[] dist = new float[pool.length];
+        for (int i = 0; i < pool.length; i++) dist[i] = distance(from, pool[i]);
+        sortByDistance(pool, dist);
+        int[] chosen = selectNeighbours(from, pool, max);
+        links[base] = chosen.length;
+        System.arraycopy(chosen, 0, links, base + 1, chosen.length);
+    }
+
+    /**
+     * The HNSW heuristic: walking candidates nearest first, keep one only if it is closer to the
+     * base vertex than to every neighbour kept so far. This keeps links spread over directions,
+     * which is what lets greedy search cross between clusters.
+     * @param sorted Candidates, nearest to {@code base} first.
+     */
+    private int[] selectNeighbours(int base, int[] sorted, int max) {
+        int[] chosen = new int[Math.min(max, sorted.length)];
+        int count = 0;
+        for (int c : sorted) {
+            if (count == max) break;
+            if (c == base) continue;
+            float toBase = distance(base, c);
+            boolean keep = true;
+            for (int i = 0; i < count && keep; i++)
+                if (distance(chosen[i], c) < toBase) keep = false;
+            if (keep) chosen[count++] = c;
+        }
+        return count == chosen.length ? chosen : Arrays.copyOf(chosen, count);
+    }
+
+    private void remove(String id) {
+        Integer slot = slots.remove(id);
+        if (slot == null) return;
+        deleted[slot] = true;
+        tombstones++;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= ids.length) return;
+        int capacity = Math.max(64, Math.max(needed, ids.length * 2));
+        vectors = Arrays.copyOf(vectors, capacity * DIM);
+        ids = Arrays.copyOf(ids, capacity);
+        levels = Arrays.copyOf(levels, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+        layer0 = Arrays.copyOf(layer0, capacity * (M0 + 1));
+        upper = Arrays.copyOf(upper, capacity);
+    }
+
+    /** Rebuilds the graph from the live vectors only, dropping tombstones. */
+    private void compact() {
+        int oldSize = size;
+        float[] oldVectors = vectors;
+        String[] oldIds = ids;
+        boolean[] oldDeleted = deleted;
+        slots.clear();
+        size = 0;
+        tombstones = 0;
+        entry = -1;
+        maxLevel = -1;
+        vectors = new float[0];
+        ids = new String[0];
+        levels = new int[0];
+        deleted = new boolean[0];
+        layer0 = new int[0];
+        upper = new int[0][];
+        for (int s = 0; s < oldSize; s++)
+            if (!oldDeleted[s]) insert(oldIds[s], Arrays.copyOfRange(oldVectors, s * DIM, (s + 1) * DIM));
+    }
+
+    // --- Links and distances ---
+
+    private int[] links(int slot, int level) {
+        return level == 0 ? layer0 : upper[slot];
+    }
+
+    private int base(int slot, int level) {
+        return level == 0 ? slot * (M0 + 1) : (level - 1) * (M + 1);
+    }
+
+    /** Cosine distance between a query and a stored vector (both unit length). */
+    private float distance(float[] q, int slot) {
+        return 1 - dot(q, 0, vectors, slot * DIM);
+    }
+
+    private float distance(int a, int b) {
+        return 1 - dot(vectors, a * DIM, vectors, b * DIM);
+    }
+
+    /**
+     * Dot product over {@link #DIM} floats. Four independent accumulators let the JIT keep
+     * several multiply-adds in flight (and vectorize them) instead of one serial chain.
+     */
+    static float dot(float[] a, int aOff, float[] b, int bOff) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        for (int i = 0; i < DIM; i += 4) {
+            s0 += a[aOff + i] * b[bOff + i];
+            s1 += a[aOff + i + 1] * b[bOff + i + 1];
+            s2 += a[aOff + i + 2] * b[bOff + i + 2];
+            s3 += a[aOff + i + 3] * b[bOff + i + 3];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private static void sortByDistance(int[] items, float[] dist) {
+        Integer[] order = new Integer[items.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (x, y) -> Float.compare(dist[x], dist[y]));
+        int[] copy = items.clone();
+        for (int i = 0; i < order.length; i++) items[i] = copy[order[i]];
+    }
+
+    /** Binary heap of (distance, slot) pairs on primitive arrays; a max-heap or a min-heap. */
+    private static final class Heap {
+        private final boolean max;
+        private float[] keys;
+        private int[] values;
+        private int size;
+
+        Heap(boolean max, int capacity) {
+            this.max = max;
+            this.keys = new float[Math.max(4, capacity)];
+            this.values = new int[keys.length];
+        }
+
+        int size() { return size; }
+        float peekKey() { return keys[0]; }
+
+        void push(float key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!above(key, keys[parent])) break;
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int pop() {
+            int top = values[0];
+            float key = keys[--size];
+            int value = values[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && above(keys[child + 1], keys[child])) child++;
+                if (!above(keys[child], key)) break;
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return top;
+        }
+
+        /** Empties the heap, returning its values nearest first. */
+        int[] drainAscending() {
+            int[] out = new int[size];
+            if (max) for (int i = out.length - 1; i >= 0; i--) out[i] = pop();
+            else for (int i = 0; i < out.length; i++) out[i] = pop();
+            return out;
+        }
+
+        private boolean above(float a, float b) {
+            return max ? a > b : a < b;
+        }
+    }
+
+    // --- Persistence ---
+
+    /** Deletes the persisted index of a database directory. */
+    public static void delete(String dbDirectory) {
+        new File(dbDirectory + File.separator + INDEX_FILE).delete();
+    }
+
+    /**
+     * Writes the index, stamping each shard with its current file metadata. Tombstones are
+     * compacted first once there are enough of them to be worth a rebuild, and written as such
+     * otherwise. Only call once every shard file is up to date (e.g. at checkpoint).
+     */
+    public void save(File[] segmentFiles) {
+        lock.writeLock().lock();
+        try {
+            if (tombstones > 0 && tombstones * COMPACT_RATIO > size) compact();
+            for (int i = 0; i < segmentFiles.length; i++) {
+                boolean exists = segmentFiles[i].exists();
+                fileLengths[i] = exists ? segmentFiles[i].length() : -1;
+                fileModified[i] = exists ? segmentFiles[i].lastModified() : -1;
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeUTF(HEADER);
+            out.writeInt(fileLengths.length);
+            for (int i = 0; i < fileLengths.length; i++) {
+                out.writeLong(fileLengths[i]);
+                out.writeLong(fileModified[i]);
+            }
+            out.writeInt(DIM);
+            out.writeInt(size);
+            out.writeInt(entry);
+            out.writeInt(maxLevel);
+            for (int s = 0; s < size; s++) {
+                out.writeUTF(ids[s]);
+                out.writeBoolean(deleted[s]);
+                out.writeByte(levels[s]);
+                for (int i = 0; i < DIM; i++) out.writeFloat(vectors[s * DIM + i]);
+                for (int l = 0; l <= levels[s]; l++) {
+                    int[] links = links(s, l);
+                    int base = base(s, l);
+                    GlobalIndex.writeVarInt(out, links[base]);
+                    for (int i = 1; i <= links[base]; i++) GlobalIndex.writeVarInt(out, links[base + i]);
+                }
+            }
+            String enc = crypto.encrypt(Base64.getEncoder().encodeToString(baos.toByteArray()));
+            Path target = Paths.get(path);
+            Path temp = Paths.get(path + ".tmp");
+            Files.write(temp, enc.getBytes());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            System.err.println("Vector Index Save Failed: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void load() {
+        File file = new File(path);
+        if (!file.exists()) return;
+        try {
+            byte[] raw = Base64.getDecoder().decode(crypto.decrypt(new String(Files.readAllBytes(file.toPath()))));
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+                String header = in.readUTF();
+                boolean flagged = HEADER.equals(header);
+                if (!flagged && !HEADER_V1.equals(header)) throw new IOException("Bad Header");
+                if (in.readInt() != fileLengths.length) throw new IOException("Shard count changed");
+                long[] lengths = new long[fileLengths.length];
+                long[] modified = new long[fileModified.length];
+                for (int i = 0; i < lengths.length; i++) {
+                    lengths[i] = in.readLong();
+                    modified[i] = in.readLong();
+                }
+                if (in.readInt() != DIM) throw new IOException("Dimension changed");
+                int count = in.readInt();
+                ensureCapacity(count);
+                entry = in.readInt();
+                maxLevel = in.readInt();
+                for (int s = 0; s < count; s++) {
+                    ids[s] = in.readUTF();
+                    deleted[s] = flagged && in.readBoolean();
+                    levels[s] = in.readByte();
+                    for (int i = 0; i < DIM; i++) vectors[s * DIM + i] = in.readFloat();
+                    upper[s] = levels[s] > 0 ? new int[levels[s] * (M + 1)] : null;
+                    for (int l = 0; l <= levels[s]; l++) {
+                        int[] links = links(s, l);
+                        int base = base(s, l);
+                        int n = GlobalIndex.readVarInt(in);
+                        links[base] = n;
+                        for (int i = 1; i <= n; i++) links[base + i] = GlobalIndex.readVarInt(in);
+                    }
+                    if (deleted[s]) tombstones++;
+                    else slots.put(ids[s], s);
+                }
+                size = count;
+                System.arraycopy(lengths, 0, fileLengths, 0, lengths.length);
+                System.arraycopy(modified, 0, fileModified, 0, modified.length);
+            }
+        } catch (Exception e) {
+            // Unreadable: start empty with every shard marked stale
+            slots.clear();
+            size = 0;
+            tombstones = 0;
+            entry = -1;
+            maxLevel = -1;
+            Arrays.fill(fileLengths, Long.MIN_VALUE);
+        }
+    }
+}
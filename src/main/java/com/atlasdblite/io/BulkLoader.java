@@ -0,0 +1,485 @@
+package com.atlasdblite.io;
+
+import com.atlasdblite.engine.Catalog;
+import com.atlasdblite.engine.DataSegment;
+import com.atlasdblite.engine.GlobalIndex;
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.engine.SegmentStats;
+import com.atlasdblite.engine.TransactionManager;
+import com.atlasdblite.models.Node;
+import com.atlasdblite.models.Relation;
+import com.atlasdblite.security.CryptoManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Offline initial load: builds a new database directory's shard files, catalog and, optionally,
+ * global index straight from node and link CSV files, bypassing the WAL and live shards.
+ * <p>
+ * CSV files follow the same conventions as {@link CsvImporter}. Records are routed with
+ * {@link GraphEngine#shardOf} and put in order with external merge sorts whose buffers stay within
+ * the memory budget (two sorts are live at a time, each gets half):
+ * <ol>
+ *   <li>Nodes are sorted by (shard, id). A repeated ID keeps its last row, as a live import
+ *       would. Each shard's nodes are spooled to a scratch file, and every ID to a sorted list.</li>
+ *   <li>Links are sorted by target and merge-joined with that list, then the survivors are
+ *       sorted by source and joined again; a link with a missing endpoint is reported.</li>
+ *   <li>Each shard file is streamed out from its spools, followed by the catalog, the index and
+ *       an empty WAL, so the engine opens the result with nothing to replay.</li>
+ * </ol>
+ * The target directory must be empty: this is for initial loads, not for adding to a database.
+ */
+public class BulkLoader {
+    public static final long DEFAULT_MEMORY = 512L << 20;
+
+    public static class Result {
+        public final long rows;
+        public final long nodes;
+        public final long relations;
+        /** Node rows replaced by a later row with the same ID. */
+        public final long duplicates;
+        public final long errors;
+        public final long millis;
+        /** The error report, or null if every row was loaded. */
+        public final File errorFile;
+
+        Result(long rows, long nodes, long relations, long duplicates, long errors, long millis, File errorFile) {
+            this.rows = rows;
+            this.nodes = nodes;
+            this.relations = relations;
+            this.duplicates = duplicates;
+            this.errors = errors;
+            this.millis = millis;
+            this.errorFile = errorFile;
+        }
+
+        public double rowsPerSecond() {
+            return millis == 0 ? 0 : rows * 1000.0 / millis;
+        }
+    }
+
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private long memory = DEFAULT_MEMORY;
+    private File tempDir;
+    private int chunkSize = CsvChunkReader.DEFAULT_CHUNK;
+    private int maxErrors = CsvImporter.DEFAULT_MAX_ERRORS;
+    private File errorFile;
+    private boolean buildIndex;
+    private Consumer<String> progress = s -> {};
+    private long progressMillis = 5000;
+
+    /** CSV parser threads. */
+    public BulkLoader threads(int n) { this.threads = Math.max(1, n); return this; }
+
+    /** Bytes of sort buffers held in memory before runs are written to disk. */
+    public BulkLoader memory(long bytes) {
+        if (bytes < (4L << 20)) throw new IllegalArgumentException("Memory budget must be at least 4MB");
+        this.memory = bytes;
+        return this;
+    }
+
+    /** Where sort runs and spools go (default: a scratch directory inside the database directory). */
+    public BulkLoader tempDir(File dir) { this.tempDir = dir; return this; }
+
+    /** Characters per parsed block. */
+    public BulkLoader chunkSize(int n) { this.chunkSize = n; return this; }
+
+    /** Most rows written to the error report; later ones are only counted. */
+    public BulkLoader maxErrors(int n) { this.maxErrors = Math.max(0, n); return this; }
+
+    /** Where to write the error report (default: next to the first input, with {@code .errors} appended). */
+    public BulkLoader errorFile(File f) { this.errorFile = f; return this; }
+
+    /** Also builds the global exact-value index, which turns auto-indexing on for the database. */
+    public BulkLoader buildIndex(boolean on) { this.buildIndex = on; return this; }
+
+    /** Receives a line for each phase, and row counts about every {@code intervalMillis} while reading. */
+    public BulkLoader onProgress(Consumer<String> listener, long intervalMillis) {
+        this.progress = listener;
+        this.progressMillis = intervalMillis;
+        return this;
+    }
+
+    // --- Load ---
+
+    /**
+     * Builds a database in {@code dbDirectory} from the given files.
+     * @throws IllegalArgumentException If the directory is not empty or a header is invalid.
+     */
+    public Result load(String dbDirectory, List<File> nodeFiles, List<File> linkFiles) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        File dir = new File(dbDirectory);
+        String[] existing = dir.list();
+        if (existing != null && existing.length > 0)
+            throw new IllegalArgumentException("Database directory is not empty: " + dir.getPath());
+        if (nodeFiles.isEmpty()) throw new IllegalArgumentException("No node files given");
+        for (File f : concat(nodeFiles, linkFiles))
+            if (!f.isFile()) throw new IllegalArgumentException("File not found: " + f.getPath());
+
+        dir.mkdirs();
+        File scratch = tempDir != null ? new File(tempDir, "atlas-import-" + start) : new File(dir, "import.tmp");
+        if (!scratch.mkdirs()) throw new IOException("Cannot create scratch directory " + scratch.getPath());
+        File report = errorFile != null ? errorFile : new File(nodeFiles.get(0).getPath() + ".errors");
+        report.delete();
+
+        CryptoManager crypto = new CryptoManager();
+        try (CsvImporter.ErrorReport errors = new CsvImporter.ErrorReport(report, maxErrors)) {
+            Load load = new Load(dbDirectory, scratch, crypto, errors, start);
+            load.readNodes(nodeFiles);
+            load.spoolNodes();
+            load.readLinks(linkFiles);
+            load.joinLinks();
+            load.writeShards();
+            if (buildIndex) load.writeIndex();
+
+            TransactionManager wal = new TransactionManager(crypto, dbDirectory);
+            wal.clearLog();
+            wal.close();
+
+            long millis = System.currentTimeMillis() - start;
+            progress.accept(String.format("Done in %,dms", millis));
+            return new Result(load.rows, load.nodeCount, load.relationCount, load.duplicates, errors.count(), millis,
+                    errors.count() > 0 ? report : null);
+        } finally {
+            File[] left = scratch.listFiles();
+            if (left != null) for (File f : left) f.delete();
+            scratch.delete();
+        }
+    }
+
+    /** The state of one load, phase by phase. */
+    private class Load {
+        private final String dbDirectory;
+        private final File scratch;
+        private final CryptoManager crypto;
+        private final CsvImporter.ErrorReport errors;
+        private final long start;
+        private final int shards = GraphEngine.shardCount();
+        private final List<String> linkFileNames = new ArrayList<>();
+        private final File idFile;
+
+        private ExternalSorter nodeSort;
+        private ExternalSorter linkSort;
+        private ExternalSorter termSort;
+        private Spool nodeSpool;
+        private Spool relationSpool;
+        long rows;
+        long nodeCount;
+        long relationCount;
+        long duplicates;
+
+        Load(String dbDirectory, File scratch, CryptoManager crypto, CsvImporter.ErrorReport errors, long start) {
+            this.dbDirectory = dbDirectory;
+            this.scratch = scratch;
+            this.crypto = crypto;
+            this.errors = errors;
+            this.start = start;
+            this.idFile = new File(scratch, "ids.bin");
+        }
+
+        void readNodes(List<File> files) throws IOException, InterruptedException {
+            nodeSort = new ExternalSorter(scratch, "nodes", memory / 2, GraphEngine::shardOf);
+            for (File f : files) {
+                read(f, CsvImporter.Kind.NODES, parsed -> {
+                    for (Node n : parsed.nodes) nodeSort.add(n.getId(), encode(n::writeTo));
+                });
+            }
+        }
+
+        /** Keeps the last row of each ID and spools the survivors by shard. */
+        void spoolNodes() throws IOException {
+            progress.accept(String.format("Sorting %,d nodes (%d runs)", nodeSort.size(), nodeSort.runCount()));
+            if (buildIndex) termSort = new ExternalSorter(scratch, "terms", memory / 2, term -> 0);
+            nodeSpool = new Spool(scratch, "nodes", shards);
+            try (ExternalSorter.Cursor c = nodeSort.sorted();
+                 DataOutputStream ids = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(idFile), 1 << 16))) {
+                String id = null;
+                int shard = 0;
+                byte[] node = null;
+                while (c.next()) {
+                    if (c.key().equals(id)) {
+                        duplicates++;
+                    } else {
+                        if (id != null) spoolNode(shard, id, node, ids);
+                        id = c.key();
+                        shard = c.group();
+                    }
+                    node = c.payload();
+                }
+                if (id != null) spoolNode(shard, id, node, ids);
+            } finally {
+                nodeSort.close();
+                nodeSpool.close();
+            }
+        }
+
+        private void spoolNode(int shard, String id, byte[] encoded, DataOutputStream ids) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+            String label;
+            if (termSort != null) {
+                Node n = Node.readFrom(in);
+                label = n.getLabel();
+                byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+                for (String term : GlobalIndex.keysOf(n)) termSort.add(term, idBytes);
+            } else {
+                in.readUTF();
+                label = in.readUTF();
+            }
+            nodeSpool.add(shard, encoded, label);
+            ids.writeInt(shard);
+            ids.writeUTF(id);
+            nodeCount++;
+        }
+
+        /** Link payloads carry where the row came from: file index, line, then the relation. */
+        void readLinks(List<File> files) throws IOException, InterruptedException {
+            linkSort = new ExternalSorter(scratch, "links-by-target", memory / 2, GraphEngine::shardOf);
+            for (File f : files) {
+                int fileIndex = linkFileNames.size();
+                linkFileNames.add(f.getName());
+                read(f, CsvImporter.Kind.LINKS, parsed -> {
+                    for (int i = 0; i < parsed.links.size(); i++) {
+                        Relation r = parsed.links.get(i);
+                        long line = parsed.linkRows.get(i).line;
+                        linkSort.add(r.getTargetId(), encode(out -> {
+                            out.writeInt(fileIndex);
+                            out.writeLong(line);
+                            r.writeTo(out);
+                        }));
+                    }
+                });
+            }
+        }
+
+        /** Drops links whose target, then whose source, is not a node, and spools the rest by shard. */
+        void joinLinks() throws IOException {
+            relationSpool = new Spool(scratch, "relations", shards);
+            if (linkSort.size() == 0) {
+                linkSort.close();
+                relationSpool.close();
+                return;
+            }
+            progress.accept(String.format("Checking targets of %,d links (%d runs)", linkSort.size(), linkSort.runCount()));
+            ExternalSorter bySource = new ExternalSorter(scratch, "links-by-source", memory / 2, GraphEngine::shardOf);
+            try (ExternalSorter.Cursor c = linkSort.sorted(); IdCursor ids = new IdCursor(idFile)) {
+                while (c.next()) {
+                    if (ids.seek(c.group(), c.key())) bySource.add(linkField(c.payload(), 0), c.payload());
+                    else missing(c.payload(), c.key());
+                }
+            } finally {
+                linkSort.close();
+            }
+
+            progress.accept(String.format("Checking sources of %,d links (%d runs)", bySource.size(), bySource.runCount()));
+            try (ExternalSorter.Cursor c = bySource.sorted(); IdCursor ids = new IdCursor(idFile)) {
+                while (c.next()) {
+                    byte[] payload = c.payload();
+                    if (!ids.seek(c.group(), c.key())) {
+                        missing(payload, c.key());
+                        continue;
+                    }
+                    byte[] relation = new byte[payload.length - LINK_HEADER];
+                    System.arraycopy(payload, LINK_HEADER, relation, 0, relation.length);
+                    relationSpool.add(c.group(), relation, linkField(payload, 2));
+                    relationCount++;
+                }
+            } finally {
+                bySource.close();
+                relationSpool.close();
+            }
+        }
+
+        private void missing(byte[] payload, String id) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            String file = linkFileNames.get(in.readInt());
+            errors.add(file + ": line " + in.readLong() + ": Node not found '" + id + "'");
+        }
+
+        void writeShards() throws IOException {
+            Catalog catalog = new Catalog(crypto, dbDirectory, shards);
+            for (int s = 0; s < shards; s++) {
+                File file = new DataSegment(s, dbDirectory, crypto).getFile();
+                long nodes = nodeSpool.count(s);
+                long relations = relationSpool.count(s);
+                if (nodes > Integer.MAX_VALUE || relations > Integer.MAX_VALUE)
+                    throw new IllegalArgumentException("Shard " + s + " would exceed " + Integer.MAX_VALUE + " records");
+                if (nodes > 0 || relations > 0) {
+                    progress.accept(String.format("Writing shard %d: %,d nodes, %,d relations", s, nodes, relations));
+                    try (DataSegment.Writer w = new DataSegment.Writer(s, dbDirectory, crypto, (int) nodes)) {
+                        nodeSpool.forEach(s, w::writeNode);
+                        w.beginRelations((int) relations);
+                        relationSpool.forEach(s, w::writeRelation);
+                    }
+                }
+                catalog.update(s, file, new SegmentStats(nodes, relations, nodeSpool.tally(s), relationSpool.tally(s)));
+            }
+            catalog.save();
+        }
+
+        void writeIndex() throws IOException {
+            progress.accept(String.format("Building global index from %,d postings (%d runs)", termSort.size(), termSort.runCount()));
+            File[] files = new File[shards];
+            for (int s = 0; s < shards; s++) files[s] = new DataSegment(s, dbDirectory, crypto).getFile();
+            try (ExternalSorter.Cursor c = termSort.sorted();
+                 GlobalIndex.Writer index = new GlobalIndex.Writer(crypto, dbDirectory, files)) {
+                while (c.next()) index.add(c.key(), new String(c.payload(), StandardCharsets.UTF_8));
+            } finally {
+                termSort.close();
+            }
+        }
+
+        private void read(File f, CsvImporter.Kind kind, CsvImporter.BlockConsumer rowsOut) throws IOException, InterruptedException {
+            progress.accept("Reading " + f.getName());
+            long[] fileRows = {0};
+            long[] lastReport = {System.currentTimeMillis()};
+            CsvImporter.readBlocks(f, kind, threads, chunkSize, parsed -> {
+                rows += parsed.rows;
+                fileRows[0] += parsed.rows;
+                for (String e : parsed.errors) errors.add(f.getName() + ": " + e);
+                rowsOut.accept(parsed);
+                long now = System.currentTimeMillis();
+                if (now - lastReport[0] >= progressMillis) {
+                    lastReport[0] = now;
+                    progress.accept(String.format("%s: %,d rows (%,.0f rows/s overall)", f.getName(), fileRows[0],
+                            rows * 1000.0 / Math.max(1, now - start)));
+                }
+            });
+        }
+    }
+
+    // Link payload: file index (int) and line (long) ahead of the relation's own encoding
+    private static final int LINK_HEADER = 12;
+
+    /** The source (0), target (1) or type (2) of an encoded link. */
+    private static String linkField(byte[] payload, int field) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, LINK_HEADER, payload.length - LINK_HEADER));
+        for (int i = 0; i < field; i++) in.readUTF();
+        return in.readUTF();
+    }
+
+    // --- Scratch files ---
+
+    private interface Encoder {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(Encoder encoder) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        encoder.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private interface RecordSink {
+        void accept(byte[] record) throws IOException;
+    }
+
+    /**
+     * Per-shard scratch files of encoded records, with a count and a tally (labels or types) per
+     * shard. Records must arrive grouped by shard, as the sorted cursors deliver them.
+     */
+    private static class Spool implements Closeable {
+        private final File dir;
+        private final String name;
+        private final long[] counts;
+        private final List<Map<String, Long>> tallies = new ArrayList<>();
+        private DataOutputStream out;
+        private int open = -1;
+
+        Spool(File dir, String name, int shards) {
+            this.dir = dir;
+            this.name = name;
+            this.counts = new long[shards];
+            for (int s = 0; s < shards; s++) tallies.add(new HashMap<>());
+        }
+
+        private File file(int shard) {
+            return new File(dir, name + "-" + shard + ".bin");
+        }
+
+        void add(int shard, byte[] record, String tallyKey) throws IOException {
+            if (shard != open) {
+                if (out != null) out.close();
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file(shard)), 1 << 16));
+                open = shard;
+            }
+            out.writeInt(record.length);
+            out.write(record);
+            counts[shard]++;
+            tallies.get(shard).merge(tallyKey, 1L, Long::sum);
+        }
+
+        long count(int shard) {
+            return counts[shard];
+        }
+
+        Map<String, Long> tally(int shard) {
+            return tallies.get(shard);
+        }
+
+        /** Replays a shard's records, then deletes its file. */
+        void forEach(int shard, RecordSink sink) throws IOException {
+            File f = file(shard);
+            if (counts[shard] == 0) return;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))) {
+                for (long i = 0; i < counts[shard]; i++) {
+                    byte[] record = new byte[in.readInt()];
+                    in.readFully(record);
+                    sink.accept(record);
+                }
+            }
+            f.delete();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) out.close();
+            out = null;
+        }
+    }
+
+    /** Walks the sorted (shard, id) list alongside a cursor sorted the same way. */
+    private static class IdCursor implements Closeable {
+        private final DataInputStream in;
+        private int group = -1;
+        private String id = "";
+        private boolean done;
+
+        IdCursor(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+
+        /** Advances to {@code (group, key)}, which must not be behind the last call's; true if it is present. */
+        boolean seek(int wantGroup, String key) throws IOException {
+            while (!done) {
+                int c = group != wantGroup ? Integer.compare(group, wantGroup) : id.compareTo(key);
+                if (c == 0) return true;
+                if (c > 0) return false;
+                try {
+                    group = in.readInt();
+                } catch (EOFException end) {
+                    done = true;
+                    break;
+                }
+                id = in.readUTF();
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static List<File> concat(List<File> a, List<File> b) {
+        List<File> all = new ArrayList<>(a);
+        all.addAll(b);
+        return all;
+    }
+}
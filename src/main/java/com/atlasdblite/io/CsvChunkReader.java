@@ -0,0 +1,125 @@
+package com.atlasdblite.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits CSV text into blocks of whole records so they can be parsed independently.
+ * <p>
+ * Each block ends at the last line break that is outside quotes; the rest is carried into the
+ * next block. Quotes are tracked the way {@link CsvParser} reads them: only a quote at the start
+ * of a field opens a quoted field, a quote inside an unquoted field is literal, and text after a
+ * closing quote runs to the end of the line. A record longer than the block size grows the
+ * buffer instead of being split.
+ */
+public class CsvChunkReader implements Closeable {
+    public static final int DEFAULT_CHUNK = 1 << 20;
+
+    /** A block of whole records: {@code text[start, end)}, starting on line {@code firstLine}. */
+    public static class Chunk {
+        public final long sequence;
+        public final char[] text;
+        public final int start;
+        public final int end;
+        public final long firstLine;
+
+        Chunk(long sequence, char[] text, int start, int end, long firstLine) {
+            this.sequence = sequence;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.firstLine = firstLine;
+        }
+
+        /** A copy that starts at {@code offset} on {@code line}, e.g. past a header. */
+        public Chunk from(int offset, long line) {
+            return new Chunk(sequence, text, offset, end, line);
+        }
+    }
+
+    // Scanner states, mirroring CsvParser
+    private static final int FIELD_START = 0, UNQUOTED = 1, QUOTED = 2, QUOTE_IN_QUOTED = 3, AFTER_CLOSE = 4;
+
+    private final Reader in;
+    private final int chunkSize;
+    private char[] carry = new char[0];
+    private int carryLength;
+    private long line = 1;
+    private long sequence;
+    private boolean eof;
+    private boolean first = true;
+
+    public CsvChunkReader(Reader in) {
+        this(in, DEFAULT_CHUNK);
+    }
+
+    public CsvChunkReader(Reader in, int chunkSize) {
+        this.in = in;
+        this.chunkSize = Math.max(1024, chunkSize);
+    }
+
+    /** The next block, or null at the end of input. */
+    public Chunk next() throws IOException {
+        if (eof && carryLength == 0) return null;
+        char[] buf = Arrays.copyOf(carry, Math.max(chunkSize, carryLength + chunkSize / 2));
+        int length = carryLength;
+        int scanned = 0;
+        int state = FIELD_START;
+        int cut = -1;
+        while (true) {
+            while (!eof && length < buf.length) {
+                int r = in.read(buf, length, buf.length - length);
+                if (r < 0) eof = true;
+                else length += r;
+            }
+            if (first && scanned == 0 && length > 0 && buf[0] == '\uFEFF') scanned = 1; // byte order mark
+            for (int i = scanned; i < length; i++) {
+                char c = buf[i];
+                switch (state) {
+                    case QUOTED:
+                        if (c == '"') state = QUOTE_IN_QUOTED;
+                        continue;
+                    case QUOTE_IN_QUOTED:
+                        if (c == '"') { state = QUOTED; continue; } // doubled quote
+                        if (c != ',' && c != '\n' && c != '\r') { state = AFTER_CLOSE; continue; }
+                        break;
+                    case AFTER_CLOSE:
+                        // The parser skips the rest of the line, quotes included
+                        if (c != '\n') continue;
+                        break;
+                    case FIELD_START:
+                        if (c == '"') { state = QUOTED; continue; }
+                        break;
+                    default:
+                        break;
+                }
+                // Outside quotes: a comma or line break starts a field, anything else is literal
+                if (c == '\n') cut = i;
+                state = c == ',' || c == '\n' || c == '\r' ? FIELD_START : UNQUOTED;
+            }
+            scanned = length;
+            if (cut >= 0 || eof) break;
+            buf = Arrays.copyOf(buf, buf.length * 2); // one record is bigger than the buffer
+        }
+        int end = eof ? length : cut + 1;
+        carryLength = length - end;
+        carry = Arrays.copyOfRange(buf, end, length);
+
+        int start = 0;
+        if (first) {
+            first = false;
+            if (end > 0 && buf[0] == '\uFEFF') start = 1; // byte order mark
+        }
+        Chunk chunk = new Chunk(sequence++, buf, start, end, line);
+        for (int i = start; i < end; i++)
+            if (buf[i] == '\n') line++;
+        return chunk;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
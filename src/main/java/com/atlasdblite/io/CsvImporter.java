@@ -0,0 +1,513 @@
+package com.atlasdblite.io;
+
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.models.Node;
+import com.atlasdblite.models.Relation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Pipelined CSV import: one thread reads blocks of whole records, a pool parses blocks in
+ * parallel into nodes or relations, and the calling thread applies them in file order through the
+ * engine's batch writes (one WAL record and one lock acquisition per shard per batch).
+ * <p>
+ * The header names the columns, optionally typed as {@code name:type} ({@code string},
+ * {@code int}/{@code long}, {@code double}/{@code float}, {@code bool}/{@code boolean} or
+ * {@code list}, a {@code ;}-separated list of strings in which {@code \;} and {@code \\} stand
+ * for a literal {@code ;} and {@code \}). The type follows the last colon, so a name holding a
+ * colon needs an explicit type ({@code a:b:string}). Node files start with {@code id,label}; link
+ * files with {@code from,to,type}. Empty fields set no property.
+ * <p>
+ * Rows that cannot be imported (malformed CSV, a bad typed value, a link to a missing node) are
+ * counted and, up to {@code maxErrors} of them, written with their line number to an error report;
+ * the import carries on. Link endpoints are checked a whole batch at a time.
+ */
+public class CsvImporter {
+    public enum Kind { NODES, LINKS }
+
+    public static final int DEFAULT_BATCH = 50_000;
+    public static final int DEFAULT_MAX_ERRORS = 1000;
+    private static final int MAX_RAW = 200;
+    private static final Set<String> TYPES = new HashSet<>(Arrays.asList(
+            "string", "int", "long", "double", "float", "bool", "boolean", "list"));
+
+    /** A snapshot of a running import, passed to the progress listener. */
+    public static class Progress {
+        public final long rows;
+        public final long errors;
+        public final long millis;
+
+        Progress(long rows, long errors, long millis) {
+            this.rows = rows;
+            this.errors = errors;
+            this.millis = millis;
+        }
+
+        public double rowsPerSecond() {
+            return millis == 0 ? 0 : rows * 1000.0 / millis;
+        }
+    }
+
+    public static class Result {
+        public final long rows;
+        public final long imported;
+        public final long errors;
+        public final long millis;
+        /** The error report, or null if every row was imported. */
+        public final File errorFile;
+
+        Result(long rows, long imported, long errors, long millis, File errorFile) {
+            this.rows = rows;
+            this.imported = imported;
+            this.errors = errors;
+            this.millis = millis;
+            this.errorFile = errorFile;
+        }
+
+        public double rowsPerSecond() {
+            return millis == 0 ? 0 : rows * 1000.0 / millis;
+        }
+    }
+
+    private final GraphEngine engine;
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private int batchSize = DEFAULT_BATCH;
+    private int chunkSize = CsvChunkReader.DEFAULT_CHUNK;
+    private int maxErrors = DEFAULT_MAX_ERRORS;
+    private File errorFile;
+    private Consumer<Progress> progress = p -> {};
+    private long progressMillis = 1000;
+
+    public CsvImporter(GraphEngine engine) {
+        this.engine = engine;
+    }
+
+    /** Parser threads (the reader and the applier have their own). */
+    public CsvImporter threads(int n) { this.threads = Math.max(1, n); return this; }
+
+    /** Rows per engine batch; up to 8 batches' worth of rows are held in memory. */
+    public CsvImporter batchSize(int n) {
+        if (n < 1) throw new IllegalArgumentException("Batch size must be at least 1");
+        this.batchSize = n;
+        return this;
+    }
+
+    /** Characters per parsed block. */
+    public CsvImporter chunkSize(int n) { this.chunkSize = n; return this; }
+
+    /** Most rows written to the error report; later ones are only counted. */
+    public CsvImporter maxErrors(int n) { this.maxErrors = Math.max(0, n); return this; }
+
+    /** Where to write the error report (default: next to the input, with {@code .errors} appended). */
+    public CsvImporter errorFile(File f) { this.errorFile = f; return this; }
+
+    /** Called about every {@code intervalMillis} while the import runs, and once at the end. */
+    public CsvImporter onProgress(Consumer<Progress> listener, long intervalMillis) {
+        this.progress = listener;
+        this.progressMillis = intervalMillis;
+        return this;
+    }
+
+    // --- Pipeline ---
+
+    /** Rows parsed from one block. */
+    static class Parsed {
+        final List<Node> nodes = new ArrayList<>();
+        final List<Relation> links = new ArrayList<>();
+        final List<Row> linkRows = new ArrayList<>(); // for reporting endpoint errors
+        final List<String> errors = new ArrayList<>();
+        long rows;
+    }
+
+    /** Receives parsed blocks, in file order. */
+    interface BlockConsumer {
+        void accept(Parsed parsed) throws IOException;
+    }
+
+    /**
+     * Imports a UTF-8 CSV file.
+     * @throws IllegalArgumentException If the header is missing or invalid.
+     */
+    public Result run(File csv, Kind kind) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        File report = errorFile != null ? errorFile : new File(csv.getPath() + ".errors");
+        report.delete();
+
+        long[] rows = {0};
+        long[] lastReport = {start};
+        try (ErrorReport errors = new ErrorReport(report, maxErrors)) {
+            Applier applier = new Applier(errors);
+            readBlocks(csv, kind, threads, chunkSize, parsed -> {
+                rows[0] += parsed.rows;
+                errors.addAll(parsed.errors);
+                applier.add(parsed);
+                long now = System.currentTimeMillis();
+                if (now - lastReport[0] >= progressMillis) {
+                    lastReport[0] = now;
+                    progress.accept(new Progress(rows[0], errors.count(), now - start));
+                }
+            });
+            applier.flushAll();
+            long millis = System.currentTimeMillis() - start;
+            progress.accept(new Progress(rows[0], errors.count(), millis));
+            return new Result(rows[0], applier.written, errors.count(), millis, errors.count() > 0 ? report : null);
+        }
+    }
+
+    /**
+     * Reads a UTF-8 CSV file on a reader thread, parses its blocks on {@code threads} pool
+     * threads, and hands each block's rows to {@code consumer} on the calling thread in file
+     * order. Read-ahead is bounded to two blocks per parser thread.
+     * @throws IllegalArgumentException If the header is missing or invalid.
+     */
+    static void readBlocks(File csv, Kind kind, int threads, int chunkSize, BlockConsumer consumer)
+            throws IOException, InterruptedException {
+        CsvChunkReader reader = new CsvChunkReader(new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8), chunkSize);
+        ExecutorService parsers = Executors.newFixedThreadPool(threads, daemonThreads("atlas-csv-parse"));
+        BlockingQueue<Future<Parsed>> pending = new ArrayBlockingQueue<>(threads * 2);
+        Thread feeder = null;
+        try {
+            CsvChunkReader.Chunk first = reader.next();
+            CsvParser headerParser = first == null ? null : new CsvParser(first.text, first.start, first.end, first.firstLine);
+            if (headerParser == null || !headerParser.next() || headerParser.error() != null)
+                throw new IllegalArgumentException("Missing or malformed header line");
+            Column[] columns = parseHeader(headerParser.fields(), kind);
+            CsvChunkReader.Chunk body = first.from(headerParser.position(), headerParser.nextLine());
+
+            // Reader: queues a parse of each block in file order; the queue bounds read-ahead
+            CompletableFuture<Parsed> endMarker = new CompletableFuture<>();
+            feeder = new Thread(() -> {
+                try {
+                    CsvChunkReader.Chunk chunk = body;
+                    while (chunk != null) {
+                        CsvChunkReader.Chunk c = chunk;
+                        pending.put(parsers.submit(() -> parse(c, columns, kind)));
+                        chunk = reader.next();
+                    }
+                    endMarker.complete(null);
+                    pending.put(endMarker);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    endMarker.completeExceptionally(e);
+                    try {
+                        pending.put(endMarker);
+                    } catch (InterruptedException ignored) {}
+                }
+            }, "atlas-csv-read");
+            feeder.setDaemon(true);
+            feeder.start();
+
+            while (true) {
+                Future<Parsed> next = pending.take();
+                Parsed parsed;
+                try {
+                    parsed = next.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                    throw new IllegalStateException(e.getCause());
+                }
+                if (parsed == null) break;
+                consumer.accept(parsed);
+            }
+        } finally {
+            if (feeder != null) feeder.interrupt();
+            parsers.shutdownNow();
+            reader.close();
+        }
+    }
+
+    /**
+     * Buffers parsed rows per shard and writes them in batches. Only some shards stay in memory
+     * and bringing another in means saving one out, so nodes for resident shards are written in
+     * small batches as they come, while other shards' nodes wait until they fill a full batch (or
+     * the total held back reaches its cap). Links are held until the cap, then their endpoints are
+     * checked together, since they touch every shard.
+     */
+    private class Applier {
+        private final ErrorReport errors;
+        private final List<List<Node>> nodes = new ArrayList<>();
+        private int heldNodes;
+        private final List<Relation> links = new ArrayList<>();
+        private final List<Row> linkRows = new ArrayList<>();
+        private final int residentBatch = Math.max(1, batchSize / 10);
+        private final long cap = 8L * batchSize;
+        long written;
+
+        Applier(ErrorReport errors) {
+            this.errors = errors;
+            for (int s = 0; s < GraphEngine.shardCount(); s++) nodes.add(new ArrayList<>());
+        }
+
+        void add(Parsed parsed) {
+            for (Node n : parsed.nodes) nodes.get(GraphEngine.shardOf(n.getId())).add(n);
+            heldNodes += parsed.nodes.size();
+            for (int s = 0; s < nodes.size(); s++) {
+                int size = nodes.get(s).size();
+                if (size >= batchSize || (size >= residentBatch && engine.isShardResident(s))) writeNodes(s);
+            }
+            while (heldNodes > cap) writeNodes(largest());
+
+            links.addAll(parsed.links);
+            linkRows.addAll(parsed.linkRows);
+            if (links.size() >= cap) writeLinks();
+        }
+
+        void flushAll() {
+            for (int s = 0; s < nodes.size(); s++)
+                if (engine.isShardResident(s)) writeNodes(s);
+            for (int s = 0; s < nodes.size(); s++) writeNodes(s);
+            writeLinks();
+        }
+
+        private int largest() {
+            int best = 0;
+            for (int s = 1; s < nodes.size(); s++)
+                if (nodes.get(s).size() > nodes.get(best).size()) best = s;
+            return best;
+        }
+
+        private void writeNodes(int shard) {
+            List<Node> batch = nodes.get(shard);
+            if (batch.isEmpty()) return;
+            engine.persistNodes(batch);
+            written += batch.size();
+            heldNodes -= batch.size();
+            batch.clear();
+        }
+
+        private void writeLinks() {
+            if (links.isEmpty()) return;
+            Set<String> endpoints = new HashSet<>();
+            for (Relation r : links) {
+                endpoints.add(r.getSourceId());
+                endpoints.add(r.getTargetId());
+            }
+            Set<String> missing = engine.findMissingNodes(endpoints);
+            List<Relation> valid = new ArrayList<>(links.size());
+            List<Row> validRows = new ArrayList<>(links.size());
+            for (int i = 0; i < links.size(); i++) {
+                Relation r = links.get(i);
+                String absent = missing.contains(r.getSourceId()) ? r.getSourceId()
+                        : missing.contains(r.getTargetId()) ? r.getTargetId() : null;
+                if (absent != null) {
+                    errors.add(linkRows.get(i).describe("Node not found '" + absent + "'"));
+                } else {
+                    valid.add(r);
+                    validRows.add(linkRows.get(i));
+                }
+            }
+            links.clear();
+            linkRows.clear();
+            try {
+                engine.persistRelations(valid);
+                written += valid.size();
+            } catch (IllegalArgumentException e) {
+                // An endpoint was deleted after the check
+                for (Row row : validRows) errors.add(row.describe(e.getMessage()));
+            }
+        }
+    }
+
+    private static Parsed parse(CsvChunkReader.Chunk chunk, Column[] columns, Kind kind) {
+        Parsed out = new Parsed();
+        CsvParser parser = new CsvParser(chunk.text, chunk.start, chunk.end, chunk.firstLine);
+        while (parser.next()) {
+            out.rows++;
+            try {
+                if (parser.error() != null) throw new IllegalArgumentException(parser.error());
+                String[] fields = parser.fields();
+                if (fields.length > columns.length)
+                    throw new IllegalArgumentException(fields.length + " fields but the header has " + columns.length);
+                if (kind == Kind.NODES) {
+                    out.nodes.add(toNode(fields, columns));
+                } else {
+                    out.links.add(toRelation(fields, columns));
+                    out.linkRows.add(new Row(parser));
+                }
+            } catch (IllegalArgumentException e) {
+                out.errors.add(new Row(parser).describe(e.getMessage()));
+            }
+        }
+        return out;
+    }
+
+    /** Where a row came from, for the error report. */
+    static class Row {
+        final long line;
+        final String raw;
+
+        Row(CsvParser parser) {
+            String text = parser.raw();
+            if (text.length() > MAX_RAW) text = text.substring(0, MAX_RAW) + "...";
+            this.line = parser.line();
+            this.raw = text.replace("\r", "\\r").replace("\n", "\\n");
+        }
+
+        String describe(String message) {
+            return "line " + line + ": " + message + ": " + raw;
+        }
+    }
+
+    // --- Conversion ---
+
+    private static class Column {
+        final String name;
+        final String type;
+
+        Column(String name, String type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    private static Column[] parseHeader(String[] header, Kind kind) {
+        int required = kind == Kind.NODES ? 2 : 3;
+        if (header.length < required)
+            throw new IllegalArgumentException(kind == Kind.NODES ? "Node files need at least id,label columns"
+                    : "Link files need at least from,to,type columns");
+        Column[] columns = new Column[header.length];
+        for (int i = 0; i < header.length; i++) {
+            int colon = header[i].lastIndexOf(':');
+            String name = (colon < 0 ? header[i] : header[i].substring(0, colon)).trim();
+            String type = colon < 0 ? "string" : header[i].substring(colon + 1).trim().toLowerCase();
+            if (name.isEmpty())
+                throw new IllegalArgumentException("Empty column name at position " + (i + 1));
+            if (!TYPES.contains(type))
+                throw new IllegalArgumentException("Unknown type '" + type + "' for column '" + name + "'");
+            columns[i] = new Column(name, type);
+        }
+        return columns;
+    }
+
+    private static Node toNode(String[] fields, Column[] columns) {
+        String id = required(fields, 0, "id");
+        String label = required(fields, 1, "label");
+        Node node = new Node(id, label);
+        for (int i = 2; i < fields.length; i++)
+            if (!fields[i].isEmpty())
+                node.addProperty(columns[i].name, convert(fields[i], columns[i]));
+        return node;
+    }
+
+    private static Relation toRelation(String[] fields, Column[] columns) {
+        String from = required(fields, 0, "from");
+        String to = required(fields, 1, "to");
+        String type = required(fields, 2, "type");
+        Map<String, Object> props = new HashMap<>();
+        for (int i = 3; i < fields.length; i++)
+            if (!fields[i].isEmpty())
+                props.put(columns[i].name, convert(fields[i], columns[i]));
+        return new Relation(from, to, type, props);
+    }
+
+    private static String required(String[] fields, int index, String what) {
+        String value = index < fields.length ? fields[index].trim() : "";
+        if (value.isEmpty()) throw new IllegalArgumentException("Missing " + what);
+        return value;
+    }
+
+    private static Object convert(String value, Column column) {
+        try {
+            switch (column.type) {
+                case "int":
+                case "long": return Long.parseLong(value.trim());
+                case "double":
+                case "float": return Double.parseDouble(value.trim());
+                case "bool":
+                case "boolean":
+                    if (value.trim().equalsIgnoreCase("true")) return Boolean.TRUE;
+                    if (value.trim().equalsIgnoreCase("false")) return Boolean.FALSE;
+                    throw new NumberFormatException();
+                case "list": return splitList(value);
+                default: return value;
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Column '" + column.name + "': '" + value + "' is not a valid " + column.type);
+        }
+    }
+
+    /** Splits a {@code list} field at unescaped {@code ;}, resolving {@code \;} and {@code \\}. */
+    static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        StringBuilder item = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '\\' && i + 1 < value.length() && (value.charAt(i + 1) == ';' || value.charAt(i + 1) == '\\')) {
+                item.append(value.charAt(++i));
+            } else if (ch == ';') {
+                items.add(item.toString());
+                item.setLength(0);
+            } else {
+                item.append(ch);
+            }
+        }
+        items.add(item.toString());
+        return items;
+    }
+
+    // --- Error report ---
+
+    /** Counts every error, writing the first {@code limit} to the report file (created on the first). */
+    static class ErrorReport implements Closeable {
+        private final File file;
+        private final int limit;
+        private long count;
+        private PrintWriter out;
+
+        ErrorReport(File file, int limit) {
+            this.file = file;
+            this.limit = limit;
+        }
+
+        void addAll(List<String> errors) {
+            for (String e : errors) add(e);
+        }
+
+        void add(String error) {
+            count++;
+            if (count <= limit) writer().println(error);
+        }
+
+        long count() {
+            return count;
+        }
+
+        private PrintWriter writer() {
+            if (out == null) {
+                try {
+                    out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return out;
+        }
+
+        @Override
+        public void close() {
+            if (count > limit) writer().println("... " + (count - limit) + " more errors not shown");
+            if (out != null) out.close();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,154 @@
+package com.atlasdblite.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RFC 4180 record parser over a block of text that starts and ends on record boundaries.
+ * <p>
+ * Fields are separated by commas and records by LF or CRLF. A field that starts with a double
+ * quote may contain commas, line breaks and doubled quotes ({@code ""} for {@code "}). A quote
+ * inside an unquoted field is taken literally. Blank lines are skipped. A record that cannot be
+ * parsed (text after a closing quote, or a quote left open at the end of the block) is still
+ * returned, with {@link #error()} set, so the caller can report it and carry on.
+ */
+public class CsvParser {
+    private final char[] text;
+    private final int end;
+    private int pos;
+    private long line;
+
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private int recordStart;
+    private int recordEnd;
+    private long recordLine;
+    private String error;
+
+    /**
+     * @param firstLine Line number of {@code text[start]}, counted from 1, for error messages.
+     */
+    public CsvParser(char[] text, int start, int end, long firstLine) {
+        this.text = text;
+        this.pos = start;
+        this.end = end;
+        this.line = firstLine;
+    }
+
+    /** Convenience form for a whole string. */
+    public CsvParser(String text) {
+        this(text.toCharArray(), 0, text.length(), 1);
+    }
+
+    /**
+     * Reads the next record.
+     * @return False once the text is exhausted.
+     */
+    public boolean next() {
+        // Skip blank lines
+        while (pos < end && (text[pos] == '\n' || text[pos] == '\r')) {
+            if (text[pos] == '\n') line++;
+            pos++;
+        }
+        if (pos >= end) return false;
+
+        fields.clear();
+        error = null;
+        recordStart = pos;
+        recordLine = line;
+        while (true) {
+            field.setLength(0);
+            if (pos < end && text[pos] == '"') {
+                pos++;
+                boolean closed = false;
+                while (pos < end) {
+                    char c = text[pos++];
+                    if (c == '"') {
+                        if (pos < end && text[pos] == '"') {
+                            field.append('"');
+                            pos++;
+                        } else {
+                            closed = true;
+                            break;
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        field.append(c);
+                    }
+                }
+                if (!closed) {
+                    error = "Unterminated quoted field";
+                    return finish(end);
+                }
+                if (pos < end && text[pos] != ',' && text[pos] != '\n' && text[pos] != '\r') {
+                    error = "Unexpected text after closing quote";
+                    return finish(skipLine());
+                }
+            } else {
+                int from = pos;
+                while (pos < end && text[pos] != ',' && text[pos] != '\n' && text[pos] != '\r') pos++;
+                field.append(text, from, pos - from);
+            }
+            fields.add(field.toString());
+
+            if (pos >= end) return finish(end);
+            char c = text[pos];
+            if (c == ',') {
+                pos++;
+                continue;
+            }
+            // End of record: CRLF or LF (a lone CR also ends it)
+            int recordEndAt = pos;
+            pos++;
+            if (c == '\r' && pos < end && text[pos] == '\n') pos++;
+            if (text[pos - 1] == '\n') line++;
+            return finish(recordEndAt);
+        }
+    }
+
+    private boolean finish(int endOfRecord) {
+        recordEnd = endOfRecord;
+        return true;
+    }
+
+    /** Skips to the start of the next line; returns where the current line ended. */
+    private int skipLine() {
+        while (pos < end && text[pos] != '\n') pos++;
+        int lineEnd = pos > recordStart && text[pos - 1] == '\r' ? pos - 1 : pos;
+        if (pos < end) {
+            pos++;
+            line++;
+        }
+        return lineEnd;
+    }
+
+    /** Fields of the current record (a fresh array each call). */
+    public String[] fields() {
+        return fields.toArray(new String[0]);
+    }
+
+    /** Why the current record is malformed, or null if it parsed. */
+    public String error() {
+        return error;
+    }
+
+    /** Line on which the current record starts. */
+    public long line() {
+        return recordLine;
+    }
+
+    /** The current record's text as it appears in the input. */
+    public String raw() {
+        return new String(text, recordStart, recordEnd - recordStart);
+    }
+
+    /** Offset just past the current record; the next record starts here or later. */
+    public int position() {
+        return pos;
+    }
+
+    /** Line number at {@link #position()}. */
+    public long nextLine() {
+        return line;
+    }
+}
@@ -0,0 +1,231 @@
+package com.atlasdblite.io;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToIntFunction;
+
+/**
+ * Sorts (key, payload) records that may not fit in memory.
+ * <p>
+ * Records are ordered by a group number (e.g. the shard of the key), then by key. Records with
+ * equal keys keep the order they were added in, so callers can keep the last of a duplicate run.
+ * Records are buffered until their estimated size reaches the memory budget, then sorted and
+ * written to a run file; {@link #sorted()} merges the runs (in passes of at most
+ * {@link #MAX_FAN_IN} if there are many). Nothing touches disk if everything fits.
+ */
+class ExternalSorter implements Closeable {
+    static final int MAX_FAN_IN = 64;
+    private static final int BUFFER = 1 << 16;
+    // Rough heap cost of a buffered record besides its key chars and payload bytes
+    private static final int RECORD_OVERHEAD = 96;
+
+    private static class Record {
+        final int group;
+        final String key;
+        final byte[] payload;
+
+        Record(int group, String key, byte[] payload) {
+            this.group = group;
+            this.key = key;
+            this.payload = payload;
+        }
+    }
+
+    private static final Comparator<Record> ORDER = (a, b) -> {
+        int c = Integer.compare(a.group, b.group);
+        return c != 0 ? c : a.key.compareTo(b.key);
+    };
+
+    /** Iterates records in sorted order. */
+    interface Cursor extends Closeable {
+        boolean next() throws IOException;
+        int group();
+        String key();
+        byte[] payload();
+    }
+
+    private final File dir;
+    private final String name;
+    private final long memoryBytes;
+    private final ToIntFunction<String> groupOf;
+    private final List<File> runs = new ArrayList<>();
+    private List<Record> buffer = new ArrayList<>();
+    private long buffered;
+    private long count;
+    private int nextRun;
+
+    /**
+     * @param dir Where run files go.
+     * @param name Prefix of the run file names.
+     * @param memoryBytes Budget for buffered records before a run is written.
+     * @param groupOf Primary sort order of a key.
+     */
+    ExternalSorter(File dir, String name, long memoryBytes, ToIntFunction<String> groupOf) {
+        this.dir = dir;
+        this.name = name;
+        this.memoryBytes = Math.max(1 << 20, memoryBytes);
+        this.groupOf = groupOf;
+    }
+
+    void add(String key, byte[] payload) throws IOException {
+        buffer.add(new Record(groupOf.applyAsInt(key), key, payload));
+        buffered += RECORD_OVERHEAD + 2L * key.length() + payload.length;
+        count++;
+        if (buffered >= memoryBytes) spill();
+    }
+
+    /** Records added so far. */
+    long size() {
+        return count;
+    }
+
+    /** Run files written so far. */
+    int runCount() {
+        return runs.size();
+    }
+
+    private Record[] sortBuffer() {
+        Record[] sorted = buffer.toArray(new Record[0]);
+        Arrays.parallelSort(sorted, ORDER); // stable, so equal keys stay in insertion order
+        buffer = new ArrayList<>();
+        buffered = 0;
+        return sorted;
+    }
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) return;
+        File run = newRunFile();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER))) {
+            for (Record r : sortBuffer()) write(out, r.group, r.key, r.payload);
+        }
+        runs.add(run);
+    }
+
+    private File newRunFile() {
+        return new File(dir, name + "-" + (nextRun++) + ".run");
+    }
+
+    private static void write(DataOutputStream out, int group, String key, byte[] payload) throws IOException {
+        out.writeInt(group);
+        out.writeUTF(key);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    /**
+     * All records in order. Records may not be added afterwards; the run files are deleted when
+     * this sorter is closed.
+     */
+    Cursor sorted() throws IOException {
+        if (runs.isEmpty()) return new MemoryCursor(sortBuffer());
+        spill();
+        while (runs.size() > MAX_FAN_IN) {
+            List<File> batch = new ArrayList<>(runs.subList(0, MAX_FAN_IN));
+            runs.subList(0, MAX_FAN_IN).clear();
+            File merged = newRunFile();
+            try (Cursor in = new MergeCursor(batch);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged), BUFFER))) {
+                while (in.next()) write(out, in.group(), in.key(), in.payload());
+            }
+            for (File f : batch) f.delete();
+            runs.add(0, merged); // it holds the earliest records, so it keeps their place
+        }
+        return new MergeCursor(runs);
+    }
+
+    @Override
+    public void close() {
+        for (File run : runs) run.delete();
+        runs.clear();
+        buffer = new ArrayList<>();
+    }
+
+    // --- Cursors ---
+
+    private static class MemoryCursor implements Cursor {
+        private final Record[] records;
+        private int at = -1;
+
+        MemoryCursor(Record[] records) {
+            this.records = records;
+        }
+
+        public boolean next() {
+            if (at >= 0) records[at] = null; // let consumed records go
+            return ++at < records.length;
+        }
+
+        public int group() { return records[at].group; }
+        public String key() { return records[at].key; }
+        public byte[] payload() { return records[at].payload; }
+        public void close() {}
+    }
+
+    /** One run being merged; runs are numbered in write order to keep equal keys stable. */
+    private static class RunReader {
+        final DataInputStream in;
+        final int order;
+        int group;
+        String key;
+        byte[] payload;
+
+        RunReader(File file, int order) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER));
+            this.order = order;
+        }
+
+        boolean advance() throws IOException {
+            try {
+                group = in.readInt();
+            } catch (EOFException end) {
+                in.close();
+                return false;
+            }
+            key = in.readUTF();
+            payload = new byte[in.readInt()];
+            in.readFully(payload);
+            return true;
+        }
+    }
+
+    private static class MergeCursor implements Cursor {
+        private final PriorityQueue<RunReader> heap = new PriorityQueue<>((a, b) -> {
+            int c = Integer.compare(a.group, b.group);
+            if (c == 0) c = a.key.compareTo(b.key);
+            return c != 0 ? c : Integer.compare(a.order, b.order);
+        });
+        private final List<RunReader> open = new ArrayList<>();
+        private RunReader current;
+
+        MergeCursor(List<File> runs) throws IOException {
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    RunReader r = new RunReader(runs.get(i), i);
+                    open.add(r);
+                    if (r.advance()) heap.add(r);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        public boolean next() throws IOException {
+            if (current != null && current.advance()) heap.add(current);
+            current = heap.poll();
+            return current != null;
+        }
+
+        public int group() { return current.group; }
+        public String key() { return current.key; }
+        public byte[] payload() { return current.payload; }
+
+        public void close() throws IOException {
+            for (RunReader r : open) r.in.close();
+        }
+    }
+}
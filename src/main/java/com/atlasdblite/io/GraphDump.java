@@ -0,0 +1,680 @@
+package com.atlasdblite.io;
+
+import com.atlasdblite.engine.Catalog;
+import com.atlasdblite.engine.DataSegment;
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.engine.SegmentStats;
+import com.atlasdblite.models.Node;
+import com.atlasdblite.models.PropertyCodec;
+import com.atlasdblite.models.Relation;
+import com.atlasdblite.security.CryptoManager;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary dump of the whole graph. A dump does not depend on the database key or shard
+ * count, so it moves data between databases, and restoring one is several times faster than a
+ * CSV import: nothing is parsed, sorted or joined, and each section becomes a shard file directly.
+ * <p>
+ * Layout (version 1, big-endian):
+ * <pre>
+ *   header   magic "ATLASDMP", int version, int shard count, long creation time
+ *   sections one per source shard, in the order they finished
+ *   footer   per shard: long offset, long length, int CRC-32, int nodes, int relations;
+ *            then long footer offset and the magic again
+ * </pre>
+ * A section stores its shard column by column. After the two counts come dictionaries of the
+ * labels, property keys and relation types, then seven length-prefixed columns: node IDs (sorted,
+ * front-coded against the previous one), label indexes, node properties, relation sources and
+ * targets (sorted by source then target, front-coded), type indexes and relation properties.
+ * Properties are a count and (key index, {@link PropertyCodec} value) pairs.
+ * <p>
+ * Shards are dumped in parallel, each written with one positioned channel write as it is done.
+ * A restore maps each section and decodes them in parallel. If the dump has as many shards as this
+ * build, section {@code i} becomes shard {@code i}; otherwise records are spooled to the shards they
+ * now route to first. Each shard is read consistently, but writes made while a dump runs may
+ * reach some shards and not others. Dumps are not encrypted: protect them as you would an export.
+ */
+public class GraphDump {
+    public static final int VERSION = 1;
+    private static final long MAGIC = 0x415441534C444D50L; // "ATLASDMP"
+    private static final int HEADER = 8 + 4 + 4 + 8;
+    private static final int FOOTER_ENTRY = 8 + 8 + 4 + 4 + 4;
+    private static final int TRAILER = 8 + 8;
+    private static final int COLUMNS = 7;
+
+    public static class Result {
+        public final long nodes;
+        public final long relations;
+        public final long bytes;
+        public final long millis;
+
+        Result(long nodes, long relations, long bytes, long millis) {
+            this.nodes = nodes;
+            this.relations = relations;
+            this.bytes = bytes;
+            this.millis = millis;
+        }
+    }
+
+    private int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Shards dumped or restored at once. A dump holds each shard and its encoding in memory, and
+     * the engine keeps only a few shards resident, so a dump uses at most one fewer threads than
+     * that; more than about half of it only adds reloads.
+     */
+    public GraphDump threads(int n) { this.threads = Math.max(1, n); return this; }
+
+    // --- Dump ---
+
+    /** Writes the engine's graph to {@code file}, replacing it. */
+    public Result dump(GraphEngine engine, File file) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        int shards = GraphEngine.shardCount();
+        Section[] sections = new Section[shards];
+        // The engine keeps only a few shards resident; more workers than that evict each other's shards
+        ExecutorService pool = newPool("atlas-dump", Math.min(threads, GraphEngine.residentShardLimit() - 1));
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putLong(MAGIC).putInt(VERSION).putInt(shards).putLong(start).flip();
+            writeFully(out, header, 0);
+
+            AtomicLong end = new AtomicLong(HEADER);
+            List<Future<Section>> futures = new ArrayList<>();
+            for (int s = 0; s < shards; s++) {
+                int shard = s;
+                futures.add(pool.submit(() -> writeSection(engine, shard, out, end)));
+            }
+            long nodes = 0, relations = 0;
+            for (int s = 0; s < shards; s++) {
+                sections[s] = await(futures.get(s));
+                nodes += sections[s].nodes;
+                relations += sections[s].relations;
+            }
+
+            ByteBuffer footer = ByteBuffer.allocate(shards * FOOTER_ENTRY + TRAILER);
+            for (Section sec : sections)
+                footer.putLong(sec.offset).putLong(sec.length).putInt(sec.crc).putInt(sec.nodes).putInt(sec.relations);
+            footer.putLong(end.get()).putLong(MAGIC).flip();
+            writeFully(out, footer, end.get());
+            return new Result(nodes, relations, out.size(), System.currentTimeMillis() - start);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Section writeSection(GraphEngine engine, int shard, FileChannel out, AtomicLong end) throws IOException {
+        List<Node> nodes = new ArrayList<>();
+        List<Relation> relations = new ArrayList<>();
+        engine.scanShard(shard, nodes::add, relations::add);
+        nodes.sort(Comparator.comparing(Node::getId));
+        relations.sort(Comparator.comparing(Relation::getSourceId).thenComparing(Relation::getTargetId)
+                .thenComparing(Relation::getType));
+
+        Dictionary labels = new Dictionary(), keys = new Dictionary(), types = new Dictionary();
+        Column[] columns = new Column[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) columns[c] = new Column();
+        for (Node n : nodes) {
+            columns[0].writeFrontCoded(n.getId());
+            columns[1].writeVarInt(labels.indexOf(n.getLabel()));
+            columns[2].writeProperties(n.getProperties(), keys);
+        }
+        for (Relation r : relations) {
+            columns[3].writeFrontCoded(r.getSourceId());
+            columns[4].writeFrontCoded(r.getTargetId());
+            columns[5].writeVarInt(types.indexOf(r.getType()));
+            columns[6].writeProperties(r.getProperties(), keys);
+        }
+
+        Column head = new Column();
+        head.out.writeInt(nodes.size());
+        head.out.writeInt(relations.size());
+        labels.writeTo(head);
+        keys.writeTo(head);
+        types.writeTo(head);
+        List<ByteBuffer> parts = new ArrayList<>();
+        parts.add(head.buffer());
+        long length = head.size();
+        for (Column c : columns) {
+            ByteBuffer size = ByteBuffer.allocate(4).putInt(c.size());
+            size.flip();
+            parts.add(size);
+            parts.add(c.buffer());
+            length += 4 + c.size();
+        }
+        if (length > Integer.MAX_VALUE) throw new IOException("Shard " + shard + " is too large to dump");
+
+        CRC32 crc = new CRC32();
+        for (ByteBuffer b : parts) crc.update(b.duplicate());
+        long offset = end.getAndAdd(length);
+        long position = offset;
+        for (ByteBuffer b : parts) position = writeFully(out, b, position);
+        return new Section(offset, length, (int) crc.getValue(), nodes.size(), relations.size());
+    }
+
+    // --- Restore ---
+
+    /**
+     * Builds the shard files and catalog of {@code dbDirectory} from a dump. The directory must not
+     * hold any shard files yet; the global index is not built (turn auto-indexing on afterwards, or
+     * use {@link GraphEngine#replaceDatabase}, which keeps its setting). If the restore fails, the
+     * shard files it wrote are removed again.
+     * @throws IllegalArgumentException If the directory already holds shards.
+     * @throws IOException If the file is not a dump, is of a later version or is corrupt.
+     */
+    public Result restore(File file, String dbDirectory) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        CryptoManager crypto = new CryptoManager();
+        int shards = GraphEngine.shardCount();
+        File[] shardFiles = new File[shards];
+        for (int s = 0; s < shards; s++) {
+            shardFiles[s] = new DataSegment(s, dbDirectory, crypto).getFile();
+            if (shardFiles[s].exists())
+                throw new IllegalArgumentException("Database directory already holds data: " + dbDirectory);
+        }
+        new File(dbDirectory).mkdirs();
+
+        ExecutorService pool = newPool("atlas-restore", threads);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Section[] sections = readFooter(in, file);
+            long nodes = 0, relations = 0;
+            for (Section sec : sections) {
+                nodes += sec.nodes;
+                relations += sec.relations;
+            }
+
+            SegmentStats[] stats = new SegmentStats[shards];
+            if (sections.length == shards) {
+                List<Future<SegmentStats>> futures = new ArrayList<>();
+                for (int s = 0; s < shards; s++) {
+                    int shard = s;
+                    futures.add(pool.submit(() -> {
+                        ByteBuffer section = map(in, sections[shard], shard);
+                        try (ShardSink sink = new ShardSink(shard, dbDirectory, crypto, sections[shard])) {
+                            decode(section, sink);
+                            return sink.stats();
+                        }
+                    }));
+                }
+                for (int s = 0; s < shards; s++) stats[s] = await(futures.get(s));
+            } else {
+                File scratch = new File(dbDirectory, "restore.tmp");
+                if (!scratch.mkdirs()) throw new IOException("Cannot create scratch directory " + scratch.getPath());
+                Spool[] spools = new Spool[shards];
+                try {
+                    for (int s = 0; s < shards; s++) spools[s] = new Spool(scratch, s);
+                    List<Future<Void>> decoded = new ArrayList<>();
+                    for (int i = 0; i < sections.length; i++) {
+                        int index = i;
+                        decoded.add(pool.submit(() -> {
+                            decode(map(in, sections[index], index), new RoutingSink(spools));
+                            return null;
+                        }));
+                    }
+                    for (Future<Void> f : decoded) await(f);
+                    List<Future<SegmentStats>> written = new ArrayList<>();
+                    for (Spool spool : spools) {
+                        spool.close();
+                        written.add(pool.submit(() -> spool.writeShard(dbDirectory, crypto)));
+                    }
+                    for (int s = 0; s < shards; s++) stats[s] = await(written.get(s));
+                } finally {
+                    for (Spool spool : spools) if (spool != null) spool.delete();
+                    scratch.delete();
+                }
+            }
+
+            Catalog catalog = new Catalog(crypto, dbDirectory, shards);
+            for (int s = 0; s < shards; s++) catalog.update(s, shardFiles[s], stats[s]);
+            catalog.save();
+            return new Result(nodes, relations, in.size(), System.currentTimeMillis() - start);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            // Nothing was there before, so leave nothing half-restored
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            for (File f : shardFiles) f.delete();
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks a dump without restoring it: the header, the footer and every section's CRC. Run it
+     * before emptying a database for {@link #restore}, which would otherwise find out too late.
+     * @return The counts the footer records; {@code millis} is the time the check took.
+     * @throws IOException If the file is not a dump, is of a later version or is corrupt.
+     */
+    public static Result verify(File file) throws IOException {
+        long start = System.currentTimeMillis();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Section[] sections = readFooter(in, file);
+            long nodes = 0, relations = 0;
+            for (int i = 0; i < sections.length; i++) {
+                map(in, sections[i], i);
+                nodes += sections[i].nodes;
+                relations += sections[i].relations;
+            }
+            return new Result(nodes, relations, in.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    private static Section[] readFooter(FileChannel in, File file) throws IOException {
+        long size = in.size();
+        if (size < HEADER + TRAILER) throw new IOException("Not a dump file: " + file.getPath());
+        ByteBuffer header = readAt(in, 0, HEADER);
+        if (header.getLong() != MAGIC) throw new IOException("Not a dump file: " + file.getPath());
+        int version = header.getInt();
+        if (version > VERSION) throw new IOException("Dump version " + version + " is newer than supported (" + VERSION + ")");
+        int count = header.getInt();
+
+        ByteBuffer trailer = readAt(in, size - TRAILER, TRAILER);
+        long footerOffset = trailer.getLong();
+        if (trailer.getLong() != MAGIC || count <= 0 || footerOffset != size - TRAILER - (long) count * FOOTER_ENTRY)
+            throw new IOException("Dump is truncated: " + file.getPath());
+        ByteBuffer footer = readAt(in, footerOffset, count * FOOTER_ENTRY);
+        Section[] sections = new Section[count];
+        for (int i = 0; i < count; i++) {
+            sections[i] = new Section(footer.getLong(), footer.getLong(), footer.getInt(), footer.getInt(), footer.getInt());
+            if (sections[i].offset < HEADER || sections[i].length < 0 || sections[i].offset + sections[i].length > footerOffset)
+                throw new IOException("Dump section " + i + " is corrupt");
+        }
+        return sections;
+    }
+
+    /** Maps a section and checks its CRC. */
+    private static ByteBuffer map(FileChannel in, Section section, int index) throws IOException {
+        ByteBuffer bytes = in.map(FileChannel.MapMode.READ_ONLY, section.offset, section.length);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate());
+        if ((int) crc.getValue() != section.crc) throw new IOException("Dump section " + index + " is corrupt");
+        return bytes;
+    }
+
+    /** Receives a section's nodes, then its relations. */
+    private interface Sink {
+        void node(Node n) throws IOException;
+
+        void relation(Relation r) throws IOException;
+    }
+
+    private static void decode(ByteBuffer section, Sink sink) throws IOException {
+        DataInputStream head = new DataInputStream(new BufferInput(section));
+        int nodeCount = head.readInt();
+        int relationCount = head.readInt();
+        String[] labels = readDictionary(head), keys = readDictionary(head), types = readDictionary(head);
+        ColumnReader[] columns = new ColumnReader[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) {
+            int length = section.getInt();
+            columns[c] = new ColumnReader(section.slice(section.position(), length));
+            section.position(section.position() + length);
+        }
+
+        for (int i = 0; i < nodeCount; i++) {
+            Node n = new Node(columns[0].readFrontCoded(), labels[columns[1].readVarInt()]);
+            columns[2].readProperties(keys, n::addProperty);
+            sink.node(n);
+        }
+        for (int i = 0; i < relationCount; i++) {
+            Relation r = new Relation(columns[3].readFrontCoded(), columns[4].readFrontCoded(), types[columns[5].readVarInt()]);
+            columns[6].readProperties(keys, r::addProperty);
+            sink.relation(r);
+        }
+    }
+
+    private static String[] readDictionary(DataInputStream in) throws IOException {
+        String[] words = new String[ColumnReader.readVarInt(in)];
+        for (int i = 0; i < words.length; i++) words[i] = in.readUTF().intern();
+        return words;
+    }
+
+    /** Streams one section into the shard file of the same number. */
+    private static class ShardSink implements Sink, Closeable {
+        private final DataSegment.Writer writer;
+        private final Encoder encoder = new Encoder();
+        private final int nodeCount;
+        private final int relationCount;
+        private final Map<String, Long> labels = new HashMap<>();
+        private final Map<String, Long> types = new HashMap<>();
+        private int relations;
+
+        ShardSink(int shard, String dbDirectory, CryptoManager crypto, Section section) throws IOException {
+            this.nodeCount = section.nodes;
+            this.relationCount = section.relations;
+            this.writer = nodeCount > 0 || relationCount > 0 ? new DataSegment.Writer(shard, dbDirectory, crypto, nodeCount) : null;
+        }
+
+        @Override
+        public void node(Node n) throws IOException {
+            writer.writeNode(encoder.encode(n));
+            labels.merge(n.getLabel(), 1L, Long::sum);
+        }
+
+        @Override
+        public void relation(Relation r) throws IOException {
+            if (relations++ == 0) writer.beginRelations(relationCount);
+            writer.writeRelation(encoder.encode(r));
+            types.merge(r.getType(), 1L, Long::sum);
+        }
+
+        SegmentStats stats() {
+            return new SegmentStats(nodeCount, relationCount, labels, types);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) writer.close();
+        }
+    }
+
+    /** Sends records to the spool of the shard they route to in this build. */
+    private static class RoutingSink implements Sink {
+        private final Spool[] spools;
+        private final Encoder encoder = new Encoder();
+
+        RoutingSink(Spool[] spools) {
+            this.spools = spools;
+        }
+
+        @Override
+        public void node(Node n) throws IOException {
+            spools[GraphEngine.shardOf(n.getId())].addNode(encoder.encode(n), n.getLabel());
+        }
+
+        @Override
+        public void relation(Relation r) throws IOException {
+            spools[GraphEngine.shardOf(r.getSourceId())].addRelation(encoder.encode(r), r.getType());
+        }
+    }
+
+    /** One target shard's records while a dump from a different shard count is re-routed. */
+    private static class Spool implements Closeable {
+        private final int shard;
+        private final File nodeFile;
+        private final File relationFile;
+        private final DataOutputStream nodes;
+        private final DataOutputStream relations;
+        private final Map<String, Long> labels = new HashMap<>();
+        private final Map<String, Long> types = new HashMap<>();
+        private int nodeCount;
+        private int relationCount;
+
+        Spool(File dir, int shard) throws IOException {
+            this.shard = shard;
+            this.nodeFile = new File(dir, "nodes-" + shard + ".bin");
+            this.relationFile = new File(dir, "relations-" + shard + ".bin");
+            this.nodes = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(nodeFile), 1 << 16));
+            this.relations = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(relationFile), 1 << 16));
+        }
+
+        synchronized void addNode(byte[] record, String label) throws IOException {
+            nodes.writeInt(record.length);
+            nodes.write(record);
+            nodeCount++;
+            labels.merge(label, 1L, Long::sum);
+        }
+
+        synchronized void addRelation(byte[] record, String type) throws IOException {
+            relations.writeInt(record.length);
+            relations.write(record);
+            relationCount++;
+            types.merge(type, 1L, Long::sum);
+        }
+
+        SegmentStats writeShard(String dbDirectory, CryptoManager crypto) throws IOException {
+            if (nodeCount > 0 || relationCount > 0) {
+                try (DataSegment.Writer w = new DataSegment.Writer(shard, dbDirectory, crypto, nodeCount)) {
+                    replay(nodeFile, nodeCount, w::writeNode);
+                    w.beginRelations(relationCount);
+                    replay(relationFile, relationCount, w::writeRelation);
+                }
+            }
+            return new SegmentStats(nodeCount, relationCount, labels, types);
+        }
+
+        private interface RecordSink {
+            void accept(byte[] record) throws IOException;
+        }
+
+        private static void replay(File f, int count, RecordSink sink) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))) {
+                for (int i = 0; i < count; i++) {
+                    byte[] record = new byte[in.readInt()];
+                    in.readFully(record);
+                    sink.accept(record);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            nodes.close();
+            relations.close();
+        }
+
+        void delete() {
+            try {
+                close();
+            } catch (IOException ignored) {
+            }
+            nodeFile.delete();
+            relationFile.delete();
+        }
+    }
+
+    // --- Encoding ---
+
+    /** Where a section is in the file and what it holds. */
+    private static class Section {
+        final long offset;
+        final long length;
+        final int crc;
+        final int nodes;
+        final int relations;
+
+        Section(long offset, long length, int crc, int nodes, int relations) {
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+            this.nodes = nodes;
+            this.relations = relations;
+        }
+    }
+
+    /** Strings numbered in the order they are first seen. */
+    private static class Dictionary {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> words = new ArrayList<>();
+
+        int indexOf(String word) {
+            Integer i = index.get(word);
+            if (i == null) {
+                i = words.size();
+                index.put(word, i);
+                words.add(word);
+            }
+            return i;
+        }
+
+        void writeTo(Column c) throws IOException {
+            c.writeVarInt(words.size());
+            for (String w : words) c.out.writeUTF(w);
+        }
+    }
+
+    /** A growable byte column; front coding is relative to the last string this column wrote. */
+    private static class Column {
+        private final Bytes bytes = new Bytes();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        private String previous = "";
+
+        void writeVarInt(int v) throws IOException {
+            while ((v & ~0x7F) != 0) {
+                out.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out.write(v);
+        }
+
+        void writeFrontCoded(String s) throws IOException {
+            int shared = 0, max = Math.min(s.length(), previous.length());
+            while (shared < max && s.charAt(shared) == previous.charAt(shared)) shared++;
+            writeVarInt(shared);
+            out.writeUTF(s.substring(shared));
+            previous = s;
+        }
+
+        void writeProperties(Map<String, Object> properties, Dictionary keys) throws IOException {
+            writeVarInt(properties.size());
+            for (Map.Entry<String, Object> e : properties.entrySet()) {
+                writeVarInt(keys.indexOf(e.getKey()));
+                PropertyCodec.writeValue(out, e.getValue());
+            }
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        ByteBuffer buffer() {
+            return bytes.buffer();
+        }
+    }
+
+    private static class Bytes extends ByteArrayOutputStream {
+        Bytes() {
+            super(1 << 16);
+        }
+
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private interface PropertySink {
+        void accept(String key, Object value);
+    }
+
+    private static class ColumnReader {
+        private final DataInputStream in;
+        private String previous = "";
+
+        ColumnReader(ByteBuffer column) {
+            this.in = new DataInputStream(new BufferInput(column));
+        }
+
+        int readVarInt() throws IOException {
+            return readVarInt(in);
+        }
+
+        static int readVarInt(DataInputStream in) throws IOException {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.readUnsignedByte();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+        }
+
+        String readFrontCoded() throws IOException {
+            int shared = readVarInt();
+            String s = shared == 0 ? in.readUTF() : previous.substring(0, shared) + in.readUTF();
+            previous = s;
+            return s;
+        }
+
+        void readProperties(String[] keys, PropertySink sink) throws IOException {
+            int count = readVarInt();
+            for (int i = 0; i < count; i++) {
+                String key = keys[readVarInt()];
+                sink.accept(key, PropertyCodec.readValue(in));
+            }
+        }
+    }
+
+    /** An input stream over a (mapped) buffer, advancing its position. */
+    private static class BufferInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+
+    /** Encodes nodes and relations as the shard format stores them, reusing one buffer. */
+    private static class Encoder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        byte[] encode(Node n) throws IOException {
+            bytes.reset();
+            n.writeTo(out);
+            return bytes.toByteArray();
+        }
+
+        byte[] encode(Relation r) throws IOException {
+            bytes.reset();
+            r.writeTo(out);
+            return bytes.toByteArray();
+        }
+    }
+
+    // --- Helpers ---
+
+    private static ExecutorService newPool(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static long writeFully(FileChannel out, ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) position += out.write(b, position);
+        return position;
+    }
+
+    private static ByteBuffer readAt(FileChannel in, long position, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length);
+        while (b.hasRemaining()) {
+            if (in.read(b, position + b.position()) < 0) throw new EOFException("Dump is truncated");
+        }
+        b.flip();
+        return b;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+}
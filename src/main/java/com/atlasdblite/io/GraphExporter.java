@@ -0,0 +1,639 @@
+package com.atlasdblite.io;
+
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.models.Node;
+import com.atlasdblite.models.Relation;
+import com.google.gson.Gson;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the graph to JSON lines, CSV, GraphML or DOT, one shard per task on a small pool.
+ * <p>
+ * Each shard is written straight to its own part file through a buffered file channel (gzipped if
+ * asked), so memory stays flat however large the graph is; only the shards the engine keeps
+ * resident are in memory. Parts are either kept as they are ({@link #parts}) or concatenated in
+ * shard order, behind the format's header, into one file per output. Gzip parts concatenate into a
+ * valid multi-member gzip file, so compression runs in parallel too.
+ * <p>
+ * CSV output uses the import conventions ({@code id,label,...} and {@code from,to,type,...}, with
+ * typed headers) and goes to separate node and link files, so it can be loaded back with
+ * {@code import} or {@code atlas-import}. A column's type is the type its values have; if they
+ * disagree it widens to {@code double} for mixed numbers, else to a plain string. Names holding a
+ * colon always carry their type, and {@code ;} and {@code \} inside list items are escaped. What
+ * does not survive a CSV round trip: list items come back as strings, a column of mixed types
+ * comes back as strings (or doubles), empty strings and empty lists are dropped, and byte-array
+ * properties (embeddings) are only kept by JSON lines.
+ */
+public class GraphExporter {
+    public enum Format {
+        DOT("dot"), JSONL("jsonl"), CSV("csv"), GRAPHML("graphml");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /** The format a file name implies, ignoring a trailing {@code .gz}; null if none. */
+        public static Format fromFileName(String name) {
+            String n = name.toLowerCase();
+            if (n.endsWith(".gz")) n = n.substring(0, n.length() - 3);
+            for (Format f : values())
+                if (n.endsWith("." + f.extension)) return f;
+            if (n.endsWith(".json") || n.endsWith(".ndjson")) return JSONL;
+            if (n.endsWith(".gv")) return DOT;
+            return null;
+        }
+    }
+
+    public static class Result {
+        public final long nodes;
+        public final long relations;
+        public final List<File> files;
+        public final long millis;
+
+        Result(long nodes, long relations, List<File> files, long millis) {
+            this.nodes = nodes;
+            this.relations = relations;
+            this.files = files;
+            this.millis = millis;
+        }
+    }
+
+    private static final int BUFFER = 1 << 16;
+
+    private final GraphEngine engine;
+    private Format format = Format.DOT;
+    private int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private boolean gzip;
+    private boolean parts;
+
+    public GraphExporter(GraphEngine engine) {
+        this.engine = engine;
+    }
+
+    public GraphExporter format(Format f) { this.format = f; return this; }
+
+    /**
+     * Shards exported at once. Each holds its shard in memory, and the engine keeps only a few
+     * resident, so the count is capped one below that; more than about half of it only adds reloads.
+     */
+    public GraphExporter threads(int n) {
+        this.threads = Math.max(1, Math.min(n, GraphEngine.residentShardLimit() - 1));
+        return this;
+    }
+
+    /** Compresses the output with gzip (and adds {@code .gz} to part file names). */
+    public GraphExporter gzip(boolean on) { this.gzip = on; return this; }
+
+    /**
+     * Leaves one file per shard in the target directory instead of merging them. Only for JSON
+     * lines and CSV: GraphML and DOT describe a graph in a single document.
+     */
+    public GraphExporter parts(boolean on) { this.parts = on; return this; }
+
+    // --- Export ---
+
+    /**
+     * Writes the graph.
+     * @param target The output file; for CSV, {@code x.csv} becomes {@code x_nodes.csv} and
+     *               {@code x_links.csv}. With {@link #parts}, the directory to write parts into.
+     * @throws IllegalArgumentException If parts are asked for a single-document format.
+     */
+    public Result export(File target) throws IOException, InterruptedException {
+        if (parts && (format == Format.DOT || format == Format.GRAPHML))
+            throw new IllegalArgumentException(format + " cannot be split into parts");
+        long start = System.currentTimeMillis();
+        File dir;
+        if (parts) {
+            dir = target;
+        } else {
+            File parent = target.getAbsoluteFile().getParentFile();
+            dir = new File(parent, "." + target.getName() + ".parts");
+        }
+        dir.mkdirs();
+
+        int shards = GraphEngine.shardCount();
+        Part[] written = new Part[shards];
+        long nodes = 0, relations = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "atlas-export");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Part>> futures = new ArrayList<>();
+            for (int s = 0; s < shards; s++) {
+                int shard = s;
+                futures.add(pool.submit(() -> writePart(shard, dir)));
+            }
+            for (int s = 0; s < shards; s++) {
+                written[s] = await(futures.get(s));
+                nodes += written[s].nodes;
+                relations += written[s].relations;
+            }
+
+            List<File> files = new ArrayList<>();
+            if (parts) {
+                for (Part p : written) {
+                    if (p.nodeFile != null) files.add(p.nodeFile);
+                    if (p.linkFile != null) files.add(p.linkFile);
+                }
+            } else if (format == Format.CSV) {
+                String stem = stem(target.getName());
+                String suffix = ".csv" + (gzip ? ".gz" : "");
+                File nodeOut = new File(target.getAbsoluteFile().getParentFile(), stem + "_nodes" + suffix);
+                File linkOut = new File(target.getAbsoluteFile().getParentFile(), stem + "_links" + suffix);
+                mergeCsv(written, true, nodeOut, pool);
+                mergeCsv(written, false, linkOut, pool);
+                files.add(nodeOut);
+                files.add(linkOut);
+            } else {
+                Schema nodeKeys = new Schema(), edgeKeys = new Schema();
+                for (Part p : written) {
+                    nodeKeys.merge(p.nodeSchema);
+                    edgeKeys.merge(p.linkSchema);
+                }
+                List<File> pieces = new ArrayList<>();
+                for (Part p : written) pieces.add(p.nodeFile);
+                concat(target, head(nodeKeys, edgeKeys), pieces, tail());
+                files.add(target);
+            }
+            return new Result(nodes, relations, files, System.currentTimeMillis() - start);
+        } finally {
+            pool.shutdownNow();
+            if (!parts) {
+                File[] left = dir.listFiles();
+                if (left != null) for (File f : left) f.delete();
+                dir.delete();
+            }
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static String stem(String name) {
+        String n = name;
+        if (n.toLowerCase().endsWith(".gz")) n = n.substring(0, n.length() - 3);
+        int dot = n.lastIndexOf('.');
+        return dot > 0 ? n.substring(0, dot) : n;
+    }
+
+    // --- Parts ---
+
+    /** One shard's output: its file(s), counts and the property columns it used. */
+    private static class Part {
+        File nodeFile;
+        File linkFile; // CSV only; other formats put links in nodeFile
+        Schema nodeSchema = new Schema();
+        Schema linkSchema = new Schema();
+        long nodes;
+        long relations;
+    }
+
+    private Part writePart(int shard, File dir) throws IOException {
+        Part part = new Part();
+        String gz = gzip ? ".gz" : "";
+        String index = String.format("%02d", shard);
+        if (format == Format.CSV) {
+            // Headers come first, so the shard is read twice: once for its columns, once for rows
+            engine.scanShard(shard, n -> part.nodeSchema.add(n.getProperties()), r -> part.linkSchema.add(r.getProperties()));
+            part.nodeFile = new File(dir, "nodes-" + index + ".csv" + gz);
+            part.linkFile = new File(dir, "links-" + index + ".csv" + gz);
+            List<String> nodeColumns = part.nodeSchema.names();
+            List<String> linkColumns = part.linkSchema.names();
+            try (Writer nodesOut = open(part.nodeFile); Writer linksOut = open(part.linkFile)) {
+                if (parts) {
+                    writeCsvHeader(nodesOut, true, part.nodeSchema);
+                    writeCsvHeader(linksOut, false, part.linkSchema);
+                }
+                scan(shard, n -> {
+                    writeCsvRow(nodesOut, n.getId(), n.getLabel(), null, n.getProperties(), nodeColumns);
+                    part.nodes++;
+                }, r -> {
+                    writeCsvRow(linksOut, r.getSourceId(), r.getTargetId(), r.getType(), r.getProperties(), linkColumns);
+                    part.relations++;
+                });
+            }
+        } else {
+            String name = parts ? "part-" + index + "." + format.extension : "part-" + index;
+            part.nodeFile = new File(dir, name + gz);
+            Gson gson = new Gson();
+            try (Writer out = open(part.nodeFile)) {
+                scan(shard, n -> {
+                    part.nodes++;
+                    switch (format) {
+                        case JSONL: writeJson(out, gson, n); break;
+                        case GRAPHML: writeGraphMl(out, n, part.nodeSchema); break;
+                        default: writeDot(out, n);
+                    }
+                }, r -> {
+                    part.relations++;
+                    switch (format) {
+                        case JSONL: writeJson(out, gson, r); break;
+                        case GRAPHML: writeGraphMl(out, r, part.linkSchema); break;
+                        default: writeDot(out, r);
+                    }
+                });
+            }
+        }
+        return part;
+    }
+
+    private interface RecordWriter<T> {
+        void write(T record) throws IOException;
+    }
+
+    /** Scans a shard, carrying I/O errors out of the engine's visitor callbacks. */
+    private void scan(int shard, RecordWriter<Node> nodes, RecordWriter<Relation> relations) throws IOException {
+        try {
+            engine.scanShard(shard, unchecked(nodes), unchecked(relations));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static <T> Consumer<T> unchecked(RecordWriter<T> writer) {
+        return record -> {
+            try {
+                writer.write(record);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /** A buffered UTF-8 writer over a file channel, gzipped if asked. */
+    private Writer open(File file) throws IOException {
+        OutputStream out = Channels.newOutputStream(FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        out = gzip ? new GZIPOutputStream(out, BUFFER) : new BufferedOutputStream(out, BUFFER);
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER);
+    }
+
+    // --- Merging ---
+
+    /** Writes {@code head}, then each piece's bytes as they are, then {@code tail}. */
+    private void concat(File target, String head, List<File> pieces, String tail) throws IOException {
+        File headFile = new File(target.getPath() + ".head");
+        File tailFile = new File(target.getPath() + ".tail");
+        try {
+            writeText(headFile, head);
+            writeText(tailFile, tail);
+            List<File> all = new ArrayList<>();
+            all.add(headFile);
+            all.addAll(pieces);
+            all.add(tailFile);
+            try (FileChannel out = FileChannel.open(target.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (File piece : all) {
+                    if (piece == null || (!gzip && piece.length() == 0)) continue;
+                    try (FileChannel in = FileChannel.open(piece.toPath(), StandardOpenOption.READ)) {
+                        long size = in.size();
+                        for (long done = 0; done < size; )
+                            done += in.transferTo(done, size - done, out);
+                    }
+                }
+            }
+        } finally {
+            headFile.delete();
+            tailFile.delete();
+        }
+    }
+
+    private void writeText(File file, String text) throws IOException {
+        try (Writer out = open(file)) {
+            out.write(text);
+        }
+    }
+
+    /**
+     * Merges the CSV parts of one kind under the union of their columns. Parts whose columns
+     * differ from the union are rewritten first, in parallel, by re-reading their rows.
+     */
+    private void mergeCsv(Part[] written, boolean nodes, File target, ExecutorService pool) throws IOException, InterruptedException {
+        Schema union = new Schema();
+        for (Part p : written) union.merge(nodes ? p.nodeSchema : p.linkSchema);
+        List<String> columns = union.names();
+
+        List<Future<File>> pieces = new ArrayList<>();
+        for (Part p : written) {
+            File file = nodes ? p.nodeFile : p.linkFile;
+            List<String> own = (nodes ? p.nodeSchema : p.linkSchema).names();
+            if (own.equals(columns) || (nodes ? p.nodes : p.relations) == 0) {
+                pieces.add(CompletableFuture.completedFuture(file));
+            } else {
+                pieces.add(pool.submit(() -> remapCsv(file, own, columns)));
+            }
+        }
+        List<File> files = new ArrayList<>();
+        for (Future<File> f : pieces) files.add(await(f));
+        StringWriter header = new StringWriter();
+        writeCsvHeader(header, nodes, union);
+        concat(target, header.toString(), files, "");
+    }
+
+    private File remapCsv(File part, List<String> from, List<String> to) throws IOException {
+        int head = part.getName().startsWith("nodes") ? 2 : 3; // id,label or from,to,type
+        int[] position = new int[from.size()];
+        for (int i = 0; i < from.size(); i++) position[i] = head + to.indexOf(from.get(i));
+        File out = new File(part.getPath() + ".remap");
+        InputStream in = new BufferedInputStream(new FileInputStream(part), BUFFER);
+        if (gzip) in = new GZIPInputStream(in, BUFFER);
+        try (CsvChunkReader reader = new CsvChunkReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+             Writer w = open(out)) {
+            String[] row = new String[head + to.size()];
+            CsvChunkReader.Chunk chunk;
+            while ((chunk = reader.next()) != null) {
+                CsvParser parser = new CsvParser(chunk.text, chunk.start, chunk.end, chunk.firstLine);
+                while (parser.next()) {
+                    String[] fields = parser.fields();
+                    Arrays.fill(row, "");
+                    System.arraycopy(fields, 0, row, 0, head);
+                    for (int i = 0; i < from.size(); i++) row[position[i]] = fields[head + i];
+                    for (int i = 0; i < row.length; i++) {
+                        if (i > 0) w.write(',');
+                        writeCsvField(w, row[i]);
+                    }
+                    w.write('\n');
+                }
+            }
+        }
+        return out;
+    }
+
+    // --- Formats ---
+
+    private String head(Schema nodeKeys, Schema edgeKeys) {
+        switch (format) {
+            case DOT:
+                return "digraph G {\n";
+            case GRAPHML: {
+                StringBuilder sb = new StringBuilder();
+                sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+                sb.append("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n");
+                sb.append("  <key id=\"label\" for=\"node\" attr.name=\"label\" attr.type=\"string\"/>\n");
+                sb.append("  <key id=\"type\" for=\"edge\" attr.name=\"type\" attr.type=\"string\"/>\n");
+                appendKeys(sb, "node", "n_", nodeKeys);
+                appendKeys(sb, "edge", "e_", edgeKeys);
+                sb.append("  <graph id=\"G\" edgedefault=\"directed\">\n");
+                return sb.toString();
+            }
+            default:
+                return "";
+        }
+    }
+
+    private String tail() {
+        switch (format) {
+            case DOT: return "}\n";
+            case GRAPHML: return "  </graph>\n</graphml>\n";
+            default: return "";
+        }
+    }
+
+    private static void appendKeys(StringBuilder sb, String kind, String prefix, Schema keys) {
+        for (String name : keys.names()) {
+            String type;
+            switch (keys.type(name)) {
+                case "int": type = "long"; break;
+                case "double": type = "double"; break;
+                case "bool": type = "boolean"; break;
+                default: type = "string";
+            }
+            sb.append("  <key id=\"").append(xml(prefix + name)).append("\" for=\"").append(kind)
+              .append("\" attr.name=\"").append(xml(name)).append("\" attr.type=\"").append(type).append("\"/>\n");
+        }
+    }
+
+    private static void writeDot(Writer out, Node n) throws IOException {
+        out.write("  \"");
+        out.write(dot(n.getId()));
+        out.write("\" [label=\"");
+        out.write(dot(n.getId()));
+        out.write(':');
+        out.write(dot(n.getLabel()));
+        out.write("\"];\n");
+    }
+
+    private static void writeDot(Writer out, Relation r) throws IOException {
+        out.write("  \"");
+        out.write(dot(r.getSourceId()));
+        out.write("\" -> \"");
+        out.write(dot(r.getTargetId()));
+        out.write("\" [label=\"");
+        out.write(dot(r.getType()));
+        out.write("\"];\n");
+    }
+
+    private static void writeJson(Writer out, Gson gson, Node n) throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("kind", "node");
+        record.put("id", n.getId());
+        record.put("label", n.getLabel());
+        record.put("props", n.getProperties());
+        gson.toJson(record, out);
+        out.write('\n');
+    }
+
+    private static void writeJson(Writer out, Gson gson, Relation r) throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("kind", "link");
+        record.put("from", r.getSourceId());
+        record.put("to", r.getTargetId());
+        record.put("type", r.getType());
+        record.put("props", r.getProperties());
+        gson.toJson(record, out);
+        out.write('\n');
+    }
+
+    private static void writeGraphMl(Writer out, Node n, Schema keys) throws IOException {
+        out.write("    <node id=\"");
+        out.write(xml(n.getId()));
+        out.write("\"><data key=\"label\">");
+        out.write(xml(n.getLabel()));
+        out.write("</data>");
+        writeGraphMlData(out, "n_", n.getProperties(), keys);
+        out.write("</node>\n");
+    }
+
+    private static void writeGraphMl(Writer out, Relation r, Schema keys) throws IOException {
+        out.write("    <edge source=\"");
+        out.write(xml(r.getSourceId()));
+        out.write("\" target=\"");
+        out.write(xml(r.getTargetId()));
+        out.write("\"><data key=\"type\">");
+        out.write(xml(r.getType()));
+        out.write("</data>");
+        writeGraphMlData(out, "e_", r.getProperties(), keys);
+        out.write("</edge>\n");
+    }
+
+    private static void writeGraphMlData(Writer out, String prefix, Map<String, Object> props, Schema keys) throws IOException {
+        keys.add(props);
+        for (Map.Entry<String, Object> e : new TreeMap<>(props).entrySet()) {
+            String text = text(e.getValue());
+            if (text == null) continue;
+            out.write("<data key=\"");
+            out.write(xml(prefix + e.getKey()));
+            out.write("\">");
+            out.write(xml(text));
+            out.write("</data>");
+        }
+    }
+
+    private static void writeCsvHeader(Writer out, boolean nodes, Schema schema) throws IOException {
+        out.write(nodes ? "id,label" : "from,to,type");
+        for (String name : schema.names()) {
+            out.write(',');
+            String type = schema.type(name);
+            // The importer reads the type after the last colon, so a name with one must be typed
+            writeCsvField(out, "string".equals(type) && name.indexOf(':') < 0 ? name : name + ":" + type);
+        }
+        out.write('\n');
+    }
+
+    private static void writeCsvRow(Writer out, String a, String b, String c, Map<String, Object> props, List<String> columns)
+            throws IOException {
+        writeCsvField(out, a);
+        out.write(',');
+        writeCsvField(out, b);
+        if (c != null) {
+            out.write(',');
+            writeCsvField(out, c);
+        }
+        for (String column : columns) {
+            out.write(',');
+            String text = text(props.get(column));
+            if (text != null) writeCsvField(out, text);
+        }
+        out.write('\n');
+    }
+
+    /** RFC 4180: quoted if it holds a comma, quote or line break, with quotes doubled. */
+    private static void writeCsvField(Writer out, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char ch = value.charAt(i);
+            quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    /**
+     * A property value as text, or null if it has no text form. Lists are joined with {@code ;},
+     * escaping {@code ;} and {@code \} in their items as the importer expects.
+     */
+    private static String text(Object value) {
+        if (value == null || value instanceof byte[]) return null;
+        if (value instanceof List) {
+            StringBuilder sb = new StringBuilder();
+            boolean first = true;
+            for (Object item : (List<?>) value) {
+                if (!first) sb.append(';');
+                first = false;
+                String s = String.valueOf(item);
+                for (int i = 0; i < s.length(); i++) {
+                    char ch = s.charAt(i);
+                    if (ch == ';' || ch == '\\') sb.append('\\');
+                    sb.append(ch);
+                }
+            }
+            return sb.toString();
+        }
+        return value.toString();
+    }
+
+    private static String dot(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static String xml(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            String rep;
+            switch (ch) {
+                case '&': rep = "&amp;"; break;
+                case '<': rep = "&lt;"; break;
+                case '>': rep = "&gt;"; break;
+                case '"': rep = "&quot;"; break;
+                default: rep = null;
+            }
+            if (rep != null && sb == null) sb = new StringBuilder(s.substring(0, i));
+            if (sb != null) {
+                if (rep != null) sb.append(rep);
+                else sb.append(ch);
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+
+    // --- Column types ---
+
+    /** Property names seen and the CSV type of their values ({@code string}, {@code int}, ...). */
+    private static class Schema {
+        private final Map<String, String> types = new TreeMap<>();
+
+        void add(Map<String, Object> props) {
+            for (Map.Entry<String, Object> e : props.entrySet()) {
+                String type = typeOf(e.getValue());
+                if (type != null) types.merge(e.getKey(), type, Schema::widen);
+            }
+        }
+
+        void merge(Schema other) {
+            for (Map.Entry<String, String> e : other.types.entrySet())
+                types.merge(e.getKey(), e.getValue(), Schema::widen);
+        }
+
+        List<String> names() {
+            return new ArrayList<>(types.keySet());
+        }
+
+        String type(String name) {
+            return types.get(name);
+        }
+
+        private static String typeOf(Object value) {
+            if (value == null || value instanceof byte[]) return null;
+            if (value instanceof Double || value instanceof Float) return "double";
+            if (value instanceof Number) return "int";
+            if (value instanceof Boolean) return "bool";
+            if (value instanceof List) return "list";
+            return "string";
+        }
+
+        private static String widen(String a, String b) {
+            if (a.equals(b)) return a;
+            if ((a.equals("int") || a.equals("double")) && (b.equals("int") || b.equals("double"))) return "double";
+            return "string";
+        }
+    }
+}
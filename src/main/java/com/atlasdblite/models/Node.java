@@ -3,9 +3,7 @@ package com.atlasdblite.models;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -16,7 +14,7 @@ import java.util.Map;
 public class Node {
     private final String id;
     private final String label;
-    // Changed from String to Object to support Lists
+    // Typed values: String, Long, Double, Boolean, byte[] or List
     private final Map<String, Object> properties;
 
     /**
@@ -35,7 +33,7 @@ public class Node {
     /**
      * Adds or updates a property on the node.
      * @param key The property key.
-     * @param value The property value (String or List).
+     * @param value The property value (String, Number, Boolean, byte[] or List).
      */
     public void addProperty(String key, Object value) {
         // Keys are also interned for memory efficiency, as they are often repeated.
@@ -50,7 +48,7 @@ public class Node {
 
     /**
      * Writes the node's data to a binary output stream for persistence.
-     * Supports both String and List property types.
+     * Property values keep their type (see {@link PropertyCodec}).
      * @param out The {@link DataOutputStream} to write to.
      * @throws IOException If an I/O error occurs.
      */
@@ -61,25 +59,13 @@ public class Node {
         
         for (Map.Entry<String, Object> entry : properties.entrySet()) {
             out.writeUTF(entry.getKey());
-            Object val = entry.getValue();
-            
-            if (val instanceof List) {
-                out.writeByte(2); // Type 2: List
-                List<?> list = (List<?>) val;
-                out.writeInt(list.size());
-                for (Object item : list) {
-                    out.writeUTF(item.toString());
-                }
-            } else {
-                out.writeByte(1); // Type 1: String
-                out.writeUTF(val.toString());
-            }
+            PropertyCodec.writeValue(out, entry.getValue());
         }
     }
 
     /**
      * Creates a Node instance by reading data from a binary input stream.
-     * Handles type reconstruction for Strings and Lists.
+     * Restores typed values as well as the legacy String and List encodings.
      * @param in The {@link DataInputStream} to read from.
      * @return A new {@link Node} instance.
      * @throws IOException If an I/O error occurs or the stream is malformed.
@@ -92,19 +78,7 @@ public class Node {
         int propCount = in.readInt();
         for (int i = 0; i < propCount; i++) {
             String key = in.readUTF();
-            byte type = in.readByte();
-            
-            if (type == 2) { // List
-                int listSize = in.readInt();
-                List<String> list = new ArrayList<>();
-                for (int j = 0; j < listSize; j++) {
-                    list.add(in.readUTF());
-                }
-                node.addProperty(key, list);
-            } else { // String (Default)
-                String value = in.readUTF();
-                node.addProperty(key, value);
-            }
+            node.addProperty(key, PropertyCodec.readValue(in));
         }
         return node;
     }
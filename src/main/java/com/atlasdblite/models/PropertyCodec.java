@@ -0,0 +1,108 @@
+package com.atlasdblite.models;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of typed property values, shared by {@link Node} and {@link Relation}.
+ * <p>
+ * Every value is written as a one-byte type tag followed by its payload. Tags 1 and 2 are the
+ * original untyped formats (string and list of strings) and are still readable.
+ * Integral numbers are widened to {@code long} and floating-point numbers to {@code double}.
+ */
+public final class PropertyCodec {
+    public static final byte STRING = 1;
+    public static final byte STRING_LIST = 2; // legacy: list items stored as strings
+    public static final byte LONG = 3;
+    public static final byte DOUBLE = 4;
+    public static final byte BOOLEAN = 5;
+    public static final byte BYTES = 6;
+    public static final byte LIST = 7;
+
+    private PropertyCodec() {}
+
+    /**
+     * Writes a tagged value.
+     * @param out The {@link DataOutputStream} to write to.
+     * @param value A String, Number, Boolean, byte[] or List of those; anything else is stored as its string form.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object item : list) writeValue(out, item);
+        } else {
+            out.writeByte(STRING);
+            out.writeUTF(String.valueOf(value));
+        }
+    }
+
+    /**
+     * Reads a value written by {@link #writeValue}, or by the legacy untyped format.
+     * @throws IOException If an I/O error occurs or the tag is unknown.
+     */
+    public static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case STRING: return in.readUTF();
+            case LONG: return in.readLong();
+            case DOUBLE: return in.readDouble();
+            case BOOLEAN: return in.readBoolean();
+            case BYTES: {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            }
+            case STRING_LIST: {
+                int size = in.readInt();
+                List<String> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) list.add(in.readUTF());
+                return list;
+            }
+            case LIST: {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) list.add(readValue(in));
+                return list;
+            }
+            default:
+                throw new IOException("Unknown property type tag: " + tag);
+        }
+    }
+
+    /**
+     * Numeric view of a property, used for weights and numeric predicates.
+     * Typed numbers are returned without parsing; legacy string values are parsed as a fallback.
+     * @return The numeric value, or {@code Double.NaN} if the value is missing or not numeric.
+     */
+    public static double asDouble(Object value) {
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+}
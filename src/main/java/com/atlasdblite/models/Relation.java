@@ -3,9 +3,7 @@ package com.atlasdblite.models;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -60,18 +58,7 @@ public class Relation {
         out.writeInt(properties.size());
         for (Map.Entry<String, Object> entry : properties.entrySet()) {
             out.writeUTF(entry.getKey());
-            Object val = entry.getValue();
-
-            if (val instanceof List) {
-                out.writeByte(2); // List
-                List<?> list = (List<?>) val;
-                out.writeInt(list.size());
-                for (Object item : list)
-                    out.writeUTF(item.toString());
-            } else {
-                out.writeByte(1); // String
-                out.writeUTF(val.toString());
-            }
+            PropertyCodec.writeValue(out, entry.getValue());
         }
     }
 
@@ -84,17 +71,7 @@ public class Relation {
         int propCount = in.readInt();
         for (int i = 0; i < propCount; i++) {
             String key = in.readUTF();
-            byte dataType = in.readByte();
-
-            if (dataType == 2) {
-                int listSize = in.readInt();
-                List<String> list = new ArrayList<>();
-                for (int j = 0; j < listSize; j++)
-                    list.add(in.readUTF());
-                props.put(key, list);
-            } else {
-                props.put(key, in.readUTF());
-            }
+            props.put(key, PropertyCodec.readValue(in));
         }
         return new Relation(src, tgt, type, props);
     }
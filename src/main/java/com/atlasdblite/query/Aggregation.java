@@ -0,0 +1,235 @@
+package com.atlasdblite.query;
+
+import com.atlasdblite.models.Node;
+import com.atlasdblite.models.PropertyCodec;
+import com.atlasdblite.models.Relation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An aggregate query over nodes or relations, e.g.
+ * {@code count(*) Person group by city} or {@code avg(weight) [OWNS] where since > 2020}.
+ * <p>
+ * Each shard folds its own rows into a {@link Partial}; partials are merged at the engine.
+ * Targets are a label ({@code Person}), all nodes ({@code *}), a relation type ({@code [OWNS]})
+ * or all relations ({@code [*]}).
+ */
+public class Aggregation {
+    /** Group name used for the single row of an ungrouped aggregation. */
+    public static final String ALL = "*";
+
+    public enum Function { COUNT, SUM, AVG, MIN, MAX }
+
+    private static final Pattern SYNTAX = Pattern.compile(
+            "(?i)^(\\w+)\\(\\s*(\\*|[\\w.]+)\\s*\\)\\s+(\\[\\s*[\\w*]+\\s*]|[\\w*]+)"
+                    + "(?:\\s+where\\s+(.+?))?(?:\\s+group\\s+by\\s+([\\w.]+))?\\s*$");
+
+    private final Function function;
+    private final String property;      // null for *
+    private final boolean overRelations;
+    private final String target;        // label or type, null for all
+    private final List<Condition> conditions;
+    private final String groupBy;       // null when ungrouped
+
+    public Aggregation(Function function, String property, boolean overRelations, String target,
+                       List<Condition> conditions, String groupBy) {
+        if (property == null && function != Function.COUNT)
+            throw new IllegalArgumentException(function.name().toLowerCase() + "(*) is not supported; name a property");
+        this.function = function;
+        this.property = property;
+        this.overRelations = overRelations;
+        this.target = target;
+        this.conditions = conditions == null ? Collections.emptyList() : conditions;
+        this.groupBy = groupBy;
+    }
+
+    /**
+     * Parses {@code <fn>(<prop>|*) <Label|*|[TYPE]|[*]> [where k op v [and ...]] [group by key]}.
+     * @throws IllegalArgumentException If the text is malformed.
+     */
+    public static Aggregation parse(String text) {
+        Matcher m = SYNTAX.matcher(text.trim());
+        if (!m.matches())
+            throw new IllegalArgumentException("Expected <fn>(<prop>|*) <Label|*|[TYPE]> [where ...] [group by key]");
+
+        Function fn;
+        try {
+            fn = Function.valueOf(m.group(1).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown aggregate function: " + m.group(1));
+        }
+        String prop = m.group(2).equals("*") ? null : m.group(2);
+
+        String rawTarget = m.group(3);
+        boolean relations = rawTarget.startsWith("[");
+        if (relations) rawTarget = rawTarget.substring(1, rawTarget.length() - 1).trim();
+        String target = rawTarget.equals("*") ? null : rawTarget;
+
+        return new Aggregation(fn, prop, relations, target, parseWhere(m.group(4)), m.group(5));
+    }
+
+    private static List<Condition> parseWhere(String where) {
+        List<Condition> conditions = new ArrayList<>();
+        if (where == null) return conditions;
+        String[] tokens = where.trim().split("\\s+");
+        int i = 0;
+        while (i < tokens.length) {
+            if (i + 2 >= tokens.length) throw new IllegalArgumentException("Incomplete predicate in where clause");
+            if (!Condition.isOperator(tokens[i + 1])) throw new IllegalArgumentException("Unknown operator: " + tokens[i + 1]);
+            conditions.add(new Condition(tokens[i], tokens[i + 1], tokens[i + 2]));
+            i += 3;
+            if (i < tokens.length) {
+                if (!tokens[i].equalsIgnoreCase("and")) throw new IllegalArgumentException("Expected 'and', got '" + tokens[i] + "'");
+                i++;
+            }
+        }
+        return conditions;
+    }
+
+    public Function getFunction() { return function; }
+    /** The aggregated property, or null for {@code *}. */
+    public String getProperty() { return property; }
+    public boolean isOverRelations() { return overRelations; }
+    /** The label (nodes) or type (relations) to aggregate, or null for all. */
+    public String getTarget() { return target; }
+    public List<Condition> getConditions() { return conditions; }
+    /** The grouping key, or null when ungrouped. */
+    public String getGroupBy() { return groupBy; }
+
+    /** True when the answer is a plain row count that shard statistics can provide. */
+    public boolean isCountOnly() {
+        return function == Function.COUNT && property == null && conditions.isEmpty();
+    }
+
+    /** True when grouping is by the node label (nodes) or relation type (relations) rather than a property. */
+    public boolean groupsByShape() {
+        return groupBy != null && groupBy.equalsIgnoreCase(overRelations ? "type" : "label");
+    }
+
+    // --- Row evaluation (called by shards under their read lock) ---
+
+    public boolean accepts(Node n) {
+        if (target != null && !n.getLabel().equalsIgnoreCase(target)) return false;
+        for (Condition c : conditions) if (!c.test(n)) return false;
+        return true;
+    }
+
+    public boolean accepts(Relation r) {
+        if (target != null && !r.getType().equalsIgnoreCase(target)) return false;
+        for (Condition c : conditions) if (!c.test(r)) return false;
+        return true;
+    }
+
+    public String groupOf(Node n) {
+        if (groupBy == null) return ALL;
+        Object v = n.getProperties().get(groupBy);
+        if (v == null && groupBy.equalsIgnoreCase("label")) return n.getLabel();
+        if (v == null && groupBy.equalsIgnoreCase("id")) return n.getId();
+        return String.valueOf(v);
+    }
+
+    public String groupOf(Relation r) {
+        if (groupBy == null) return ALL;
+        Object v = r.getProperties().get(groupBy);
+        if (v == null && groupBy.equalsIgnoreCase("type")) return r.getType();
+        if (v == null && groupBy.equalsIgnoreCase("from")) return r.getSourceId();
+        if (v == null && groupBy.equalsIgnoreCase("to")) return r.getTargetId();
+        return String.valueOf(v);
+    }
+
+    /** The aggregated value of a row: the row itself for {@code *}, else the property (may be null). */
+    public Object valueOf(Node n) {
+        return property == null ? n : n.getProperties().get(property);
+    }
+
+    public Object valueOf(Relation r) {
+        return property == null ? r : r.getProperties().get(property);
+    }
+
+    // --- Partial results ---
+
+    /** Running totals for one group. */
+    public static class Accumulator {
+        long count;       // rows where the value is present
+        long numeric;     // rows where the value is numeric
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        void add(Object value) {
+            if (value == null) return;
+            count++;
+            double d = PropertyCodec.asDouble(value);
+            if (Double.isNaN(d)) return;
+            numeric++;
+            sum += d;
+            if (d < min) min = d;
+            if (d > max) max = d;
+        }
+
+        void merge(Accumulator o) {
+            count += o.count;
+            numeric += o.numeric;
+            sum += o.sum;
+            min = Math.min(min, o.min);
+            max = Math.max(max, o.max);
+        }
+
+        /** The final value for a function: a Long for COUNT, a Double otherwise, null when undefined. */
+        Number result(Function fn) {
+            switch (fn) {
+                case COUNT: return count;
+                case SUM: return sum;
+                case AVG: return numeric == 0 ? null : sum / numeric;
+                case MIN: return numeric == 0 ? null : min;
+                case MAX: return numeric == 0 ? null : max;
+                default: throw new IllegalStateException();
+            }
+        }
+    }
+
+    /** One shard's (or the merged) per-group accumulators. */
+    public static class Partial {
+        private final Map<String, Accumulator> groups = new HashMap<>();
+
+        public void add(String group, Object value) {
+            groups.computeIfAbsent(group, g -> new Accumulator()).add(value);
+        }
+
+        /** Adds {@code rows} present, non-numeric values to a group; used for counts taken from statistics. */
+        public void addCount(String group, long rows) {
+            groups.computeIfAbsent(group, g -> new Accumulator()).count += rows;
+        }
+
+        public void merge(Partial other) {
+            other.groups.forEach((g, acc) -> groups.computeIfAbsent(g, k -> new Accumulator()).merge(acc));
+        }
+
+        /** Final values per group, sorted by group name. An ungrouped aggregation has the single group {@link #ALL}. */
+        public Map<String, Number> finish(Aggregation agg) {
+            Map<String, Number> out = new TreeMap<>();
+            groups.forEach((g, acc) -> {
+                if (acc.count > 0) out.put(g, acc.result(agg.function));
+            });
+            if (agg.groupBy == null && out.isEmpty()) out.put(ALL, new Accumulator().result(agg.function));
+            return out;
+        }
+    }
+
+    @Override
+    public String toString() {
+        String t = overRelations ? "[" + (target == null ? "*" : target) + "]" : (target == null ? "*" : target);
+        StringBuilder sb = new StringBuilder(function.name().toLowerCase())
+                .append('(').append(property == null ? "*" : property).append(") ").append(t);
+        for (int i = 0; i < conditions.size(); i++) sb.append(i == 0 ? " where " : " and ").append(conditions.get(i));
+        if (groupBy != null) sb.append(" group by ").append(groupBy);
+        return sb.toString();
+    }
+}
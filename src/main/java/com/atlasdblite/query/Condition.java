@@ -0,0 +1,128 @@
+package com.atlasdblite.query;
+
+import com.atlasdblite.models.Node;
+import com.atlasdblite.models.PropertyCodec;
+import com.atlasdblite.models.Relation;
+
+import java.util.List;
+
+/**
+ * A single AQL predicate of the form {@code <key> <op> <value>}.
+ * Shared by {@code select} filtering and {@code match} pattern predicates.
+ * Supported operators: {@code = , != , > , < , contains}.
+ * Numeric and boolean properties are compared by value; string properties keep the
+ * original case-insensitive text semantics.
+ */
+public class Condition {
+    private final String key;
+    private final String op;
+    private final String value;
+    private final double number; // operand as a number, NaN if not numeric
+
+    public Condition(String key, String op, String value) {
+        this.key = key;
+        this.op = op.toLowerCase();
+        this.value = value;
+        this.number = PropertyCodec.asDouble(value);
+    }
+
+    public String getKey() { return key; }
+    public String getOp() { return op; }
+    public String getValue() { return value; }
+
+    /**
+     * True if the operand is plain text, i.e. neither numeric nor boolean. Only such equality
+     * operands can be looked up in the global index, whose keys are the values' text forms:
+     * {@code 30.0} must still match a stored {@code 30}.
+     */
+    public boolean hasTextOperand() {
+        return Double.isNaN(number) && !"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value);
+    }
+
+    public static boolean isOperator(String op) {
+        switch (op.toLowerCase()) {
+            case "=": case "!=": case ">": case "<": case "contains": return true;
+            default: return false;
+        }
+    }
+
+    /**
+     * Evaluates the condition against a node.
+     * The pseudo-key {@code id} falls back to the node ID when no such property exists.
+     */
+    public boolean test(Node n) {
+        Object actual = n.getProperties().get(key);
+        if (actual == null && "id".equalsIgnoreCase(key)) actual = n.getId();
+        return test(actual);
+    }
+
+    /**
+     * Evaluates the condition against a relation.
+     * The pseudo-keys {@code type}, {@code from} and {@code to} apply when no such property exists.
+     */
+    public boolean test(Relation r) {
+        Object actual = r.getProperties().get(key);
+        if (actual == null) {
+            if ("type".equalsIgnoreCase(key)) actual = r.getType();
+            else if ("from".equalsIgnoreCase(key)) actual = r.getSourceId();
+            else if ("to".equalsIgnoreCase(key)) actual = r.getTargetId();
+        }
+        return test(actual);
+    }
+
+    public boolean test(Object actualObj) {
+        if (actualObj == null) return false;
+
+        // Handle List: [Java, Python] contains Java
+        if (actualObj instanceof List) {
+            List<?> list = (List<?>) actualObj;
+            if (op.equals("contains")) {
+                return list.stream().anyMatch(item -> item != null && item.toString().equalsIgnoreCase(value));
+            }
+            // For Lists, operators like >, <, = are ambiguous in this simple engine.
+            // We treat '=' as "List contains this exact value" for usability.
+            if (op.equals("=")) {
+                return list.stream().anyMatch(this::equalsTyped);
+            }
+            return false;
+        }
+
+        if (op.equals("contains")) return actualObj.toString().toLowerCase().contains(value.toLowerCase());
+
+        // Typed values compare on primitives: the operand was parsed once in the constructor.
+        if (actualObj instanceof Number || actualObj instanceof Boolean) {
+            switch (op) {
+                case "=": return equalsTyped(actualObj);
+                case "!=": return !equalsTyped(actualObj);
+                case ">": return actualObj instanceof Number && !Double.isNaN(number) && ((Number) actualObj).doubleValue() > number;
+                case "<": return actualObj instanceof Number && !Double.isNaN(number) && ((Number) actualObj).doubleValue() < number;
+                default: return false;
+            }
+        }
+
+        // Untyped (string) values: legacy semantics, numeric text is parsed on comparison
+        String actualVal = actualObj.toString();
+        switch (op) {
+            case "=": return actualVal.equalsIgnoreCase(value);
+            case "!=": return !actualVal.equalsIgnoreCase(value);
+            case ">":
+            case "<":
+                double actualNum = PropertyCodec.asDouble(actualVal);
+                if (Double.isNaN(actualNum) || Double.isNaN(number)) return false;
+                return op.equals(">") ? actualNum > number : actualNum < number;
+            default:
+                return false;
+        }
+    }
+
+    private boolean equalsTyped(Object actual) {
+        if (actual instanceof Number) return !Double.isNaN(number) && ((Number) actual).doubleValue() == number;
+        if (actual instanceof Boolean) return value.equalsIgnoreCase(actual.toString());
+        return actual != null && actual.toString().equals(value);
+    }
+
+    @Override
+    public String toString() {
+        return key + " " + op + " " + value;
+    }
+}
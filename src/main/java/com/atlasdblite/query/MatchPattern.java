@@ -0,0 +1,161 @@
+package com.atlasdblite.query;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed graph pattern such as
+ * {@code (a:User)-[:MANAGES]->(s:Server)<-[:OWNS]-(o), (s)-[:BACKS_UP]->(d) where a.role = Admin limit 10}.
+ * Node variables are shared across comma-separated paths, which is how cyclic patterns are expressed.
+ */
+public class MatchPattern {
+    private static final Pattern WHERE = Pattern.compile("(?i)\\s+where\\s+");
+    private static final Pattern LIMIT = Pattern.compile("(?i)\\s+limit\\s+(\\d+)\\s*$");
+
+    /** A node variable with its optional label and predicates. */
+    public static class NodePattern {
+        public final String var;
+        public String label;
+        public final List<Condition> conditions = new ArrayList<>();
+
+        NodePattern(String var) { this.var = var; }
+    }
+
+    /** A directed edge between two node variables; {@code type} is null for "any type". */
+    public static class EdgePattern {
+        public final String from;
+        public final String to;
+        public final String type;
+
+        EdgePattern(String from, String to, String type) {
+            this.from = from;
+            this.to = to;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, NodePattern> nodes = new LinkedHashMap<>();
+    private final List<EdgePattern> edges = new ArrayList<>();
+    private int limit = -1;
+    private int anonymous = 0;
+
+    public Map<String, NodePattern> getNodes() { return nodes; }
+    public List<EdgePattern> getEdges() { return edges; }
+    /** Maximum number of rows to return, or -1 for unlimited. */
+    public int getLimit() { return limit; }
+
+    /**
+     * Parses the text following the {@code match} keyword.
+     * @throws IllegalArgumentException If the pattern is malformed.
+     */
+    public static MatchPattern parse(String text) {
+        MatchPattern p = new MatchPattern();
+        String body = text.trim();
+
+        Matcher lm = LIMIT.matcher(body);
+        if (lm.find()) {
+            p.limit = Integer.parseInt(lm.group(1));
+            body = body.substring(0, lm.start());
+        }
+
+        String where = null;
+        Matcher wm = WHERE.matcher(body);
+        if (wm.find()) {
+            where = body.substring(wm.end());
+            body = body.substring(0, wm.start());
+        }
+
+        for (String path : body.split(",")) p.parsePath(path.replaceAll("\\s+", ""));
+        if (p.nodes.isEmpty()) throw new IllegalArgumentException("Empty pattern");
+        if (where != null) p.parseWhere(where);
+        return p;
+    }
+
+    private void parsePath(String path) {
+        int[] pos = {0};
+        String prev = parseNode(path, pos);
+        while (pos[0] < path.length()) {
+            boolean incoming = path.startsWith("<-", pos[0]);
+            if (!incoming && !path.startsWith("-", pos[0])) throw error(path, pos[0]);
+            pos[0] += incoming ? 2 : 1;
+
+            String type = null;
+            if (path.startsWith("[", pos[0])) {
+                int close = path.indexOf(']', pos[0]);
+                if (close < 0) throw error(path, pos[0]);
+                String spec = path.substring(pos[0] + 1, close);
+                int colon = spec.indexOf(':');
+                if (colon >= 0 && colon < spec.length() - 1) type = spec.substring(colon + 1);
+                pos[0] = close + 1;
+            }
+
+            if (incoming) {
+                if (!path.startsWith("-", pos[0])) throw error(path, pos[0]);
+                pos[0] += 1;
+            } else {
+                if (!path.startsWith("->", pos[0])) throw error(path, pos[0]);
+                pos[0] += 2;
+            }
+
+            String next = parseNode(path, pos);
+            edges.add(incoming ? new EdgePattern(next, prev, type) : new EdgePattern(prev, next, type));
+            prev = next;
+        }
+    }
+
+    private String parseNode(String path, int[] pos) {
+        if (!path.startsWith("(", pos[0])) throw error(path, pos[0]);
+        int close = path.indexOf(')', pos[0]);
+        if (close < 0) throw error(path, pos[0]);
+        String spec = path.substring(pos[0] + 1, close);
+        pos[0] = close + 1;
+
+        int colon = spec.indexOf(':');
+        String var = colon >= 0 ? spec.substring(0, colon) : spec;
+        String label = colon >= 0 ? spec.substring(colon + 1) : null;
+        if (var.isEmpty()) var = "_" + (++anonymous);
+
+        NodePattern node = nodes.computeIfAbsent(var, NodePattern::new);
+        if (label != null && !label.isEmpty()) {
+            if (node.label != null && !node.label.equalsIgnoreCase(label))
+                throw new IllegalArgumentException("Variable '" + var + "' has conflicting labels");
+            node.label = label;
+        }
+        return var;
+    }
+
+    private void parseWhere(String where) {
+        String[] tokens = where.trim().split("\\s+");
+        int i = 0;
+        while (i < tokens.length) {
+            if (i + 2 >= tokens.length) throw new IllegalArgumentException("Incomplete predicate in where clause");
+            String ref = tokens[i];
+            int dot = ref.indexOf('.');
+            if (dot <= 0) throw new IllegalArgumentException("Expected <var>.<key>, got '" + ref + "'");
+            NodePattern node = nodes.get(ref.substring(0, dot));
+            if (node == null) throw new IllegalArgumentException("Unknown variable in where clause: " + ref);
+            if (!Condition.isOperator(tokens[i + 1])) throw new IllegalArgumentException("Unknown operator: " + tokens[i + 1]);
+
+            node.conditions.add(new Condition(ref.substring(dot + 1), tokens[i + 1], unquote(tokens[i + 2])));
+            i += 3;
+            if (i < tokens.length) {
+                if (!tokens[i].equalsIgnoreCase("and")) throw new IllegalArgumentException("Expected 'and', got '" + tokens[i] + "'");
+                i++;
+            }
+        }
+    }
+
+    private static String unquote(String v) {
+        if (v.length() >= 2 && (v.startsWith("'") && v.endsWith("'") || v.startsWith("\"") && v.endsWith("\"")))
+            return v.substring(1, v.length() - 1);
+        return v;
+    }
+
+    private static IllegalArgumentException error(String path, int pos) {
+        return new IllegalArgumentException("Malformed pattern near '" + path.substring(Math.min(pos, path.length())) + "'");
+    }
+}
@@ -0,0 +1,103 @@
+package com.atlasdblite.query;
+
+import com.atlasdblite.engine.GraphEngine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Orders the variables of a {@link MatchPattern} for execution.
+ * <p>
+ * The first variable (the anchor) is the one with the smallest estimated cardinality,
+ * using label counts and, when auto-indexing is on, inverted-index posting sizes.
+ * Each following variable is chosen among those connected to already-bound variables,
+ * preferring the ones with the most constraints (cycles close early) and outgoing
+ * edges (served by the shard adjacency lists rather than a reverse hash table).
+ */
+public class MatchPlanner {
+
+    /** An edge linking the step's variable to a variable bound by an earlier step. */
+    public static class Constraint {
+        public final String boundVar;
+        public final String type;
+        /** True when the step variable is reached through an outgoing edge of {@code boundVar}. */
+        public final boolean outgoing;
+
+        Constraint(String boundVar, String type, boolean outgoing) {
+            this.boundVar = boundVar;
+            this.type = type;
+            this.outgoing = outgoing;
+        }
+    }
+
+    /** Binds one variable, either by scanning (no constraints) or by intersecting adjacency sets. */
+    public static class Step {
+        public final MatchPattern.NodePattern node;
+        public final long estimate;
+        public final List<Constraint> constraints = new ArrayList<>();
+        /** Types of edges from the variable to itself. */
+        public final List<String> selfLoops = new ArrayList<>();
+
+        Step(MatchPattern.NodePattern node, long estimate) {
+            this.node = node;
+            this.estimate = estimate;
+        }
+
+        public boolean isScan() { return constraints.isEmpty(); }
+    }
+
+    private final GraphEngine engine;
+
+    public MatchPlanner(GraphEngine engine) {
+        this.engine = engine;
+    }
+
+    public List<Step> plan(MatchPattern pattern) {
+        Map<String, Long> estimates = new HashMap<>();
+        for (MatchPattern.NodePattern n : pattern.getNodes().values()) estimates.put(n.var, estimate(n));
+
+        List<Step> steps = new ArrayList<>();
+        Set<String> bound = new HashSet<>();
+        while (bound.size() < pattern.getNodes().size()) {
+            String best = null;
+            int bestLinks = -1, bestOutgoing = -1;
+            for (String var : pattern.getNodes().keySet()) {
+                if (bound.contains(var)) continue;
+                int links = 0, outgoing = 0;
+                for (MatchPattern.EdgePattern e : pattern.getEdges()) {
+                    if (e.to.equals(var) && !e.from.equals(var) && bound.contains(e.from)) { links++; outgoing++; }
+                    else if (e.from.equals(var) && !e.to.equals(var) && bound.contains(e.to)) links++;
+                }
+                boolean better = best == null
+                        || links > bestLinks
+                        || (links == bestLinks && outgoing > bestOutgoing)
+                        || (links == bestLinks && outgoing == bestOutgoing && estimates.get(var) < estimates.get(best));
+                if (better) { best = var; bestLinks = links; bestOutgoing = outgoing; }
+            }
+
+            Step step = new Step(pattern.getNodes().get(best), estimates.get(best));
+            for (MatchPattern.EdgePattern e : pattern.getEdges()) {
+                if (e.from.equals(best) && e.to.equals(best)) step.selfLoops.add(e.type);
+                else if (e.to.equals(best) && bound.contains(e.from)) step.constraints.add(new Constraint(e.from, e.type, true));
+                else if (e.from.equals(best) && bound.contains(e.to)) step.constraints.add(new Constraint(e.to, e.type, false));
+            }
+            steps.add(step);
+            bound.add(best);
+        }
+        return steps;
+    }
+
+    private long estimate(MatchPattern.NodePattern n) {
+        long est = n.label != null ? engine.countNodesByLabel(n.label) : engine.countNodes();
+        for (Condition c : n.conditions) {
+            if (!c.getOp().equals("=") || !c.hasTextOperand()) continue;
+            long indexed = engine.countIndexed(c.getValue());
+            if (indexed >= 0) est = Math.min(est, indexed);
+        }
+        return est;
+    }
+}
@@ -0,0 +1,138 @@
+package com.atlasdblite.query;
+
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.models.Node;
+import com.atlasdblite.models.Relation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Executes {@link MatchPattern}s against the {@link GraphEngine}.
+ * <p>
+ * Variables are bound in the order chosen by {@link MatchPlanner}. The anchor is produced by a
+ * label scan (or an index lookup for equality on text); every later variable is bound by
+ * intersecting the candidate sets of all its edges to bound variables, probing the smallest set
+ * against the others (a generic, worst-case-optimal join). Outgoing edges use the shard adjacency
+ * lists; incoming edges use a per-query hash table built once per relation type.
+ * Rows are handed to the sink as soon as they are complete.
+ */
+public class PatternMatcher {
+    private static final String ANY_TYPE = "*";
+
+    private final GraphEngine engine;
+    private final Map<String, Map<String, Set<String>>> reverseTables = new HashMap<>();
+
+    public PatternMatcher(GraphEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Streams every binding of the pattern to the sink.
+     * @param pattern The parsed pattern.
+     * @param sink Receives one row (variable -> node) per match; returning {@code false} stops execution.
+     * @return The number of rows produced.
+     */
+    public int execute(MatchPattern pattern, Predicate<Map<String, Node>> sink) {
+        if (pattern.getLimit() == 0) return 0;
+        List<MatchPlanner.Step> steps = new MatchPlanner(engine).plan(pattern);
+        int[] produced = {0};
+        bind(steps, 0, new LinkedHashMap<>(), row -> {
+            produced[0]++;
+            Map<String, Node> ordered = new LinkedHashMap<>();
+            for (String var : pattern.getNodes().keySet()) ordered.put(var, row.get(var));
+            boolean more = sink.test(ordered);
+            return more && (pattern.getLimit() < 0 || produced[0] < pattern.getLimit());
+        });
+        return produced[0];
+    }
+
+    /** Convenience wrapper collecting all rows. */
+    public List<Map<String, Node>> collect(MatchPattern pattern) {
+        List<Map<String, Node>> rows = new ArrayList<>();
+        execute(pattern, rows::add);
+        return rows;
+    }
+
+    private boolean bind(List<MatchPlanner.Step> steps, int depth, Map<String, Node> row, Predicate<Map<String, Node>> sink) {
+        if (depth == steps.size()) return sink.test(row);
+
+        MatchPlanner.Step step = steps.get(depth);
+        for (Node candidate : candidates(step, row)) {
+            if (!accepts(step, candidate)) continue;
+            row.put(step.node.var, candidate);
+            boolean more = bind(steps, depth + 1, row, sink);
+            row.remove(step.node.var);
+            if (!more) return false;
+        }
+        return true;
+    }
+
+    private Iterable<Node> candidates(MatchPlanner.Step step, Map<String, Node> row) {
+        if (step.isScan()) return scan(step.node);
+
+        // Generic join: gather one ID set per constraint, iterate the smallest, probe the rest.
+        List<Set<String>> sets = new ArrayList<>(step.constraints.size());
+        for (MatchPlanner.Constraint c : step.constraints) {
+            String boundId = row.get(c.boundVar).getId();
+            Set<String> ids = c.outgoing ? targetsOf(boundId, c.type) : sourcesOf(boundId, c.type);
+            if (ids.isEmpty()) return Collections.emptyList();
+            sets.add(ids);
+        }
+        sets.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        List<Node> result = new ArrayList<>();
+        outer:
+        for (String id : sets.get(0)) {
+            for (int i = 1; i < sets.size(); i++)
+                if (!sets.get(i).contains(id)) continue outer;
+            Node n = engine.getNode(id);
+            if (n != null) result.add(n);
+        }
+        return result;
+    }
+
+    private Collection<Node> scan(MatchPattern.NodePattern node) {
+        if (engine.isAutoIndexing()) {
+            for (Condition c : node.conditions) {
+                if (c.getOp().equals("=") && c.hasTextOperand()) return engine.search(c.getValue());
+            }
+        }
+        return node.label != null ? engine.getNodesByLabel(node.label) : engine.getAllNodes();
+    }
+
+    private boolean accepts(MatchPlanner.Step step, Node n) {
+        MatchPattern.NodePattern p = step.node;
+        if (p.label != null && !p.label.equalsIgnoreCase(n.getLabel())) return false;
+        for (Condition c : p.conditions)
+            if (!c.test(n)) return false;
+        for (String type : step.selfLoops)
+            if (!targetsOf(n.getId(), type).contains(n.getId())) return false;
+        return true;
+    }
+
+    private Set<String> targetsOf(String id, String type) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (Relation r : engine.getRelationsFrom(id))
+            if (type == null || r.getType().equalsIgnoreCase(type)) ids.add(r.getTargetId());
+        return ids;
+    }
+
+    private Set<String> sourcesOf(String id, String type) {
+        Map<String, Set<String>> table = reverseTables.computeIfAbsent(type == null ? ANY_TYPE : type.toUpperCase(), k -> {
+            // Build side of the hash join: one pass over the relation type, keyed by target.
+            Map<String, Set<String>> t = new HashMap<>();
+            engine.forEachRelation(type, r -> t.computeIfAbsent(r.getTargetId(), x -> new LinkedHashSet<>()).add(r.getSourceId()));
+            return t;
+        });
+        return table.getOrDefault(id, Collections.emptySet());
+    }
+}
@@ -1,10 +1,14 @@
 package com.atlasdblite.security;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Base64;
@@ -44,6 +48,33 @@ public class CryptoManager {
         return Base64.getEncoder().encodeToString(encryptedBytes);
     }
 
+    /**
+     * Streaming form of {@link #encrypt}, for data too large to hold as one string.
+     * Text written to the returned stream reaches {@code sink} exactly as {@code encrypt} would
+     * return it, provided it is ASCII (as Base64 is). Closing the stream closes {@code sink}.
+     * @param sink Where the Base64-encoded encrypted data goes.
+     * @return A stream that takes the plain text.
+     * @throws Exception If the cipher cannot be initialized.
+     */
+    public OutputStream encryptingStream(OutputStream sink) throws Exception {
+        Cipher cipher = Cipher.getInstance(ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+        return new CipherOutputStream(Base64.getEncoder().wrap(sink), cipher);
+    }
+
+    /**
+     * Streaming form of {@link #decrypt}: reads what {@link #encrypt} returned and yields the plain
+     * text, decrypting only as far as it is read. Closing the stream closes {@code source}.
+     * @param source The Base64-encoded encrypted data.
+     * @return A stream of the plain text.
+     * @throws Exception If the cipher cannot be initialized.
+     */
+    public InputStream decryptingStream(InputStream source) throws Exception {
+        Cipher cipher = Cipher.getInstance(ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, secretKey);
+        return new CipherInputStream(Base64.getDecoder().wrap(source), cipher);
+    }
+
     /**
      * Decrypts a Base64-encoded string.
      * @param encryptedData The encrypted, Base64-encoded string.
@@ -1,9 +1,20 @@
 package com.atlasdblite.server;
 
+import com.atlasdblite.analytics.Communities;
+import com.atlasdblite.analytics.Components;
+import com.atlasdblite.analytics.PageRank;
+import com.atlasdblite.analytics.PersonalizedPageRank;
 import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.engine.JobResult;
+import com.atlasdblite.engine.JobScheduler;
+import com.atlasdblite.engine.SearchHit;
 import com.atlasdblite.models.Node;
 import com.atlasdblite.models.Relation;
+import com.atlasdblite.query.Aggregation;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.ToNumberPolicy;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpExchange;
 
@@ -12,21 +23,28 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
 
 public class APIServer {
+    private static final int SEARCH_LIMIT = 20;
+
     private final GraphEngine engine;
     private HttpServer server;
     private final Gson gson;
 
     public APIServer(GraphEngine engine) {
         this.engine = engine;
-        this.gson = new Gson();
+        // Integral JSON numbers become Long so they are stored with the long type tag
+        this.gson = new GsonBuilder().setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE).create();
     }
 
     public void start(int port) throws IOException {
@@ -59,16 +77,29 @@ public class APIServer {
 
         // 2. Full Graph Data
         server.createContext("/api/graph", exchange -> {
+            // Never compute on the request thread: serve the last published scores and,
+            // if there are none yet, start a background run for the next refresh.
             Map<String, Double> scores = engine.getPageRankScores();
-
-            if (scores.isEmpty()) {
-                scores = engine.calculatePageRank(20, 0.85);
+            if (scores.isEmpty() && !engine.isPageRankRunning()) {
+                engine.computePageRankAsync(new PageRank(), null);
+            }
+            // Same for communities, which are also refreshed once the topology has moved on
+            Communities.Result clusters = engine.getCommunities();
+            if ((clusters == null || clusters.getVersion() != engine.getTopologyVersion())
+                    && !engine.isCommunityDetectionRunning()) {
+                engine.detectCommunitiesAsync("louvain");
             }
 
             GraphDTO dto = new GraphDTO(
                     engine.getAllNodes(),
                     engine.getAllRelations(),
                     scores);
+            if (clusters != null) {
+                dto.communities = new HashMap<>(clusters.labels.length * 2);
+                for (int v = 0; v < clusters.labels.length; v++)
+                    dto.communities.put(clusters.getGraph().idOf(v), clusters.labels[v]);
+                dto.modularity = clusters.modularity;
+            }
             sendResponse(exchange, 200, gson.toJson(dto));
         });
 
@@ -90,12 +121,12 @@ public class APIServer {
                         return;
                     }
                     if (dto.props != null) {
-                        dto.props.forEach((k, v) -> engine.updateNode(dto.id, k, v.toString()));
+                        dto.props.forEach((k, v) -> engine.updateNode(dto.id, k, v));
                     }
                     sendResponse(exchange, 200, "{\"message\":\"Node Updated\"}");
                 } else if ("DELETE".equalsIgnoreCase(method)) {
                 } else if ("DELETE".equalsIgnoreCase(method)) {
-                    Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+                    Map<String, String> params = queryToMap(exchange.getRequestURI().getRawQuery());
                     if (params.containsKey("id")) {
                         String id = params.get("id");
                         if (engine.deleteNode(id)) {
@@ -138,7 +169,7 @@ public class APIServer {
                     }
                 } else if ("DELETE".equalsIgnoreCase(method)) {
                     // Expects query: ?from=A&to=B&type=KNOWS
-                    Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+                    Map<String, String> params = queryToMap(exchange.getRequestURI().getRawQuery());
                     if (params.containsKey("from") && params.containsKey("to") && params.containsKey("type")) {
                         if (engine.deleteRelation(params.get("from"), params.get("to"), params.get("type"))) {
                             sendResponse(exchange, 200, "{\"message\":\"Link Deleted\"}");
@@ -156,16 +187,204 @@ public class APIServer {
             }
         });
 
+        // 5. Bulk ingest: POST {"nodes": [{id, label, props}...], "links": [{from, to, type, props}...]}
+        // Nodes are written before links, each as one batch. A batch with an invalid record is rejected
+        // whole, so links to missing nodes fail without undoing the nodes.
+        server.createContext("/api/bulk", exchange -> {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "{\"error\":\"Method Not Allowed\"}");
+                return;
+            }
+            try {
+                BulkDTO dto = parseBody(exchange, BulkDTO.class);
+                List<Node> nodes = new ArrayList<>();
+                if (dto != null && dto.nodes != null) {
+                    for (NodeDTO n : dto.nodes) {
+                        if (n.id == null || n.label == null)
+                            throw new IllegalArgumentException("Every node needs an id and a label");
+                        Node node = new Node(n.id, n.label);
+                        if (n.props != null)
+                            n.props.forEach(node::addProperty);
+                        nodes.add(node);
+                    }
+                }
+                List<Relation> links = new ArrayList<>();
+                if (dto != null && dto.links != null) {
+                    for (LinkDTO l : dto.links) {
+                        if (l.from == null || l.to == null || l.type == null)
+                            throw new IllegalArgumentException("Every link needs from, to and type");
+                        links.add(new Relation(l.from, l.to, l.type, l.props != null ? l.props : new HashMap<>()));
+                    }
+                }
+                engine.persistNodes(nodes);
+                engine.persistRelations(links);
+                sendResponse(exchange, 201, gson.toJson(Map.of("nodes", nodes.size(), "links", links.size())));
+            } catch (IllegalArgumentException | JsonParseException e) {
+                sendResponse(exchange, 400, gson.toJson(Map.of("error", String.valueOf(e.getMessage()))));
+            }
+        });
+
         // Standard Endpoints
         server.createContext("/api/status", exchange -> sendResponse(exchange, 200, "{\"status\":\"online\"}"));
         server.createContext("/api/nodes", exchange -> sendResponse(exchange, 200, gson.toJson(engine.getAllNodes())));
+        // Ranked full-text search: /api/search?q=<text>[&limit=N], best match first
         server.createContext("/api/search", exchange -> {
-            String q = exchange.getRequestURI().getQuery();
-            if (q != null && q.startsWith("q=")) {
-                List<Node> matches = engine.search(q.split("=")[1].toLowerCase());
-                sendResponse(exchange, 200, gson.toJson(matches));
-            } else {
+            Map<String, String> params = queryToMap(exchange.getRequestURI().getRawQuery());
+            if (!params.containsKey("q")) {
                 sendResponse(exchange, 400, "Missing q");
+                return;
+            }
+            int limit = SEARCH_LIMIT;
+            try {
+                if (params.containsKey("limit")) limit = Integer.parseInt(params.get("limit"));
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, 400, "{\"error\":\"limit must be an integer\"}");
+                return;
+            }
+            if (limit < 0) {
+                sendResponse(exchange, 400, "{\"error\":\"limit must not be negative\"}");
+                return;
+            }
+            List<Node> matches = new ArrayList<>();
+            for (SearchHit hit : engine.searchTop(params.get("q"), limit))
+                matches.add(hit.node);
+            sendResponse(exchange, 200, gson.toJson(matches));
+        });
+
+        // Vector similarity: /api/similar?id=<id>[&k=N], most similar vectorized nodes first
+        server.createContext("/api/similar", exchange -> {
+            Map<String, String> params = queryToMap(exchange.getRequestURI().getRawQuery());
+            if (!params.containsKey("id")) {
+                sendResponse(exchange, 400, "{\"error\":\"Missing id\"}");
+                return;
+            }
+            try {
+                int k = params.containsKey("k") ? Integer.parseInt(params.get("k")) : SEARCH_LIMIT;
+                List<Map<String, Object>> hits = new ArrayList<>();
+                for (SearchHit hit : engine.similar(params.get("id"), k))
+                    hits.add(Map.of("node", hit.node, "score", hit.score));
+                sendResponse(exchange, 200, gson.toJson(hits));
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, 400, gson.toJson(Map.of("error", e.getMessage())));
+            }
+        });
+
+        // Personalized PageRank: /api/ppr?seed=<id>[,<id>...][&k=N][&weight=prop], best first
+        server.createContext("/api/ppr", exchange -> {
+            Map<String, String> params = queryToMap(exchange.getRequestURI().getRawQuery());
+            if (!params.containsKey("seed")) {
+                sendResponse(exchange, 400, "{\"error\":\"Missing seed\"}");
+                return;
+            }
+            try {
+                int k = params.containsKey("k") ? Integer.parseInt(params.get("k")) : SEARCH_LIMIT;
+                PersonalizedPageRank.Result result = engine.personalizedPageRank(
+                        Arrays.asList(params.get("seed").split(",")), k, params.get("weight"));
+                List<Map<String, Object>> hits = new ArrayList<>();
+                for (PersonalizedPageRank.Hit hit : result.hits)
+                    hits.add(Map.of("id", hit.id, "score", hit.score));
+                sendResponse(exchange, 200, gson.toJson(hits));
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, 400, gson.toJson(Map.of("error", e.getMessage())));
+            }
+        });
+
+        // Structure: /api/components?kind=wcc|scc|kcore[&node=<id>][&store=prop]
+        server.createContext("/api/components", exchange -> {
+            Map<String, String> params = queryToMap(exchange.getRequestURI().getRawQuery());
+            try {
+                Components.Kind kind = Components.Kind.valueOf(params.getOrDefault("kind", "wcc").toUpperCase());
+                Components.Result result = engine.components(kind);
+                Map<String, Object> body = new HashMap<>();
+                body.put("kind", kind.name().toLowerCase());
+                body.put("nodes", result.values.length);
+                body.put(kind == Components.Kind.KCORE ? "maxCore" : "count", result.count);
+                body.put("sizes", Arrays.copyOf(result.sizes, Math.min(result.sizes.length, SEARCH_LIMIT)));
+                if (params.containsKey("node"))
+                    body.put("value", result.valueOf(params.get("node")));
+                if (params.containsKey("store"))
+                    body.put("stored", engine.storeComponents(result, params.get("store")));
+                sendResponse(exchange, 200, gson.toJson(body));
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, 400, "{\"error\":\"kind must be wcc, scc or kcore\"}");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sendResponse(exchange, 503, "{\"error\":\"interrupted\"}");
+            }
+        });
+
+        // Background jobs: GET /api/jobs lists, POST /api/jobs?type=<type>[&option=value...] submits,
+        // GET /api/jobs/<id> shows one, DELETE /api/jobs/<id> cancels it, and
+        // GET /api/jobs/<id>/result[?top=N][&node=<id>] returns its persisted result
+        server.createContext("/api/jobs", exchange -> {
+            String method = exchange.getRequestMethod();
+            Map<String, String> params = queryToMap(exchange.getRequestURI().getRawQuery());
+            String[] path = exchange.getRequestURI().getPath().substring("/api/jobs".length()).split("/");
+            try {
+                if (path.length < 2) {
+                    if ("GET".equalsIgnoreCase(method)) {
+                        List<Map<String, Object>> list = new ArrayList<>();
+                        for (JobScheduler.Job<?> job : engine.listJobs()) list.add(jobToMap(job));
+                        sendResponse(exchange, 200, gson.toJson(list));
+                    } else if ("POST".equalsIgnoreCase(method)) {
+                        String type = params.remove("type");
+                        if (type == null) {
+                            sendResponse(exchange, 400, "{\"error\":\"Missing type\"}");
+                            return;
+                        }
+                        sendResponse(exchange, 202, gson.toJson(jobToMap(engine.submitJob(type, params))));
+                    } else {
+                        sendResponse(exchange, 405, "{\"error\":\"Method Not Allowed\"}");
+                    }
+                    return;
+                }
+                JobScheduler.Job<?> job = engine.getJob(Long.parseLong(path[1]));
+                if (job == null) {
+                    sendResponse(exchange, 404, "{\"error\":\"Job not found\"}");
+                } else if (path.length > 2 && "result".equals(path[2])) {
+                    JobResult result = job.getState() == JobScheduler.State.DONE ? engine.getJobResult(job.getId()) : null;
+                    if (result == null) {
+                        sendResponse(exchange, 404, gson.toJson(Map.of("error", "No result", "state", job.getState().name())));
+                        return;
+                    }
+                    Map<String, Object> body = new LinkedHashMap<>();
+                    body.put("id", job.getId());
+                    body.put("summary", result.getSummary());
+                    body.put("nodes", result.size());
+                    if (params.containsKey("node")) {
+                        body.put("value", result.valueOf(params.get("node")));
+                    } else {
+                        List<Map<String, Object>> top = new ArrayList<>();
+                        int k = params.containsKey("top") ? Integer.parseInt(params.get("top")) : SEARCH_LIMIT;
+                        for (int i : result.top(k)) top.add(Map.of("id", result.idAt(i), "value", result.valueAt(i)));
+                        body.put("top", top);
+                    }
+                    sendResponse(exchange, 200, gson.toJson(body));
+                } else if ("DELETE".equalsIgnoreCase(method)) {
+                    engine.cancelJob(job.getId());
+                    sendResponse(exchange, 200, gson.toJson(jobToMap(job)));
+                } else {
+                    sendResponse(exchange, 200, gson.toJson(jobToMap(job)));
+                }
+            } catch (IllegalStateException e) {
+                sendResponse(exchange, 503, gson.toJson(Map.of("error", e.getMessage())));
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, 400, gson.toJson(Map.of("error", String.valueOf(e.getMessage()))));
+            }
+        });
+
+        // Aggregates: /api/aggregate?q=count(*) Person group by city (URL-encoded)
+        server.createContext("/api/aggregate", exchange -> {
+            Map<String, String> params = queryToMap(exchange.getRequestURI().getRawQuery());
+            if (!params.containsKey("q")) {
+                sendResponse(exchange, 400, "{\"error\":\"Missing q\"}");
+                return;
+            }
+            try {
+                Aggregation agg = Aggregation.parse(params.get("q"));
+                sendResponse(exchange, 200, gson.toJson(engine.aggregate(agg)));
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, 400, gson.toJson(Map.of("error", e.getMessage())));
             }
         });
 
@@ -190,6 +409,21 @@ public class APIServer {
         }
     }
 
+    private static Map<String, Object> jobToMap(JobScheduler.Job<?> job) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", job.getId());
+        map.put("type", job.getType());
+        map.put("state", job.getState().name());
+        map.put("progress", job.progress());
+        map.put("millis", job.millis());
+        map.put("params", job.getParams());
+        if (job.getError() != null)
+            map.put("error", job.getError());
+        if (!job.getSummary().isEmpty())
+            map.put("summary", job.getSummary());
+        return map;
+    }
+
     private <T> T parseBody(HttpExchange exchange, Class<T> clazz) {
         return gson.fromJson(new InputStreamReader(exchange.getRequestBody()), clazz);
     }
@@ -199,13 +433,17 @@ public class APIServer {
         if (query == null)
             return result;
         for (String param : query.split("&")) {
-            String[] entry = param.split("=");
+            String[] entry = param.split("=", 2);
             if (entry.length > 1)
-                result.put(entry[0], entry[1]);
+                result.put(decode(entry[0]), decode(entry[1]));
         }
         return result;
     }
 
+    private static String decode(String s) {
+        return URLDecoder.decode(s, StandardCharsets.UTF_8);
+    }
+
     private static class NodeDTO {
         String id;
         String label;
@@ -221,10 +459,17 @@ public class APIServer {
         Map<String, Object> props;
     }
 
+    private static class BulkDTO {
+        List<NodeDTO> nodes;
+        List<LinkDTO> links;
+    }
+
     private static class GraphDTO {
         Collection<Node> nodes;
         List<Relation> edges;
         Map<String, Double> analytics;
+        Map<String, Integer> communities; // null until the first detection finishes
+        Double modularity;
 
         GraphDTO(Collection<Node> nodes, List<Relation> edges, Map<String, Double> analytics) {
             this.nodes = nodes;
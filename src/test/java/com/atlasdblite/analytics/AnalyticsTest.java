@@ -0,0 +1,620 @@
+package com.atlasdblite.analytics;
+
+import com.atlasdblite.engine.Featurizer;
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.engine.JobResult;
+import com.atlasdblite.engine.JobScheduler;
+import com.atlasdblite.engine.SearchHit;
+import com.atlasdblite.models.Node;
+import com.atlasdblite.models.Relation;
+import com.atlasdblite.security.CryptoManager;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AnalyticsTest {
+
+    private static final String TEST_DB_DIR = "analytics_test_db";
+    private GraphEngine engine;
+
+    @BeforeMethod
+    public void setup() {
+        deleteTestDir();
+        engine = new GraphEngine(TEST_DB_DIR);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        deleteTestDir();
+    }
+
+    private void deleteTestDir() {
+        try {
+            if (Files.exists(Paths.get(TEST_DB_DIR))) {
+                Files.walk(Paths.get(TEST_DB_DIR))
+                    .sorted(Comparator.reverseOrder())
+                    .map(java.nio.file.Path::toFile)
+                    .forEach(File::delete);
+            }
+        } catch (Exception ignored) {}
+    }
+
+    private void link(String from, String to, double weight) {
+        Map<String, Object> props = new HashMap<>();
+        props.put("w", weight);
+        engine.persistRelation(from, to, "LINK", props);
+    }
+
+    @Test
+    public void testProjectionIsCsrAndVersioned() {
+        for (String id : new String[]{"a", "b", "c", "d"}) engine.persistNode(new Node(id, "V"));
+        link("a", "b", 2.0);
+        link("a", "c", 3.0);
+        link("b", "c", 1.0);
+        engine.persistRelation("c", "a", "LINK");
+
+        GraphProjection g = engine.getProjection("w");
+        Assert.assertEquals(g.size(), 4);
+        Assert.assertEquals(g.edgeCount(), 4);
+        int a = g.indexOf("a"), c = g.indexOf("c");
+        Assert.assertEquals(g.outDegree(a), 2);
+        Assert.assertEquals(g.inDegree(c), 2);
+        Assert.assertEquals(g.outDegree(g.indexOf("d")), 0);
+        Assert.assertEquals(g.indexOf("missing"), -1);
+
+        double weightIntoC = 0;
+        for (int e = g.inOffsets()[c]; e < g.inOffsets()[c + 1]; e++) weightIntoC += g.inWeights()[e];
+        Assert.assertEquals(weightIntoC, 4.0);
+        // Missing weight property counts as 1.0
+        Assert.assertEquals(g.outWeights()[g.outOffsets()[c]], 1.0);
+
+        // Cached until the topology changes
+        Assert.assertSame(engine.getProjection("w"), g);
+        engine.updateNode("a", "colour", "red");
+        Assert.assertSame(engine.getProjection("w"), g);
+        engine.deleteRelation("c", "a", "LINK");
+        GraphProjection rebuilt = engine.getProjection("w");
+        Assert.assertNotSame(rebuilt, g);
+        Assert.assertEquals(rebuilt.edgeCount(), 3);
+    }
+
+    @Test
+    public void testBuilderDropsEdgesToMissingNodes() {
+        GraphProjection.Builder b = new GraphProjection.Builder(null, 0);
+        b.addRelation(new Relation("x", "ghost", "T"));
+        b.addNode("x");
+        b.addRelation(new Relation("y", "x", "T"));
+        b.addNode("y");
+        GraphProjection g = b.build();
+        Assert.assertEquals(g.size(), 2);
+        Assert.assertEquals(g.edgeCount(), 1);
+        Assert.assertEquals(g.idOf(g.outTargets()[0]), "x");
+        Assert.assertFalse(g.isWeighted());
+    }
+
+    @Test
+    public void testPageRankRunsOnProjection() {
+        for (String id : new String[]{"hub", "s1", "s2", "s3"}) engine.persistNode(new Node(id, "V"));
+        engine.persistRelation("s1", "hub", "LINK");
+        engine.persistRelation("s2", "hub", "LINK");
+        engine.persistRelation("s3", "hub", "LINK");
+        engine.persistRelation("hub", "s1", "LINK");
+
+        Map<String, Double> scores = engine.calculatePageRank(30, 0.85);
+        Assert.assertEquals(scores.get("hub"), 10.0, 1e-9);
+        Assert.assertTrue(scores.get("s1") > scores.get("s2"));
+        Assert.assertEquals(scores.get("s2"), scores.get("s3"), 1e-12);
+    }
+
+    @Test
+    public void testPageRankConvergesAndConservesMass() throws Exception {
+        // Chain with a dangling tail: a -> b -> c, plus an isolated node
+        for (String id : new String[]{"a", "b", "c", "lonely"}) engine.persistNode(new Node(id, "V"));
+        engine.persistRelation("a", "b", "LINK");
+        engine.persistRelation("b", "c", "LINK");
+
+        GraphProjection g = engine.getProjection(null);
+        PageRank.Result serial = new PageRank().tolerance(1e-10).threads(1).run(g);
+        PageRank.Result parallel = new PageRank().tolerance(1e-10).threads(3).run(g);
+
+        Assert.assertTrue(serial.converged);
+        Assert.assertTrue(serial.residual < 1e-10);
+        double sum = 0;
+        for (double r : serial.ranks) sum += r;
+        Assert.assertEquals(sum, 1.0, 1e-9);
+        for (int v = 0; v < g.size(); v++) Assert.assertEquals(parallel.ranks[v], serial.ranks[v], 1e-12);
+        Assert.assertTrue(serial.ranks[g.indexOf("c")] > serial.ranks[g.indexOf("b")]);
+
+        PageRank.Result capped = new PageRank().tolerance(1e-15).maxIterations(2).run(g);
+        Assert.assertEquals(capped.iterations, 2);
+        Assert.assertFalse(capped.converged);
+    }
+
+    @Test
+    public void testWeightedPageRankFollowsHeavierEdges() throws Exception {
+        for (String id : new String[]{"src", "light", "heavy"}) engine.persistNode(new Node(id, "V"));
+        link("src", "light", 1.0);
+        link("src", "heavy", 9.0);
+
+        PageRank.Result unweighted = new PageRank().run(engine.getProjection(null));
+        GraphProjection weighted = engine.getProjection("w");
+        PageRank.Result result = new PageRank().run(weighted);
+
+        GraphProjection plain = engine.getProjection(null);
+        Assert.assertEquals(unweighted.ranks[plain.indexOf("light")], unweighted.ranks[plain.indexOf("heavy")], 1e-12);
+        Assert.assertTrue(result.ranks[weighted.indexOf("heavy")] > result.ranks[weighted.indexOf("light")]);
+    }
+
+    @Test
+    public void testAsyncPageRankPublishesScores() throws Exception {
+        for (String id : new String[]{"x", "y"}) engine.persistNode(new Node(id, "V"));
+        engine.persistRelation("x", "y", "LINK");
+        Assert.assertTrue(engine.getPageRankScores().isEmpty());
+
+        PageRank.Result result = engine.computePageRankAsync(new PageRank(), null).get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(result.converged);
+        Assert.assertFalse(engine.isPageRankRunning());
+        Assert.assertEquals(engine.getPageRankScores().get("y"), 10.0, 1e-9);
+        Assert.assertTrue(engine.getPageRankScores().get("x") < 10.0);
+    }
+
+    @Test
+    public void testLivePageRankTracksMutations() throws Exception {
+        for (int i = 0; i < 30; i++) engine.persistNode(new Node("n" + i, "V"));
+        for (int i = 0; i < 30; i++) {
+            engine.persistRelation("n" + i, "n" + ((i + 1) % 30), "LINK");
+            if (i % 3 == 0) engine.persistRelation("n" + i, "n0", "LINK");
+        }
+        engine.runPageRank(new PageRank().tolerance(1e-10), null);
+        double before = engine.getPageRankScores().get("n15");
+
+        // Mutations are reflected without another analyze run
+        engine.persistNode(new Node("fan", "V"));
+        engine.persistRelation("fan", "n15", "LINK");
+        engine.persistRelation("n7", "n15", "LINK");
+        engine.persistRelation("n20", "n15", "LINK");
+        engine.persistRelation("n3", "n0", "LINK"); // a duplicate: the delete drops both copies
+        engine.deleteRelation("n3", "n0", "LINK");
+        engine.deleteNode("n9");
+        Map<String, Double> live = engine.getPageRankScores();
+        Assert.assertTrue(live.get("n15") > before);
+        Assert.assertFalse(live.containsKey("n9"));
+        Assert.assertTrue(live.containsKey("fan"));
+        Assert.assertTrue(engine.getPageRankErrorBound() < 1e-3);
+
+        engine.setIncrementalPageRank(false);
+        engine.runPageRank(new PageRank().tolerance(1e-10), null);
+        Map<String, Double> exact = engine.getPageRankScores();
+        Assert.assertEquals(live.size(), exact.size());
+        for (Map.Entry<String, Double> e : exact.entrySet())
+            Assert.assertEquals(live.get(e.getKey()), e.getValue(), 0.01, e.getKey());
+
+        // Weighted or disabled runs are not maintained
+        engine.persistRelation("n1", "n2", "LINK");
+        Assert.assertSame(engine.getPageRankScores(), exact);
+        Assert.assertEquals(engine.getPageRankErrorBound(), -1.0);
+    }
+
+    @Test
+    public void testPersonalizedPageRankStaysNearSeed() {
+        // Two rings joined by a single bridge a3 -> b0
+        for (int i = 0; i < 6; i++) {
+            engine.persistNode(new Node("a" + i, "A"));
+            engine.persistNode(new Node("b" + i, "B"));
+        }
+        for (int i = 0; i < 6; i++) {
+            engine.persistRelation("a" + i, "a" + ((i + 1) % 6), "LINK");
+            engine.persistRelation("b" + i, "b" + ((i + 1) % 6), "LINK");
+        }
+        engine.persistRelation("a3", "b0", "LINK");
+
+        PersonalizedPageRank.Result result = engine.personalizedPageRank(Collections.singletonList("a0"), 3, null);
+        Assert.assertEquals(result.hits.size(), 3);
+        Assert.assertEquals(result.hits.get(0).id, "a1");
+        for (PersonalizedPageRank.Hit hit : result.hits) {
+            Assert.assertTrue(hit.id.startsWith("a") && !hit.id.equals("a0"), hit.id);
+        }
+        Assert.assertTrue(result.certified);
+
+        // Matches a dense power iteration of the same walk within the reported residual
+        GraphProjection g = engine.getProjection(null);
+        double[] exact = new double[g.size()];
+        int seed = g.indexOf("a0");
+        exact[seed] = 1.0;
+        for (int it = 0; it < 300; it++) {
+            double[] next = new double[g.size()];
+            next[seed] += 0.15;
+            for (int u = 0; u < g.size(); u++)
+                for (int e = g.outOffsets()[u]; e < g.outOffsets()[u + 1]; e++)
+                    next[g.outTargets()[e]] += 0.85 * exact[u] / g.outDegree(u);
+            exact = next;
+        }
+        for (PersonalizedPageRank.Hit hit : result.hits) {
+            double truth = exact[g.indexOf(hit.id)];
+            Assert.assertTrue(hit.score <= truth + 1e-9);
+            Assert.assertTrue(truth - hit.score <= result.residual + 1e-9);
+        }
+
+        try {
+            engine.personalizedPageRank(Collections.singletonList("ghost"), 3, null);
+            Assert.fail("Unknown seed should be rejected");
+        } catch (IllegalArgumentException expected) {}
+        try {
+            engine.personalizedPageRank(Collections.singletonList("a0"), 0, null);
+            Assert.fail("k below 1 should be rejected");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void testComponentsAndCores() throws Exception {
+        // Cycle a->b->c->a with a tail c->d, a separate pair e->f, and an isolated g
+        for (String id : new String[]{"a", "b", "c", "d", "e", "f", "g"}) engine.persistNode(new Node(id, "V"));
+        engine.persistRelation("a", "b", "LINK");
+        engine.persistRelation("b", "c", "LINK");
+        engine.persistRelation("c", "a", "LINK");
+        engine.persistRelation("c", "d", "LINK");
+        engine.persistRelation("e", "f", "LINK");
+
+        Components.Result wcc = engine.components(Components.Kind.WCC);
+        Assert.assertEquals(wcc.count, 3);
+        Assert.assertEquals(wcc.sizes, new int[]{4, 2, 1});
+        Assert.assertEquals(wcc.valueOf("d"), wcc.valueOf("a"));
+        Assert.assertNotEquals(wcc.valueOf("e"), wcc.valueOf("a"));
+        Assert.assertSame(engine.components(Components.Kind.WCC), wcc);
+
+        Components.Result scc = engine.components(Components.Kind.SCC);
+        Assert.assertEquals(scc.count, 5);
+        Assert.assertEquals(scc.sizes[0], 3);
+        Assert.assertEquals(scc.valueOf("b"), scc.valueOf("c"));
+        Assert.assertNotEquals(scc.valueOf("d"), scc.valueOf("c"));
+
+        Components.Result cores = engine.components(Components.Kind.KCORE);
+        Assert.assertEquals(cores.count, 2);
+        Assert.assertEquals(cores.valueOf("a"), 2);
+        Assert.assertEquals(cores.valueOf("d"), 1);
+        Assert.assertEquals(cores.valueOf("g"), 0);
+
+        // Pathfinding is pruned across components and follows direction within one
+        Assert.assertEquals(engine.findShortestPath("a", "d", 10), Arrays.asList("a", "b", "c", "d"));
+        Assert.assertTrue(engine.findShortestPath("a", "f", 10).isEmpty());
+        Assert.assertTrue(engine.findShortestPath("a", "d", 2).isEmpty());
+
+        Assert.assertEquals(engine.storeComponents(wcc, "component"), 7);
+        Assert.assertEquals(engine.getNode("f").getProperties().get("component"), (long) wcc.valueOf("f"));
+
+        // A cancelled pass fails instead of caching a partial result for pathfinding
+        engine.persistRelation("d", "e", "LINK");
+        Thread.currentThread().interrupt();
+        try {
+            engine.components(Components.Kind.WCC);
+            Assert.fail("Expected InterruptedException");
+        } catch (InterruptedException expected) {
+            // interrupt flag is cleared below
+        } finally {
+            Thread.interrupted();
+        }
+        Assert.assertEquals(engine.components(Components.Kind.WCC).count, 2);
+        Assert.assertEquals(engine.findShortestPath("a", "f", 10), Arrays.asList("a", "b", "c", "d", "e", "f"));
+
+        // Parallel passes agree with single-threaded runs on larger graphs
+        Random rnd = new Random(7);
+        GraphProjection.Builder b = new GraphProjection.Builder(null, 0);
+        for (int i = 0; i < 20000; i++) b.addNode("v" + i);
+        for (int i = 0; i < 15000; i++) b.addRelation(new Relation("v" + rnd.nextInt(20000), "v" + rnd.nextInt(20000), "T"));
+        GraphProjection big = b.build();
+        Assert.assertEquals(Components.weak(big, 8).values, Components.weak(big, 1).values);
+
+        b = new GraphProjection.Builder(null, 0);
+        for (int i = 0; i < 20000; i++) b.addNode("v" + i);
+        for (int i = 0; i < 40000; i++) b.addRelation(new Relation("v" + rnd.nextInt(20000), "v" + rnd.nextInt(20000), "T"));
+        for (int i = 0; i < 200; i++) b.addRelation(new Relation("v" + i, "v" + i, "T"));
+        GraphProjection dense = b.build();
+        Components.Result strong = Components.strong(dense, 1);
+        Assert.assertTrue(strong.sizes[0] > 1000);
+        Assert.assertEquals(Components.strong(dense, 8).values, strong.values);
+        Components.Result peeled = Components.cores(dense, 8), buckets = Components.cores(dense, 1);
+        Assert.assertEquals(peeled.values, buckets.values);
+        Assert.assertEquals(peeled.sizes, buckets.sizes);
+
+        // Every pass reports each vertex once as progress
+        for (int threads : new int[]{1, 8}) {
+            JobControl weakControl = new JobControl(), strongControl = new JobControl(), coreControl = new JobControl();
+            Components.weak(dense, threads, weakControl);
+            Components.strong(dense, threads, strongControl);
+            Components.cores(dense, threads, coreControl);
+            for (JobControl control : new JobControl[]{weakControl, strongControl, coreControl}) {
+                Assert.assertEquals(control.getTotal(), 20000);
+                Assert.assertEquals(control.getDone(), 20000);
+            }
+        }
+    }
+
+    @Test
+    public void testCommunitiesSplitTwoCliques() throws Exception {
+        // Two 5-cliques joined by a single bridge
+        for (int i = 0; i < 10; i++) engine.persistNode(new Node("c" + i, "V"));
+        for (int base = 0; base < 10; base += 5)
+            for (int i = base; i < base + 5; i++)
+                for (int j = i + 1; j < base + 5; j++)
+                    engine.persistRelation("c" + i, "c" + j, "LINK");
+        engine.persistRelation("c4", "c5", "LINK");
+
+        for (String method : new String[]{"louvain", "lpa"}) {
+            Communities.Result result = engine.detectCommunities(method);
+            Assert.assertEquals(result.count, 2, method);
+            Assert.assertEquals(result.sizes, new int[]{5, 5}, method);
+            Assert.assertEquals(result.communityOf("c0"), result.communityOf("c4"), method);
+            Assert.assertNotEquals(result.communityOf("c0"), result.communityOf("c9"), method);
+            // 21 edges: each side holds 10 internal edges and half of the degree
+            Assert.assertEquals(result.modularity, 2 * (10.0 / 21 - 0.25), 1e-9, method);
+            Assert.assertSame(engine.getCommunities(), result);
+        }
+
+        // Everything in one community has modularity 0
+        GraphProjection g = engine.getProjection(null);
+        Assert.assertEquals(Communities.modularity(g, new int[g.size()]), 0.0, 1e-12);
+    }
+
+    @Test
+    public void testBetweennessExactSampledAndCancellable() throws Exception {
+        // Chain a -> b -> c -> d: b and c each sit on two shortest paths
+        for (String id : new String[]{"a", "b", "c", "d"}) engine.persistNode(new Node(id, "V"));
+        engine.persistRelation("a", "b", "LINK");
+        engine.persistRelation("b", "c", "LINK");
+        engine.persistRelation("c", "d", "LINK");
+        Betweenness.Result exact = engine.betweenness(new Betweenness().threads(2), new JobControl());
+        GraphProjection g = exact.getGraph();
+        Assert.assertTrue(exact.exact);
+        Assert.assertEquals(exact.scores[g.indexOf("b")], 2.0, 1e-9);
+        Assert.assertEquals(exact.scores[g.indexOf("c")], 2.0, 1e-9);
+        Assert.assertEquals(exact.scores[g.indexOf("a")], 0.0, 1e-9);
+        Assert.assertEquals(exact.normalized[g.indexOf("b")], 2.0 / 6, 1e-9);
+
+        // Sampled estimates stay within the reported bound of the exact scores
+        GraphProjection.Builder b = new GraphProjection.Builder(null, 0);
+        Random rnd = new Random(3);
+        for (int i = 0; i < 300; i++) b.addNode("r" + i);
+        for (int i = 0; i < 1200; i++) b.addRelation(new Relation("r" + rnd.nextInt(300), "r" + rnd.nextInt(300), "T"));
+        GraphProjection big = b.build();
+        Betweenness.Result full = new Betweenness().exact().run(big, new JobControl());
+        Betweenness.Result sampled = new Betweenness().samples(150).threads(4).run(big, new JobControl());
+        Assert.assertFalse(sampled.exact);
+        Assert.assertTrue(sampled.errorBound > 0);
+        for (int v = 0; v < big.size(); v++)
+            Assert.assertTrue(Math.abs(sampled.normalized[v] - full.normalized[v]) <= sampled.errorBound);
+
+        JobControl cancelled = new JobControl();
+        cancelled.cancel();
+        try {
+            new Betweenness().exact().run(big, cancelled);
+            Assert.fail("Cancelled job should stop");
+        } catch (CancellationException expected) {}
+
+        JobControl job = engine.computeBetweennessAsync(new Betweenness());
+        while (engine.isBetweennessRunning()) Thread.sleep(5);
+        Assert.assertEquals(job.progress(), 1.0);
+        Assert.assertEquals(engine.getBetweenness().scores[engine.getBetweenness().getGraph().indexOf("c")], 2.0, 1e-9);
+    }
+
+    @Test
+    public void testTrianglesAndClustering() throws Exception {
+        // K4 on a..d with mixed directions, a duplicate reverse edge, a self-loop and a pendant e
+        for (String id : new String[]{"a", "b", "c", "d", "e"}) engine.persistNode(new Node(id, "V"));
+        engine.persistRelation("a", "b", "LINK");
+        engine.persistRelation("b", "a", "LINK");
+        engine.persistRelation("c", "a", "LINK");
+        engine.persistRelation("a", "d", "LINK");
+        engine.persistRelation("b", "c", "LINK");
+        engine.persistRelation("d", "b", "LINK");
+        engine.persistRelation("c", "d", "LINK");
+        engine.persistRelation("c", "c", "LINK");
+        engine.persistRelation("d", "e", "LINK");
+
+        Triangles.Result exact = engine.triangles(0);
+        GraphProjection g = exact.getGraph();
+        Assert.assertEquals(exact.triangles, 4.0);
+        Assert.assertEquals(exact.perVertex[g.indexOf("a")], 3);
+        Assert.assertEquals(exact.perVertex[g.indexOf("e")], 0);
+        Assert.assertEquals(exact.clustering[g.indexOf("a")], 1.0, 1e-12);
+        Assert.assertEquals(exact.clustering[g.indexOf("d")], 0.5, 1e-12); // 3 of C(4,2) pairs closed
+        Assert.assertEquals(exact.wedges, 3 * 3 + 6 + 0);
+        Assert.assertEquals(exact.transitivity, 12.0 / 15, 1e-12);
+
+        // Parallel exact count and wedge sampling agree on a larger random graph
+        GraphProjection.Builder b = new GraphProjection.Builder(null, 0);
+        Random rnd = new Random(11);
+        for (int i = 0; i < 2000; i++) b.addNode("t" + i);
+        for (int i = 0; i < 20000; i++) b.addRelation(new Relation("t" + rnd.nextInt(2000), "t" + rnd.nextInt(200), "T"));
+        GraphProjection big = b.build();
+        Triangles.Result parallel = Triangles.exact(big, 4);
+        Triangles.Result serial = Triangles.exact(big, 1);
+        Assert.assertEquals(parallel.triangles, serial.triangles);
+        Assert.assertEquals(parallel.perVertex, serial.perVertex);
+        Triangles.Result estimate = Triangles.sampled(big, 50000, 5);
+        Assert.assertEquals(estimate.wedges, serial.wedges);
+        Assert.assertEquals(estimate.transitivity, serial.transitivity, estimate.errorBound);
+    }
+
+    @Test
+    public void testJobsPersistResultsAcrossRestart() throws Exception {
+        for (String id : new String[]{"a", "b", "c", "d"}) engine.persistNode(new Node(id, "V"));
+        engine.persistRelation("a", "b", "LINK");
+        engine.persistRelation("b", "c", "LINK");
+        engine.persistRelation("c", "a", "LINK");
+        engine.persistRelation("d", "c", "LINK");
+
+        JobScheduler.Job<?> rank = engine.submitJob("pagerank", Collections.emptyMap());
+        rank.future().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(rank.getState(), JobScheduler.State.DONE);
+        Assert.assertEquals(rank.progress(), 1.0);
+        Assert.assertEquals(rank.getSummary().get("converged"), true);
+        JobScheduler.Job<?> scc = engine.submitJob("scc", Collections.emptyMap());
+        scc.future().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(engine.getJobResult(scc.getId()).valueOf("a"), 0.0);
+        Assert.assertEquals(engine.getJobResult(scc.getId()).size(), 4);
+        try {
+            engine.submitJob("nope", Collections.emptyMap());
+            Assert.fail("Unknown job type should be rejected");
+        } catch (IllegalArgumentException expected) {}
+
+        Map<String, Double> scores = engine.getPageRankScores();
+        engine = new GraphEngine(TEST_DB_DIR);
+        Assert.assertEquals(engine.getPageRankScores().keySet(), scores.keySet());
+        for (String id : scores.keySet())
+            Assert.assertEquals(engine.getPageRankScores().get(id), scores.get(id), 1e-9);
+        Assert.assertEquals(engine.listJobs().size(), 2);
+        Assert.assertEquals(engine.getJob(scc.getId()).getState(), JobScheduler.State.DONE);
+        JobResult restored = engine.getJobResult(scc.getId());
+        Assert.assertEquals(restored.valueOf("a"), restored.valueOf("c"));
+        Assert.assertNotEquals(restored.valueOf("a"), restored.valueOf("d"));
+        Assert.assertTrue(engine.submitJob("wcc", Collections.emptyMap()).getId() > scc.getId());
+    }
+
+    @Test
+    public void testJobCancellation() throws Exception {
+        new File(TEST_DB_DIR).mkdirs();
+        JobScheduler scheduler = new JobScheduler(new CryptoManager(), TEST_DB_DIR, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        JobScheduler.Job<Integer> running = scheduler.submit("spin", Collections.emptyMap(), control -> {
+            started.countDown();
+            while (true) {
+                control.checkpoint();
+                Thread.sleep(1);
+            }
+        }, null);
+        JobScheduler.Job<Integer> queued = scheduler.submit("next", Collections.emptyMap(), control -> 1, null);
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(running.getState(), JobScheduler.State.RUNNING);
+        Assert.assertEquals(queued.getState(), JobScheduler.State.QUEUED);
+
+        Assert.assertTrue(scheduler.cancel(queued.getId()));
+        Assert.assertEquals(queued.getState(), JobScheduler.State.CANCELLED);
+        Assert.assertTrue(scheduler.cancel(running.getId()));
+        try {
+            running.future().get(10, TimeUnit.SECONDS);
+            Assert.fail("Cancelled job should not complete normally");
+        } catch (CancellationException expected) {}
+        Assert.assertEquals(running.getState(), JobScheduler.State.CANCELLED);
+        Assert.assertFalse(scheduler.cancel(running.getId()));
+
+        // A task that returns normally after cancel() still ends cancelled, with nothing saved
+        CountDownLatch spinning = new CountDownLatch(1);
+        JobScheduler.Job<Integer> stubborn = scheduler.submit("stubborn", Collections.emptyMap(), control -> {
+            spinning.countDown();
+            while (!control.isCancelled()) Thread.onSpinWait();
+            return 7;
+        }, r -> new JobResult(Collections.singletonMap("value", r)));
+        Assert.assertTrue(spinning.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(scheduler.cancel(stubborn.getId()));
+        try {
+            stubborn.future().get(10, TimeUnit.SECONDS);
+            Assert.fail("Cancelled job should not complete normally");
+        } catch (CancellationException expected) {}
+        Assert.assertEquals(stubborn.getState(), JobScheduler.State.CANCELLED);
+        Assert.assertFalse(stubborn.hasResult());
+        Assert.assertNull(scheduler.result(stubborn.getId()));
+    }
+
+    @Test
+    public void testRandomWalksAndNode2vec() throws Exception {
+        // Two 8-cliques joined by one bridge a0 - b0
+        for (String c : new String[]{"a", "b"})
+            for (int i = 0; i < 8; i++) {
+                Node n = new Node(c + i, "V");
+                n.addProperty(Featurizer.FLAG, true);
+                engine.persistNode(n);
+                for (int j = 0; j < i; j++) engine.persistRelation(c + j, c + i, "LINK");
+            }
+        engine.persistRelation("a0", "b0", "LINK");
+        GraphProjection g = engine.getProjection(null);
+
+        // Every step follows a relation (either way), and the corpus does not depend on the thread count
+        RandomWalks walks = new RandomWalks().length(20).walksPerNode(30).p(0.5).q(2).seed(3);
+        List<String> serial = readWalks(walks.threads(1), g);
+        List<String> parallel = readWalks(walks.threads(4), g);
+        Assert.assertEquals(serial.size(), 16 * 30);
+        Assert.assertEquals(parallel, serial);
+        for (String walk : serial) {
+            String[] steps = walk.split(" ");
+            Assert.assertEquals(steps.length, 20);
+            for (int s = 1; s < steps.length; s++) {
+                String x = steps[s - 1], y = steps[s];
+                boolean sameClique = x.charAt(0) == y.charAt(0) && !x.equals(y);
+                boolean bridge = (x.equals("a0") && y.equals("b0")) || (x.equals("b0") && y.equals("a0"));
+                Assert.assertTrue(sameClique || bridge, x + " -> " + y);
+            }
+        }
+
+        // Embeddings put clique members closer to each other than to the other clique
+        SkipGram.Result result = engine.node2vec(walks.threads(2), new SkipGram().epochs(5).threads(1), new JobControl());
+        Assert.assertEquals(result.size(), 16);
+        Map<String, Integer> row = new HashMap<>();
+        for (int i = 0; i < result.size(); i++) row.put(result.idAt(i), i);
+        double within = 0, across = 0;
+        for (int i = 1; i < 8; i++)
+            for (int j = 1; j < 8; j++) {
+                if (i != j) within += result.cosine(row.get("a" + i), row.get("a" + j));
+                across += result.cosine(row.get("a" + i), row.get("b" + j));
+            }
+        Assert.assertTrue(within / 42 > across / 49 + 0.2, "within " + within / 42 + ", across " + across / 49);
+
+        // Stored embeddings replace hashed features in the vector index
+        Assert.assertEquals(engine.storeEmbeddings(result, Featurizer.EMBEDDING), 16);
+        byte[] stored = (byte[]) engine.getNode("a3").getProperties().get(Featurizer.EMBEDDING);
+        Assert.assertEquals(Featurizer.toFloats(stored), result.vector(row.get("a3")));
+        for (SearchHit hit : engine.similar("a3", 5))
+            Assert.assertEquals(hit.node.getId().charAt(0), 'a');
+
+        // Threads train disjoint runs of walks: every word is seen once per epoch
+        File corpus = File.createTempFile("walks", ".bin");
+        try {
+            try (OutputStream out = new FileOutputStream(corpus)) {
+                walks.walksPerNode(200).write(g, out, new JobControl());
+            }
+            SkipGram.Result sliced = new SkipGram().epochs(2).threads(4).train(corpus, new JobControl());
+            Assert.assertEquals(sliced.getTrainedWords(), 2L * 16 * 200 * 20);
+            try {
+                new SkipGram().dimensions(Integer.MAX_VALUE / 8).train(corpus, new JobControl());
+                Assert.fail("A weight matrix past the array limit should be rejected");
+            } catch (IllegalArgumentException expected) {}
+        } finally {
+            corpus.delete();
+        }
+    }
+
+    private static List<String> readWalks(RandomWalks walks, GraphProjection g) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        walks.write(g, out, new JobControl());
+        List<String> result = new ArrayList<>();
+        try (RandomWalks.Reader reader = new RandomWalks.Reader(new ByteArrayInputStream(out.toByteArray()))) {
+            while (reader.next()) {
+                StringBuilder walk = new StringBuilder();
+                for (int s = 0; s < reader.length(); s++)
+                    walk.append(s > 0 ? " " : "").append(reader.getIds()[reader.walk()[s]]);
+                result.add(walk.toString());
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
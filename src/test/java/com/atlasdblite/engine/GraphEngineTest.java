@@ -1,6 +1,9 @@
 package com.atlasdblite.engine;
 
 import com.atlasdblite.models.Node;
+import com.atlasdblite.models.Relation;
+import com.atlasdblite.query.Aggregation;
+import com.atlasdblite.query.Condition;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -9,8 +12,14 @@ import org.testng.annotations.Test;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 public class GraphEngineTest {
 
@@ -76,4 +85,497 @@ public class GraphEngineTest {
         
         Assert.assertTrue(engine.traverse("A", "PARENT_OF").isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testKHopExpansion() {
+        for (String id : new String[]{"a", "b", "c", "d", "x"}) engine.persistNode(new Node(id, "Hop"));
+        engine.persistRelation("a", "b", "NEXT");
+        engine.persistRelation("b", "c", "NEXT");
+        engine.persistRelation("c", "d", "NEXT");
+        engine.persistRelation("c", "a", "NEXT"); // cycle back to the seed
+        engine.persistRelation("a", "x", "OTHER");
+
+        List<String> within2 = new ArrayList<>();
+        engine.expand(Collections.singletonList("a"), 1, 2, Collections.singletonList("NEXT"), null).forEachRemaining(within2::add);
+        Assert.assertEquals(within2, Arrays.asList("b", "c"));
+
+        List<String> exactly3 = new ArrayList<>();
+        engine.expand(Collections.singletonList("a"), 3, 3, null, null).forEachRemaining(exactly3::add);
+        Assert.assertEquals(exactly3, Collections.singletonList("d"));
+
+        engine.checkpoint();
+        GraphEngine reloaded = new GraphEngine(TEST_DB_DIR);
+        List<String> all = new ArrayList<>();
+        reloaded.expand(Collections.singletonList("a"), 0, 10, null, null).forEachRemaining(all::add);
+        Assert.assertEquals(all.size(), 5);
+    }
+
+    @Test
+    public void testQueryCacheInvalidation() {
+        Node u = new Node("u1", "User");
+        u.addProperty("age", "30");
+        engine.persistNode(u);
+        Condition adults = new Condition("age", ">", "20");
+        QueryCache cache = engine.getQueryCache();
+
+        Assert.assertEquals(engine.select("User", adults).size(), 1);
+        Assert.assertEquals(engine.select("user", adults).size(), 1);
+        Assert.assertEquals(cache.getHits(), 1);
+
+        // Writes to other labels or unrelated keys keep the entry
+        engine.persistNode(new Node("s1", "Server"));
+        engine.updateNode("u1", "name", "Alice");
+        Assert.assertEquals(engine.select("User", adults).get(0).getProperties().get("name"), "Alice");
+        Assert.assertEquals(cache.getHits(), 2);
+
+        // Writing the filtered key invalidates it
+        engine.updateNode("u1", "age", "10");
+        Assert.assertTrue(engine.select("User", adults).isEmpty());
+        Assert.assertEquals(cache.getHits(), 2);
+
+        // Traversals depend on relations of their type only
+        engine.persistNode(new Node("u2", "User"));
+        Assert.assertTrue(engine.traverse("u1", "KNOWS").isEmpty());
+        engine.persistRelation("u1", "s1", "OWNS");
+        Assert.assertTrue(engine.traverse("u1", "KNOWS").isEmpty());
+        engine.persistRelation("u1", "u2", "KNOWS");
+        Assert.assertEquals(engine.traverse("u1", "KNOWS").size(), 1);
+    }
+
+    @Test
+    public void testTypedPropertiesSurviveWalReplayAndReload() {
+        Node n = new Node("t1", "Typed");
+        n.addProperty("count", 42L);
+        n.addProperty("ratio", 0.5);
+        n.addProperty("active", true);
+        n.addProperty("blob", new byte[] {1, 2, 3});
+        n.addProperty("mixed", Arrays.asList("a", 7L));
+        engine.persistNode(n);
+
+        // Recovered from the WAL only
+        Node replayed = new GraphEngine(TEST_DB_DIR).getNode("t1");
+        Assert.assertEquals(replayed.getProperties().get("count"), 42L);
+        Assert.assertEquals(replayed.getProperties().get("ratio"), 0.5);
+        Assert.assertEquals(replayed.getProperties().get("active"), Boolean.TRUE);
+        Assert.assertEquals((byte[]) replayed.getProperties().get("blob"), new byte[] {1, 2, 3});
+        Assert.assertEquals(replayed.getProperties().get("mixed"), Arrays.asList("a", 7L));
+
+        // Loaded from the segment file
+        engine.checkpoint();
+        Node loaded = new GraphEngine(TEST_DB_DIR).getNode("t1");
+        Assert.assertEquals(loaded.getProperties().get("count"), 42L);
+        Assert.assertEquals(loaded.getProperties().get("active"), Boolean.TRUE);
+
+        Assert.assertTrue(new Condition("count", ">", "41.5").test(loaded));
+        Assert.assertTrue(new Condition("count", "=", "42").test(loaded));
+        Assert.assertTrue(new Condition("active", "=", "TRUE").test(loaded));
+        Assert.assertFalse(new Condition("ratio", "<", "abc").test(loaded));
+    }
+
+    @Test
+    public void testWeightedPathUsesTypedWeights() {
+        for (String id : new String[]{"s", "m", "e"}) engine.persistNode(new Node(id, "Stop"));
+        Map<String, Object> heavy = new HashMap<>();
+        heavy.put("km", 10.0);
+        Map<String, Object> light = new HashMap<>();
+        light.put("km", 2L);
+        engine.persistRelation("s", "e", "ROAD", heavy);
+        engine.persistRelation("s", "m", "ROAD", light);
+        engine.persistRelation("m", "e", "ROAD", new HashMap<>(light));
+
+        GraphEngine.PathResult shortest = engine.findWeightedPath("s", "e", "km", true);
+        Assert.assertEquals(shortest.path, Arrays.asList("s", "m", "e"));
+        Assert.assertEquals(shortest.totalCost, 4.0);
+
+        GraphEngine.PathResult heaviest = engine.findWeightedPath("s", "e", "km", false);
+        Assert.assertEquals(heaviest.path, Arrays.asList("s", "e"));
+        Assert.assertNull(engine.findWeightedPath("e", "s", "km", true));
+    }
+
+    @Test
+    public void testAggregationPushdownAndCatalogCounts() {
+        for (int i = 0; i < 40; i++) {
+            Node n = new Node("p" + i, i % 4 == 0 ? "Admin" : "User");
+            n.addProperty("age", (long) (20 + i));
+            n.addProperty("city", i % 2 == 0 ? "Oslo" : "Rome");
+            engine.persistNode(n);
+        }
+        for (int i = 0; i < 39; i++) {
+            Map<String, Object> props = new HashMap<>();
+            props.put("weight", (double) i);
+            engine.persistRelation("p" + i, "p" + (i + 1), i % 3 == 0 ? "OWNS" : "KNOWS", props);
+        }
+
+        Assert.assertEquals(engine.aggregate(Aggregation.parse("count(*) User")).get(Aggregation.ALL), 30L);
+        Assert.assertEquals(engine.aggregate(Aggregation.parse("count(*) [owns]")).get(Aggregation.ALL), 13L);
+        Assert.assertEquals(engine.aggregate(Aggregation.parse("sum(age) * where city = Oslo")).get(Aggregation.ALL), 780.0);
+        Assert.assertEquals(engine.aggregate(Aggregation.parse("max(age) Admin")).get(Aggregation.ALL), 56.0);
+        Assert.assertEquals(engine.aggregate(Aggregation.parse("avg(weight) [OWNS]")).get(Aggregation.ALL), 18.0);
+
+        Map<String, Number> byLabel = engine.aggregate(Aggregation.parse("count(*) * group by label"));
+        Assert.assertEquals(byLabel.get("Admin"), 10L);
+        Assert.assertEquals(byLabel.get("User"), 30L);
+        Map<String, Number> byCity = engine.aggregate(Aggregation.parse("min(age) User where age > 30 group by city"));
+        Assert.assertEquals(byCity.get("Oslo"), 34.0);
+        Assert.assertEquals(byCity.get("Rome"), 31.0);
+
+        // After a checkpoint a fresh engine answers counts from the catalog without loading shards
+        engine.checkpoint();
+        GraphEngine reopened = new GraphEngine(TEST_DB_DIR);
+        Assert.assertEquals(reopened.countNodes(), 40);
+        Assert.assertEquals(reopened.countRelations(), 39);
+        Assert.assertEquals(reopened.aggregate(Aggregation.parse("count(*) [*] group by type")).get("KNOWS"), 26L);
+        Assert.assertEquals(reopened.countNodesByLabel("admin"), 10);
+    }
+
+    @Test
+    public void testRankedTextSearch() {
+        Node alice = new Node("u1", "User");
+        alice.addProperty("name", "Alice Johnson");
+        alice.addProperty("bio", "Database engineer, loves graph databases");
+        engine.persistNode(alice);
+        Node bob = new Node("u2", "User");
+        bob.addProperty("name", "Bob Johnson");
+        engine.persistNode(bob);
+        Node server = new Node("s1", "Server");
+        server.addProperty("name", "Backup Server");
+        engine.persistNode(server);
+
+        // Both words matter: Alice outranks Bob even though both are Johnsons
+        List<SearchHit> hits = engine.searchTop("alice johnson", 10);
+        Assert.assertEquals(hits.get(0).node.getId(), "u1");
+        Assert.assertEquals(hits.size(), 2);
+
+        // Prefix on the last word, typo tolerance on any word
+        Assert.assertEquals(engine.searchTop("back", 5).get(0).node.getId(), "s1");
+        Assert.assertEquals(engine.searchTop("johnsen", 5).size(), 2);
+        Assert.assertEquals(engine.searchTop("alice johnson", 1).size(), 1);
+
+        // Maintained incrementally on update and delete
+        Node renamed = new Node("u2", "User");
+        renamed.addProperty("name", "Robert Smith");
+        engine.persistNode(renamed);
+        Assert.assertEquals(engine.searchTop("johnson", 5).size(), 1);
+        engine.deleteNode("s1");
+        Assert.assertTrue(engine.searchTop("backup", 5).isEmpty());
+
+        // Persisted next to the shard and reused after a restart: shards are scored from their
+        // sidecars, and only the one holding the hit is loaded
+        engine.checkpoint();
+        Assert.assertTrue(new File(TEST_DB_DIR, "part_" + GraphEngine.segmentIndex("u1") + ".idx").exists());
+        GraphEngine reopened = new GraphEngine(TEST_DB_DIR);
+        Assert.assertEquals(reopened.residentSegments(), 0);
+        Assert.assertEquals(reopened.searchTop("databse", 1).get(0).node.getId(), "u1");
+        Assert.assertEquals(reopened.residentSegments(), 1);
+        Assert.assertEquals(reopened.searchTop("databse", 5).get(0).node.getId(), "u1");
+        Assert.assertEquals(reopened.searchTop("rob", 5).get(0).node.getId(), "u2");
+    }
+
+    @Test
+    public void testGlobalIndexLoadsOnlyShardsWithHits() {
+        engine.setAutoIndexing(true);
+        for (int i = 0; i < 60; i++) {
+            Node n = new Node("c" + i, "City");
+            n.addProperty("country", i == 7 ? "Norway" : "Italy");
+            engine.persistNode(n);
+        }
+        Assert.assertEquals(engine.search("norway").size(), 1);
+        Assert.assertEquals(engine.countIndexed("ITALY"), 59);
+
+        // Updates move postings instead of leaving the old value behind
+        engine.updateNode("c7", "country", "Italy");
+        Assert.assertTrue(engine.search("Norway").isEmpty());
+        Assert.assertEquals(engine.countIndexed("italy"), 60);
+
+        // Binary values add no postings
+        Node blob = new Node("c0", "City");
+        blob.addProperty(Featurizer.EMBEDDING, new byte[Featurizer.DIMENSIONS * Float.BYTES]);
+        Assert.assertEquals(GlobalIndex.keysOf(blob), new java.util.HashSet<>(Arrays.asList("c0", "city")));
+        engine.checkpoint();
+
+        // The persisted index keeps indexing on after a restart and is reused without loading any shard
+        GraphEngine reopened = new GraphEngine(TEST_DB_DIR);
+        Assert.assertTrue(reopened.isAutoIndexing());
+        Assert.assertEquals(reopened.residentSegments(), 0);
+        Assert.assertEquals(reopened.countIndexed("italy"), 60);
+        Assert.assertEquals(reopened.search("c42").get(0).getId(), "c42");
+        Assert.assertEquals(reopened.residentSegments(), 1);
+
+        // Writes made before the index is opened are picked up when it is: the shard file is newer
+        GraphEngine lazy = new GraphEngine(TEST_DB_DIR);
+        lazy.persistNode(new Node("c99", "Village"));
+        lazy.checkpoint();
+        Assert.assertEquals(lazy.search("village").size(), 1);
+
+        // Turning indexing off deletes the persisted index
+        lazy.setAutoIndexing(false);
+        Assert.assertFalse(new GraphEngine(TEST_DB_DIR).isAutoIndexing());
+    }
+
+    @Test
+    public void testVectorIndexRecallAgainstBruteForce() {
+        new File(TEST_DB_DIR).mkdirs();
+        VectorIndex index = VectorIndex.open(new com.atlasdblite.security.CryptoManager(), TEST_DB_DIR, 16);
+        Random rnd = new Random(3);
+        List<float[]> data = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Node n = new Node("v" + i, "Item");
+            n.addProperty("group", "g" + rnd.nextInt(40));
+            n.addProperty("name", "item-" + rnd.nextInt(500));
+            n.addProperty(Featurizer.FLAG, "true");
+            index.update(null, n);
+            data.add(Featurizer.embed(n));
+        }
+        index.update(new Node("v0", "Item"), null);
+        Assert.assertEquals(index.size(), 2999);
+
+        int found = 0, queries = 50, k = 10;
+        for (int q = 0; q < queries; q++) {
+            float[] query = data.get(1 + rnd.nextInt(2999));
+            float[] exact = new float[data.size()];
+            for (int i = 0; i < exact.length; i++) exact[i] = i == 0 ? -1 : VectorIndex.dot(query, 0, data.get(i), 0);
+            float[] sorted = exact.clone();
+            Arrays.sort(sorted);
+            float kth = sorted[sorted.length - k];
+            for (VectorIndex.Hit hit : index.nearest(query, k)) {
+                Assert.assertNotEquals(hit.id, "v0");
+                if (hit.score >= kth - 1e-6) found++;
+            }
+        }
+        Assert.assertTrue(found >= queries * k * 0.9, "recall " + found / (double) (queries * k));
+    }
+
+    @Test
+    public void testVectorUpdatesAndTombstonesSurviveSave() {
+        new File(TEST_DB_DIR).mkdirs();
+        com.atlasdblite.security.CryptoManager crypto = new com.atlasdblite.security.CryptoManager();
+        VectorIndex index = VectorIndex.open(crypto, TEST_DB_DIR, 16);
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            Node n = new Node("v" + i, "Item");
+            n.addProperty("name", "item-" + i);
+            n.addProperty(Featurizer.FLAG, "true");
+            index.update(null, n);
+            nodes.add(n);
+        }
+        // Updates re-link in place; a few deletes stay below the compaction threshold
+        for (int i = 0; i < 200; i++) {
+            Node renamed = new Node("v" + i, "Item");
+            renamed.addProperty("name", "renamed-" + i);
+            renamed.addProperty(Featurizer.FLAG, "true");
+            index.update(nodes.get(i), renamed);
+            nodes.set(i, renamed);
+        }
+        for (int i = 350; i < 400; i++) index.update(nodes.get(i), null);
+        File[] shardFiles = new File[16];
+        for (int i = 0; i < shardFiles.length; i++) shardFiles[i] = new File(TEST_DB_DIR, "missing_" + i);
+        index.save(shardFiles);
+
+        VectorIndex reopened = VectorIndex.open(crypto, TEST_DB_DIR, 16);
+        Assert.assertEquals(reopened.size(), 350);
+        int found = 0;
+        for (int i = 0; i < 350; i++)
+            if (reopened.nearest(Featurizer.embed(nodes.get(i)), 5).get(0).id.equals("v" + i)) found++;
+        Assert.assertTrue(found >= 350 * 0.95, "recall " + found / 350.0);
+        for (int i = 350; i < 400; i++) {
+            Assert.assertFalse(reopened.contains("v" + i));
+            for (VectorIndex.Hit hit : reopened.nearest(Featurizer.embed(nodes.get(i)), 5))
+                Assert.assertNotEquals(hit.id, "v" + i);
+        }
+    }
+
+    @Test
+    public void testSimilarNodesPersistAcrossCheckpoint() {
+        Node alice = new Node("alice", "Person");
+        alice.addProperty("city", "Paris");
+        alice.addProperty("skills", Arrays.asList("java", "graphs"));
+        alice.addProperty(Featurizer.FLAG, "true");
+        Node bob = new Node("bob", "Person");
+        bob.addProperty("city", "Paris");
+        bob.addProperty("skills", Arrays.asList("java", "graph"));
+        bob.addProperty(Featurizer.FLAG, "true");
+        Node carol = new Node("carol", "Company");
+        carol.addProperty("city", "Tokyo");
+        carol.addProperty(Featurizer.FLAG, "true");
+        engine.persistNode(alice);
+        engine.persistNode(carol);
+        engine.persistNode(new Node("plain", "Person"));
+
+        try {
+            engine.similar("plain", 3);
+            Assert.fail("Nodes without the flag are not indexed");
+        } catch (IllegalArgumentException expected) {}
+
+        // Written after the index was opened: maintained incrementally
+        engine.persistNode(bob);
+        List<SearchHit> hits = engine.similar("alice", 2);
+        Assert.assertEquals(hits.size(), 2);
+        Assert.assertEquals(hits.get(0).node.getId(), "bob");
+        Assert.assertTrue(hits.get(0).score > hits.get(1).score);
+
+        engine.deleteNode("carol");
+        engine.checkpoint();
+        GraphEngine reopened = new GraphEngine(TEST_DB_DIR);
+        Assert.assertEquals(reopened.countVectorized(), 2);
+        Assert.assertEquals(reopened.similar("bob", 5).get(0).node.getId(), "alice");
+    }
+
+    @Test
+    public void testBatchPersistAndWalReplay() {
+        engine.setAutoIndexing(true);
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Node n = new Node("b" + i, i % 2 == 0 ? "Even" : "Odd");
+            n.addProperty("rank", (long) i);
+            nodes.add(n);
+        }
+        engine.persistNodes(nodes);
+        List<Relation> links = new ArrayList<>();
+        for (int i = 1; i < 500; i++) links.add(new Relation("b" + (i - 1), "b" + i, "NEXT"));
+        engine.persistRelations(links);
+
+        Assert.assertEquals(engine.countNodes(), 500);
+        Assert.assertEquals(engine.countNodesByLabel("Even"), 250);
+        Assert.assertEquals(engine.countRelationsByType("NEXT"), 499);
+        Assert.assertEquals(engine.getRelationsFrom("b7").get(0).getTargetId(), "b8");
+        Assert.assertEquals(engine.findShortestPath("b0", "b20", 30).size(), 21);
+
+        // One missing endpoint rejects the whole batch
+        try {
+            engine.persistRelations(Arrays.asList(new Relation("b1", "b3", "SKIP"), new Relation("b1", "ghost", "SKIP")));
+            Assert.fail("Expected missing endpoint to be rejected");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertTrue(expected.getMessage().contains("ghost"));
+        }
+        Assert.assertEquals(engine.countRelationsByType("SKIP"), 0);
+
+        // Batches replace existing nodes and are replayed from the WAL
+        engine.checkpoint();
+        Node updated = new Node("b3", "Odd");
+        updated.addProperty("rank", 1000L);
+        engine.persistNodes(Arrays.asList(updated, new Node("b500", "Even")));
+        engine.persistRelations(Arrays.asList(new Relation("b499", "b500", "NEXT"), new Relation("b3", "b0", "BACK")));
+        GraphEngine replayed = new GraphEngine(TEST_DB_DIR);
+        Assert.assertEquals(replayed.countNodes(), 501);
+        Assert.assertEquals(replayed.getNode("b3").getProperties().get("rank"), 1000L);
+        Assert.assertEquals(replayed.countRelationsByType("NEXT"), 500);
+        Assert.assertEquals(replayed.getRelationsFrom("b3").size(), 2);
+        Assert.assertEquals(replayed.select("Odd", new Condition("rank", ">", "999")).size(), 1);
+    }
+
+    @Test
+    public void testParallelScansSurviveEviction() throws Exception {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) nodes.add(new Node("s" + i, "Item"));
+        engine.persistNodes(nodes);
+        engine.checkpoint();
+
+        // More scanners than resident shards, so shards are evicted while others scan them
+        int threads = 16;
+        java.util.concurrent.atomic.AtomicLong seen = new java.util.concurrent.atomic.AtomicLong();
+        List<Thread> scanners = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            Thread scanner = new Thread(() -> {
+                for (int i = 0; i < GraphEngine.shardCount(); i++)
+                    engine.scanShard((first + i) % GraphEngine.shardCount(), n -> seen.incrementAndGet(), r -> { });
+            });
+            scanners.add(scanner);
+            scanner.start();
+        }
+        for (Thread scanner : scanners) scanner.join();
+        Assert.assertEquals(seen.get(), 4000L * threads);
+        Assert.assertEquals(engine.countNodes(), 4000);
+    }
+
+    @Test
+    public void testIncrementalBackupChainRestores() throws Exception {
+        for (int i = 0; i < 100; i++) engine.persistNode(new Node("n" + i, "Item"));
+        engine.checkpoint();
+        File root = new File(TEST_DB_DIR, "backups");
+
+        BackupManager.Result first = engine.backup(new BackupManager(root));
+        Assert.assertTrue(first.isFull());
+        Assert.assertEquals(first.stored, first.files);
+
+        // One shard changes: the next backup stores it (and the catalog) and refers to the first for the rest
+        engine.updateNode("n1", "note", "changed after the first backup");
+        engine.checkpoint();
+        BackupManager.Result second = engine.backup(new BackupManager(root));
+        Assert.assertEquals(second.parent, first.directory.getName());
+        Assert.assertEquals(second.stored, 2);
+        Assert.assertEquals(second.files, first.files);
+
+        // Not checkpointed: only in the WAL, which the backup takes after the files
+        engine.persistNode(new Node("late", "Item"));
+        engine.persistRelation("late", "n1", "SEES");
+        BackupManager.Result third = engine.backup(new BackupManager(root));
+        Assert.assertEquals(new File(third.directory, "atlas_db").list((d, name) -> name.startsWith("part_")).length, 0);
+        Assert.assertTrue(third.walBytes > 0);
+        Assert.assertEquals(BackupManager.list(root).size(), 3);
+
+        String copyDir = TEST_DB_DIR + File.separator + "restored";
+        BackupManager.Manifest manifest = BackupManager.verify(third.directory);
+        Assert.assertEquals(BackupManager.restore(third.directory, manifest, copyDir), 3);
+        GraphEngine restored = new GraphEngine(copyDir);
+        Assert.assertEquals(restored.countNodes(), 101);
+        Assert.assertEquals(restored.getNode("n1").getProperties().get("note"), "changed after the first backup");
+        Assert.assertEquals(restored.getRelationsFrom("late").get(0).getTargetId(), "n1");
+
+        // Restoring over the open database goes back to the second backup
+        engine.persistNode(new Node("junk", "Item"));
+        engine.replaceDatabase(dir -> BackupManager.restore(second.directory, BackupManager.verify(second.directory), dir));
+        Assert.assertNull(engine.getNode("junk"));
+        Assert.assertNull(engine.getNode("late"));
+        Assert.assertEquals(engine.countNodes(), 100);
+        Assert.assertEquals(engine.getNode("n1").getProperties().get("note"), "changed after the first backup");
+
+        // A chain missing a file of an earlier backup is refused before anything is written
+        File[] firstFiles = new File(first.directory, "atlas_db").listFiles((d, name) -> name.startsWith("part_"));
+        Assert.assertTrue(firstFiles[0].delete());
+        try {
+            BackupManager.verify(third.directory);
+            Assert.fail("Expected a broken chain to be rejected");
+        } catch (java.io.IOException expected) {
+            Assert.assertTrue(expected.getMessage().contains("broken"), expected.getMessage());
+        }
+
+        // A shard rewritten at the same length within one clock tick is still seen as changed
+        String shardName = "part_" + GraphEngine.segmentIndex("n1") + ".dat";
+        File shard = new File(TEST_DB_DIR, shardName);
+        long length = shard.length(), modified = shard.lastModified();
+        engine.updateNode("n1", "note", "CHANGED AFTER THE FIRST BACKUP");
+        engine.checkpoint();
+        Assert.assertEquals(shard.length(), length);
+        Assert.assertTrue(shard.setLastModified(modified));
+        BackupManager.Result fourth = engine.backup(new BackupManager(root));
+        Assert.assertTrue(new File(new File(fourth.directory, "atlas_db"), shardName).exists());
+    }
+
+    @Test
+    public void testReplaySkipsEntriesEvictedShardsHold() throws Exception {
+        for (int i = 0; i < 64; i++) engine.persistNode(new Node("e" + i, "Item"));
+        engine.checkpoint();
+        for (int i = 0; i < 64; i++) engine.persistRelation("e" + i, "e" + ((i + 1) % 64), "NEXT");
+        // Cycling every shard through memory evicts, and so saves, shards the WAL still describes
+        engine.getAllNodes();
+        engine.getAllNodes();
+        Assert.assertEquals(engine.countRelationsByType("NEXT"), 64);
+
+        File root = new File(TEST_DB_DIR, "backups");
+        BackupManager.Result backup = engine.backup(new BackupManager(root));
+        String copyDir = TEST_DB_DIR + File.separator + "restored";
+        BackupManager.restore(backup.directory, BackupManager.verify(backup.directory), copyDir);
+        Assert.assertEquals(new GraphEngine(copyDir).countRelationsByType("NEXT"), 64);
+
+        // A checkpoint keeps entries logged after its mark; replay must not apply them twice either
+        engine.deleteRelation("e0", "e1", "NEXT");
+        engine.persistRelation("e0", "e2", "SKIP");
+        engine.checkpoint();
+        engine.persistRelation("e1", "e3", "SKIP");
+        engine.getAllNodes();
+        GraphEngine recovered = new GraphEngine(TEST_DB_DIR);
+        Assert.assertEquals(recovered.countRelationsByType("NEXT"), 63);
+        Assert.assertEquals(recovered.countRelationsByType("SKIP"), 2);
+    }
+}
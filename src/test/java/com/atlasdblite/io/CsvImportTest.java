@@ -0,0 +1,423 @@
+package com.atlasdblite.io;
+
+import com.atlasdblite.engine.GlobalIndex;
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.models.Node;
+import com.atlasdblite.models.Relation;
+import com.atlasdblite.security.CryptoManager;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CsvImportTest {
+
+    private static final String TEST_DB_DIR = "csv_test_db";
+    private GraphEngine engine;
+
+    @BeforeMethod
+    public void setup() {
+        deleteTestDir();
+        new File(TEST_DB_DIR).mkdirs();
+        engine = new GraphEngine(TEST_DB_DIR);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        deleteTestDir();
+    }
+
+    private void deleteTestDir() {
+        try {
+            if (Files.exists(Paths.get(TEST_DB_DIR))) {
+                Files.walk(Paths.get(TEST_DB_DIR))
+                    .sorted(Comparator.reverseOrder())
+                    .map(java.nio.file.Path::toFile)
+                    .forEach(File::delete);
+            }
+        } catch (Exception ignored) {}
+    }
+
+    private File write(String name, String content) throws IOException {
+        File f = new File(TEST_DB_DIR, name);
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    @Test
+    public void testRfc4180Parsing() {
+        CsvParser p = new CsvParser("a,\"b,c\",\"say \"\"hi\"\"\"\r\n\n\"multi\nline\",,x\n\"open\"junk,y\nlast,\"unterminated");
+        Assert.assertTrue(p.next());
+        Assert.assertEquals(p.fields(), new String[]{"a", "b,c", "say \"hi\""});
+        Assert.assertTrue(p.next());
+        Assert.assertEquals(p.line(), 3);
+        Assert.assertEquals(p.fields(), new String[]{"multi\nline", "", "x"});
+        Assert.assertTrue(p.next());
+        Assert.assertEquals(p.line(), 5);
+        Assert.assertNotNull(p.error());
+        Assert.assertEquals(p.raw(), "\"open\"junk,y");
+        Assert.assertTrue(p.next());
+        Assert.assertEquals(p.line(), 6);
+        Assert.assertNotNull(p.error());
+        Assert.assertFalse(p.next());
+    }
+
+    @Test
+    public void testChunksEndOnRecordBoundaries() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 2000; i++) csv.append(i).append(",\"quoted\nvalue ").append(i).append("\"\n");
+        List<String> firsts = new ArrayList<>();
+        long expectedLine = 1;
+        try (CsvChunkReader reader = new CsvChunkReader(new StringReader(csv.toString()), 1024)) {
+            CsvChunkReader.Chunk chunk;
+            while ((chunk = reader.next()) != null) {
+                Assert.assertEquals(chunk.firstLine, expectedLine);
+                CsvParser p = new CsvParser(chunk.text, chunk.start, chunk.end, chunk.firstLine);
+                while (p.next()) {
+                    Assert.assertNull(p.error());
+                    Assert.assertEquals(p.fields()[1], "quoted\nvalue " + p.fields()[0]);
+                    Assert.assertEquals(p.line(), 2 * Long.parseLong(p.fields()[0]) + 1);
+                    firsts.add(p.fields()[0]);
+                }
+                expectedLine = p.nextLine();
+            }
+        }
+        Assert.assertEquals(firsts.size(), 2000);
+        Assert.assertEquals(firsts.get(1999), "1999");
+    }
+
+    @Test
+    public void testChunksMatchWholeFileWithStrayQuotes() throws IOException {
+        // Literal quotes inside unquoted fields, a doubled quote and junk after a closing quote
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            if (i % 7 == 0) csv.append(i).append(",5'10\" tall,x\n");
+            else if (i % 11 == 0) csv.append(i).append(",\"closed\"junk \" more,y\n");
+            else csv.append(i).append(",\"multi\nline \"\"").append(i).append("\"\"\",z\n");
+        }
+        List<String> whole = new ArrayList<>();
+        CsvParser all = new CsvParser(csv.toString());
+        while (all.next()) whole.add(all.line() + ":" + all.error() + ":" + String.join("|", all.fields()));
+
+        List<String> chunked = new ArrayList<>();
+        int chunks = 0;
+        try (CsvChunkReader reader = new CsvChunkReader(new StringReader(csv.toString()), 1024)) {
+            CsvChunkReader.Chunk chunk;
+            while ((chunk = reader.next()) != null) {
+                chunks++;
+                Assert.assertTrue(chunk.end - chunk.start <= 4096, "Chunk grew to " + (chunk.end - chunk.start));
+                CsvParser p = new CsvParser(chunk.text, chunk.start, chunk.end, chunk.firstLine);
+                while (p.next()) chunked.add(p.line() + ":" + p.error() + ":" + String.join("|", p.fields()));
+            }
+        }
+        Assert.assertEquals(whole.size(), 3000);
+        Assert.assertTrue(chunks > 10);
+        Assert.assertEquals(chunked, whole);
+    }
+
+    @Test
+    public void testImportWithTypesAndErrorReport() throws Exception {
+        File nodes = write("nodes.csv", "\uFEFFid,label,name,age:int,score:double,tags:list,active:bool\n"
+                + "n1,Person,\"Smith, Ann\",41,0.5,a;b,true\n"
+                + "n2,Person,Bob,notanumber,1,,false\n"
+                + "n3,Person,\"Carl \"\"C\"\"\",,2.5,,\n"
+                + ",Person,NoId,1,1,,\n"
+                + "n4,City,Paris\n");
+        CsvImporter.Result result = new CsvImporter(engine).threads(2).chunkSize(1024).run(nodes, CsvImporter.Kind.NODES);
+        Assert.assertEquals(result.rows, 5);
+        Assert.assertEquals(result.imported, 3);
+        Assert.assertEquals(result.errors, 2);
+
+        Node n1 = engine.getNode("n1");
+        Assert.assertEquals(n1.getProperties().get("name"), "Smith, Ann");
+        Assert.assertEquals(n1.getProperties().get("age"), 41L);
+        Assert.assertEquals(n1.getProperties().get("score"), 0.5);
+        Assert.assertEquals(n1.getProperties().get("tags"), Arrays.asList("a", "b"));
+        Assert.assertEquals(n1.getProperties().get("active"), Boolean.TRUE);
+        Assert.assertEquals(engine.getNode("n3").getProperties().get("name"), "Carl \"C\"");
+        Assert.assertFalse(engine.getNode("n3").getProperties().containsKey("age"));
+
+        List<String> report = Files.readAllLines(result.errorFile.toPath());
+        Assert.assertEquals(report.size(), 2);
+        Assert.assertTrue(report.get(0).startsWith("line 3: Column 'age': 'notanumber' is not a valid int"), report.get(0));
+        Assert.assertTrue(report.get(1).startsWith("line 5: Missing id"), report.get(1));
+
+        // Links: endpoints are resolved per batch, and rows pointing at missing nodes are reported
+        File links = write("links.csv", "from,to,type,since:long\nn1,n3,KNOWS,2020\nn1,ghost,KNOWS,1\nn3,n4,LIVES_IN,\n");
+        result = new CsvImporter(engine).maxErrors(0).run(links, CsvImporter.Kind.LINKS);
+        Assert.assertEquals(result.imported, 2);
+        Assert.assertEquals(result.errors, 1);
+        List<Relation> out = engine.getRelationsFrom("n1");
+        Assert.assertEquals(out.size(), 1);
+        Assert.assertEquals(out.get(0).getProperties().get("since"), 2020L);
+        Assert.assertEquals(Files.readAllLines(result.errorFile.toPath()), Arrays.asList("... 1 more errors not shown"));
+
+        try {
+            new CsvImporter(engine).run(write("bad.csv", "id,label,x:date\n"), CsvImporter.Kind.NODES);
+            Assert.fail("Expected an unknown column type to be rejected");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void testExternalSortIsStableAcrossRuns() throws IOException {
+        File dir = new File(TEST_DB_DIR, "sort");
+        dir.mkdirs();
+        int records = 700_000; // over MAX_FAN_IN runs at the 1MB minimum budget, so runs are pre-merged
+        try (ExternalSorter sorter = new ExternalSorter(dir, "t", 0, key -> key.length() % 3)) {
+            for (int i = 0; i < records; i++)
+                sorter.add("k" + (i * 7919 % 50_000), java.nio.ByteBuffer.allocate(4).putInt(i).array());
+            Assert.assertTrue(sorter.runCount() > ExternalSorter.MAX_FAN_IN, "runs: " + sorter.runCount());
+            int seen = 0, lastGroup = -1, lastSeq = -1;
+            String lastKey = null;
+            try (ExternalSorter.Cursor c = sorter.sorted()) {
+                while (c.next()) {
+                    seen++;
+                    int seq = java.nio.ByteBuffer.wrap(c.payload()).getInt();
+                    Assert.assertEquals(c.group(), c.key().length() % 3);
+                    if (c.group() == lastGroup && c.key().equals(lastKey)) {
+                        Assert.assertTrue(seq > lastSeq, "equal keys out of insertion order");
+                    } else if (lastKey != null) {
+                        Assert.assertTrue(c.group() > lastGroup || (c.group() == lastGroup && c.key().compareTo(lastKey) > 0));
+                    }
+                    lastGroup = c.group();
+                    lastKey = c.key();
+                    lastSeq = seq;
+                }
+            }
+            Assert.assertEquals(seen, records);
+        }
+    }
+
+    @Test
+    public void testOfflineBulkLoad() throws Exception {
+        int n = 30_000;
+        StringBuilder nodes = new StringBuilder("id,label,name,age:int\n");
+        for (int i = 0; i < n; i++) nodes.append("u").append(i).append(",User,\"User ").append(i).append("\",").append(i % 90).append('\n');
+        nodes.append("u7,Admin,Root,99\n"); // a repeated ID keeps the last row
+        nodes.append(",User,NoId,1\n");
+        StringBuilder links = new StringBuilder("from,to,type,since:long\n");
+        for (int i = 0; i < n; i++) links.append("u").append(i).append(",u").append((i * 31 + 7) % n).append(",KNOWS,").append(i).append('\n');
+        links.append("u1,ghost,KNOWS,1\nghost,u1,KNOWS,1\n");
+        File nodeFile = write("bulk_nodes.csv", nodes.toString());
+        File linkFile = write("bulk_links.csv", links.toString());
+        String db = TEST_DB_DIR + File.separator + "bulk";
+
+        BulkLoader.Result result = new BulkLoader().memory(4 << 20).threads(2).chunkSize(1 << 16).buildIndex(true)
+                .load(db, Collections.singletonList(nodeFile), Collections.singletonList(linkFile));
+        Assert.assertEquals(result.nodes, n);
+        Assert.assertEquals(result.duplicates, 1);
+        Assert.assertEquals(result.relations, n);
+        Assert.assertEquals(result.errors, 3);
+        List<String> report = Files.readAllLines(result.errorFile.toPath());
+        Assert.assertTrue(report.contains("bulk_links.csv: line " + (n + 2) + ": Node not found 'ghost'"), report.toString());
+        Assert.assertTrue(report.contains("bulk_links.csv: line " + (n + 3) + ": Node not found 'ghost'"), report.toString());
+
+        // Opens with nothing to replay, counts from the catalog, and an index that is already current
+        Assert.assertEquals(new File(db, "global.wal").length(), 0);
+        Assert.assertFalse(new File(db, "import.tmp").exists());
+        File[] shards = new File[GraphEngine.shardCount()];
+        for (int s = 0; s < shards.length; s++) shards[s] = new File(db, "part_" + s + ".dat");
+        GlobalIndex index = GlobalIndex.open(new CryptoManager(), db, shards.length);
+        for (int s = 0; s < shards.length; s++) Assert.assertTrue(index.isCurrent(s, shards[s]), "shard " + s);
+
+        GraphEngine loaded = new GraphEngine(db);
+        Assert.assertTrue(loaded.isAutoIndexing());
+        Assert.assertEquals(loaded.countNodes(), n);
+        Assert.assertEquals(loaded.countRelations(), n);
+        Assert.assertEquals(loaded.countNodesByLabel("Admin"), 1);
+        Assert.assertEquals(loaded.getAllNodes().size(), n);
+        Assert.assertEquals(loaded.getAllRelations().size(), n);
+        Node u7 = loaded.getNode("u7");
+        Assert.assertEquals(u7.getLabel(), "Admin");
+        Assert.assertEquals(u7.getProperties().get("age"), 99L);
+        List<Relation> out = loaded.getRelationsFrom("u5");
+        Assert.assertEquals(out.size(), 1);
+        Assert.assertEquals(out.get(0).getTargetId(), "u" + (5 * 31 + 7));
+        Assert.assertEquals(out.get(0).getProperties().get("since"), 5L);
+        Assert.assertEquals(loaded.search("user 123").size(), 1);
+
+        try {
+            new BulkLoader().load(db, Collections.singletonList(nodeFile), Collections.emptyList());
+            Assert.fail("Expected a non-empty directory to be rejected");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void testExportRoundTripsAndStreamsParts() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            Node n = new Node("n" + i, i % 2 == 0 ? "Even" : "Odd");
+            n.addProperty("age", (long) i);
+            n.addProperty("note", "say \"hi\", " + i);
+            if (i == 7) n.addProperty("age", 7.5); // widens the column to double
+            if (i == 9) n.addProperty("tags", Arrays.asList("a", "b;c", "d\\;", "")); // escaped, not split
+            if (i == 13) n.addProperty("time:zone", "UTC"); // typed, since the importer splits at the last colon
+            if (i == 11) n.addProperty("__embedding", new byte[]{1, 2});
+            engine.persistNode(n);
+        }
+        for (int i = 0; i < 200; i++) {
+            Map<String, Object> props = new HashMap<>();
+            props.put("w", i % 3 == 0 ? (Object) 1.5 : (Object) 2L);
+            engine.persistRelation("n" + i, "n" + ((i + 1) % 200), "NEXT", props);
+        }
+
+        // CSV: merged files load back with the importer
+        File base = new File(TEST_DB_DIR, "out.csv");
+        GraphExporter.Result csv = new GraphExporter(engine).format(GraphExporter.Format.CSV).threads(3).export(base);
+        Assert.assertEquals(csv.nodes, 200);
+        Assert.assertEquals(csv.relations, 200);
+        File nodeCsv = new File(TEST_DB_DIR, "out_nodes.csv");
+        Assert.assertEquals(csv.files, Arrays.asList(nodeCsv.getAbsoluteFile(), new File(TEST_DB_DIR, "out_links.csv").getAbsoluteFile()));
+        Assert.assertTrue(Files.readAllLines(nodeCsv.toPath()).get(0).startsWith("id,label,age:double,note,tags:list,time:zone:string"));
+        Assert.assertFalse(new File(TEST_DB_DIR, ".out.csv.parts").exists());
+
+        GraphEngine copy = new GraphEngine(TEST_DB_DIR + File.separator + "copy");
+        Assert.assertEquals(new CsvImporter(copy).run(nodeCsv, CsvImporter.Kind.NODES).errors, 0);
+        Assert.assertEquals(new CsvImporter(copy).run(csv.files.get(1), CsvImporter.Kind.LINKS).imported, 200);
+        Assert.assertEquals(copy.getNode("n5").getProperties().get("note"), "say \"hi\", 5");
+        Assert.assertEquals(copy.getNode("n7").getProperties().get("age"), 7.5);
+        Assert.assertEquals(copy.getNode("n9").getProperties().get("tags"), Arrays.asList("a", "b;c", "d\\;", ""));
+        Assert.assertEquals(copy.getNode("n13").getProperties().get("time:zone"), "UTC");
+        Assert.assertEquals(copy.getRelationsFrom("n3").get(0).getProperties().get("w"), 1.5);
+
+        // JSON lines, gzipped, one part per shard
+        File partsDir = new File(TEST_DB_DIR, "parts");
+        GraphExporter.Result jsonl = new GraphExporter(engine).format(GraphExporter.Format.JSONL).gzip(true).parts(true).export(partsDir);
+        Assert.assertEquals(jsonl.files.size(), GraphEngine.shardCount());
+        int lines = 0;
+        for (File part : jsonl.files) {
+            Assert.assertTrue(part.getName().endsWith(".jsonl.gz"), part.getName());
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                    new java.util.zip.GZIPInputStream(new FileInputStream(part)), StandardCharsets.UTF_8))) {
+                while (r.readLine() != null) lines++;
+            }
+        }
+        Assert.assertEquals(lines, 400);
+
+        // GraphML, merged from gzip parts: a valid document once decompressed
+        File graphml = new File(TEST_DB_DIR, "g.graphml.gz");
+        new GraphExporter(engine).format(GraphExporter.Format.GRAPHML).gzip(true).export(graphml);
+        org.w3c.dom.Document doc = javax.xml.parsers.DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new java.util.zip.GZIPInputStream(new FileInputStream(graphml)));
+        Assert.assertEquals(doc.getElementsByTagName("node").getLength(), 200);
+        Assert.assertEquals(doc.getElementsByTagName("edge").getLength(), 200);
+
+        try {
+            new GraphExporter(engine).format(GraphExporter.Format.DOT).parts(true).export(partsDir);
+            Assert.fail("Expected DOT parts to be rejected");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void testDumpRestoresIntoAnotherDatabase() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            Node n = new Node(i == 5 ? "né-5" : "user-" + i, i % 3 == 0 ? "Admin" : "User");
+            n.addProperty("age", (long) i);
+            n.addProperty("score", i / 4.0);
+            if (i == 9) n.addProperty("tags", Arrays.asList("a", 2L));
+            if (i == 11) n.addProperty("__embedding", new byte[]{1, 2, 3});
+            if (i == 12) n.addProperty("active", true);
+            engine.persistNode(n);
+        }
+        for (int i = 6; i < 300; i++) {
+            engine.persistRelation("user-" + i, "user-" + (i * 7 % 300 < 6 ? 6 : i * 7 % 300), "KNOWS",
+                    Collections.singletonMap("since", (long) i));
+            if (i % 10 == 0) engine.persistRelation("user-" + i, "né-5", "REPORTS_TO");
+        }
+        long relations = engine.countRelations();
+
+        File dumps = new File(TEST_DB_DIR, "dumps");
+        dumps.mkdirs();
+        File file = new File(dumps, "graph.dump");
+        GraphDump.Result dumped = new GraphDump().threads(3).dump(engine, file);
+        Assert.assertEquals(dumped.nodes, 300);
+        Assert.assertEquals(dumped.relations, relations);
+        Assert.assertEquals(dumped.bytes, file.length());
+
+        // Offline restore into a new directory: counts come from the rebuilt catalog
+        String copyDir = TEST_DB_DIR + File.separator + "copy";
+        GraphDump.Result restored = new GraphDump().restore(file, copyDir);
+        Assert.assertEquals(restored.nodes, 300);
+        GraphEngine copy = new GraphEngine(copyDir);
+        Assert.assertEquals(copy.countNodes(), 300);
+        Assert.assertEquals(copy.countRelations(), relations);
+        Assert.assertEquals(copy.countNodesByLabel("Admin"), 100);
+        Assert.assertEquals(copy.countRelationsByType("REPORTS_TO"), 29);
+        Assert.assertEquals(copy.getNode("né-5").getLabel(), "User");
+        Assert.assertEquals(copy.getNode("user-9").getProperties().get("tags"), Arrays.asList("a", 2L));
+        Assert.assertEquals((byte[]) copy.getNode("user-11").getProperties().get("__embedding"), new byte[]{1, 2, 3});
+        Assert.assertEquals(copy.getNode("user-12").getProperties().get("active"), true);
+        Assert.assertEquals(copy.getNode("user-8").getProperties().get("score"), 2.0);
+        Relation knows = copy.getRelationsFrom("user-10").stream().filter(r -> r.getType().equals("KNOWS")).findFirst().get();
+        Assert.assertEquals(knows.getTargetId(), "user-70");
+        Assert.assertEquals(knows.getProperties().get("since"), 10L);
+
+        try {
+            new GraphDump().restore(file, copyDir);
+            Assert.fail("Expected a non-empty directory to be rejected");
+        } catch (IllegalArgumentException expected) {}
+
+        // Replacing a live database keeps auto-indexing on and rebuilds the index
+        engine.setAutoIndexing(true);
+        engine.persistNode(new Node("extra", "User"));
+        engine.replaceDatabase(dir -> new GraphDump().restore(file, dir));
+        Assert.assertNull(engine.getNode("extra"));
+        Assert.assertEquals(engine.countNodes(), 300);
+        Assert.assertEquals(engine.countIndexed("Admin"), 100);
+
+        // A damaged section is reported, and the shards restored so far are removed
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[100] ^= 0x55;
+        File damaged = new File(dumps, "damaged.dump");
+        Files.write(damaged.toPath(), bytes);
+        File other = new File(TEST_DB_DIR, "other");
+        Assert.assertEquals(GraphDump.verify(file).nodes, 300);
+        try {
+            GraphDump.verify(damaged);
+            Assert.fail("Expected verify to find the damaged section");
+        } catch (IOException expected) {
+            Assert.assertTrue(expected.getMessage().contains("corrupt"), expected.getMessage());
+        }
+        try {
+            new GraphDump().restore(damaged, other.getPath());
+            Assert.fail("Expected a corrupt dump to be rejected");
+        } catch (IOException expected) {
+            Assert.assertTrue(expected.getMessage().contains("corrupt"), expected.getMessage());
+        }
+        Assert.assertEquals(other.list((d, name) -> name.startsWith("part_")).length, 0);
+    }
+
+    /**
+     * Import throughput on a generated file; run with {@code mvn test -Pbench} (10M rows, or set
+     * {@code -Datlas.bench.rows=N}).
+     */
+    @Test
+    public void benchmarkImport() throws Exception {
+        long rows = Long.getLong("atlas.bench.rows", 0);
+        if (rows <= 0)
+            throw new SkipException("Set atlas.bench.rows (or use -Pbench) to run the import benchmark");
+        File csv = new File(TEST_DB_DIR, "bench.csv");
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csv), StandardCharsets.UTF_8), 1 << 16)) {
+            w.write("id,label,name,age:int,score:double,tags:list\n");
+            for (long i = 0; i < rows; i++)
+                w.write("u" + i + ",User,\"User " + i + ", Jr\"," + (i % 90) + "," + (i % 1000) / 10.0 + ",a;b\n");
+        }
+        CsvImporter.Result result = new CsvImporter(engine)
+                .onProgress(p -> System.out.printf(" ... %,d rows (%,.0f rows/s)%n", p.rows, p.rowsPerSecond()), 5000)
+                .run(csv, CsvImporter.Kind.NODES);
+        System.out.printf(" [BENCH] %,d rows in %,dms: %,.0f rows/s%n", result.rows, result.millis, result.rowsPerSecond());
+        Assert.assertEquals(result.imported, rows);
+    }
+}
@@ -0,0 +1,115 @@
+package com.atlasdblite.query;
+
+import com.atlasdblite.engine.GraphEngine;
+import com.atlasdblite.models.Node;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+public class PatternMatcherTest {
+
+    private static final String TEST_DB_DIR = "match_test_db";
+    private GraphEngine engine;
+
+    @BeforeMethod
+    public void setup() {
+        deleteTestDir();
+        engine = new GraphEngine(TEST_DB_DIR);
+
+        Node alice = new Node("alice", "User");
+        alice.addProperty("role", "Admin");
+        Node bob = new Node("bob", "User");
+        bob.addProperty("role", "Guest");
+        engine.persistNode(alice);
+        engine.persistNode(bob);
+        engine.persistNode(new Node("web", "Server"));
+        engine.persistNode(new Node("db", "Server"));
+        engine.persistNode(new Node("disk", "Storage"));
+
+        engine.persistRelation("alice", "web", "MANAGES");
+        engine.persistRelation("alice", "db", "MANAGES");
+        engine.persistRelation("bob", "web", "MANAGES");
+        engine.persistRelation("db", "disk", "BACKS_UP");
+        engine.persistRelation("web", "db", "CALLS");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        deleteTestDir();
+    }
+
+    private void deleteTestDir() {
+        try {
+            if (Files.exists(Paths.get(TEST_DB_DIR))) {
+                Files.walk(Paths.get(TEST_DB_DIR))
+                    .sorted(Comparator.reverseOrder())
+                    .map(java.nio.file.Path::toFile)
+                    .forEach(File::delete);
+            }
+        } catch (Exception ignored) {}
+    }
+
+    private List<Map<String, Node>> match(String q) {
+        return new PatternMatcher(engine).collect(MatchPattern.parse(q));
+    }
+
+    @Test
+    public void testMultiHopChain() {
+        List<Map<String, Node>> rows = match("(a:User)-[:MANAGES]->(s:Server)-[:BACKS_UP]->(d)");
+        Assert.assertEquals(rows.size(), 1);
+        Assert.assertEquals(rows.get(0).get("a").getId(), "alice");
+        Assert.assertEquals(rows.get(0).get("s").getId(), "db");
+        Assert.assertEquals(rows.get(0).get("d").getId(), "disk");
+    }
+
+    @Test
+    public void testPredicatesAndIncomingEdges() {
+        Assert.assertEquals(match("(s:Server)<-[:MANAGES]-(a:User)").size(), 3);
+        List<Map<String, Node>> rows = match("(s:Server)<-[:MANAGES]-(a:User) where a.role = Guest");
+        Assert.assertEquals(rows.size(), 1);
+        Assert.assertEquals(rows.get(0).get("s").getId(), "web");
+    }
+
+    @Test
+    public void testCyclicPatternClosesWithJoin() {
+        // alice manages both web and db, and web calls db: a triangle.
+        List<Map<String, Node>> rows = match("(a:User)-[:MANAGES]->(x), (a)-[:MANAGES]->(y), (x)-[:CALLS]->(y)");
+        Assert.assertEquals(rows.size(), 1);
+        Assert.assertEquals(rows.get(0).get("x").getId(), "web");
+        Assert.assertEquals(rows.get(0).get("y").getId(), "db");
+    }
+
+    @Test
+    public void testLimitStopsStreaming() {
+        Assert.assertEquals(match("(a:User)-[:MANAGES]->(s) limit 2").size(), 2);
+        Assert.assertTrue(match("(a:User)-[:MANAGES]->(s) limit 0").isEmpty());
+    }
+
+    @Test
+    public void testTypedEqualityAnchorsWithIndex() {
+        engine.setAutoIndexing(true);
+        Node carol = new Node("carol", "User");
+        carol.addProperty("age", 30L);
+        carol.addProperty("active", true);
+        engine.persistNode(carol);
+        engine.persistRelation("carol", "web", "MANAGES");
+
+        // The index holds "30", so a numeric operand must not be looked up as text
+        Assert.assertEquals(match("(a:User)-[:MANAGES]->(s) where a.age = 30.0").size(), 1);
+        Assert.assertEquals(match("(a:User)-[:MANAGES]->(s) where a.active = TRUE").size(), 1);
+        Assert.assertEquals(match("(a:User)-[:MANAGES]->(s) where a.role = admin").size(), 2);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMalformedPattern() {
+        MatchPattern.parse("(a:User)-[:MANAGES]-(s)");
+    }
+}
@@ -108,6 +108,12 @@ public class APIServerTest {
 
         Assert.assertEquals(results.size(), 1);
         Assert.assertEquals(results.get(0).getId(), "u100");
+
+        HttpResponse<String> negative = client.send(
+            HttpRequest.newBuilder().uri(URI.create(BASE_URL + "/api/search?q=Admin&limit=-1")).GET().build(),
+            HttpResponse.BodyHandlers.ofString()
+        );
+        Assert.assertEquals(negative.statusCode(), 400);
     }
 
     @Test(priority = 4)